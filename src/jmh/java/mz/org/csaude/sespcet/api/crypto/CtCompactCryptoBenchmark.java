@@ -0,0 +1,171 @@
+package mz.org.csaude.sespcet.api.crypto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micronaut.data.model.Pageable;
+import mz.org.csaude.sespcet.api.api.response.PaginatedResponse;
+import mz.org.csaude.sespcet.api.dto.EncryptedRequestDTO;
+import mz.org.csaude.sespcet.api.dto.PedidoDTO;
+import mz.org.csaude.sespcet.api.dto.RespostaDTO;
+import mz.org.csaude.sespcet.api.entity.Pedido;
+import mz.org.csaude.sespcet.api.service.SettingService;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Custo do envelope compacto (RSA-OAEP + AES-GCM + SHA256withRSA) por tamanho de payload.
+ * Correr com: ./gradlew jmh  (o profiler gc está activo por omissão, ver build.gradle)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CtCompactCryptoBenchmark {
+
+    /**
+     * RESPOSTA_1KB      → uma resposta isolada (webhook / ACK)
+     * PEDIDOS_20_500KB  → página por omissão do sync (20 pedidos)
+     * PEDIDOS_200_5MB   → PaginatedResponse máximo devolvido aos clientes (200 pedidos)
+     */
+    @Param({"RESPOSTA_1KB", "PEDIDOS_20_500KB", "PEDIDOS_200_5MB"})
+    public String payload;
+
+    private CtCompactCrypto crypto;
+    private CtKeyRegistry keys;
+
+    private String publicPem;
+    private String privatePem;
+    private PublicKey publicKey;
+    private PrivateKey privateKey;
+
+    private String clearJson;
+    private EncryptedRequestDTO envelope;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        // as operações do envelope não tocam em settings (só a master key GP o faz)
+        SettingService settings = new SettingService(null, null);
+        keys = new CtKeyRegistry(settings, Caffeine.newBuilder().maximumSize(100).build());
+        crypto = new CtCompactCrypto(settings, keys, new CtCryptoExecutor(0, 512, null));
+
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        KeyPair kp = kpg.generateKeyPair();
+        publicKey  = kp.getPublic();
+        privateKey = kp.getPrivate();
+        publicPem  = toPem("PUBLIC KEY", publicKey.getEncoded());
+        privatePem = toPem("PRIVATE KEY", privateKey.getEncoded());
+
+        clearJson = buildPayload(payload);
+        envelope  = crypto.buildEncryptedEnvelope(clearJson, publicKey, privateKey);
+    }
+
+    /* ===================== operações isoladas ===================== */
+
+    @Benchmark
+    public String encryptCompact() throws Exception {
+        return crypto.encryptCompact(clearJson, publicKey);
+    }
+
+    @Benchmark
+    public byte[] decryptCompact() throws Exception {
+        return crypto.decryptCompact(envelope.data(), privateKey);
+    }
+
+    @Benchmark
+    public String signBase64OverString() throws Exception {
+        return crypto.signBase64OverString(envelope.data(), privateKey);
+    }
+
+    @Benchmark
+    public boolean verifySignatureOverString() throws Exception {
+        return CtCompactCrypto.verifySignatureOverString(envelope.data(), envelope.signature(), publicKey);
+    }
+
+    /* ===================== PEM ===================== */
+
+    /** Parse completo (regex + KeyFactory), o custo antes da cache. */
+    @Benchmark
+    public PrivateKey readPrivateKeyPemUncached() throws Exception {
+        return CtCompactCrypto.parsePrivateKeyPem(privatePem);
+    }
+
+    /** Caminho actual: digest do PEM + lookup no {@link CtKeyRegistry}. */
+    @Benchmark
+    public PrivateKey readPrivateKeyPem() throws Exception {
+        return crypto.readPrivateKeyPem(privatePem);
+    }
+
+    /* ===================== envelope completo ===================== */
+
+    @Benchmark
+    public EncryptedRequestDTO buildEncryptedEnvelope() throws Exception {
+        return crypto.buildEncryptedEnvelope(clearJson, publicPem, privatePem);
+    }
+
+    /* ===================== payloads ===================== */
+
+    private static String buildPayload(String kind) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        Random rnd = new Random(42);
+        return switch (kind) {
+            case "RESPOSTA_1KB" -> {
+                RespostaDTO dto = new RespostaDTO();
+                dto.setId(1L);
+                dto.setUuid(UUID.randomUUID().toString());
+                dto.setRespostaIdCt(90001L);
+                dto.setPedidoIdCt(70855L);
+                dto.setFacilityCode("1100101");
+                dto.setPayload(fakeCtJson(rnd, 700));
+                dto.setStatus("NEW");
+                yield mapper.writeValueAsString(dto);
+            }
+            case "PEDIDOS_20_500KB" -> mapper.writeValueAsString(pedidosPage(rnd, 20, 25_000));
+            case "PEDIDOS_200_5MB"  -> mapper.writeValueAsString(pedidosPage(rnd, 200, 25_000));
+            default -> throw new IllegalArgumentException("payload desconhecido: " + kind);
+        };
+    }
+
+    private static PaginatedResponse<PedidoDTO> pedidosPage(Random rnd, int n, int payloadChars) {
+        List<PedidoDTO> content = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            PedidoDTO p = new PedidoDTO();
+            p.setId((long) i + 1);
+            p.setUuid(UUID.randomUUID().toString());
+            p.setPedidoIdCt(70000L + i);
+            p.setFacilityCode("1100101");
+            p.setPayload(fakeCtJson(rnd, payloadChars));
+            p.setStatus(Pedido.Status.NEW);
+            content.add(p);
+        }
+        return PaginatedResponse.of(content, n, Pageable.from(0, n), "Dados encontrados");
+    }
+
+    /** JSON parecido com o do eCT (campos repetidos + valores variáveis) até ~{@code chars} caracteres. */
+    private static String fakeCtJson(Random rnd, int chars) {
+        StringBuilder sb = new StringBuilder(chars + 128);
+        sb.append("{\"dadosPedido\":{\"metadados\":{\"pedidoId\":").append(rnd.nextInt(1_000_000)).append("},\"linhas\":[");
+        int i = 0;
+        while (sb.length() < chars) {
+            if (i++ > 0) sb.append(',');
+            sb.append("{\"regime\":\"TDF+3TC+DTG\",\"cargaViral\":").append(rnd.nextInt(100_000))
+              .append(",\"dataColheita\":\"2025-0").append(1 + rnd.nextInt(9)).append("-1").append(rnd.nextInt(10))
+              .append("\",\"observacoes\":\"").append(Long.toHexString(rnd.nextLong())).append("\"}");
+        }
+        return sb.append("]}}").toString();
+    }
+
+    private static String toPem(String type, byte[] der) {
+        String b64 = Base64.getMimeEncoder(64, "\n".getBytes()).encodeToString(der);
+        return "-----BEGIN " + type + "-----\n" + b64 + "\n-----END " + type + "-----";
+    }
+}
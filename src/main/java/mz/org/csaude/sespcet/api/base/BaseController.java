@@ -4,6 +4,8 @@ import io.micronaut.data.model.Pageable;
 import io.micronaut.http.HttpResponse;
 import io.micronaut.http.HttpStatus;
 import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.exceptions.HttpStatusException;
+import mz.org.csaude.sespcet.api.crypto.EnvelopeEncoding;
 import mz.org.csaude.sespcet.api.error.SespCtAPIError;
 import mz.org.csaude.sespcet.api.util.Utilities;
 import org.apache.commons.lang3.exception.ExceptionUtils;
@@ -32,6 +34,15 @@ public abstract class BaseController {
         return pageable;
     }
 
+    /** Codificação do payload enviado pelo cliente (cabeçalho X-Envelope-Encoding); desconhecida → 415. */
+    protected EnvelopeEncoding requestEncoding(String header) {
+        try {
+            return EnvelopeEncoding.fromHeader(header);
+        } catch (IllegalArgumentException e) {
+            throw new HttpStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE, e.getMessage());
+        }
+    }
+
     // Este método pode ser mantido caso você queira usá-lo em cenários internos (ex: integração especial),
     // mas não será mais necessário usar em Controllers com os ExceptionHandlers globais.
     protected HttpResponse<SespCtAPIError> buildErrorResponse(Exception e) {
@@ -47,7 +47,7 @@ public class CtBootstrap implements ApplicationEventListener<StartupEvent> {
     @Value("${micronaut.server.ssl.enabled:false}")
     boolean sslEnabled;
 
-    @Inject @Client("/") HttpClient http;
+    @Inject @Client(id = "ect") HttpClient http;
 
     private final Environment env;
 
@@ -74,6 +74,7 @@ public class CtBootstrap implements ApplicationEventListener<StartupEvent> {
         primeBaseAndDerivedUrls();
         ensureClientId();
         ensureKeyPairForApi();
+        ensureClientSchemeKeysForApi();
         ensureRegistration();
         primeWebhookSettings();
         primeSyncSettings();
@@ -192,6 +193,25 @@ public class CtBootstrap implements ApplicationEventListener<StartupEvent> {
         }
     }
 
+    /** Pares X25519 (acordo de chave) e Ed25519 (assinatura) para clientes locais no esquema X25519. */
+    private void ensureClientSchemeKeysForApi() {
+        ensureKeyPair("X25519", CT_KEYS_SESPCTAPI_X25519_PUBLIC_PEM, CT_KEYS_SESPCTAPI_X25519_PRIVATE_PEM);
+        ensureKeyPair("Ed25519", CT_KEYS_SESPCTAPI_ED25519_PUBLIC_PEM, CT_KEYS_SESPCTAPI_ED25519_PRIVATE_PEM);
+    }
+
+    private void ensureKeyPair(String algorithm, String pubKey, String prvKey) {
+        if (!isBlank(settings.get(pubKey, null)) && !isBlank(settings.get(prvKey, null))) return;
+        try {
+            KeyPair kp = KeyPairGenerator.getInstance(algorithm).generateKeyPair();
+            settings.upsert(pubKey, toPem("PUBLIC KEY", kp.getPublic().getEncoded()), "TEXT",
+                    "Chave pública " + algorithm + " SESPCT API (PEM)", true, "system");
+            settings.upsert(prvKey, toPem("PRIVATE KEY", kp.getPrivate().getEncoded()), "TEXT",
+                    "Chave privada " + algorithm + " SESPCT API (PEM)", true, "system");
+        } catch (Exception e) {
+            throw new RuntimeException("Falha ao gerar par de chaves " + algorithm + " (SESPCT API)", e);
+        }
+    }
+
     private void ensureRegistration() {
         String clientId  = settings.get(CT_OAUTH_CLIENT_ID, null);
         String encSecret = settings.get(CT_OAUTH_CLIENT_SECRET, null);
@@ -0,0 +1,7 @@
+package mz.org.csaude.sespcet.api.config;
+
+/**
+ * Publicado por {@code SettingService.upsert} sempre que uma setting é gravada.
+ * Permite que caches derivadas (ex.: chaves já parseadas) se actualizem sem reiniciar.
+ */
+public record SettingChangedEvent(String key, String value) {}
@@ -16,6 +16,27 @@ public final class SettingKeys {
     public static final String CT_KEYS_SESPCTAPI_PRIVATE_PEM = "sesp.ct.keys.sespctApiPrivatePem";
     public static final String CT_KEYS_CLIENT_KEY_ID         = "sesp.ct.keys.clientKeyId";
 
+    /**
+     * Keyring da API: pares RSA retirados continuam a abrir envelopes com o seu {@code kid} durante a sobreposição.
+     * PEMs em {@code sesp.ct.keys.ring.<kid>.privatePem/publicPem}; o par activo fica nas chaves acima.
+     */
+    public static final String CT_KEYS_RING_PREFIX           = "sesp.ct.keys.ring.";
+    public static final String CT_KEYS_RING_RETIRED          = "sesp.ct.keys.ring.retired";     // CSV de kids, mais recente primeiro
+    public static final String CT_KEYS_RING_MAX_RETIRED      = "sesp.ct.keys.ring.maxRetired";
+
+    /**
+     * Rotação em passos: par novo preparado (ainda não activo) e {@code kid} do par cuja chave pública o eCT tem.
+     * O eCT não envia {@code kid}: os seus envelopes abrem, e os nossos para ele são assinados, com o par publicado.
+     */
+    public static final String CT_KEYS_STAGED_KEY_ID         = "sesp.ct.keys.stagedKeyId";
+    public static final String CT_KEYS_PUBLISHED_KEY_ID      = "sesp.ct.keys.publishedKeyId";
+
+    /** Chaves da API para o esquema X25519/Ed25519 dos clientes locais */
+    public static final String CT_KEYS_SESPCTAPI_X25519_PUBLIC_PEM   = "sesp.ct.keys.sespctApiX25519PublicPem";
+    public static final String CT_KEYS_SESPCTAPI_X25519_PRIVATE_PEM  = "sesp.ct.keys.sespctApiX25519PrivatePem";
+    public static final String CT_KEYS_SESPCTAPI_ED25519_PUBLIC_PEM  = "sesp.ct.keys.sespctApiEd25519PublicPem";
+    public static final String CT_KEYS_SESPCTAPI_ED25519_PRIVATE_PEM = "sesp.ct.keys.sespctApiEd25519PrivatePem";
+
     public static final String CT_REGISTER_URL               = "sesp.ct.register.url";
     public static final String CT_DEFAULT_FACILITY           = "sesp.ct.facilityCode";
     public static final String CT_SINCE_ISO                  = "sesp.ct.since";
@@ -37,6 +58,18 @@ public final class SettingKeys {
     public static final String CT_WEBHOOK_RETRY_BACKOFF_SECONDS      = "sesp.ct.webhook.retry.backoffSeconds";
     /** Tamanho dos lotes ao enviar pedidoIds no registo do webhook */
     public static final String CT_WEBHOOK_PAGINATION_SIZE            = "sesp.ct.webhook.paginationSize";
+    /** Inbox do webhook: o controller grava o payload decifrado e responde logo; workers fazem a ingestão */
+    public static final String CT_WEBHOOK_INBOX_ENABLED              = "sesp.ct.webhook.inbox.enabled";    // boolean
+    public static final String CT_WEBHOOK_INBOX_PARALLELISM          = "sesp.ct.webhook.inbox.parallelism";
+    public static final String CT_WEBHOOK_INBOX_MAX_ATTEMPTS         = "sesp.ct.webhook.inbox.maxAttempts";
+    public static final String CT_WEBHOOK_INBOX_BACKOFF_SECONDS      = "sesp.ct.webhook.inbox.backoffSeconds";
+    public static final String CT_WEBHOOK_INBOX_LEASE_SECONDS        = "sesp.ct.webhook.inbox.leaseSeconds";
+    public static final String CT_WEBHOOK_INBOX_RETENTION_DAYS       = "sesp.ct.webhook.inbox.retentionDays";
+    /** Group commit da ingestão: entregas por transacção e espera máxima pelo lote (ms); 1 ou 0 → desligado */
+    public static final String CT_WEBHOOK_INGEST_BATCH_MAX           = "sesp.ct.webhook.ingest.batchMax";
+    public static final String CT_WEBHOOK_INGEST_BATCH_WAIT_MS       = "sesp.ct.webhook.ingest.batchWaitMs";
+    /** Espera máxima de uma entrega pelo commit do seu lote (s) */
+    public static final String CT_WEBHOOK_INGEST_COMMIT_TIMEOUT_SECONDS = "sesp.ct.webhook.ingest.commitTimeoutSeconds";
 
     // =========================
     // Sync
@@ -50,6 +83,53 @@ public final class SettingKeys {
     public static final String CT_SYNC_PAGE_LIMIT            = "sesp.ct.sync.pageLimit";
     public static final String CT_SYNC_CURSOR                = "sesp.ct.sync.cursor";
     public static final String CT_SYNC_LAST_RUN_ISO          = "sesp.ct.sync.lastRunIso";
+    /** Nº de páginas do eCT buscadas/decifradas à frente da gravação na BD */
+    public static final String CT_SYNC_PREFETCH_PAGES        = "sesp.ct.sync.prefetchPages";
+    /** Busca das páginas pelo cliente reactivo (sem thread parada por pedido); false → thread de pré-busca */
+    public static final String CT_SYNC_REACTIVE_ENABLED      = "sesp.ct.sync.reactive.enabled";      // boolean
+    /** Ajuste automático do limit por página (latência, tamanho da resposta, falhas) */
+    public static final String CT_SYNC_ADAPTIVE_ENABLED      = "sesp.ct.sync.adaptive.enabled";      // boolean
+    public static final String CT_SYNC_ADAPTIVE_MIN_LIMIT    = "sesp.ct.sync.adaptive.minLimit";
+    public static final String CT_SYNC_ADAPTIVE_MAX_LIMIT    = "sesp.ct.sync.adaptive.maxLimit";
+    /** Tempo alvo por página (HTTP + verificação + decifra + parse), em ms */
+    public static final String CT_SYNC_ADAPTIVE_TARGET_MS    = "sesp.ct.sync.adaptive.targetMs";
+    /** Tamanho máximo desejado do JSON claro de uma página */
+    public static final String CT_SYNC_ADAPTIVE_MAX_BYTES    = "sesp.ct.sync.adaptive.maxBytes";
+    /** Prefixo do estado persistido por fluxo: {prefixo}{pedidos|respostas}.limit/.latencyMs/.errorRate */
+    public static final String CT_SYNC_ADAPTIVE_STATE_PREFIX = "sesp.ct.sync.adaptive.state.";
+    /** Índice em memória dos pedidoIdCt conhecidos; omissão false (só com uma instância a escrever na BD) */
+    public static final String CT_ID_INDEX_ENABLED           = "sesp.ct.idIndex.enabled";           // boolean
+
+    // =========================
+    // Resiliência das chamadas HTTP ao eCT
+    // =========================
+    /** Tentativas por chamada idempotente (1 = sem retry) */
+    public static final String CT_HTTP_RETRY_MAX_ATTEMPTS    = "sesp.ct.http.retry.maxAttempts";
+    /** Espera mínima / máxima entre tentativas (decorrelated jitter), em ms */
+    public static final String CT_HTTP_RETRY_BASE_MS         = "sesp.ct.http.retry.baseMs";
+    public static final String CT_HTTP_RETRY_MAX_BACKOFF_MS  = "sesp.ct.http.retry.maxBackoffMs";
+    /** Falhas seguidas que abrem o circuito e tempo em aberto antes da sonda */
+    public static final String CT_HTTP_BREAKER_FAILURES      = "sesp.ct.http.breaker.failureThreshold";
+    public static final String CT_HTTP_BREAKER_OPEN_SECONDS  = "sesp.ct.http.breaker.openSeconds";
+    /** Balde de tokens partilhado por todas as chamadas ao eCT: pedidos/segundo (0 = sem limite) e rajada */
+    public static final String CT_HTTP_RATE_PER_SECOND       = "sesp.ct.http.rate.perSecond";
+    public static final String CT_HTTP_RATE_BURST            = "sesp.ct.http.rate.burst";
+    /** Máximo de chamadas ao eCT em simultâneo e espera máxima por vaga (segundos) */
+    public static final String CT_HTTP_MAX_IN_FLIGHT         = "sesp.ct.http.maxInFlight";
+    public static final String CT_HTTP_ACQUIRE_TIMEOUT_SECONDS = "sesp.ct.http.acquireTimeoutSeconds";
+    /** Pausa quando o eCT responde 429/503 sem Retry-After (ms) */
+    public static final String CT_HTTP_THROTTLE_DEFAULT_MS   = "sesp.ct.http.throttle.defaultMs";
+    /** Timeouts do cliente eCT (@Client(id = "ect")), em segundos; lidos ao criar o pool (reiniciar para mudar) */
+    public static final String CT_HTTP_CONNECT_TIMEOUT_SECONDS = "sesp.ct.http.connectTimeoutSeconds";
+    public static final String CT_HTTP_READ_TIMEOUT_SECONDS  = "sesp.ct.http.readTimeoutSeconds";
+
+    // =========================
+    // Envelope (clientes locais)
+    // =========================
+    /** Modo sessão: chave AES por cliente reutilizada (opt-in do cliente via cabeçalho X-Envelope-Session) */
+    public static final String CT_ENVELOPE_SESSION_ENABLED      = "sesp.ct.envelope.session.enabled";      // boolean
+    public static final String CT_ENVELOPE_SESSION_TTL_SECONDS  = "sesp.ct.envelope.session.ttlSeconds";
+    public static final String CT_ENVELOPE_SESSION_MAX_MESSAGES = "sesp.ct.envelope.session.maxMessages";
 
     // =========================
     // Outros
@@ -59,6 +139,10 @@ public final class SettingKeys {
 
     public static final String CT_SYNC_RESPOSTAS_ENABLED = "sesp.ct.sync.respostas.enabled"; // boolean
     public static final String CT_SYNC_RESPOSTAS_CRON    = "sesp.ct.sync.respostas.cron";    // informativo (opcional)
-    public static final String CT_SYNC_RESPOSTAS_CURSOR = "sesp.ct.sync.respostas.cursor";
+    /** Backfill de respostas: pedidoIds por pedido ao eCT e nº de blocos em paralelo */
+    public static final String CT_SYNC_RESPOSTAS_BACKFILL_CHUNK       = "sesp.ct.sync.respostas.backfill.chunkSize";
+    public static final String CT_SYNC_RESPOSTAS_BACKFILL_PARALLELISM = "sesp.ct.sync.respostas.backfill.parallelism";
+    /** Backfill de respostas: só pedidos criados nos últimos N dias (os mais antigos deixam de ser perguntados) */
+    public static final String CT_SYNC_RESPOSTAS_BACKFILL_MAX_AGE_DAYS = "sesp.ct.sync.respostas.backfill.maxAgeDays";
 
 }
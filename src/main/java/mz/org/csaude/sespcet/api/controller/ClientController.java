@@ -5,14 +5,18 @@ import io.micronaut.http.HttpResponse;
 import io.micronaut.http.annotation.Body;
 import io.micronaut.http.annotation.Controller;
 import io.micronaut.http.annotation.Post;
+import io.micronaut.http.exceptions.HttpStatusException;
 import io.micronaut.security.annotation.Secured;
 import io.micronaut.security.rules.SecurityRule;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.annotation.ExecuteOn;
 import jakarta.inject.Inject;
 import mz.org.csaude.sespcet.api.api.RESTAPIMapping;
 import mz.org.csaude.sespcet.api.api.response.PaginatedResponse;
 import mz.org.csaude.sespcet.api.api.response.SuccessResponse;
 import mz.org.csaude.sespcet.api.base.BaseController;
 import mz.org.csaude.sespcet.api.crypto.CtCompactCrypto;
+import mz.org.csaude.sespcet.api.crypto.EnvelopeScheme;
 import mz.org.csaude.sespcet.api.dto.ClientRegisterDTO;
 import mz.org.csaude.sespcet.api.dto.ClientResponseDTO;
 import mz.org.csaude.sespcet.api.dto.EncryptedRequestDTO;
@@ -20,11 +24,15 @@ import mz.org.csaude.sespcet.api.entity.Client;
 import mz.org.csaude.sespcet.api.service.ClientService;
 import mz.org.csaude.sespcet.api.service.SettingService;
 
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KEYS_CLIENT_KEY_ID;
 import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KEYS_SESPCTAPI_PRIVATE_PEM;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KEYS_SESPCTAPI_ED25519_PUBLIC_PEM;
 import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KEYS_SESPCTAPI_PUBLIC_PEM;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KEYS_SESPCTAPI_X25519_PUBLIC_PEM;
 
 @Secured(SecurityRule.IS_ANONYMOUS)
 @Controller(RESTAPIMapping.CLIENT_CONTROLLER)
+@ExecuteOn(TaskExecutors.BLOCKING) // acesso à BD: fora do event loop do Netty
 public class ClientController extends BaseController {
 
     @Inject
@@ -37,7 +45,8 @@ public class ClientController extends BaseController {
      * Endpoint para registar um novo cliente no sistema.
      * - O cliente envia um objeto ClientRegisterDTO (com seus dados + chave pública).
      * - O sistema regista o cliente na base de dados.
-     * - Retorna uma resposta JSON (NÃO encriptada) com o clientId e a chave pública da API.
+     * - Retorna uma resposta JSON (NÃO encriptada) com o clientId e a chave pública da API
+     *   (no esquema X25519, também as chaves X25519/Ed25519 da API).
      */
     @Post
     public HttpResponse<?> register(@Body ClientRegisterDTO dto) {
@@ -45,17 +54,26 @@ public class ClientController extends BaseController {
             // 1️⃣ Regista o cliente na base de dados
             Client createdClient = clientService.register(dto);
 
-            // 2️⃣ Retorna diretamente uma resposta JSON de sucesso
-            return HttpResponse.created(
-                    SuccessResponse.of(
-                            "Cliente registado com sucesso",
-                            new ClientResponseDTO(
-                                    createdClient.getClientId(),
-                                    settings.get(CT_KEYS_SESPCTAPI_PUBLIC_PEM, null) // Chave pública da API
-                            )
+            ClientResponseDTO response = createdClient.getEnvelopeScheme() == EnvelopeScheme.X25519
+                    ? new ClientResponseDTO(
+                            createdClient.getClientId(),
+                            settings.get(CT_KEYS_SESPCTAPI_PUBLIC_PEM, null), // Chave pública da API
+                            EnvelopeScheme.X25519.name(),
+                            settings.get(CT_KEYS_SESPCTAPI_X25519_PUBLIC_PEM, null),  // para cifrar para a API
+                            settings.get(CT_KEYS_SESPCTAPI_ED25519_PUBLIC_PEM, null), // para verificar a API
+                            settings.get(CT_KEYS_CLIENT_KEY_ID, null)                  // kid do par RSA activo
                     )
-            );
+                    : new ClientResponseDTO(
+                            createdClient.getClientId(),
+                            settings.get(CT_KEYS_SESPCTAPI_PUBLIC_PEM, null), // Chave pública da API
+                            settings.get(CT_KEYS_CLIENT_KEY_ID, null)         // kid a indicar nos envelopes
+                    );
+
+            // 2️⃣ Retorna diretamente uma resposta JSON de sucesso
+            return HttpResponse.created(SuccessResponse.of("Cliente registado com sucesso", response));
 
+        } catch (HttpStatusException e) {
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException("Erro ao registar cliente", e);
         }
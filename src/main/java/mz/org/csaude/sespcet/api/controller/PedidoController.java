@@ -7,16 +7,21 @@ import io.micronaut.http.annotation.*;
 import io.micronaut.security.annotation.Secured;
 import io.micronaut.security.authentication.Authentication;
 import io.micronaut.security.rules.SecurityRule;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.annotation.ExecuteOn;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import jakarta.inject.Inject;
 import mz.org.csaude.sespcet.api.api.RESTAPIMapping;
 import mz.org.csaude.sespcet.api.base.BaseController;
+import mz.org.csaude.sespcet.api.crypto.CtSessionKeyManager;
+import mz.org.csaude.sespcet.api.crypto.EnvelopeEncoding;
 import mz.org.csaude.sespcet.api.dto.EncryptedRequestDTO;
 import mz.org.csaude.sespcet.api.service.PedidoService;
 
 @Secured(SecurityRule.IS_AUTHENTICATED)
 @Controller(RESTAPIMapping.PEDIDO_CONTROLLER)
+@ExecuteOn(TaskExecutors.BLOCKING) // BD + RSA: fora do event loop do Netty
 public class PedidoController extends BaseController {
 
     @Inject
@@ -27,17 +32,22 @@ public class PedidoController extends BaseController {
     @Get("/")
     public HttpResponse<?> listNewPedidos(@Nullable Pageable pageable,
                                           @QueryValue(value = "facilityCode", defaultValue = "") String facilityCode,
+                                          @Nullable @Header(EnvelopeEncoding.ACCEPT_HEADER) String acceptEncoding,
+                                          @Nullable @Header(CtSessionKeyManager.HEADER) String sessionKid,
                                           Authentication authentication) {
         return pedidoService.buildEncryptedPedidos(
                 pageable != null ? pageable : Pageable.from(0, 200),
                 facilityCode.isBlank() ? null : facilityCode,
-                authentication.getName()
+                authentication.getName(),
+                EnvelopeEncoding.negotiate(acceptEncoding),
+                sessionKid
         );
     }
 
     @Post("/mark-consumed")
     public HttpResponse<?> markPedidosConsumed(@Body EncryptedRequestDTO encryptedRequest,
+                                               @Nullable @Header(EnvelopeEncoding.HEADER) String encoding,
                                                Authentication authentication) {
-        return pedidoService.processMarkConsumed(encryptedRequest, authentication.getName());
+        return pedidoService.processMarkConsumed(encryptedRequest, authentication.getName(), requestEncoding(encoding));
     }
 }
@@ -1,21 +1,30 @@
 package mz.org.csaude.sespcet.api.controller;
 
 import io.micronaut.core.annotation.Nullable;
+import io.micronaut.core.io.Writable;
 import io.micronaut.data.model.Pageable;
 import io.micronaut.http.HttpResponse;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.MutableHttpResponse;
 import io.micronaut.http.annotation.*;
 import io.micronaut.security.annotation.Secured;
 import io.micronaut.security.authentication.Authentication;
 import io.micronaut.security.rules.SecurityRule;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.annotation.ExecuteOn;
 import jakarta.inject.Inject;
 import mz.org.csaude.sespcet.api.api.RESTAPIMapping;
 import mz.org.csaude.sespcet.api.api.response.SuccessResponse;
 import mz.org.csaude.sespcet.api.base.BaseController;
+import mz.org.csaude.sespcet.api.crypto.CtSessionEnvelopeWriter;
+import mz.org.csaude.sespcet.api.crypto.CtSessionKeyManager;
+import mz.org.csaude.sespcet.api.crypto.EnvelopeEncoding;
 import mz.org.csaude.sespcet.api.dto.EncryptedRequestDTO;
 import mz.org.csaude.sespcet.api.service.RespostaService;
 
 @Secured(SecurityRule.IS_AUTHENTICATED)
 @Controller(RESTAPIMapping.RESPOSTA_CONTROLLER)
+@ExecuteOn(TaskExecutors.BLOCKING) // BD + RSA: fora do event loop do Netty
 public class RespostaController extends BaseController {
 
     @Inject
@@ -24,22 +33,34 @@ public class RespostaController extends BaseController {
     @Get("/")
     public HttpResponse<?> listNewRespostas(@Nullable Pageable pageable,
                                             @QueryValue(value = "facilityCode", defaultValue = "") String facilityCode,
+                                            @Nullable @Header(EnvelopeEncoding.ACCEPT_HEADER) String acceptEncoding,
+                                            @Nullable @Header(CtSessionKeyManager.HEADER) String sessionKid,
                                             Authentication authentication) {
         String clientId = authentication.getName();
-        return HttpResponse.ok(
-                respostaService.getEncryptedNewRespostas(
-                        clientId,
-                        facilityCode.isBlank() ? null : facilityCode,
-                        pageable != null ? pageable : Pageable.from(0, 200)
-                )
+        EnvelopeEncoding encoding = EnvelopeEncoding.negotiate(acceptEncoding);
+        Writable envelope = respostaService.getEncryptedNewRespostas(
+                clientId,
+                facilityCode.isBlank() ? null : facilityCode,
+                pageable != null ? pageable : Pageable.from(0, 200),
+                encoding,
+                sessionKid
         );
+        MutableHttpResponse<Writable> response = HttpResponse.ok(envelope).contentType(MediaType.APPLICATION_JSON_TYPE);
+        if (encoding.isCompressed()) {
+            response.header(EnvelopeEncoding.HEADER, encoding.token());
+        }
+        if (envelope instanceof CtSessionEnvelopeWriter session) {
+            response.header(CtSessionKeyManager.HEADER, session.getKid());
+        }
+        return response;
     }
 
     @Post("/mark-consumed")
     public HttpResponse<?> markRespostasConsumed(@Body EncryptedRequestDTO encryptedRequest,
+                                                 @Nullable @Header(EnvelopeEncoding.HEADER) String encoding,
                                                  Authentication authentication) {
         String clientId = authentication.getName();
-        respostaService.consumeRespostas(clientId, encryptedRequest);
+        respostaService.consumeRespostas(clientId, encryptedRequest, requestEncoding(encoding));
         return HttpResponse.ok(SuccessResponse.messageOnly("Respostas marcadas como consumidas com sucesso"));
     }
 }
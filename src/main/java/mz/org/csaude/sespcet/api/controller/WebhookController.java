@@ -6,20 +6,32 @@ import io.micronaut.security.annotation.Secured;
 import io.micronaut.security.rules.SecurityRule;
 import lombok.extern.slf4j.Slf4j;
 import mz.org.csaude.sespcet.api.crypto.CtCompactCrypto;
+import mz.org.csaude.sespcet.api.crypto.CtKeyRegistry;
 import mz.org.csaude.sespcet.api.dto.EncryptedRequestDTO;
+import mz.org.csaude.sespcet.api.jobs.WebhookInboxWorker;
 import mz.org.csaude.sespcet.api.service.SettingService;
+import mz.org.csaude.sespcet.api.service.WebhookInboxService;
 import mz.org.csaude.sespcet.api.service.WebhookIngestService;
 import io.micronaut.json.JsonMapper;
+import io.micronaut.scheduling.TaskExecutors;
+import jakarta.inject.Named;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import java.nio.charset.StandardCharsets;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.SignatureException;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KEYS_CT_PUBLIC_PEM;
 import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KEYS_SESPCTAPI_PRIVATE_PEM;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_WEBHOOK_INBOX_ENABLED;
 
 @Secured(SecurityRule.IS_ANONYMOUS)
 @Controller("/public/webhook/ect")
@@ -28,17 +40,29 @@ public class WebhookController {
 
     private final SettingService settings;
     private final CtCompactCrypto crypto;
+    private final CtKeyRegistry keys;
     private final WebhookIngestService ingest;
+    private final WebhookInboxService inbox;
+    private final WebhookInboxWorker inboxWorker;
     private final JsonMapper json;
+    private final Scheduler blocking;
 
     public WebhookController(SettingService settings,
                              CtCompactCrypto crypto,
+                             CtKeyRegistry keys,
                              WebhookIngestService ingest,
-                             JsonMapper json) {
+                             WebhookInboxService inbox,
+                             WebhookInboxWorker inboxWorker,
+                             JsonMapper json,
+                             @Named(TaskExecutors.BLOCKING) ExecutorService blockingExecutor) {
         this.settings = settings;
         this.crypto = crypto;
+        this.keys = keys;
         this.ingest = ingest;
+        this.inbox = inbox;
+        this.inboxWorker = inboxWorker;
         this.json = json;
+        this.blocking = Schedulers.fromExecutorService(blockingExecutor);
     }
 
     /**
@@ -49,62 +73,118 @@ public class WebhookController {
      *   "pedidoIds": [70855, 70856, ...],
      *   "timestamp": "2025-09-11T08:15:30Z"
      * }
+     * Com {@code CT_WEBHOOK_INBOX_ENABLED} (omissão) o payload verificado e decifrado é gravado no inbox e o ACK sai logo;
+     * a ingestão é feita pelo {@link WebhookInboxWorker}. Caso contrário a ingestão é feita antes de responder.
      */
     @Post
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public HttpResponse<?> receive(@Body EncryptedRequestDTO dto) {
-        try {
-            if (dto == null || dto.data() == null || dto.signature() == null) {
-                return HttpResponse.badRequest(mapPlainError("Missing data/signature"));
-            }
-
-            // chaves
-            String ctPubPem  = settings.get(CT_KEYS_CT_PUBLIC_PEM, null);
-            String apiPrvPem = settings.get(CT_KEYS_SESPCTAPI_PRIVATE_PEM, null);
-            if (ctPubPem == null || apiPrvPem == null) {
-                return HttpResponse.status(HttpStatus.PRECONDITION_FAILED)
-                        .body(mapPlainError("Missing crypto keys"));
-            }
+    public Mono<HttpResponse<?>> receive(@Body EncryptedRequestDTO dto) {
+        if (dto == null || dto.data() == null || dto.signature() == null) {
+            return Mono.just(HttpResponse.badRequest(mapPlainError("Missing data/signature")));
+        }
 
-            PublicKey  ctPublic   = crypto.readPublicKeyPem(ctPubPem);
-            PrivateKey apiPrivate = crypto.readPrivateKeyPem(apiPrvPem);
+        // chaves e settings fora do event loop: uma falha de cache é JDBC (settings) ou parse de PEM (chaves)
+        return Mono.fromCallable(() -> resolveKeys(dto))
+                .subscribeOn(blocking)
+                .<HttpResponse<?>>flatMap(k -> {
+                    if (k.error() != null) return Mono.<HttpResponse<?>>just(k.error());
+                    // 1+2) verificar assinatura (sobre a string Base64 de data) e desencriptar — pool de cripto
+                    return crypto.openEnvelopeAsync(dto, k.ctPublic(), k.apiPrivate())
+                            // 3+4) gravar no inbox (ou ingerir) e construir ACK claro — JDBC bloqueante, pool de IO
+                            .flatMap(clear -> Mono.fromCallable(() -> k.viaInbox() ? appendAndBuildAck(clear) : ingestAndBuildAck(clear))
+                                    .subscribeOn(blocking))
+                            // 5) cifrar + assinar ACK para o eCT (cifra com CT public, assina com o par publicado; sem kid)
+                            .flatMap(ackJson -> crypto.buildEncryptedEnvelopeAsync(ackJson, k.ctPublic(), k.ackSigner(), null))
+                            // 6) devolver 200 com envelope JSON
+                            .<HttpResponse<?>>map(HttpResponse::ok);
+                })
+                .onErrorResume(SignatureException.class, e -> {
+                    log.warn("Webhook signature verification failed");
+                    return Mono.just(HttpResponse.unauthorized());
+                })
+                .onErrorResume(RejectedExecutionException.class, e -> {
+                    log.warn("Webhook recusado: pool de cripto saturado");
+                    return Mono.just(HttpResponse.status(HttpStatus.SERVICE_UNAVAILABLE).body(mapPlainError("busy")));
+                })
+                .onErrorResume(e -> {
+                    log.warn("Erro a processar webhook", e);
+                    return Mono.just(HttpResponse.serverError(mapPlainError("internal error")));
+                });
+    }
 
-            // 1) verificar assinatura (sobre a string Base64 de data)
-            if (!CtCompactCrypto.verifySignatureOverString(dto.data(), dto.signature(), ctPublic)) {
-                log.warn("Webhook signature verification failed");
-                return HttpResponse.unauthorized();
-            }
+    /** Chaves e modo do webhook, ou a resposta de erro se faltarem. */
+    private record WebhookKeys(PublicKey ctPublic, PrivateKey apiPrivate, PrivateKey ackSigner, boolean viaInbox,
+                               HttpResponse<?> error) {
+        static WebhookKeys failed(HttpResponse<?> error) {
+            return new WebhookKeys(null, null, null, false, error);
+        }
+    }
 
-            // 2) desencriptar envelope compacto
-            byte[] clear = crypto.decryptCompact(dto.data(), apiPrivate);
-            String incomingJson  = new String(clear, StandardCharsets.UTF_8);
+    /** Lê settings e chaves (pode ir à BD e parsear PEMs): só numa thread bloqueante. */
+    private WebhookKeys resolveKeys(EncryptedRequestDTO dto) {
+        String ctPubPem  = settings.get(CT_KEYS_CT_PUBLIC_PEM, null);
+        String apiPrvPem = settings.get(CT_KEYS_SESPCTAPI_PRIVATE_PEM, null);
+        if (ctPubPem == null || apiPrvPem == null) {
+            return WebhookKeys.failed(HttpResponse.status(HttpStatus.PRECONDITION_FAILED)
+                    .body(mapPlainError("Missing crypto keys")));
+        }
 
-            // 3) persistir (decide Pedido vs Resposta) e recolher IDs processados (se o serviço o devolver)
-            List<Long> processedIds = safeDistinct(ingest.ingest(incomingJson));
-            if (processedIds == null || processedIds.isEmpty()) {
-                // fallback: extrair pedidoIds do payload recebido (tolerante a formatos)
-                processedIds = safeDistinct(extractPedidoIds(incomingJson));
-            }
+        final PublicKey ctPublic;
+        final PrivateKey apiPrivate;
+        final PrivateKey ackSigner;
+        try {
+            ctPublic = crypto.readPublicKeyPem(ctPubPem);
+            // o eCT não envia kid: abre-se com o par publicado no eCT (um kid explícito escolhe o par do keyring)
+            apiPrivate = keys.findEctDecryptionKey(dto.kid());
+            ackSigner = keys.ectSigningKey();
+        } catch (Exception e) {
+            log.warn("Erro a carregar chaves do webhook", e);
+            return WebhookKeys.failed(HttpResponse.serverError(mapPlainError("internal error")));
+        }
+        if (apiPrivate == null) {
+            log.warn("Webhook com kid desconhecido: {}", dto.kid());
+            return WebhookKeys.failed(HttpResponse.badRequest(mapPlainError("Unknown key id")));
+        }
+        return new WebhookKeys(ctPublic, apiPrivate, ackSigner, settings.getBoolean(CT_WEBHOOK_INBOX_ENABLED, true), null);
+    }
 
-            // 4) construir ACK claro
-            Map<String, Object> ack = new LinkedHashMap<>();
-            ack.put("status", "CONSUMED");
-            ack.put("pedidoIds", processedIds != null ? processedIds : List.of());
-            ack.put("timestamp", Instant.now().toString());
+    /**
+     * Persiste o payload decifrado (decide Pedido vs Resposta) e devolve o JSON claro do ACK:
+     * {"status":"CONSUMED","pedidoIds":[...],"timestamp":"..."}.
+     */
+    private String ingestAndBuildAck(byte[] clear) throws Exception {
+        String incomingJson = new String(clear, StandardCharsets.UTF_8);
+
+        // recolher IDs processados (se o serviço o devolver)
+        List<Long> processedIds = safeDistinct(ingest.ingest(incomingJson));
+        if (processedIds == null || processedIds.isEmpty()) {
+            // fallback: extrair pedidoIds do payload recebido (tolerante a formatos)
+            processedIds = safeDistinct(extractPedidoIds(incomingJson));
+        }
 
-            String ackJson = new String(json.writeValueAsBytes(ack), StandardCharsets.UTF_8);
+        return ackJson(processedIds);
+    }
 
-            // 5) cifrar + assinar ACK para o eCT (cifra com CT public, assina com nossa private)
-            EncryptedRequestDTO ackEnv = crypto.buildEncryptedEnvelope(ackJson, ctPubPem, apiPrvPem);
+    /**
+     * Grava o payload claro no inbox (um INSERT) e devolve o ACK com os pedidoIds do payload;
+     * a ingestão fica para os workers, que são acordados de imediato.
+     */
+    private String appendAndBuildAck(byte[] clear) throws Exception {
+        String incomingJson = new String(clear, StandardCharsets.UTF_8);
+        Long id = inbox.append(incomingJson);
+        inboxWorker.wake();
+        log.debug("Webhook gravado no inbox ({})", id);
+        return ackJson(safeDistinct(extractPedidoIds(incomingJson)));
+    }
 
-            // 6) devolver 200 com envelope JSON
-            return HttpResponse.ok(ackEnv);
+    private String ackJson(List<Long> pedidoIds) throws Exception {
+        Map<String, Object> ack = new LinkedHashMap<>();
+        ack.put("status", "CONSUMED");
+        ack.put("pedidoIds", pedidoIds != null ? pedidoIds : List.of());
+        ack.put("timestamp", Instant.now().toString());
 
-        } catch (Exception e) {
-            log.warn("Erro a processar webhook", e);
-            return HttpResponse.serverError(mapPlainError("internal error"));
-        }
+        return new String(json.writeValueAsBytes(ack), StandardCharsets.UTF_8);
     }
 
     /* ---------------- helpers ---------------- */
@@ -2,12 +2,13 @@
 package mz.org.csaude.sespcet.api.crypto;
 
 import io.micronaut.core.annotation.NonNull;
+import io.micronaut.core.annotation.Nullable;
 import jakarta.inject.Singleton;
 import mz.org.csaude.sespcet.api.dto.EncryptedRequestDTO;
 import mz.org.csaude.sespcet.api.service.SettingService;
+import reactor.core.publisher.Mono;
 
 import javax.crypto.Cipher;
-import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.OAEPParameterSpec;
@@ -17,9 +18,13 @@ import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
 import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.XECPrivateKey;
+import java.security.interfaces.XECPublicKey;
+import java.security.spec.InvalidKeySpecException;
 import java.security.spec.MGF1ParameterSpec;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
 import java.util.Base64;
 
 import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KMS_MASTER_KEY_B64;
@@ -27,23 +32,54 @@ import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KMS_MASTER_KEY_B64
 @Singleton
 public class CtCompactCrypto {
 
-    private static final OAEPParameterSpec OAEP_SHA256_SHA256 =
+    static final OAEPParameterSpec OAEP_SHA256_SHA256 =
             new OAEPParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, PSource.PSpecified.DEFAULT);
 
     private static final int GCM_TAG_BITS = 128;   // 16 bytes tag
     private static final int GCM_IV_BYTES = 12;    // 12 bytes IV (nonce)
-    private static final int AES_BITS     = 256;   // JDK 17 OK
 
     private final SettingService settings;
+    private final CtKeyRegistry keys;
+    private final CtCryptoExecutor executor;
 
-    public CtCompactCrypto(SettingService settings) {
+    public CtCompactCrypto(SettingService settings, CtKeyRegistry keys, CtCryptoExecutor executor) {
         this.settings = settings;
+        this.keys = keys;
+        this.executor = executor;
     }
 
     /* ===================== PEM utils ===================== */
 
-    /** Lê chave privada em PEM (PKCS#8). */
+    /** Lê chave privada em PEM (PKCS#8). Usa a cache do {@link CtKeyRegistry}. */
     public PrivateKey readPrivateKeyPem(@NonNull String pem) throws Exception {
+        return keys.privateKey(pem);
+    }
+
+    /** Lê chave pública em PEM (SubjectPublicKeyInfo/X.509). Usa a cache do {@link CtKeyRegistry}. */
+    public PublicKey readPublicKeyPem(@NonNull String pem) throws Exception {
+        return keys.publicKey(pem);
+    }
+
+    /** Chave privada da API para assinar envelopes destinados a clientes do esquema {@code scheme}. */
+    public PrivateKey apiSigningKey(EnvelopeScheme scheme) throws GeneralSecurityException {
+        return keys.apiSigningKey(scheme);
+    }
+
+    /** Chave privada da API para abrir envelopes de clientes do esquema {@code scheme}. */
+    public PrivateKey apiDecryptionKey(EnvelopeScheme scheme) throws GeneralSecurityException {
+        return keys.apiDecryptionKey(scheme);
+    }
+
+    /** Como {@link #apiDecryptionKey(EnvelopeScheme)}, escolhendo a chave RSA pelo {@code kid} do envelope. */
+    public PrivateKey apiDecryptionKey(EnvelopeScheme scheme, @Nullable String kid) throws GeneralSecurityException {
+        return keys.apiDecryptionKey(scheme, kid);
+    }
+
+    /** Algoritmos aceites nos PEMs, por ordem de tentativa (RSA primeiro: é o caso comum). */
+    private static final String[] KEY_ALGORITHMS = {"RSA", "XDH", "EdDSA"};
+
+    /** Parse efectivo (sem cache) de chave privada PEM (PKCS#8): RSA, X25519 ou Ed25519. */
+    static PrivateKey parsePrivateKeyPem(@NonNull String pem) throws GeneralSecurityException {
         if (pem.contains("BEGIN RSA PRIVATE KEY")) {
             throw new IllegalArgumentException(
                     "PKCS#1 detectado. Converta para PKCS#8: openssl pkcs8 -topk8 -in key.pem -out key_pkcs8.pem -nocrypt");
@@ -54,76 +90,149 @@ public class CtCompactCrypto {
                 .replaceAll("(?m)^DEK-Info:.*\\R?", "")
                 .replaceAll("[^A-Za-z0-9+/=]", "");
         byte[] der = Base64.getDecoder().decode(b64);
-        return KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(der));
+        InvalidKeySpecException last = null;
+        for (String algorithm : KEY_ALGORITHMS) {
+            try {
+                return KeyFactory.getInstance(algorithm).generatePrivate(new PKCS8EncodedKeySpec(der));
+            } catch (InvalidKeySpecException e) {
+                last = e;
+            }
+        }
+        throw last;
     }
 
-    /** Lê chave pública em PEM (SubjectPublicKeyInfo/X.509). */
-    public PublicKey readPublicKeyPem(@NonNull String pem) throws Exception {
+    /** Parse efectivo (sem cache) de chave pública PEM (SubjectPublicKeyInfo/X.509): RSA, X25519 ou Ed25519. */
+    public static PublicKey parsePublicKeyPem(@NonNull String pem) throws GeneralSecurityException {
         String b64 = pem.replaceAll("-----BEGIN [A-Z0-9 ]+-----", "")
                 .replaceAll("-----END [A-Z0-9 ]+-----", "")
                 .replaceAll("[^A-Za-z0-9+/=]", "");
         byte[] der = Base64.getDecoder().decode(b64);
-        return KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(der));
+        InvalidKeySpecException last = null;
+        for (String algorithm : KEY_ALGORITHMS) {
+            try {
+                return KeyFactory.getInstance(algorithm).generatePublic(new X509EncodedKeySpec(der));
+            } catch (InvalidKeySpecException e) {
+                last = e;
+            }
+        }
+        throw last;
     }
 
     /* ===================== Compact envelope ===================== */
 
-    /** Cifra JSON UTF-8 com AES-GCM e envolve a chave com RSA-OAEP(SHA-256). Retorna Base64(bloco). */
+    /**
+     * Cifra JSON UTF-8 com AES-GCM e protege a chave para {@code serverPublic}: RSA-OAEP(SHA-256) para chaves RSA,
+     * X25519+HKDF para chaves XDH ({@link EnvelopeScheme}). Retorna Base64(bloco).
+     */
     public String encryptCompact(String jsonUtf8, PublicKey serverPublic) throws Exception {
-        // 1) gera AES-256
-        KeyGenerator kg = KeyGenerator.getInstance("AES");
-        kg.init(AES_BITS, new SecureRandom());
-        SecretKey aes = kg.generateKey();
+        return encryptCompact(jsonUtf8, serverPublic, EnvelopeEncoding.IDENTITY);
+    }
 
-        // 2) AES-GCM
-        byte[] iv = new byte[GCM_IV_BYTES];
-        new SecureRandom().nextBytes(iv);
-        Cipher gcm = Cipher.getInstance("AES/GCM/NoPadding");
-        gcm.init(Cipher.ENCRYPT_MODE, aes, new GCMParameterSpec(GCM_TAG_BITS, iv));
-        byte[] ct = gcm.doFinal(jsonUtf8.getBytes(StandardCharsets.UTF_8));
+    /**
+     * Como {@link #encryptCompact(String, PublicKey)}, comprimindo o JSON com {@code encoding} antes do GCM
+     * (a codificação fica autenticada como AAD, ver {@link EnvelopeEncoding}).
+     */
+    public String encryptCompact(String jsonUtf8, PublicKey serverPublic, EnvelopeEncoding encoding) throws Exception {
+        return Base64.getEncoder().encodeToString(
+                sealBytes(encoding.compress(jsonUtf8.getBytes(StandardCharsets.UTF_8)), serverPublic, encoding));
+    }
 
-        // 3) RSA-OAEP(SHA-256) para envolver a chave AES
-        Cipher rsa = Cipher.getInstance("RSA/ECB/OAEPWithSHA-256AndMGF1Padding");
-        rsa.init(Cipher.ENCRYPT_MODE, serverPublic, OAEP_SHA256_SHA256);
-        byte[] wrapped = rsa.doFinal(aes.getEncoded());
+    /** blob = prefixo (RSA(k) | ephPub) || iv || AES-GCM(clear). */
+    static byte[] sealBytes(byte[] clear, PublicKey recipient) throws GeneralSecurityException {
+        return sealBytes(clear, recipient, EnvelopeEncoding.IDENTITY);
+    }
 
-        // 4) blob = wrapped || iv || ct
-        byte[] blob = new byte[wrapped.length + iv.length + ct.length];
-        System.arraycopy(wrapped, 0, blob, 0, wrapped.length);
-        System.arraycopy(iv, 0, blob, wrapped.length, iv.length);
-        System.arraycopy(ct, 0, blob, wrapped.length + iv.length, ct.length);
+    /** Como {@link #sealBytes(byte[], PublicKey)}; {@code clear} já vem comprimido segundo {@code encoding}. */
+    static byte[] sealBytes(byte[] clear, PublicKey recipient, EnvelopeEncoding encoding) throws GeneralSecurityException {
+        // 1) chave AES-256 + prefixo do bloco
+        ContentKey ck = newContentKey(recipient);
 
-        return Base64.getEncoder().encodeToString(blob);
+        // 2) AES-GCM
+        byte[] iv = CtCryptoPool.randomBytes(GCM_IV_BYTES);
+        Cipher gcm = CtCryptoPool.aesGcm();
+        gcm.init(Cipher.ENCRYPT_MODE, ck.key(), new GCMParameterSpec(GCM_TAG_BITS, iv));
+        encoding.bind(gcm);
+
+        // 3) blob = prefix || iv || ct (GCM escreve directamente no blob)
+        byte[] prefix = ck.prefix();
+        byte[] blob = new byte[prefix.length + iv.length + gcm.getOutputSize(clear.length)];
+        System.arraycopy(prefix, 0, blob, 0, prefix.length);
+        System.arraycopy(iv, 0, blob, prefix.length, iv.length);
+        gcm.doFinal(clear, 0, clear.length, blob, prefix.length + iv.length);
+        return blob;
     }
 
-    /** Desencripta Base64(RSA(wrappedKey)||IV(12)||AES-GCM(ct+tag)). */
-    public byte[] decryptCompact(String dataB64, PrivateKey clientPrivate) throws Exception {
-        byte[] blob = Base64.getDecoder().decode(dataB64);
+    /** Chave de conteúdo AES e o prefixo que a transporta no bloco. */
+    record ContentKey(SecretKey key, byte[] prefix) {}
 
-        int rsaLen = (((RSAPrivateKey) clientPrivate).getModulus().bitLength() + 7) / 8; // 2048 → 256
-        if (blob.length < rsaLen + GCM_IV_BYTES + 16) {
-            throw new IllegalArgumentException("Blob demasiado pequeno para rsaLen=" + rsaLen + " (len=" + blob.length + ")");
+    /** RSA → chave aleatória envolvida com RSA-OAEP(SHA-256); X25519 → chave derivada + chave pública efémera. */
+    static ContentKey newContentKey(PublicKey recipient) throws GeneralSecurityException {
+        if (recipient instanceof XECPublicKey) {
+            CtX25519.Sealed sealed = CtX25519.seal(recipient);
+            return new ContentKey(sealed.key(), sealed.ephemeralPublic());
         }
+        SecretKey aes = CtCryptoPool.newAesKey();
+        Cipher rsa = CtCryptoPool.rsaOaep();
+        rsa.init(Cipher.ENCRYPT_MODE, recipient, OAEP_SHA256_SHA256, CtCryptoPool.random());
+        return new ContentKey(aes, rsa.doFinal(aes.getEncoded()));
+    }
 
-        byte[] wrapped = slice(blob, 0, rsaLen);
-        byte[] iv      = slice(blob, rsaLen, rsaLen + GCM_IV_BYTES);
-        byte[] ctTag   = slice(blob, rsaLen + GCM_IV_BYTES, blob.length);
+    /**
+     * Desencripta Base64(RSA(wrappedKey)||IV(12)||AES-GCM(ct+tag)) ou, para chaves XDH, Base64(ephPub(32)||IV||...).
+     * O Base64 é descodificado para um buffer reutilizável da thread; RSA e GCM trabalham sobre vistas
+     * (offset/length) desse buffer — a única alocação proporcional ao payload é o texto claro devolvido.
+     */
+    public byte[] decryptCompact(CharSequence dataB64, PrivateKey clientPrivate) throws Exception {
+        return decryptBlob(dataB64, clientPrivate, EnvelopeEncoding.IDENTITY);
+    }
 
-        Cipher rsa = Cipher.getInstance("RSA/ECB/OAEPWithSHA-256AndMGF1Padding");
-        rsa.init(Cipher.DECRYPT_MODE, clientPrivate, OAEP_SHA256_SHA256);
-        byte[] aes = rsa.doFinal(wrapped);
+    /**
+     * Desencripta e descomprime segundo {@code encoding} (cabeçalho {@value EnvelopeEncoding#HEADER} do pedido).
+     * A codificação é verificada pela tag GCM: um cabeçalho que não corresponda ao envelope falha aqui.
+     */
+    public byte[] decryptCompact(CharSequence dataB64, PrivateKey clientPrivate, EnvelopeEncoding encoding) throws Exception {
+        return encoding.decompress(decryptBlob(dataB64, clientPrivate, encoding));
+    }
 
-        Cipher gcm = Cipher.getInstance("AES/GCM/NoPadding");
-        gcm.init(Cipher.DECRYPT_MODE, new SecretKeySpec(aes, "AES"), new GCMParameterSpec(GCM_TAG_BITS, iv));
-        return gcm.doFinal(ctTag);
+    private static byte[] decryptBlob(CharSequence dataB64, PrivateKey clientPrivate, EnvelopeEncoding encoding) throws Exception {
+        byte[] blob = CtCryptoPool.decodeBuffer(decodedLength(dataB64));
+        int len = decodeBase64(dataB64, blob);
+
+        boolean xdh = clientPrivate instanceof XECPrivateKey;
+        int prefixLen = xdh
+                ? CtX25519.KEY_BYTES
+                : (((RSAPrivateKey) clientPrivate).getModulus().bitLength() + 7) / 8; // 2048 → 256
+        if (len < prefixLen + GCM_IV_BYTES + 16) {
+            throw new IllegalArgumentException("Blob demasiado pequeno para prefixo=" + prefixLen + " (len=" + len + ")");
+        }
+
+        SecretKey key;
+        if (xdh) {
+            key = CtX25519.open(clientPrivate, blob, 0);
+        } else {
+            Cipher rsa = CtCryptoPool.rsaOaep();
+            rsa.init(Cipher.DECRYPT_MODE, clientPrivate, OAEP_SHA256_SHA256);
+            byte[] aes = rsa.doFinal(blob, 0, prefixLen);
+            key = new SecretKeySpec(aes, "AES");
+            Arrays.fill(aes, (byte) 0);
+        }
+
+        int ctOffset = prefixLen + GCM_IV_BYTES;
+        Cipher gcm = CtCryptoPool.aesGcm();
+        gcm.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, blob, prefixLen, GCM_IV_BYTES));
+        encoding.bind(gcm);
+        return gcm.doFinal(blob, ctOffset, len - ctOffset);
     }
 
     /* ===================== Sign/Verify (sobre a STRING Base64) ===================== */
 
-    /** Assina a STRING Base64 (não os bytes decodificados) com SHA256withRSA → retorna Base64(assinatura). */
+    /**
+     * Assina a STRING Base64 (não os bytes decodificados) com SHA256withRSA — ou Ed25519 se a chave for EdDSA —
+     * → retorna Base64(assinatura).
+     */
     public String signBase64OverString(String dataB64, PrivateKey privateKey) throws Exception {
-        Signature s = Signature.getInstance("SHA256withRSA");
-        s.initSign(privateKey);
+        Signature s = CtCryptoPool.signatureFor(privateKey);
+        s.initSign(privateKey, CtCryptoPool.random());
         s.update(dataB64.getBytes(StandardCharsets.UTF_8));
         return Base64.getEncoder().encodeToString(s.sign());
     }
@@ -133,12 +242,15 @@ public class CtCompactCrypto {
         return signBase64OverString(dataB64, privateKey);
     }
 
-    /** Verifica assinatura (aceita base64/base64url/hex) feita sobre a STRING Base64. */
-    public static boolean verifySignatureOverString(String dataString, String signatureStr, PublicKey ctPublic) throws Exception {
+    /**
+     * Verifica assinatura (aceita base64/base64url/hex) feita sobre a STRING Base64 (SHA256withRSA ou Ed25519).
+     * Os caracteres são passados à assinatura em chunks ASCII, sem copiar a String para um byte[] completo.
+     */
+    public static boolean verifySignatureOverString(CharSequence dataString, String signatureStr, PublicKey ctPublic) throws Exception {
         byte[] sig = decodeSignatureFlexible(signatureStr);
-        Signature s = Signature.getInstance("SHA256withRSA");
+        Signature s = CtCryptoPool.signatureFor(ctPublic);
         s.initVerify(ctPublic);
-        s.update(dataString.getBytes(StandardCharsets.UTF_8));
+        updateUtf8(s, dataString);
         return s.verify(sig);
     }
 
@@ -153,10 +265,9 @@ public class CtCompactCrypto {
                 // fallback (último recurso)
                 return "{b64}" + Base64.getEncoder().encodeToString(plain.getBytes(StandardCharsets.UTF_8));
             }
-            byte[] iv = new byte[GCM_IV_BYTES];
-            new SecureRandom().nextBytes(iv);
+            byte[] iv = CtCryptoPool.randomBytes(GCM_IV_BYTES);
 
-            Cipher gcm = Cipher.getInstance("AES/GCM/NoPadding");
+            Cipher gcm = CtCryptoPool.aesGcm();
             gcm.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, iv));
             byte[] ct = gcm.doFinal(plain.getBytes(StandardCharsets.UTF_8));
 
@@ -178,15 +289,12 @@ public class CtCompactCrypto {
                 byte[] blob = Base64.getDecoder().decode(b64);
                 if (blob.length < GCM_IV_BYTES + 16) return "";
 
-                byte[] iv = slice(blob, 0, GCM_IV_BYTES);
-                byte[] ct = slice(blob, GCM_IV_BYTES, blob.length);
-
                 SecretKey key = loadOrCreateMasterKey();
                 if (key == null) return "";
 
-                Cipher gcm = Cipher.getInstance("AES/GCM/NoPadding");
-                gcm.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, iv));
-                byte[] clear = gcm.doFinal(ct);
+                Cipher gcm = CtCryptoPool.aesGcm();
+                gcm.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, blob, 0, GCM_IV_BYTES));
+                byte[] clear = gcm.doFinal(blob, GCM_IV_BYTES, blob.length - GCM_IV_BYTES);
                 return new String(clear, StandardCharsets.UTF_8);
             }
             if (stored.startsWith("{b64}")) {
@@ -207,19 +315,154 @@ public class CtCompactCrypto {
         if (ctPubPem == null || apiPrvPem == null) {
             throw new IllegalStateException("Chaves ausentes (CT public ou API private)");
         }
-        PublicKey  ctPublic   = readPublicKeyPem(ctPubPem);
-        PrivateKey apiPrivate = readPrivateKeyPem(apiPrvPem);
+        return buildEncryptedEnvelope(clearJson, readPublicKeyPem(ctPubPem), readPrivateKeyPem(apiPrvPem));
+    }
 
-        String dataB64 = encryptCompact(clearJson, ctPublic);
-        String sigB64  = signBase64OverString(dataB64, apiPrivate);
+    /** Constrói {data, signature} com chaves já parseadas (cifra para {@code recipient}, assina com {@code signer}). */
+    public EncryptedRequestDTO buildEncryptedEnvelope(String clearJson, PublicKey recipient, PrivateKey signer) throws Exception {
+        if (recipient == null || signer == null) {
+            throw new IllegalStateException("Chaves ausentes (CT public ou API private)");
+        }
+        String dataB64 = encryptCompact(clearJson, recipient);
+        String sigB64  = signBase64OverString(dataB64, signer);
         return new EncryptedRequestDTO(dataB64, sigB64);
     }
 
-    private static byte[] slice(byte[] a, int from, int to) {
-        int len = to - from;
-        byte[] out = new byte[len];
-        System.arraycopy(a, from, out, 0, len);
-        return out;
+    /**
+     * Como {@link #buildEncryptedEnvelope(String, PublicKey, PrivateKey)}, marcando o envelope com o {@code kid}
+     * do par usado para assinar (o destinatário escolhe a chave de verificação / de resposta por este valor).
+     */
+    public EncryptedRequestDTO buildEncryptedEnvelope(String clearJson, PublicKey recipient, PrivateKey signer,
+                                                      @Nullable String kid) throws Exception {
+        EncryptedRequestDTO env = buildEncryptedEnvelope(clearJson, recipient, signer);
+        return new EncryptedRequestDTO(env.data(), env.signature(), kid);
+    }
+
+    /**
+     * Versão streaming de {@link #buildEncryptedEnvelope(String, PublicKey, PrivateKey)} para payloads grandes:
+     * o JSON é escrito por {@code body} directamente no envelope (ver {@link CtEnvelopeWriter}).
+     */
+    public CtEnvelopeWriter streamEncryptedEnvelope(CtEnvelopeWriter.BodyWriter body, PublicKey recipient, PrivateKey signer)
+            throws GeneralSecurityException {
+        return streamEncryptedEnvelope(body, recipient, signer, EnvelopeEncoding.IDENTITY);
+    }
+
+    /** Envelope em streaming com o JSON comprimido segundo {@code encoding} (negociado com o cliente). */
+    public CtEnvelopeWriter streamEncryptedEnvelope(CtEnvelopeWriter.BodyWriter body, PublicKey recipient, PrivateKey signer,
+                                                    EnvelopeEncoding encoding) throws GeneralSecurityException {
+        return new CtEnvelopeWriter(body, recipient, signer, encoding);
+    }
+
+    /* ===================== Facade não bloqueante (pool CtCryptoExecutor) ===================== */
+
+    /**
+     * Verifica a assinatura de {@code env} (sobre a string Base64) e decifra o bloco no pool de cripto.
+     * Assinatura inválida → {@link SignatureException}; fila cheia → {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    public Mono<byte[]> openEnvelopeAsync(EncryptedRequestDTO env, PublicKey signerPublic, PrivateKey recipient) {
+        return executor.mono(() -> openEnvelopeNow(env, signerPublic, recipient, EnvelopeEncoding.IDENTITY));
+    }
+
+    /**
+     * Versão bloqueante de {@link #openEnvelopeAsync} para quem já corre numa thread de I/O bloqueante
+     * (ex.: marcar consumidos): a operação RSA corre no pool de cripto e esta thread só espera pelo resultado,
+     * por isso o nº de operações RSA simultâneas continua limitado ao tamanho do pool.
+     */
+    public byte[] openEnvelope(EncryptedRequestDTO env, PublicKey signerPublic, PrivateKey recipient,
+                               EnvelopeEncoding encoding) throws Exception {
+        try {
+            return executor.submit(() -> openEnvelopeNow(env, signerPublic, recipient, encoding)).join();
+        } catch (java.util.concurrent.CompletionException e) {
+            if (e.getCause() instanceof Exception cause) throw cause;
+            throw e;
+        }
+    }
+
+    private byte[] openEnvelopeNow(EncryptedRequestDTO env, PublicKey signerPublic, PrivateKey recipient,
+                                   EnvelopeEncoding encoding) throws Exception {
+        if (!verifySignatureOverString(env.data(), env.signature(), signerPublic)) {
+            throw new SignatureException("Assinatura do envelope inválida");
+        }
+        return decryptCompact(env.data(), recipient, encoding);
+    }
+
+    /** {@link #buildEncryptedEnvelope(String, PublicKey, PrivateKey, String)} no pool de cripto. */
+    public Mono<EncryptedRequestDTO> buildEncryptedEnvelopeAsync(String clearJson, PublicKey recipient, PrivateKey signer,
+                                                                 @Nullable String kid) {
+        return executor.mono(() -> buildEncryptedEnvelope(clearJson, recipient, signer, kid));
+    }
+
+    /* ===================== Base64 / UTF-8 sem cópias ===================== */
+
+    private static final byte[] B64_VALUES = new byte[128];
+    static {
+        Arrays.fill(B64_VALUES, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) B64_VALUES[alphabet.charAt(i)] = (byte) i;
+    }
+
+    /**
+     * Nº de bytes descodificados, com as regras do {@link Base64#getDecoder()}: padding opcional, mas quando
+     * presente tem de completar exactamente o último grupo de 4 ({@code "QQ="} e {@code "QUJD="} são recusados).
+     */
+    static int decodedLength(CharSequence b64) {
+        int total = b64.length();
+        int n = total;
+        while (n > 0 && b64.charAt(n - 1) == '=' && total - n < 2) n--;
+        int pad = total - n;
+        if (n % 4 == 1 || (pad > 0 && (n % 4 == 0 || total % 4 != 0))) {
+            throw new IllegalArgumentException("Base64 inválido (comprimento " + total + ", padding " + pad + ")");
+        }
+        return n / 4 * 3 + (n % 4 == 0 ? 0 : n % 4 - 1);
+    }
+
+    /** Descodifica Base64 standard directamente dos caracteres para {@code dst}; retorna o nº de bytes escritos. */
+    static int decodeBase64(CharSequence b64, byte[] dst) {
+        int len = decodedLength(b64);
+        int full = len / 3 * 4; // caracteres em grupos completos de 4
+        int o = 0;
+        for (int i = 0; i < full; i += 4) {
+            int v = (b64Value(b64, i) << 18) | (b64Value(b64, i + 1) << 12) | (b64Value(b64, i + 2) << 6) | b64Value(b64, i + 3);
+            dst[o++] = (byte) (v >> 16);
+            dst[o++] = (byte) (v >> 8);
+            dst[o++] = (byte) v;
+        }
+        int rest = len - o; // 0, 1 ou 2 bytes finais
+        if (rest > 0) {
+            int v = (b64Value(b64, full) << 18) | (b64Value(b64, full + 1) << 12);
+            if (rest == 2) v |= b64Value(b64, full + 2) << 6;
+            dst[o++] = (byte) (v >> 16);
+            if (rest == 2) dst[o++] = (byte) (v >> 8);
+        }
+        return o;
+    }
+
+    private static int b64Value(CharSequence s, int i) {
+        char c = s.charAt(i);
+        int v = c < 128 ? B64_VALUES[c] : -1;
+        if (v < 0) throw new IllegalArgumentException("Caracter Base64 inválido na posição " + i);
+        return v;
+    }
+
+    /** {@code sig.update(s.getBytes(UTF_8))} em chunks: ASCII directo, resto (raro) via encoder UTF-8. */
+    private static void updateUtf8(Signature sig, CharSequence s) throws SignatureException {
+        byte[] chunk = CtCryptoPool.chunkBuffer();
+        int n = s.length();
+        int filled = 0;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                sig.update(chunk, 0, filled);
+                sig.update(s.subSequence(i, n).toString().getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            chunk[filled++] = (byte) c;
+            if (filled == chunk.length) {
+                sig.update(chunk, 0, filled);
+                filled = 0;
+            }
+        }
+        sig.update(chunk, 0, filled);
     }
 
     /** base64 → base64url → hex (tolerante) */
@@ -252,9 +495,7 @@ public class CtCompactCrypto {
         String b64 = settings.get(CT_KMS_MASTER_KEY_B64, null);
         try {
             if (b64 == null || b64.trim().isEmpty()) {
-                KeyGenerator kg = KeyGenerator.getInstance("AES");
-                kg.init(AES_BITS, new SecureRandom());
-                SecretKey key = kg.generateKey();
+                SecretKey key = CtCryptoPool.newAesKey();
                 String enc = Base64.getEncoder().encodeToString(key.getEncoded());
 
                 settings.upsert(CT_KMS_MASTER_KEY_B64, enc, "SECRET",
@@ -267,7 +508,7 @@ public class CtCompactCrypto {
                 cachedMaster = new SecretKeySpec(raw, "AES");
                 return cachedMaster;
             }
-        } catch (GeneralSecurityException | IllegalArgumentException e) {
+        } catch (IllegalArgumentException | IllegalStateException e) {
             return null;
         }
     }
@@ -0,0 +1,120 @@
+package mz.org.csaude.sespcet.api.crypto;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.core.annotation.Nullable;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool dedicado às operações do {@link CtCompactCrypto} (RSA, X25519, AES-GCM, assinaturas).
+ * <p>
+ * Nº fixo de threads (por omissão = nº de cores) e fila limitada: uma rajada de envelopes ocupa no máximo
+ * esses cores e o excesso é recusado ({@link RejectedExecutionException}) em vez de crescer sem limite ou de
+ * correr no event loop do Netty. As primitivas por thread do {@link CtCryptoPool} ficam assim sempre quentes.
+ * <p>
+ * Passam por aqui: abertura do webhook e selagem do ACK, {@code EctApiClient.postCursorAsync} e a abertura dos
+ * envelopes "marcar consumidos" ({@link CtCompactCrypto#openEnvelope}). <b>Não</b> passam: as páginas em
+ * streaming para clientes ({@link CtEnvelopeWriter}, incluindo o estabelecimento de sessão do
+ * {@link CtSessionKeyManager}) — o RSA aí está entrelaçado com a escrita da resposta e corre nas threads do
+ * executor BLOCKING dos controllers, que já tiram esse trabalho do event loop.
+ * <p>
+ * Métricas (Micrometer): {@code ct.crypto.queue.depth}, {@code ct.crypto.active}, {@code ct.crypto.wait}
+ * (tempo em fila), {@code ct.crypto.execution} e {@code ct.crypto.rejected}.
+ */
+@Slf4j
+@Singleton
+public class CtCryptoExecutor {
+
+    /** Operação criptográfica a correr no pool. */
+    @FunctionalInterface
+    public interface CryptoTask<T> {
+        T call() throws Exception;
+    }
+
+    private final ThreadPoolExecutor pool;
+    private final Timer waitTimer;
+    private final Timer executionTimer;
+    private final Counter rejected;
+
+    public CtCryptoExecutor(@Value("${sespct.crypto.executor.threads:0}") int threads,
+                            @Value("${sespct.crypto.executor.queue-capacity:512}") int queueCapacity,
+                            @Nullable MeterRegistry meters) {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger seq = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                r -> {
+                    Thread t = new Thread(r, "ct-crypto-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.pool.prestartAllCoreThreads();
+
+        if (meters != null) {
+            Gauge.builder("ct.crypto.queue.depth", pool, p -> p.getQueue().size())
+                    .description("Operações criptográficas em fila").register(meters);
+            Gauge.builder("ct.crypto.active", pool, ThreadPoolExecutor::getActiveCount)
+                    .description("Operações criptográficas em execução").register(meters);
+            this.waitTimer = Timer.builder("ct.crypto.wait")
+                    .description("Tempo em fila antes de executar").register(meters);
+            this.executionTimer = Timer.builder("ct.crypto.execution")
+                    .description("Tempo de execução da operação criptográfica").register(meters);
+            this.rejected = Counter.builder("ct.crypto.rejected")
+                    .description("Operações recusadas por fila cheia").register(meters);
+        } else {
+            this.waitTimer = null;
+            this.executionTimer = null;
+            this.rejected = null;
+        }
+        log.info("CtCryptoExecutor: {} threads, fila de {}", size, Math.max(1, queueCapacity));
+    }
+
+    /**
+     * Submete {@code task} ao pool. Com a fila cheia o future termina logo com {@link RejectedExecutionException}.
+     */
+    public <T> CompletableFuture<T> submit(CryptoTask<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        long enqueued = System.nanoTime();
+        try {
+            pool.execute(() -> {
+                long started = System.nanoTime();
+                if (waitTimer != null) waitTimer.record(started - enqueued, TimeUnit.NANOSECONDS);
+                try {
+                    result.complete(task.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    if (executionTimer != null) executionTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (rejected != null) rejected.increment();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /** Versão reactiva de {@link #submit}: a operação só é submetida na subscrição. */
+    public <T> Mono<T> mono(CryptoTask<T> task) {
+        return Mono.defer(() -> Mono.fromFuture(submit(task)));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdown();
+    }
+}
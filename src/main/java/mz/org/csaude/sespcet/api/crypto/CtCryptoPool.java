@@ -0,0 +1,150 @@
+package mz.org.csaude.sespcet.api.crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.DrbgParameters;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.interfaces.EdECKey;
+import java.security.spec.NamedParameterSpec;
+
+/**
+ * Contexto criptográfico partilhado pelo envelope compacto.
+ * <ul>
+ *   <li>{@link Cipher}/{@link Signature}/{@link KeyAgreement}/{@link Mac} por thread (Netty, scheduler, workers): evita o lookup de provider
+ *   em cada chamada. Cada instância só é usada pela sua thread e é re-inicializada (init) a cada operação.</li>
+ *   <li>Um único DRBG semeado no arranque, thread-safe, para chaves AES e IVs.</li>
+ * </ul>
+ * Não é reentrante: uma operação não deve chamar outra do mesmo tipo a meio (ex.: dois GCM em simultâneo
+ * na mesma thread).
+ */
+final class CtCryptoPool {
+
+    static final String AES_GCM     = "AES/GCM/NoPadding";
+    static final String RSA_OAEP    = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
+    static final String SHA256_RSA  = "SHA256withRSA";
+    static final String ED25519     = "Ed25519";
+    static final String X25519      = "X25519";
+    static final String HMAC_SHA256 = "HmacSHA256";
+
+    private static final int AES_KEY_BYTES = 32; // AES-256
+
+    private static final SecureRandom DRBG = createDrbg();
+
+    private static final ThreadLocal<Cipher> GCM = ThreadLocal.withInitial(() -> newCipher(AES_GCM));
+    private static final ThreadLocal<Cipher> OAEP = ThreadLocal.withInitial(() -> newCipher(RSA_OAEP));
+    private static final ThreadLocal<Signature> RSA_SIGNATURE = ThreadLocal.withInitial(() -> newSignature(SHA256_RSA));
+
+    /* esquema X25519 + Ed25519 (clientes locais) */
+    private static final ThreadLocal<Signature> ED_SIGNATURE = ThreadLocal.withInitial(() -> newSignature(ED25519));
+    private static final ThreadLocal<KeyAgreement> XDH = ThreadLocal.withInitial(() -> newInstance(() -> KeyAgreement.getInstance(X25519)));
+    private static final ThreadLocal<KeyPairGenerator> XDH_GENERATOR = ThreadLocal.withInitial(() -> newInstance(() -> {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance(X25519);
+        kpg.initialize(NamedParameterSpec.X25519, DRBG);
+        return kpg;
+    }));
+    private static final ThreadLocal<KeyFactory> XDH_FACTORY = ThreadLocal.withInitial(() -> newInstance(() -> KeyFactory.getInstance("XDH")));
+    private static final ThreadLocal<Mac> HMAC = ThreadLocal.withInitial(() -> newInstance(() -> Mac.getInstance(HMAC_SHA256)));
+
+    /** Buffers de trabalho por thread (Base64 descodificado / chunks ASCII para a assinatura). */
+    private static final int MAX_RETAINED_BYTES = 1024 * 1024;
+    private static final int CHUNK_BYTES = 8 * 1024;
+    private static final ThreadLocal<byte[]> DECODE_BUFFER = ThreadLocal.withInitial(() -> new byte[CHUNK_BYTES]);
+    private static final ThreadLocal<byte[]> CHUNK_BUFFER = ThreadLocal.withInitial(() -> new byte[CHUNK_BYTES]);
+
+    private CtCryptoPool() {}
+
+    static Cipher aesGcm()        { return GCM.get(); }
+    static Cipher rsaOaep()       { return OAEP.get(); }
+    static Signature sha256Rsa()  { return RSA_SIGNATURE.get(); }
+    static SecureRandom random()  { return DRBG; }
+
+    static Signature ed25519()              { return ED_SIGNATURE.get(); }
+    static KeyAgreement x25519()            { return XDH.get(); }
+    static KeyPairGenerator x25519Generator() { return XDH_GENERATOR.get(); }
+    static KeyFactory xdhKeyFactory()       { return XDH_FACTORY.get(); }
+    static Mac hmacSha256()                 { return HMAC.get(); }
+
+    /** Signature adequada à chave: Ed25519 para chaves EdDSA, SHA256withRSA nas restantes. */
+    static Signature signatureFor(Key key) {
+        return key instanceof EdECKey ? ed25519() : sha256Rsa();
+    }
+
+    static byte[] randomBytes(int n) {
+        byte[] b = new byte[n];
+        DRBG.nextBytes(b);
+        return b;
+    }
+
+    /**
+     * Buffer reutilizável com pelo menos {@code min} bytes. Payloads acima de 1 MiB recebem um array novo
+     * (não fica retido na thread). O conteúdo só é válido até à próxima chamada na mesma thread.
+     */
+    static byte[] decodeBuffer(int min) {
+        byte[] b = DECODE_BUFFER.get();
+        if (b.length >= min) return b;
+        if (min > MAX_RETAINED_BYTES) return new byte[min];
+        b = new byte[Math.max(min, Math.min(MAX_RETAINED_BYTES, b.length * 2))];
+        DECODE_BUFFER.set(b);
+        return b;
+    }
+
+    /** Chunk fixo (8 KiB) por thread para alimentar {@link Signature#update} sem copiar a String inteira. */
+    static byte[] chunkBuffer() {
+        return CHUNK_BUFFER.get();
+    }
+
+    /** Nova chave AES-256 gerada pelo DRBG partilhado. */
+    static SecretKey newAesKey() {
+        return new SecretKeySpec(randomBytes(AES_KEY_BYTES), "AES");
+    }
+
+    /* ===================== factories ===================== */
+
+    private static SecureRandom createDrbg() {
+        try {
+            return SecureRandom.getInstance("DRBG", DrbgParameters.instantiation(
+                    256, DrbgParameters.Capability.RESEED_ONLY,
+                    "sespct-api/ct-envelope".getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            return new SecureRandom(); // fallback: default do JDK (também thread-safe)
+        }
+    }
+
+    private static Cipher newCipher(String transformation) {
+        try {
+            return Cipher.getInstance(transformation);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cipher indisponível: " + transformation, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Factory<T> {
+        T create() throws GeneralSecurityException;
+    }
+
+    private static <T> T newInstance(Factory<T> factory) {
+        try {
+            return factory.create();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Primitiva criptográfica indisponível", e);
+        }
+    }
+
+    private static Signature newSignature(String algorithm) {
+        try {
+            return Signature.getInstance(algorithm);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Signature indisponível: " + algorithm, e);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package mz.org.csaude.sespcet.api.crypto;
+
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.core.io.Writable;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Base64;
+
+/**
+ * Envelope compacto em streaming: {"data":"Base64(RSA(k)||IV||AES-GCM(json))","signature":"..."}
+ * (ou {@code ephPub||IV||...} com assinatura Ed25519 no esquema {@link EnvelopeScheme#X25519}).
+ * <p>
+ * O JSON claro é escrito directamente no AES-GCM, daí para o encoder Base64 e para o corpo da resposta;
+ * a assinatura (SHA256withRSA/Ed25519) é calculada incrementalmente sobre o Base64 à medida que sai.
+ * Não existe nenhuma cópia completa do ct/Base64 no heap.
+ * <p>
+ * Tudo o que pode falhar por causa dos dados acontece antes de a resposta começar: a chave de conteúdo é
+ * gerada no construtor e os chamadores passam o JSON já serializado ({@link BodyWriter#of(byte[])}), para que
+ * um erro dê 500 e não um 200 truncado. Se a escrita falhar a meio (ligação caída), o envelope fica sem
+ * assinatura nem fecho e a excepção sobe para o servidor abortar a ligação.
+ * O formato é idêntico ao de {@link CtCompactCrypto#buildEncryptedEnvelope(String, PublicKey, PrivateKey)};
+ * com {@link EnvelopeEncoding} ≠ IDENTITY o JSON é comprimido antes do GCM (envelope v2).
+ */
+public final class CtEnvelopeWriter implements Writable {
+
+    static final int GCM_TAG_BITS = 128;
+    static final int GCM_IV_BYTES = 12;
+    private static final int BUFFER_BYTES = 8 * 1024;
+
+    private static final byte[] DATA_OPEN = "{\"data\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SIG_OPEN  = "\",\"signature\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CLOSE     = "\"}".getBytes(StandardCharsets.US_ASCII);
+
+    /** Escreve o JSON claro (UTF-8). Pode fechar o stream; o fecho é ignorado. */
+    @FunctionalInterface
+    public interface BodyWriter {
+        void writeTo(OutputStream out) throws IOException;
+
+        /** JSON já serializado: a escrita no envelope só pode falhar por I/O. */
+        static BodyWriter of(byte[] json) {
+            return out -> out.write(json);
+        }
+    }
+
+    private final BodyWriter body;
+    private final CtCompactCrypto.ContentKey contentKey;
+    private final PrivateKey signer;
+    private final EnvelopeEncoding encoding;
+
+    public CtEnvelopeWriter(BodyWriter body, PublicKey recipient, PrivateKey signer) throws GeneralSecurityException {
+        this(body, recipient, signer, EnvelopeEncoding.IDENTITY);
+    }
+
+    /** Gera já a chave de conteúdo (RSA-OAEP ou X25519): uma chave inválida falha aqui, antes da resposta. */
+    public CtEnvelopeWriter(BodyWriter body, PublicKey recipient, PrivateKey signer, EnvelopeEncoding encoding)
+            throws GeneralSecurityException {
+        if (recipient == null || signer == null) {
+            throw new IllegalStateException("Chaves ausentes (recipient ou signer)");
+        }
+        this.body = body;
+        this.contentKey = CtCompactCrypto.newContentKey(recipient);
+        this.signer = signer;
+        this.encoding = encoding != null ? encoding : EnvelopeEncoding.IDENTITY;
+    }
+
+    @Override
+    public void writeTo(OutputStream sink, @Nullable Charset charset) throws IOException {
+        try {
+            // 1) IV novo a cada escrita (a chave de conteúdo vem do construtor)
+            CtCompactCrypto.ContentKey ck = contentKey;
+            byte[] iv = CtCryptoPool.randomBytes(GCM_IV_BYTES);
+
+            Signature sig = CtCryptoPool.signatureFor(signer);
+            sig.initSign(signer, CtCryptoPool.random());
+
+            Cipher gcm = CtCryptoPool.aesGcm();
+            gcm.init(Cipher.ENCRYPT_MODE, ck.key(), new GCMParameterSpec(GCM_TAG_BITS, iv));
+
+            // 2) data: json → [compressão] → GCM → Base64 → (assinatura + corpo)
+            sink.write(DATA_OPEN);
+            OutputStream b64 = Base64.getEncoder().wrap(
+                    CloseShieldOutputStream.wrap(new SigningOutputStream(sink, sig)));
+            b64.write(ck.prefix());
+            b64.write(iv);
+
+            writeCipherText(b64, gcm, body, encoding);
+
+            // 3) signature
+            sink.write(SIG_OPEN);
+            sink.write(Base64.getEncoder().encode(sig.sign()));
+            sink.write(CLOSE);
+            sink.flush();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Falha ao cifrar envelope", e);
+        }
+    }
+
+    @Override
+    public void writeTo(Writer out) throws IOException {
+        writeTo(asciiStream(out), StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * json → [compressão] → GCM → {@code b64}, com a codificação como AAD ({@link EnvelopeEncoding#bind}).
+     * No fim fecha o GCM (tag) e o Base64 (padding); o destino por baixo do Base64 deve estar protegido contra close.
+     */
+    static void writeCipherText(OutputStream b64, Cipher gcm, BodyWriter body, EnvelopeEncoding encoding) throws IOException {
+        encoding.bind(gcm);
+        CipherOutputStream enc = new CipherOutputStream(b64, gcm);
+        OutputStream clear = new BufferedOutputStream(
+                encoding.compress(CloseShieldOutputStream.wrap(enc)), BUFFER_BYTES);
+        body.writeTo(CloseShieldOutputStream.wrap(clear));
+        clear.close(); // esvazia o buffer e termina a compressão; o GCM continua aberto
+        enc.close();   // doFinal (tag GCM) + fecha o Base64 (padding)
+    }
+
+    /** O envelope é ASCII puro (JSON + Base64): adapta um {@link Writer} sem passar por charset encoders. */
+    static OutputStream asciiStream(Writer out) {
+        return new OutputStream() {
+            @Override public void write(int b) throws IOException { out.write(b & 0xFF); }
+            @Override public void write(byte[] b, int off, int len) throws IOException {
+                for (int i = off; i < off + len; i++) out.write(b[i] & 0xFF);
+            }
+            @Override public void flush() throws IOException { out.flush(); }
+        };
+    }
+
+    /** Encaminha os bytes para o destino e actualiza a assinatura com os mesmos bytes. */
+    private static final class SigningOutputStream extends FilterOutputStream {
+        private final Signature sig;
+
+        SigningOutputStream(OutputStream out, Signature sig) {
+            super(out);
+            this.sig = sig;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try { sig.update((byte) b); } catch (SignatureException e) { throw new IOException(e); }
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try { sig.update(b, off, len); } catch (SignatureException e) { throw new IOException(e); }
+            out.write(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,480 @@
+package mz.org.csaude.sespcet.api.crypto;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micronaut.cache.SyncCache;
+import io.micronaut.context.event.ApplicationEventListener;
+import io.micronaut.core.annotation.NonNull;
+import io.micronaut.core.annotation.Nullable;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import mz.org.csaude.sespcet.api.config.SettingChangedEvent;
+import mz.org.csaude.sespcet.api.service.SettingService;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KEYS_CLIENT_KEY_ID;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KEYS_CT_PUBLIC_PEM;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KEYS_PUBLISHED_KEY_ID;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KEYS_RING_MAX_RETIRED;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KEYS_RING_PREFIX;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KEYS_RING_RETIRED;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KEYS_SESPCTAPI_ED25519_PRIVATE_PEM;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KEYS_SESPCTAPI_PRIVATE_PEM;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KEYS_SESPCTAPI_PUBLIC_PEM;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KEYS_SESPCTAPI_X25519_PRIVATE_PEM;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KEYS_STAGED_KEY_ID;
+
+/**
+ * Cache de chaves já parseadas, indexadas pelo SHA-256 do PEM.
+ * Evita repetir regex + KeyFactory em cada envelope (webhook, sync, clientes).
+ * A cache é a {@code ct-keys} (Caffeine, limitada por {@code maximum-size}): PEMs de clientes que deixam de
+ * aparecer acabam por sair. As chaves da própria API e do eCT são refrescadas quando a setting correspondente muda.
+ * <p>
+ * Keyring RSA da API: o par activo tem o {@code kid} {@code CT_KEYS_CLIENT_KEY_ID}; pares retirados por
+ * {@link #activateApiKey(String)} continuam a abrir envelopes marcados com o seu {@code kid} até saírem do
+ * keyring ({@code CT_KEYS_RING_MAX_RETIRED}). A escolha da chave é um lookup por {@code kid} — nunca por tentativa.
+ * <p>
+ * O eCT não conhece {@code kid}s: conhece uma chave pública nossa, a publicada ({@link #publishedKid()}).
+ * Envelopes do eCT sem {@code kid} abrem com esse par e os envelopes para o eCT são assinados com ele
+ * ({@link #ectDecryptionKey}, {@link #ectSigningKey}), por isso uma rotação nunca deixa o eCT com uma chave
+ * que não reconhece: {@link #stageApiKey} → publicar no eCT + {@link #markPublished} → {@link #activateApiKey}.
+ */
+@Slf4j
+@Singleton
+public class CtKeyRegistry implements ApplicationEventListener<SettingChangedEvent> {
+
+    private final SettingService settings;
+
+    /** "pub:"/"prv:" + SHA-256 do PEM → chave parseada */
+    private final Cache<Object, Object> parsed;
+
+    /** digest actualmente associado a cada setting vigiada (para descartar a versão anterior) */
+    private final Map<String, String> settingDigests = new ConcurrentHashMap<>();
+
+    private static final String PUBLIC = "pub:";
+    private static final String PRIVATE = "prv:";
+    private static final String DEFAULT_KID = "sespct-api-key-1";
+    private static final int DEFAULT_MAX_RETIRED = 2;
+    private static final Pattern KID_SEQUENCE = Pattern.compile("^(.*-)(\\d+)$");
+
+    /** kid → chave privada retirada; snapshot imutável trocado por inteiro (leitura sem locks) */
+    private volatile Map<String, PrivateKey> retired;
+
+    /** par (PEM, chave) activo: evita o SHA-256 do PEM em cada envelope enquanto a setting não muda */
+    private volatile ActiveKey active;
+
+    private record ActiveKey(String pem, PrivateKey key) {}
+
+    @Inject
+    @SuppressWarnings("unchecked")
+    public CtKeyRegistry(SettingService settings, @Named("ct-keys") SyncCache<?> cache) {
+        this.settings = settings;
+        this.parsed = (Cache<Object, Object>) cache.getNativeCache();
+    }
+
+    CtKeyRegistry(SettingService settings, Cache<Object, Object> parsed) {
+        this.settings = settings;
+        this.parsed = parsed;
+    }
+
+    /* ===================== lookup por PEM ===================== */
+
+    public PublicKey publicKey(@NonNull String pem) throws GeneralSecurityException {
+        String key = PUBLIC + digest(pem);
+        PublicKey k = (PublicKey) parsed.getIfPresent(key);
+        if (k == null) {
+            k = CtCompactCrypto.parsePublicKeyPem(pem);
+            parsed.put(key, k);
+        }
+        return k;
+    }
+
+    public PrivateKey privateKey(@NonNull String pem) throws GeneralSecurityException {
+        String key = PRIVATE + digest(pem);
+        PrivateKey k = (PrivateKey) parsed.getIfPresent(key);
+        if (k == null) {
+            k = CtCompactCrypto.parsePrivateKeyPem(pem);
+            parsed.put(key, k);
+        }
+        return k;
+    }
+
+    /* ===================== chaves configuradas ===================== */
+
+    /** Chave pública do eCT (CT_KEYS_CT_PUBLIC_PEM). */
+    public PublicKey ctPublicKey() throws GeneralSecurityException {
+        String pem = settings.get(CT_KEYS_CT_PUBLIC_PEM, null);
+        if (pem == null) throw new IllegalStateException("Chave ausente (CT_KEYS_CT_PUBLIC_PEM)");
+        settingDigests.putIfAbsent(CT_KEYS_CT_PUBLIC_PEM, digest(pem));
+        return publicKey(pem);
+    }
+
+    /** Chave privada desta API (CT_KEYS_SESPCTAPI_PRIVATE_PEM). */
+    public PrivateKey apiPrivateKey() throws GeneralSecurityException {
+        String pem = settings.get(CT_KEYS_SESPCTAPI_PRIVATE_PEM, null);
+        if (pem == null) throw new IllegalStateException("Chave ausente (CT_KEYS_SESPCTAPI_PRIVATE_PEM)");
+        ActiveKey a = active;
+        if (a != null && a.pem().equals(pem)) {
+            // normalmente a mesma instância (cache de settings); após refresh da cache guarda a nova instância
+            if (a.pem() != pem) active = new ActiveKey(pem, a.key());
+            return a.key();
+        }
+
+        settingDigests.putIfAbsent(CT_KEYS_SESPCTAPI_PRIVATE_PEM, digest(pem));
+        PrivateKey k = privateKey(pem);
+        active = new ActiveKey(pem, k);
+        return k;
+    }
+
+    /** {@code kid} do par RSA activo (CT_KEYS_CLIENT_KEY_ID). */
+    public String activeKid() {
+        String kid = settings.get(CT_KEYS_CLIENT_KEY_ID, null);
+        return kid == null || kid.isBlank() ? DEFAULT_KID : kid.trim();
+    }
+
+    /**
+     * Chave privada RSA da API para o {@code kid} indicado no envelope; sem {@code kid} → chave activa.
+     *
+     * @throws IllegalStateException se o {@code kid} não for o activo nem estiver no keyring
+     */
+    public PrivateKey apiPrivateKey(@Nullable String kid) throws GeneralSecurityException {
+        PrivateKey k = findApiPrivateKey(kid);
+        if (k == null) throw new IllegalStateException("Chave desconhecida (kid=" + kid + ")");
+        return k;
+    }
+
+    /** Como {@link #apiPrivateKey(String)}, mas devolve {@code null} para um {@code kid} desconhecido. */
+    @Nullable
+    public PrivateKey findApiPrivateKey(@Nullable String kid) throws GeneralSecurityException {
+        if (kid == null || kid.isBlank()) return apiPrivateKey();
+        return keyForKid(kid.trim());
+    }
+
+    /** {@code kid} do par cuja chave pública o eCT tem (CT_KEYS_PUBLISHED_KEY_ID; por omissão o activo). */
+    public String publishedKid() {
+        String kid = settings.get(CT_KEYS_PUBLISHED_KEY_ID, null);
+        return kid == null || kid.isBlank() ? activeKid() : kid.trim();
+    }
+
+    /**
+     * Chave para abrir envelopes do eCT: pelo {@code kid} se vier; sem {@code kid} (o caso do eCT) → par publicado.
+     *
+     * @throws IllegalStateException se a chave não existir
+     */
+    public PrivateKey ectDecryptionKey(@Nullable String kid) throws GeneralSecurityException {
+        PrivateKey k = findEctDecryptionKey(kid);
+        if (k == null) throw new IllegalStateException("Chave desconhecida (kid=" + (kid == null ? publishedKid() : kid) + ")");
+        return k;
+    }
+
+    /** Como {@link #ectDecryptionKey(String)}, mas devolve {@code null} se a chave não existir. */
+    @Nullable
+    public PrivateKey findEctDecryptionKey(@Nullable String kid) throws GeneralSecurityException {
+        return keyForKid(kid == null || kid.isBlank() ? publishedKid() : kid.trim());
+    }
+
+    /** Chave com que assinamos para o eCT: a do par publicado (é essa que o eCT usa para verificar). */
+    public PrivateKey ectSigningKey() throws GeneralSecurityException {
+        return ectDecryptionKey(null);
+    }
+
+    /** kid → chave privada: keyring, par preparado ou par activo; {@code null} se desconhecido. */
+    @Nullable
+    private PrivateKey keyForKid(String id) throws GeneralSecurityException {
+        // keyring primeiro: durante a activação o kid antigo já lá está antes de CT_KEYS_CLIENT_KEY_ID mudar
+        PrivateKey k = retired().get(id);
+        if (k != null) return k;
+        if (id.equals(activeKid())) return apiPrivateKey();
+        if (id.equals(stagedKid())) {
+            String pem = settings.get(ringPrivatePem(id), null);
+            return pem == null || pem.isBlank() ? null : privateKey(pem);
+        }
+        return null;
+    }
+
+    @Nullable
+    private String stagedKid() {
+        String kid = settings.get(CT_KEYS_STAGED_KEY_ID, null);
+        return kid == null || kid.isBlank() ? null : kid.trim();
+    }
+
+    /** kids retirados ainda aceites. */
+    public Set<String> retiredKids() {
+        return retired().keySet();
+    }
+
+    /** Chave privada desta API usada para assinar envelopes no esquema dado (SHA256withRSA ou Ed25519). */
+    public PrivateKey apiSigningKey(EnvelopeScheme scheme) throws GeneralSecurityException {
+        return scheme == EnvelopeScheme.X25519 ? requiredPrivate(CT_KEYS_SESPCTAPI_ED25519_PRIVATE_PEM) : apiPrivateKey();
+    }
+
+    /** Chave privada desta API usada para abrir envelopes no esquema dado (RSA-OAEP ou X25519). */
+    public PrivateKey apiDecryptionKey(EnvelopeScheme scheme) throws GeneralSecurityException {
+        return scheme == EnvelopeScheme.X25519 ? requiredPrivate(CT_KEYS_SESPCTAPI_X25519_PRIVATE_PEM) : apiPrivateKey();
+    }
+
+    /** Como {@link #apiDecryptionKey(EnvelopeScheme)}, escolhendo a chave RSA pelo {@code kid} do envelope. */
+    public PrivateKey apiDecryptionKey(EnvelopeScheme scheme, @Nullable String kid) throws GeneralSecurityException {
+        return scheme == EnvelopeScheme.X25519 ? requiredPrivate(CT_KEYS_SESPCTAPI_X25519_PRIVATE_PEM) : apiPrivateKey(kid);
+    }
+
+    private PrivateKey requiredPrivate(String settingKey) throws GeneralSecurityException {
+        String pem = settings.get(settingKey, null);
+        if (pem == null) throw new IllegalStateException("Chave ausente (" + settingKey + ")");
+        return privateKey(pem);
+    }
+
+    /* ===================== rotação ===================== */
+
+    /**
+     * Passo 1 da rotação: gera um novo par RSA e guarda-o como preparado ({@code CT_KEYS_STAGED_KEY_ID}), sem
+     * mudar o activo nem o publicado. Um par preparado ainda não publicado é substituído.
+     * A chave é parseada e colocada na cache antes de gravada, por isso nenhum envelope paga o parse.
+     *
+     * @return {@code kid} do par preparado (a chave pública a publicar vem de {@link #stagedPublicPem()})
+     */
+    public synchronized String stageApiKey(String actor) throws GeneralSecurityException {
+        String previous = stagedKid();
+        if (previous != null && previous.equals(publishedKid())) {
+            throw new IllegalStateException("O par " + previous + " já foi publicado no eCT; active-o antes de preparar outro");
+        }
+
+        String newKid = nextKid(activeKid());
+        while (retired().containsKey(newKid)) newKid = nextKid(newKid);
+
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048, CtCryptoPool.random());
+        KeyPair kp = kpg.generateKeyPair();
+        String newPrv = toPem("PRIVATE KEY", kp.getPrivate().getEncoded());
+        String newPub = toPem("PUBLIC KEY", kp.getPublic().getEncoded());
+        parsed.put(PRIVATE + digest(newPrv), kp.getPrivate());
+        parsed.put(PUBLIC + digest(newPub), kp.getPublic());
+
+        if (previous != null && !previous.equals(newKid)) clearRingEntry(previous, actor);
+        settings.upsert(ringPrivatePem(newKid), newPrv, "TEXT", "Chave privada SESPCT API preparada (" + newKid + ")", true, actor);
+        settings.upsert(ringPublicPem(newKid), newPub, "TEXT", "Chave pública SESPCT API preparada (" + newKid + ")", true, actor);
+        settings.upsert(CT_KEYS_STAGED_KEY_ID, newKid, "STRING", "Kid do par SESPCT API preparado (por activar)", true, actor);
+
+        log.info("CtKeyRegistry: par {} preparado; publique a chave pública no eCT e chame markPublished", newKid);
+        return newKid;
+    }
+
+    /** Chave pública (PEM) do par preparado, a publicar no eCT; {@code null} se não houver. */
+    @Nullable
+    public String stagedPublicPem() {
+        String kid = stagedKid();
+        return kid == null ? null : settings.get(ringPublicPem(kid), null);
+    }
+
+    /**
+     * Passo 2: regista que o eCT já tem a chave pública de {@code kid} (o preparado, ou o activo para reverter).
+     * A partir daqui os envelopes do eCT sem {@code kid} abrem com este par, e é com ele que assinamos para o eCT.
+     */
+    public synchronized void markPublished(String kid, String actor) {
+        String id = kid == null ? "" : kid.trim();
+        if (!id.equals(stagedKid()) && !id.equals(activeKid())) {
+            throw new IllegalStateException("Kid " + kid + " não é o par preparado nem o activo");
+        }
+        settings.upsert(CT_KEYS_PUBLISHED_KEY_ID, id, "STRING", "Kid do par SESPCT API publicado no eCT", true, actor);
+        log.info("CtKeyRegistry: par {} marcado como publicado no eCT", id);
+    }
+
+    /**
+     * Passo 3: o par preparado (já publicado) passa a activo sem reinício. O par anterior passa ao keyring
+     * (continua a abrir envelopes com o {@code kid} antigo) e os retirados além de {@code CT_KEYS_RING_MAX_RETIRED}
+     * são apagados.
+     *
+     * @return {@code kid} do novo par activo
+     */
+    public synchronized String activateApiKey(String actor) throws GeneralSecurityException {
+        String newKid = stagedKid();
+        if (newKid == null) throw new IllegalStateException("Nenhum par preparado (stageApiKey)");
+        if (!newKid.equals(publishedKid())) {
+            throw new IllegalStateException("O par " + newKid + " ainda não foi publicado no eCT (markPublished)");
+        }
+        String newPrv = settings.get(ringPrivatePem(newKid), null);
+        String newPub = settings.get(ringPublicPem(newKid), null);
+        if (newPrv == null || newPrv.isBlank()) throw new IllegalStateException("Par preparado sem chave privada (" + newKid + ")");
+        privateKey(newPrv); // parse + cache antes de passar a activo
+
+        String oldKid = activeKid();
+        String oldPrv = settings.get(CT_KEYS_SESPCTAPI_PRIVATE_PEM, null);
+        String oldPub = settings.get(CT_KEYS_SESPCTAPI_PUBLIC_PEM, null);
+        if (oldPrv == null) throw new IllegalStateException("Chave ausente (CT_KEYS_SESPCTAPI_PRIVATE_PEM)");
+
+        // 1) o par antigo entra no keyring antes de deixar de ser o activo
+        settings.upsert(ringPrivatePem(oldKid), oldPrv, "TEXT",
+                "Chave privada SESPCT API retirada (" + oldKid + ")", true, actor);
+        if (oldPub != null) {
+            settings.upsert(ringPublicPem(oldKid), oldPub, "TEXT",
+                    "Chave pública SESPCT API retirada (" + oldKid + ")", true, actor);
+        }
+
+        List<String> kids = new ArrayList<>();
+        kids.add(oldKid);
+        for (String kid : retiredKidList(settings.get(CT_KEYS_RING_RETIRED, null))) {
+            if (!kid.equals(oldKid) && !kid.equals(newKid)) kids.add(kid);
+        }
+        int max = Math.max(1, settings.getInt(CT_KEYS_RING_MAX_RETIRED, DEFAULT_MAX_RETIRED));
+        List<String> keep = kids.subList(0, Math.min(max, kids.size()));
+        settings.upsert(CT_KEYS_RING_RETIRED, String.join(",", keep), "STRING",
+                "Kids das chaves SESPCT API retiradas ainda aceites (CSV)", true, actor);
+        for (String dropped : kids.subList(keep.size(), kids.size())) {
+            clearRingEntry(dropped, actor);
+        }
+
+        // 2) novo par activo; a entrada "preparada" deixa de ser precisa
+        settings.upsert(CT_KEYS_SESPCTAPI_PRIVATE_PEM, newPrv, "TEXT", "Chave privada SESPCT API (PEM)", true, actor);
+        settings.upsert(CT_KEYS_SESPCTAPI_PUBLIC_PEM, newPub, "TEXT", "Chave pública SESPCT API (PEM)", true, actor);
+        settings.upsert(CT_KEYS_CLIENT_KEY_ID, newKid, "STRING", "Identificador lógico para rotação de chaves", true, actor);
+        settings.upsert(CT_KEYS_STAGED_KEY_ID, "", "STRING", "Kid do par SESPCT API preparado (por activar)", true, actor);
+        clearRingEntry(newKid, actor);
+
+        log.info("CtKeyRegistry: chave da API activada {} -> {} (retiradas: {})", oldKid, newKid, keep);
+        return newKid;
+    }
+
+    private void clearRingEntry(String kid, String actor) {
+        settings.upsert(ringPrivatePem(kid), "", "TEXT", "Chave privada SESPCT API expirada (" + kid + ")", false, actor);
+        settings.upsert(ringPublicPem(kid), "", "TEXT", "Chave pública SESPCT API expirada (" + kid + ")", false, actor);
+    }
+
+    /* ===================== refresh ===================== */
+
+    @Override
+    public void onApplicationEvent(SettingChangedEvent event) {
+        String key = event.key();
+        if (CT_KEYS_RING_RETIRED.equals(key)) {
+            reloadRing(event.value());
+            return;
+        }
+        if (key != null && key.startsWith(CT_KEYS_RING_PREFIX) && key.endsWith(".privatePem")) {
+            reloadRing(settings.get(CT_KEYS_RING_RETIRED, null));
+            return;
+        }
+
+        boolean isPublic = CT_KEYS_CT_PUBLIC_PEM.equals(key);
+        boolean isPrivate = CT_KEYS_SESPCTAPI_PRIVATE_PEM.equals(key);
+        if (!isPublic && !isPrivate) return;
+
+        String value = event.value();
+        String previous = (value == null || value.isBlank())
+                ? settingDigests.remove(key)
+                : settingDigests.put(key, digest(value));
+
+        try {
+            // pré-aquece a nova versão para o próximo envelope não pagar o parse
+            if (value != null && !value.isBlank()) {
+                if (isPublic) publicKey(value); else privateKey(value);
+            }
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            log.warn("CtKeyRegistry: PEM inválido em {} ({})", key, e.toString());
+        }
+
+        // não descartar se outra setting vigiada (ex.: o keyring após rotação) ainda usa o mesmo PEM
+        if (previous != null && !previous.equals(settingDigests.get(key)) && !settingDigests.containsValue(previous)) {
+            parsed.invalidate((isPublic ? PUBLIC : PRIVATE) + previous);
+        }
+    }
+
+    private Map<String, PrivateKey> retired() {
+        Map<String, PrivateKey> r = retired;
+        return r != null ? r : reloadRing(settings.get(CT_KEYS_RING_RETIRED, null));
+    }
+
+    /** Reconstrói o snapshot kid → chave a partir da lista de kids retirados; PEMs já vistos vêm da cache. */
+    private synchronized Map<String, PrivateKey> reloadRing(@Nullable String retiredCsv) {
+        List<String> kids = retiredKidList(retiredCsv);
+        Map<String, PrivateKey> next = new HashMap<>();
+        for (String kid : kids) {
+            String settingKey = ringPrivatePem(kid);
+            String pem = settings.get(settingKey, null);
+            if (pem == null || pem.isBlank()) {
+                log.warn("CtKeyRegistry: kid {} no keyring sem chave privada ({})", kid, settingKey);
+                continue;
+            }
+            try {
+                next.put(kid, privateKey(pem));
+                settingDigests.put(settingKey, digest(pem));
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                log.warn("CtKeyRegistry: PEM inválido em {} ({})", settingKey, e.toString());
+            }
+        }
+
+        // kids que saíram do keyring: largar o digest e a chave (se mais ninguém a usar)
+        settingDigests.keySet().removeIf(settingKey -> {
+            if (!settingKey.startsWith(CT_KEYS_RING_PREFIX)) return false;
+            String kid = settingKey.substring(CT_KEYS_RING_PREFIX.length(), settingKey.length() - ".privatePem".length());
+            if (next.containsKey(kid)) return false;
+            String stale = settingDigests.get(settingKey);
+            if (stale != null && settingDigests.entrySet().stream()
+                    .noneMatch(e -> !e.getKey().equals(settingKey) && stale.equals(e.getValue()))) {
+                parsed.invalidate(PRIVATE + stale);
+            }
+            return true;
+        });
+
+        Map<String, PrivateKey> snapshot = Map.copyOf(next);
+        retired = snapshot;
+        return snapshot;
+    }
+
+    /* ===================== helpers ===================== */
+
+    private static String ringPrivatePem(String kid) {
+        return CT_KEYS_RING_PREFIX + kid + ".privatePem";
+    }
+
+    private static String ringPublicPem(String kid) {
+        return CT_KEYS_RING_PREFIX + kid + ".publicPem";
+    }
+
+    private static List<String> retiredKidList(@Nullable String csv) {
+        List<String> kids = new ArrayList<>();
+        if (csv == null) return kids;
+        for (String part : csv.split(",")) {
+            String kid = part.trim();
+            if (!kid.isEmpty() && !kids.contains(kid)) kids.add(kid);
+        }
+        return kids;
+    }
+
+    /** "sespct-api-key-3" → "sespct-api-key-4"; sem sufixo numérico acrescenta "-2". */
+    static String nextKid(String kid) {
+        Matcher m = KID_SEQUENCE.matcher(kid);
+        return m.matches() ? m.group(1) + (Long.parseLong(m.group(2)) + 1) : kid + "-2";
+    }
+
+    private static String toPem(String type, byte[] der) {
+        String b64 = Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(der);
+        return "-----BEGIN " + type + "-----\n" + b64 + "\n-----END " + type + "-----";
+    }
+
+    private static String digest(String pem) {
+        if (pem == null) throw new IllegalStateException("PEM ausente");
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(md.digest(pem.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package mz.org.csaude.sespcet.api.crypto;
+
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.core.io.Writable;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+
+/**
+ * Envelope em modo sessão: {"kid":"...",["key":"...","keySignature":"...",]"data":"Base64(IV||AES-GCM(json))"}.
+ * <p>
+ * A chave AES é a da sessão do cliente ({@link CtSessionKeyManager}); o {@code kid} entra como AAD do GCM.
+ * {@code key}/{@code keySignature} só aparecem quando a sessão é (re)anunciada ao cliente — é o único
+ * momento com RSA. Nas restantes mensagens a autenticidade vem da tag GCM (a chave só é conhecida pelas duas partes).
+ */
+public final class CtSessionEnvelopeWriter implements Writable {
+
+    private final CtSessionKeyManager.Lease lease;
+    private final CtEnvelopeWriter.BodyWriter body;
+    private final EnvelopeEncoding encoding;
+
+    CtSessionEnvelopeWriter(CtSessionKeyManager.Lease lease, CtEnvelopeWriter.BodyWriter body, EnvelopeEncoding encoding) {
+        this.lease = lease;
+        this.body = body;
+        this.encoding = encoding != null ? encoding : EnvelopeEncoding.IDENTITY;
+    }
+
+    /** Identificador da chave de sessão usada neste envelope. */
+    public String getKid() {
+        return lease.kid();
+    }
+
+    @Override
+    public void writeTo(OutputStream sink, @Nullable Charset charset) throws IOException {
+        try {
+            byte[] iv = CtCryptoPool.randomBytes(CtEnvelopeWriter.GCM_IV_BYTES);
+            Cipher gcm = CtCryptoPool.aesGcm();
+            gcm.init(Cipher.ENCRYPT_MODE, lease.key(), new GCMParameterSpec(CtEnvelopeWriter.GCM_TAG_BITS, iv));
+            gcm.updateAAD(lease.kid().getBytes(StandardCharsets.US_ASCII));
+
+            StringBuilder head = new StringBuilder(64).append("{\"kid\":\"").append(lease.kid()).append('"');
+            if (lease.announce()) {
+                head.append(",\"key\":\"").append(lease.wrappedKey())
+                    .append("\",\"keySignature\":\"").append(lease.keySignature()).append('"');
+            }
+            head.append(",\"data\":\"");
+            sink.write(head.toString().getBytes(StandardCharsets.US_ASCII));
+
+            OutputStream b64 = Base64.getEncoder().wrap(CloseShieldOutputStream.wrap(sink));
+            b64.write(iv);
+            CtEnvelopeWriter.writeCipherText(b64, gcm, body, encoding);
+
+            sink.write('"');
+            sink.write('}');
+            sink.flush();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Falha ao cifrar envelope de sessão", e);
+        }
+    }
+
+    @Override
+    public void writeTo(Writer out) throws IOException {
+        writeTo(CtEnvelopeWriter.asciiStream(out), StandardCharsets.US_ASCII);
+    }
+}
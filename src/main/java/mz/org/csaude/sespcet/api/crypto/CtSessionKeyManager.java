@@ -0,0 +1,193 @@
+package mz.org.csaude.sespcet.api.crypto;
+
+import io.micronaut.core.annotation.Nullable;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import mz.org.csaude.sespcet.api.service.SettingService;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.interfaces.XECPublicKey;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_ENVELOPE_SESSION_ENABLED;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_ENVELOPE_SESSION_MAX_MESSAGES;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_ENVELOPE_SESSION_TTL_SECONDS;
+
+/**
+ * Chaves AES de sessão por cliente local (modo opt-in dos envelopes de /pedidos e /respostas).
+ * <p>
+ * O cliente pede o modo com o cabeçalho {@value #HEADER}, enviando o {@code kid} que tem (ou {@code new}).
+ * A chave é criada uma vez, envolvida para a chave pública do cliente (RSA-OAEP, ou bloco X25519 no esquema
+ * {@link EnvelopeScheme#X25519}) e assinada pela API;
+ * depois é reutilizada até expirar (TTL) ou atingir o limite de mensagens, sempre com IV aleatório por mensagem.
+ * Se o cliente não apresentar o {@code kid} actual (arranque, reinício da API, rotação), a chave vigente é
+ * re-anunciada com o material já calculado — sem nova operação RSA.
+ * <p>
+ * Estado apenas em memória: após reinício os clientes recebem simplesmente uma nova sessão.
+ */
+@Slf4j
+@Singleton
+public class CtSessionKeyManager {
+
+    public static final String HEADER = "X-Envelope-Session";
+
+    private static final int KID_BYTES = 12;
+    private static final long DEFAULT_TTL_SECONDS = 3600;
+    private static final long DEFAULT_MAX_MESSAGES = 10_000; // muito abaixo do limite de IVs aleatórios do GCM (2^32)
+
+    private final SettingService settings;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Session>> establishing = new ConcurrentHashMap<>();
+
+    public CtSessionKeyManager(SettingService settings) {
+        this.settings = settings;
+    }
+
+    /** true se o cliente pediu o modo sessão e este não está desligado nas settings. */
+    public boolean accepts(@Nullable String header) {
+        return header != null && !header.isBlank() && settings.getBoolean(CT_ENVELOPE_SESSION_ENABLED, true);
+    }
+
+    /**
+     * Envelope em streaming cifrado com a sessão do cliente.
+     *
+     * @param presentedKid valor de {@value #HEADER} enviado pelo cliente
+     */
+    public CtSessionEnvelopeWriter streamEnvelope(String clientId, PublicKey clientPublic, PrivateKey apiPrivate,
+                                                  @Nullable String presentedKid,
+                                                  CtEnvelopeWriter.BodyWriter body, EnvelopeEncoding encoding) {
+        return new CtSessionEnvelopeWriter(acquire(clientId, clientPublic, apiPrivate, presentedKid), body, encoding);
+    }
+
+    /** Esquece a sessão de um cliente (ex.: chave pública alterada ou cliente removido). */
+    public void invalidate(String clientId) {
+        sessions.remove(clientId);
+    }
+
+    Lease acquire(String clientId, PublicKey clientPublic, PrivateKey apiPrivate, @Nullable String presentedKid) {
+        long now = System.currentTimeMillis();
+        long ttlMillis = settings.getLong(CT_ENVELOPE_SESSION_TTL_SECONDS, DEFAULT_TTL_SECONDS) * 1000L;
+        long maxMessages = settings.getLong(CT_ENVELOPE_SESSION_MAX_MESSAGES, DEFAULT_MAX_MESSAGES);
+
+        Session s = sessions.get(clientId);
+        if (s == null || !s.usable(clientPublic, now, ttlMillis, maxMessages)) {
+            s = renew(clientId, clientPublic, apiPrivate, now, ttlMillis, maxMessages);
+        }
+        s.messages.incrementAndGet();
+
+        boolean announce = presentedKid == null || !s.kid.equals(presentedKid.trim());
+        return new Lease(s.kid, s.key, announce, s.wrappedKey, s.keySignature);
+    }
+
+    /**
+     * Nova sessão para o cliente, com o RSA/X25519 fora de qualquer lock do mapa: pedidos simultâneos do mesmo
+     * cliente esperam pela sessão que um deles está a estabelecer (uma só operação RSA), e os outros clientes
+     * não ficam bloqueados atrás dela.
+     */
+    private Session renew(String clientId, PublicKey clientPublic, PrivateKey apiPrivate,
+                          long now, long ttlMillis, long maxMessages) {
+        CompletableFuture<Session> mine = new CompletableFuture<>();
+        CompletableFuture<Session> inflight = establishing.putIfAbsent(clientId, mine);
+        if (inflight != null) {
+            Session other = await(inflight);
+            if (other.recipient.equals(clientPublic)) return other;
+            // estabelecida para outra chave pública (alteração concorrente): esta não é partilhável
+            Session own = establish(clientId, clientPublic, apiPrivate, now);
+            sessions.put(clientId, own);
+            return own;
+        }
+        try {
+            // outro pedido pode ter acabado de a renovar entre o get() e o putIfAbsent()
+            Session cur = sessions.get(clientId);
+            Session fresh = cur != null && cur.usable(clientPublic, now, ttlMillis, maxMessages)
+                    ? cur
+                    : establish(clientId, clientPublic, apiPrivate, now);
+            sessions.put(clientId, fresh);
+            mine.complete(fresh);
+            return fresh;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            establishing.remove(clientId, mine);
+        }
+    }
+
+    private static Session await(CompletableFuture<Session> inflight) {
+        try {
+            return inflight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw e;
+        }
+    }
+
+    private static Session establish(String clientId, PublicKey clientPublic, PrivateKey apiPrivate, long now) {
+        try {
+            SecretKey key = CtCryptoPool.newAesKey();
+            String kid = Base64.getUrlEncoder().withoutPadding().encodeToString(CtCryptoPool.randomBytes(KID_BYTES));
+
+            // RSA: RSA-OAEP(k); X25519: bloco compacto ephPub||IV||GCM(k)
+            byte[] wrappedKey;
+            if (clientPublic instanceof XECPublicKey) {
+                wrappedKey = CtCompactCrypto.sealBytes(key.getEncoded(), clientPublic);
+            } else {
+                Cipher rsa = CtCryptoPool.rsaOaep();
+                rsa.init(Cipher.ENCRYPT_MODE, clientPublic, CtCompactCrypto.OAEP_SHA256_SHA256, CtCryptoPool.random());
+                wrappedKey = rsa.doFinal(key.getEncoded());
+            }
+            String wrapped = Base64.getEncoder().encodeToString(wrappedKey);
+
+            // assinatura sobre "kid.key" (Base64): o cliente confirma que a sessão vem da API
+            Signature sig = CtCryptoPool.signatureFor(apiPrivate);
+            sig.initSign(apiPrivate, CtCryptoPool.random());
+            sig.update((kid + "." + wrapped).getBytes(StandardCharsets.US_ASCII));
+            String keySignature = Base64.getEncoder().encodeToString(sig.sign());
+
+            log.debug("CtSessionKeyManager: nova sessão {} para cliente {}", kid, clientId);
+            return new Session(kid, key, clientPublic, now, wrapped, keySignature);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Falha ao estabelecer chave de sessão para " + clientId, e);
+        }
+    }
+
+    /** Sessão vigente de um cliente. */
+    private static final class Session {
+        final String kid;
+        final SecretKey key;
+        final PublicKey recipient;
+        final long createdAt;
+        final String wrappedKey;
+        final String keySignature;
+        final AtomicLong messages = new AtomicLong();
+
+        Session(String kid, SecretKey key, PublicKey recipient, long createdAt, String wrappedKey, String keySignature) {
+            this.kid = kid;
+            this.key = key;
+            this.recipient = recipient;
+            this.createdAt = createdAt;
+            this.wrappedKey = wrappedKey;
+            this.keySignature = keySignature;
+        }
+
+        boolean usable(PublicKey clientPublic, long now, long ttlMillis, long maxMessages) {
+            return recipient.equals(clientPublic)
+                    && now - createdAt < ttlMillis
+                    && messages.get() < maxMessages;
+        }
+    }
+
+    /** Uma utilização da sessão; {@code announce} indica que a chave deve seguir no envelope. */
+    record Lease(String kid, SecretKey key, boolean announce, String wrappedKey, String keySignature) {}
+}
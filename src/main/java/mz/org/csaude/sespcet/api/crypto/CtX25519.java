@@ -0,0 +1,119 @@
+package mz.org.csaude.sespcet.api.crypto;
+
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Derivação da chave AES do esquema {@link EnvelopeScheme#X25519}:
+ * {@code AES = HKDF-SHA256(ikm = X25519(eph, destinatário), salt = ephPub, info = HKDF_INFO || destPub)}.
+ * A chave pública efémera (32 bytes "raw") segue no início do bloco, no lugar da chave RSA envolvida;
+ * a chave pública do destinatário ({@code destPub}, 32 bytes "raw") entra no info, ligando a chave AES ao par
+ * para o qual o bloco foi cifrado.
+ */
+final class CtX25519 {
+
+    static final int KEY_BYTES = 32;
+
+    /** Cabeçalho DER de SubjectPublicKeyInfo para X25519 (OID 1.3.101.110), seguido dos 32 bytes da chave. */
+    private static final byte[] X509_PREFIX = {
+            0x30, 0x2a, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x6e, 0x03, 0x21, 0x00
+    };
+    private static final byte[] HKDF_INFO = "sespct-api/ct-envelope/x25519-aes256gcm/v1".getBytes(StandardCharsets.US_ASCII);
+
+    /** Ponto base de X25519 (u = 9): X25519(k, 9) é a chave pública de k. */
+    private static final byte[] BASE_POINT = new byte[KEY_BYTES];
+    static {
+        BASE_POINT[0] = 9;
+    }
+
+    /** Chave pública "raw" de cada chave privada já usada para abrir blocos (são poucas: as da API). */
+    private static final Map<PrivateKey, byte[]> OWN_PUBLIC = new ConcurrentHashMap<>();
+    private static final int MAX_OWN_PUBLIC = 16;
+
+    /** Chave AES derivada + chave pública efémera a enviar ao destinatário. */
+    record Sealed(SecretKey key, byte[] ephemeralPublic) {}
+
+    private CtX25519() {}
+
+    /** Lado emissor: gera par efémero e deriva a chave AES para {@code recipient}. */
+    static Sealed seal(PublicKey recipient) throws GeneralSecurityException {
+        KeyPair eph = CtCryptoPool.x25519Generator().generateKeyPair();
+        byte[] ephRaw = raw(eph.getPublic());
+        return new Sealed(derive(eph.getPrivate(), recipient, ephRaw, raw(recipient)), ephRaw);
+    }
+
+    /** Lado receptor: lê a chave efémera em {@code buf[off..off+32)} e deriva a mesma chave AES. */
+    static SecretKey open(PrivateKey recipient, byte[] buf, int off) throws GeneralSecurityException {
+        byte[] ephRaw = Arrays.copyOfRange(buf, off, off + KEY_BYTES);
+        return derive(recipient, fromRaw(ephRaw), ephRaw, publicOf(recipient));
+    }
+
+    /** 32 bytes "raw" (u-coordinate) de uma chave pública X25519. */
+    static byte[] raw(PublicKey key) throws InvalidKeyException {
+        byte[] der = key.getEncoded();
+        if (der == null || der.length != X509_PREFIX.length + KEY_BYTES) {
+            throw new InvalidKeyException("Chave pública X25519 inesperada (" + key.getAlgorithm() + ")");
+        }
+        return Arrays.copyOfRange(der, X509_PREFIX.length, der.length);
+    }
+
+    static PublicKey fromRaw(byte[] raw) throws GeneralSecurityException {
+        byte[] der = Arrays.copyOf(X509_PREFIX, X509_PREFIX.length + KEY_BYTES);
+        System.arraycopy(raw, 0, der, X509_PREFIX.length, KEY_BYTES);
+        return CtCryptoPool.xdhKeyFactory().generatePublic(new X509EncodedKeySpec(der));
+    }
+
+    /** Chave pública "raw" correspondente a {@code key}, i.e. X25519(key, 9). */
+    static byte[] publicOf(PrivateKey key) throws GeneralSecurityException {
+        byte[] cached = OWN_PUBLIC.get(key);
+        if (cached != null) return cached;
+        KeyAgreement ka = CtCryptoPool.x25519();
+        ka.init(key);
+        ka.doPhase(fromRaw(BASE_POINT), true);
+        byte[] pub = ka.generateSecret();
+        if (OWN_PUBLIC.size() >= MAX_OWN_PUBLIC) OWN_PUBLIC.clear();
+        OWN_PUBLIC.put(key, pub);
+        return pub;
+    }
+
+    private static SecretKey derive(PrivateKey own, PublicKey peer, byte[] ephRaw, byte[] recipientRaw)
+            throws GeneralSecurityException {
+        KeyAgreement ka = CtCryptoPool.x25519();
+        ka.init(own);
+        ka.doPhase(peer, true);
+        byte[] shared = ka.generateSecret(); // o JDK rejeita pontos de ordem baixa (segredo nulo)
+        try {
+            return new SecretKeySpec(hkdfSha256(shared, ephRaw, recipientRaw), "AES");
+        } finally {
+            Arrays.fill(shared, (byte) 0);
+        }
+    }
+
+    /** HKDF-SHA256 (RFC 5869) com saída de um único bloco (32 bytes = AES-256). */
+    private static byte[] hkdfSha256(byte[] ikm, byte[] salt, byte[] recipientRaw) throws GeneralSecurityException {
+        Mac mac = CtCryptoPool.hmacSha256();
+        mac.init(new SecretKeySpec(salt, CtCryptoPool.HMAC_SHA256));
+        byte[] prk = mac.doFinal(ikm);
+        try {
+            mac.init(new SecretKeySpec(prk, CtCryptoPool.HMAC_SHA256));
+            mac.update(HKDF_INFO);
+            mac.update(recipientRaw);
+            mac.update((byte) 1);
+            return mac.doFinal();
+        } finally {
+            Arrays.fill(prk, (byte) 0);
+        }
+    }
+}
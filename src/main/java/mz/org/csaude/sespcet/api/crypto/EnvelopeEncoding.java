@@ -0,0 +1,160 @@
+package mz.org.csaude.sespcet.api.crypto;
+
+import io.micronaut.core.annotation.Nullable;
+
+import javax.crypto.Cipher;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compressão do JSON claro <b>antes</b> do AES-GCM (envelope v2).
+ * <p>
+ * Negociada por cabeçalho entre a API e os clientes locais (/pedidos, /respostas, mark-consumed):
+ * <ul>
+ *   <li>{@value #ACCEPT_HEADER}: o cliente anuncia o que sabe descomprimir (ex.: {@code gzip, deflate}).</li>
+ *   <li>{@value #HEADER}: codificação efectivamente aplicada ao payload (resposta da API ou pedido do cliente).</li>
+ * </ul>
+ * Sem cabeçalho → {@link #IDENTITY}, i.e. exactamente o envelope v1 (clientes antigos não mudam nada).
+ * <p>
+ * O cabeçalho não é assinado: num envelope comprimido a codificação entra também como AAD do GCM
+ * ({@link #bind(Cipher)}), pelo que um cabeçalho removido ou trocado faz falhar a tag em vez de entregar
+ * bytes comprimidos como se fossem JSON.
+ */
+public enum EnvelopeEncoding {
+
+    IDENTITY("identity"),
+    GZIP("gzip"),
+    DEFLATE("deflate");
+
+    public static final String ACCEPT_HEADER = "X-Envelope-Accept-Encoding";
+    public static final String HEADER = "X-Envelope-Encoding";
+
+    /** Limite do JSON descomprimido (protecção contra "zip bombs" em mark-consumed). */
+    static final int MAX_INFLATED_BYTES = 64 * 1024 * 1024;
+
+    private static final int BUFFER_BYTES = 8 * 1024;
+
+    private final String token;
+    private final byte[] aad;
+
+    EnvelopeEncoding(String token) {
+        this.token = token;
+        this.aad = ("sespct-envelope-encoding=" + token).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public String token() {
+        return token;
+    }
+
+    public boolean isCompressed() {
+        return this != IDENTITY;
+    }
+
+    /**
+     * Escolhe a codificação a partir de {@value #ACCEPT_HEADER}: a suportada com maior {@code q} (por omissão 1);
+     * em empate, a primeira pela ordem do cliente. Entradas com {@code q=0} (ou q inválido) são ignoradas;
+     * valores desconhecidos ou ausentes → {@link #IDENTITY}.
+     */
+    public static EnvelopeEncoding negotiate(@Nullable String acceptHeader) {
+        if (acceptHeader == null || acceptHeader.isBlank()) return IDENTITY;
+        EnvelopeEncoding best = IDENTITY;
+        double bestQ = 0d;
+        for (String part : acceptHeader.split(",")) {
+            String[] params = part.split(";");
+            EnvelopeEncoding enc = lookup(params[0]);
+            if (enc == null) continue;
+            double q = quality(params);
+            if (q > bestQ) {
+                best = enc;
+                bestQ = q;
+            }
+        }
+        return best;
+    }
+
+    /** Lê {@value #HEADER} de um pedido do cliente; valor desconhecido é erro (o payload não seria legível). */
+    public static EnvelopeEncoding fromHeader(@Nullable String header) {
+        if (header == null || header.isBlank()) return IDENTITY;
+        EnvelopeEncoding enc = lookup(header);
+        if (enc == null) {
+            throw new IllegalArgumentException("Codificação de envelope não suportada: " + header.trim());
+        }
+        return enc;
+    }
+
+    /** Autentica a codificação no GCM (AAD) quando há compressão; {@link #IDENTITY} não muda nada (v1). */
+    void bind(Cipher gcm) {
+        if (isCompressed()) gcm.updateAAD(aad);
+    }
+
+    /** Envolve o stream de saída (JSON claro → compressor → GCM). Fechar o stream devolvido termina a compressão. */
+    OutputStream compress(OutputStream out) throws IOException {
+        return switch (this) {
+            case IDENTITY -> out;
+            case GZIP -> new GZIPOutputStream(out, BUFFER_BYTES);
+            case DEFLATE -> new DeflaterOutputStream(out); // Deflater interno: libertado no close()
+        };
+    }
+
+    /** Comprime um payload já em memória. */
+    byte[] compress(byte[] clear) throws IOException {
+        if (this == IDENTITY) return clear;
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.max(64, clear.length / 4));
+        try (OutputStream out = compress(bos)) {
+            out.write(clear);
+        }
+        return bos.toByteArray();
+    }
+
+    /** Descomprime o texto claro já autenticado pelo GCM, até {@link #MAX_INFLATED_BYTES}. */
+    byte[] decompress(byte[] data) throws IOException {
+        if (this == IDENTITY) return data;
+        try (InputStream in = this == GZIP
+                ? new GZIPInputStream(new ByteArrayInputStream(data), BUFFER_BYTES)
+                : new InflaterInputStream(new ByteArrayInputStream(data))) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream((int) Math.min(MAX_INFLATED_BYTES, Math.max(64L, data.length * 4L)));
+            byte[] buf = new byte[BUFFER_BYTES];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                if (bos.size() + n > MAX_INFLATED_BYTES) {
+                    throw new IOException("Payload descomprimido excede " + MAX_INFLATED_BYTES + " bytes");
+                }
+                bos.write(buf, 0, n);
+            }
+            return bos.toByteArray();
+        }
+    }
+
+    private static EnvelopeEncoding lookup(String token) {
+        String t = token.trim().toLowerCase(Locale.ROOT);
+        for (EnvelopeEncoding e : values()) {
+            if (e.token.equals(t)) return e;
+        }
+        return null;
+    }
+
+    /** Valor de {@code q} da entrada (1 se ausente; 0 se inválido ou fora de [0, 1]). */
+    private static double quality(String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String p = params[i].trim().toLowerCase(Locale.ROOT);
+            if (p.startsWith("q=")) {
+                try {
+                    double q = Double.parseDouble(p.substring(2).trim());
+                    return q >= 0d && q <= 1d ? q : 0d;
+                } catch (NumberFormatException e) {
+                    return 0d;
+                }
+            }
+        }
+        return 1d;
+    }
+}
@@ -0,0 +1,59 @@
+package mz.org.csaude.sespcet.api.crypto;
+
+import io.micronaut.core.annotation.Nullable;
+
+import java.security.InvalidKeyException;
+import java.security.PublicKey;
+import java.security.interfaces.EdECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.interfaces.XECPublicKey;
+import java.security.spec.NamedParameterSpec;
+import java.util.Locale;
+
+/**
+ * Esquema criptográfico do envelope compacto, escolhido por cada cliente local no registo.
+ * <ul>
+ *   <li>{@link #RSA}: RSA-OAEP(SHA-256) para a chave AES + SHA256withRSA (formato original; também o do eCT).</li>
+ *   <li>{@link #X25519}: X25519 efémero + HKDF-SHA256 para a chave AES + assinatura Ed25519.
+ *   O bloco passa a ser {@code ephPub(32)||IV(12)||AES-GCM(ct+tag)}; o resto do envelope não muda.</li>
+ * </ul>
+ */
+public enum EnvelopeScheme {
+    RSA,
+    X25519;
+
+    /** Valor enviado pelo cliente no registo; ausente → {@link #RSA}. */
+    public static EnvelopeScheme from(String value) {
+        if (value == null || value.isBlank()) return RSA;
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Esquema de envelope não suportado: " + value.trim());
+        }
+    }
+
+    /**
+     * Confirma que as chaves registadas pelo cliente são as do esquema: RSA → {@code encryption} RSA;
+     * X25519 → {@code encryption} X25519 e {@code signing} Ed25519. Uma chave trocada daria envelopes
+     * cifrados/assinados com o algoritmo errado.
+     */
+    public void checkClientKeys(PublicKey encryption, @Nullable PublicKey signing) throws InvalidKeyException {
+        if (this == RSA) {
+            if (!(encryption instanceof RSAPublicKey)) {
+                throw new InvalidKeyException("Esquema RSA requer publicKey RSA (recebida " + encryption.getAlgorithm() + ")");
+            }
+            return;
+        }
+        if (!(encryption instanceof XECPublicKey xec) || !isNamed(xec.getParams(), "X25519")) {
+            throw new InvalidKeyException("Esquema X25519 requer publicKey X25519 (recebida " + encryption.getAlgorithm() + ")");
+        }
+        if (!(signing instanceof EdECPublicKey ed) || !isNamed(ed.getParams(), "Ed25519")) {
+            throw new InvalidKeyException("Esquema X25519 requer signingPublicKey Ed25519 (recebida "
+                    + (signing == null ? "nenhuma" : signing.getAlgorithm()) + ")");
+        }
+    }
+
+    private static boolean isNamed(Object params, String name) {
+        return params instanceof NamedParameterSpec spec && name.equalsIgnoreCase(spec.getName());
+    }
+}
@@ -1,11 +1,19 @@
 package mz.org.csaude.sespcet.api.dto;
 
+import io.micronaut.core.annotation.Nullable;
 import io.micronaut.serde.annotation.Serdeable;
 
+/**
+ * Registo de cliente local.
+ * {@code envelopeScheme}: "RSA" (omissão) ou "X25519". Em X25519, {@code publicKey} é a chave X25519 (PEM)
+ * e {@code signingPublicKey} a chave Ed25519 (PEM) com que o cliente assina.
+ */
 @Serdeable
 public record ClientRegisterDTO(
         String usCode,
         String publicKey,
         String clientId,
-        String clientSecret
+        String clientSecret,
+        @Nullable String envelopeScheme,
+        @Nullable String signingPublicKey
 ) {}
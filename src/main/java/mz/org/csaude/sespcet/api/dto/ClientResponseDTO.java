@@ -1,9 +1,20 @@
 package mz.org.csaude.sespcet.api.dto;
 
+import io.micronaut.core.annotation.Nullable;
 import io.micronaut.serde.annotation.Serdeable;
+import mz.org.csaude.sespcet.api.crypto.EnvelopeScheme;
 
 @Serdeable
 public record ClientResponseDTO(
         String clientId,
-        String publicKey
-) {}
+        String publicKey,
+        String envelopeScheme,
+        @Nullable String x25519PublicKey,
+        @Nullable String signingPublicKey,
+        @Nullable String keyId
+) {
+    /** Clientes RSA: apenas a chave pública RSA da API (resposta original) e o seu {@code kid}. */
+    public ClientResponseDTO(String clientId, String publicKey, @Nullable String keyId) {
+        this(clientId, publicKey, EnvelopeScheme.RSA.name(), null, null, keyId);
+    }
+}
@@ -1,7 +1,19 @@
 package mz.org.csaude.sespcet.api.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.micronaut.core.annotation.Nullable;
 import io.micronaut.serde.annotation.Serdeable;
-import lombok.Getter;
 
+/**
+ * Envelope compacto {data, signature}. {@code kid} identifica o par de chaves da API a que o envelope se refere,
+ * para a escolha da chave ser directa durante uma rotação. É opcional e fora da assinatura: os envelopes para o
+ * eCT nunca o levam (o contrato do eCT é {data, signature}); sem ele, a API usa o par publicado no eCT.
+ */
 @Serdeable
-public record EncryptedRequestDTO(String data, String signature) {}
\ No newline at end of file
+public record EncryptedRequestDTO(String data, String signature,
+                                  @Nullable @JsonInclude(JsonInclude.Include.NON_NULL) String kid) {
+
+    public EncryptedRequestDTO(String data, String signature) {
+        this(data, signature, null);
+    }
+}
@@ -0,0 +1,7 @@
+package mz.org.csaude.sespcet.api.dto;
+
+import io.micronaut.core.annotation.Introspected;
+
+/** Projecção (pedido_id_ct, facility_code) de um Pedido, sem o payload. */
+@Introspected
+public record PedidoFacilityDTO(Long pedidoIdCt, String facilityCode) {}
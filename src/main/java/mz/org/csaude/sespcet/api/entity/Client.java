@@ -6,6 +6,7 @@ import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
 import mz.org.csaude.sespcet.api.base.BaseEntity;
+import mz.org.csaude.sespcet.api.crypto.EnvelopeScheme;
 import mz.org.csaude.sespcet.api.util.LifeCycleStatus;
 
 @Entity
@@ -31,6 +32,22 @@ public class Client extends BaseEntity {
     @Column(nullable = false, name = "salt")
     private String salt;
 
+    /** Esquema do envelope escolhido no registo; em X25519, {@link #publicKey} é a chave X25519 do cliente. */
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, name = "envelope_scheme")
+    private EnvelopeScheme envelopeScheme = EnvelopeScheme.RSA;
+
+    /** Chave pública Ed25519 (PEM) do cliente, usada para verificar os seus envelopes no esquema X25519. */
+    @Lob
+    @Column(name = "signing_public_key")
+    private String signingPublicKey;
+
+    /** Chave pública para verificar as assinaturas do cliente (RSA: a mesma de cifra; X25519: a Ed25519). */
+    @JsonIgnore
+    public String getVerificationPublicKey() {
+        return envelopeScheme == EnvelopeScheme.X25519 ? signingPublicKey : publicKey;
+    }
+
     @JsonIgnore
     public boolean isActive() {
         final LifeCycleStatus lcs = getLifeCycleStatus();
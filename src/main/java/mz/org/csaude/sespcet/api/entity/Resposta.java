@@ -6,7 +6,11 @@ import lombok.Getter;
 import lombok.Setter;
 import mz.org.csaude.sespcet.api.base.BaseEntity;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
+import java.util.HexFormat;
 
 @Entity
 @Getter
@@ -28,6 +32,13 @@ public class Resposta extends BaseEntity {
     @Column(nullable = false, name = "payload")
     private String payload;
 
+    /**
+     * SHA-256 (hex) do conteúdo da resposta: o upsert só reescreve payload/status quando muda ({@code RespostaBulkRepository}).
+     * Em regra é o do payload; no webhook é o da resposta dentro da entrega ({@code WebhookIngestService}).
+     */
+    @Column(name = "payload_hash", length = 64)
+    private String payloadHash;
+
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     private Status status;
@@ -38,6 +49,22 @@ public class Resposta extends BaseEntity {
     @Column(name = "error_msg", columnDefinition = "TEXT")
     private String errorMsg;
 
+    @PrePersist
+    @PreUpdate
+    public void updatePayloadHash() {
+        this.payloadHash = hashPayload(payload);
+    }
+
+    public static String hashPayload(String payload) {
+        if (payload == null) return null;
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(payload.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+    }
+
     public enum Status {
         NEW,
         CONSUMED,
@@ -0,0 +1,70 @@
+package mz.org.csaude.sespcet.api.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Date;
+
+/**
+ * Webhook eCT recebido, verificado e decifrado pelo controller, à espera de ingestão ({@code WebhookInboxWorker}).
+ * Guarda o payload claro ({@code payload}), por isso os workers já não dependem das chaves (que podem rodar
+ * entretanto) nem repetem RSA; a gravação das respostas tem novas tentativas e estacionamento ({@link Status#PARKED}).
+ */
+@Entity
+@Getter
+@Setter
+@Table(name = "webhook_inbox")
+public class WebhookInbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false)
+    private Long id;
+
+    /** JSON claro do webhook (já verificado e decifrado). */
+    @Lob
+    @Column(nullable = false, name = "payload")
+    private String payload;
+
+    @Lob
+    @Column(name = "data")
+    private String data;
+
+    @Column(name = "signature", length = 1024)
+    private String signature;
+
+    @Column(name = "kid", length = 100)
+    private String kid;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, name = "status")
+    private Status status;
+
+    @Column(nullable = false, name = "attempts")
+    private int attempts;
+
+    @Column(nullable = false, name = "received_at")
+    private Date receivedAt;
+
+    @Column(nullable = false, name = "next_attempt_at")
+    private Date nextAttemptAt;
+
+    /** Fim da posse por um worker; expirada, a mensagem volta a ser elegível (worker caiu a meio). */
+    @Column(name = "locked_until")
+    private Date lockedUntil;
+
+    @Column(name = "processed_at")
+    private Date processedAt;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    public enum Status {
+        PENDING,
+        PROCESSING,
+        DONE,
+        /** Falhou de vez (payload inválido ou tentativas esgotadas); só volta com intervenção manual. */
+        PARKED,
+    }
+}
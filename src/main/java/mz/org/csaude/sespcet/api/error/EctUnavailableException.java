@@ -0,0 +1,13 @@
+package mz.org.csaude.sespcet.api.error;
+
+/** eCT indisponível: circuito aberto ou tentativas esgotadas (ver {@code EctResilience}). */
+public class EctUnavailableException extends RuntimeException {
+
+    public EctUnavailableException(String message) {
+        super(message);
+    }
+
+    public EctUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
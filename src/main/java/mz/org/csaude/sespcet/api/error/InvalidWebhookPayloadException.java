@@ -0,0 +1,16 @@
+package mz.org.csaude.sespcet.api.error;
+
+/**
+ * Payload claro de um webhook do eCT que nunca vai ser aceite (JSON inválido, sem respostaId/pedidoId).
+ * É a única falha com que o inbox estaciona uma mensagem sem novas tentativas (ver {@code WebhookInboxService}).
+ */
+public class InvalidWebhookPayloadException extends IllegalArgumentException {
+
+    public InvalidWebhookPayloadException(String message) {
+        super(message);
+    }
+
+    public InvalidWebhookPayloadException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
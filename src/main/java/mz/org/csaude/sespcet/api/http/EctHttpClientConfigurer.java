@@ -0,0 +1,53 @@
+package mz.org.csaude.sespcet.api.http;
+
+import io.micronaut.context.event.BeanCreatedEvent;
+import io.micronaut.context.event.BeanCreatedEventListener;
+import io.micronaut.core.annotation.NonNull;
+import io.micronaut.http.client.ServiceHttpClientConfiguration;
+import jakarta.inject.Provider;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import mz.org.csaude.sespcet.api.service.SettingService;
+
+import java.time.Duration;
+
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_HTTP_CONNECT_TIMEOUT_SECONDS;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_HTTP_READ_TIMEOUT_SECONDS;
+
+/**
+ * Aplica as settings {@code CT_HTTP_CONNECT_TIMEOUT_SECONDS} / {@code CT_HTTP_READ_TIMEOUT_SECONDS} ao cliente
+ * {@code @Client(id = "ect")} quando a sua configuração é criada (pool, keep-alive e ALPN vêm do
+ * {@code application.yml}, em {@code micronaut.http.services.ect}). Sem setting, ou com a BD ainda
+ * indisponível, ficam os valores do yml. Mudanças só contam após reiniciar: o pool é criado uma vez.
+ */
+@Slf4j
+@Singleton
+public class EctHttpClientConfigurer implements BeanCreatedEventListener<ServiceHttpClientConfiguration> {
+
+    public static final String SERVICE_ID = "ect";
+
+    private final Provider<SettingService> settingsProvider; // LAZY
+
+    public EctHttpClientConfigurer(Provider<SettingService> settingsProvider) {
+        this.settingsProvider = settingsProvider;
+    }
+
+    @Override
+    public ServiceHttpClientConfiguration onCreated(@NonNull BeanCreatedEvent<ServiceHttpClientConfiguration> event) {
+        ServiceHttpClientConfiguration config = event.getBean();
+        if (!SERVICE_ID.equals(config.getServiceId())) return config;
+        try {
+            SettingService settings = settingsProvider.get();
+            int connect = settings.getInt(CT_HTTP_CONNECT_TIMEOUT_SECONDS, 0);
+            int read = settings.getInt(CT_HTTP_READ_TIMEOUT_SECONDS, 0);
+            if (connect > 0) config.setConnectTimeout(Duration.ofSeconds(connect));
+            if (read > 0) config.setReadTimeout(Duration.ofSeconds(read));
+        } catch (Exception e) {
+            log.warn("Cliente eCT: timeouts das settings indisponíveis, ficam os do yml: {}", e.toString());
+        }
+        log.info("Cliente eCT: connect-timeout={}, read-timeout={}, alpn={}, pool máx. {} ligações HTTP/1",
+                config.getConnectTimeout().orElse(null), config.getReadTimeout().orElse(null),
+                config.getAlpnModes(), config.getConnectionPoolConfiguration().getMaxConcurrentHttp1Connections());
+        return config;
+    }
+}
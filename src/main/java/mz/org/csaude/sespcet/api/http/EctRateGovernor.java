@@ -0,0 +1,210 @@
+package mz.org.csaude.sespcet.api.http;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.core.annotation.Nullable;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import mz.org.csaude.sespcet.api.error.EctUnavailableException;
+import mz.org.csaude.sespcet.api.service.SettingService;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static mz.org.csaude.sespcet.api.config.SettingKeys.*;
+
+/**
+ * Controlo único do tráfego de saída para o eCT (sync, backfill, webhook, ACK), aplicado por {@link EctResilience}.
+ * <p>
+ * Cada tentativa precisa de um token do balde ({@code CT_HTTP_RATE_PER_SECOND}, rajada até
+ * {@code CT_HTTP_RATE_BURST}) e de uma das {@code CT_HTTP_MAX_IN_FLIGHT} vagas simultâneas. Um 429/503 com
+ * {@code Retry-After} suspende todas as chamadas até essa hora. Os limites lêem-se das settings uma vez por
+ * pedido ({@link Limits}), por isso mudam sem reiniciar. Quem não obtém vaga em
+ * {@code CT_HTTP_ACQUIRE_TIMEOUT_SECONDS} recebe {@link EctUnavailableException}. {@link #acquireAsync} faz o
+ * mesmo sem ocupar threads (espera com timers); a leitura das settings, que pode ir à BD, corre no scheduler
+ * boundedElastic e nunca nas threads de timer/event loop do Reactor.
+ * <p>
+ * Métricas: {@code ect.http.inflight}, {@code ect.http.permit.wait} e {@code ect.http.throttled}.
+ */
+@Slf4j
+@Singleton
+public class EctRateGovernor {
+
+    /** Vaga ocupada por uma chamada; libertar com {@link #close()}. */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    static final double DEFAULT_RATE_PER_SECOND = 10d;
+    static final int DEFAULT_BURST = 20;
+    static final int DEFAULT_MAX_IN_FLIGHT = 4;
+    static final int DEFAULT_ACQUIRE_TIMEOUT_SECONDS = 60;
+    /** Reavaliação de quem espera por uma vaga (no modo bloqueante {@code release} acorda antes). */
+    private static final long IN_FLIGHT_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /** Limites de um pedido, lidos das settings de uma só vez. */
+    record Limits(double ratePerSecond, int burst, int maxInFlight, long acquireTimeoutNanos) {}
+
+    private final SettingService settings;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Timer waitTimer;
+    private final Counter throttled;
+
+    private int inFlight;
+    private double tokens = -1; // < 0 → balde ainda não inicializado (começa cheio)
+    private long refilledAtNanos = System.nanoTime();
+    private long pausedUntilNanos;
+
+    public EctRateGovernor(SettingService settings, @Nullable MeterRegistry meters) {
+        this.settings = settings;
+        if (meters != null) {
+            Gauge.builder("ect.http.inflight", this, EctRateGovernor::inFlight)
+                    .description("Chamadas ao eCT em curso").register(meters);
+            this.waitTimer = Timer.builder("ect.http.permit.wait")
+                    .description("Espera por token/vaga antes de chamar o eCT").register(meters);
+            this.throttled = Counter.builder("ect.http.throttled")
+                    .description("Respostas 429/Retry-After do eCT").register(meters);
+        } else {
+            this.waitTimer = null;
+            this.throttled = null;
+        }
+    }
+
+    /**
+     * Espera por vaga e token (e pelo fim de uma pausa Retry-After).
+     *
+     * @throws EctUnavailableException sem vaga dentro do tempo máximo de espera
+     */
+    public Permit acquire(String operation) throws InterruptedException {
+        Limits limits = limits();
+        long started = System.nanoTime();
+        long deadline = started + limits.acquireTimeoutNanos();
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                long waitNanos = waitNanos(now, limits);
+                if (waitNanos == 0) {
+                    tokens -= 1;
+                    inFlight++;
+                    break;
+                }
+                long remaining = deadline - now;
+                if (remaining <= 0) {
+                    throw new EctUnavailableException("eCT: sem vaga para " + operation + " (limite de tráfego de saída)");
+                }
+                changed.awaitNanos(Math.min(waitNanos, remaining));
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (waitTimer != null) waitTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        return this::release;
+    }
+
+    /**
+     * Versão não bloqueante de {@link #acquire}: a espera é um {@code Mono.delay}, não uma thread parada.
+     * Os limites são lidos uma vez, no boundedElastic, e reutilizados nas reavaliações.
+     */
+    public Mono<Permit> acquireAsync(String operation) {
+        return Mono.fromCallable(this::limits)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(limits -> {
+                    long started = System.nanoTime();
+                    return tryAcquire(operation, started, started + limits.acquireTimeoutNanos(), limits);
+                });
+    }
+
+    /** Limites actuais (settings; pode bloquear numa falha da cache). */
+    Limits limits() {
+        return new Limits(
+                settings.getDouble(CT_HTTP_RATE_PER_SECOND, DEFAULT_RATE_PER_SECOND),
+                Math.max(1, settings.getInt(CT_HTTP_RATE_BURST, DEFAULT_BURST)),
+                Math.max(1, settings.getInt(CT_HTTP_MAX_IN_FLIGHT, DEFAULT_MAX_IN_FLIGHT)),
+                TimeUnit.SECONDS.toNanos(Math.max(1, settings.getInt(CT_HTTP_ACQUIRE_TIMEOUT_SECONDS, DEFAULT_ACQUIRE_TIMEOUT_SECONDS))));
+    }
+
+    /** O eCT pediu para abrandar (429/503): nenhuma chamada sai antes de {@code retryAfter}. */
+    public void onThrottled(String operation, Duration retryAfter) {
+        if (throttled != null) throttled.increment();
+        lock.lock();
+        try {
+            long until = System.nanoTime() + retryAfter.toNanos();
+            if (until > pausedUntilNanos) {
+                pausedUntilNanos = until;
+                log.warn("eCT: pedido para abrandar em {}; chamadas suspensas {} ms", operation, retryAfter.toMillis());
+            }
+            tokens = 0; // retoma devagar, sem rajada
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* ---------------- internos ---------------- */
+
+    private Mono<Permit> tryAcquire(String operation, long started, long deadline, Limits limits) {
+        long waitNanos;
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            waitNanos = waitNanos(now, limits);
+            if (waitNanos == 0) {
+                tokens -= 1;
+                inFlight++;
+            } else if (now >= deadline) {
+                return Mono.error(new EctUnavailableException("eCT: sem vaga para " + operation + " (limite de tráfego de saída)"));
+            } else {
+                waitNanos = Math.min(waitNanos, deadline - now);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (waitNanos == 0) {
+            if (waitTimer != null) waitTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            return Mono.just(this::release);
+        }
+        return Mono.delay(Duration.ofNanos(waitNanos)).then(Mono.defer(() -> tryAcquire(operation, started, deadline, limits)));
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** 0 se pode sair já; senão quanto esperar (nanos). Chamado com o lock; não lê settings. */
+    private long waitNanos(long now, Limits limits) {
+        if (now < pausedUntilNanos) return pausedUntilNanos - now;
+        if (inFlight >= limits.maxInFlight()) return IN_FLIGHT_POLL_NANOS;
+
+        double rate = limits.ratePerSecond();
+        if (rate <= 0) return 0; // sem limite de ritmo
+        int burst = limits.burst();
+        if (tokens < 0) tokens = burst;
+        tokens = Math.min(burst, tokens + (now - refilledAtNanos) / 1e9 * rate);
+        refilledAtNanos = now;
+        if (tokens >= 1) return 0;
+        return (long) Math.ceil((1 - tokens) / rate * 1e9);
+    }
+}
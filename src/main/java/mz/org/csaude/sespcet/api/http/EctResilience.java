@@ -0,0 +1,307 @@
+package mz.org.csaude.sespcet.api.http;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.client.exceptions.HttpClientException;
+import io.micronaut.http.client.exceptions.HttpClientResponseException;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import mz.org.csaude.sespcet.api.error.EctUnavailableException;
+import mz.org.csaude.sespcet.api.service.SettingService;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import static mz.org.csaude.sespcet.api.config.SettingKeys.*;
+
+/**
+ * Retry e circuit breaker das chamadas HTTP ao eCT ({@code EctApiClient}, {@code EctWebhookService},
+ * {@code EctRespostasAckService}). Cada tentativa passa pelo {@link EctRateGovernor} (ritmo e concorrência).
+ * {@link #call} bloqueia a thread chamadora; {@link #mono} aplica a mesma política a chamadas reactivas.
+ * <p>
+ * Falhas transitórias (5xx, 408, 429, timeouts, erros de ligação) de chamadas idempotentes repetem-se até
+ * {@code CT_HTTP_RETRY_MAX_ATTEMPTS} vezes, com espera "decorrelated jitter"
+ * ({@code sleep = min(max, random(base, sleep * 3))}): clientes a falhar ao mesmo tempo não voltam todos juntos.
+ * <p>
+ * {@code CT_HTTP_BREAKER_FAILURES} falhas transitórias seguidas abrem o circuito: durante
+ * {@code CT_HTTP_BREAKER_OPEN_SECONDS} as chamadas falham logo com {@link EctUnavailableException}; depois
+ * passa uma única sonda (meio-aberto) que fecha o circuito ou o volta a abrir. Respostas 4xx e erros locais
+ * (assinatura, decifra) mostram um eCT que responde: não contam como falha nem são repetidos.
+ * <p>
+ * 429 é o eCT a pedir para abrandar: repete-se mas não conta para o circuito. O {@code Retry-After} de um
+ * 429/503 (segundos ou data HTTP) suspende todas as chamadas no governor e é a espera mínima até à nova
+ * tentativa; se passar de {@code CT_HTTP_RETRY_MAX_BACKOFF_MS} a chamada desiste logo.
+ * <p>
+ * Métricas (Micrometer): {@code ect.circuit.state} (0 fechado, 1 meio-aberto, 2 aberto),
+ * {@code ect.http.failures}, {@code ect.http.retries} e {@code ect.circuit.rejected}.
+ */
+@Slf4j
+@Singleton
+public class EctResilience {
+
+    public enum State { CLOSED, HALF_OPEN, OPEN }
+
+    /** Chamada HTTP ao eCT (uma tentativa). */
+    @FunctionalInterface
+    public interface EctCall<T> {
+        T call() throws Exception;
+    }
+
+    static final int DEFAULT_MAX_ATTEMPTS = 4;
+    static final long DEFAULT_BASE_MS = 200L;
+    static final long DEFAULT_MAX_BACKOFF_MS = 10_000L;
+    static final int DEFAULT_BREAKER_FAILURES = 5;
+    static final int DEFAULT_BREAKER_OPEN_SECONDS = 30;
+    static final long DEFAULT_THROTTLE_MS = 1_000L;
+
+    private final SettingService settings;
+    private final EctRateGovernor governor;
+    private final Counter failures;
+    private final Counter retries;
+    private final Counter rejected;
+
+    private volatile State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private boolean probeInFlight;
+
+    public EctResilience(SettingService settings, EctRateGovernor governor, @Nullable MeterRegistry meters) {
+        this.settings = settings;
+        this.governor = governor;
+        if (meters != null) {
+            Gauge.builder("ect.circuit.state", this, r -> r.state.ordinal())
+                    .description("Circuit breaker do eCT (0 fechado, 1 meio-aberto, 2 aberto)").register(meters);
+            this.failures = Counter.builder("ect.http.failures")
+                    .description("Falhas transitórias nas chamadas ao eCT").register(meters);
+            this.retries = Counter.builder("ect.http.retries")
+                    .description("Novas tentativas de chamadas ao eCT").register(meters);
+            this.rejected = Counter.builder("ect.circuit.rejected")
+                    .description("Chamadas recusadas com o circuito aberto").register(meters);
+        } else {
+            this.failures = null;
+            this.retries = null;
+            this.rejected = null;
+        }
+    }
+
+    public State state() {
+        return state;
+    }
+
+    /**
+     * Executa {@code call} através do circuit breaker; se {@code idempotent}, repete falhas transitórias.
+     *
+     * @throws EctUnavailableException circuito aberto
+     * @throws Exception               a falha da última tentativa
+     */
+    public <T> T call(String operation, boolean idempotent, EctCall<T> call) throws Exception {
+        Attempts attempts = new Attempts(operation, idempotent);
+        while (true) {
+            acquire(attempts);
+            boolean recorded = false; // resultado já contado no circuito (e a sonda libertada)
+            try {
+                T result;
+                try (EctRateGovernor.Permit ignored = governor.acquire(operation)) {
+                    result = call.call();
+                }
+                onSuccess();
+                recorded = true;
+                return result;
+            } catch (InterruptedException | EctUnavailableException e) {
+                throw e; // o eCT não chegou a ser chamado
+            } catch (Exception e) {
+                long wait = attempts.onError(e);
+                recorded = true;
+                if (wait < 0) throw e;
+                Thread.sleep(wait);
+            } finally {
+                if (!recorded) releaseProbe(); // interrupção, governor, ou um Error: sem veredicto sobre o eCT
+            }
+        }
+    }
+
+    /**
+     * Versão reactiva de {@link #call}: a mesma política, sem threads paradas (vaga no governor e espera
+     * entre tentativas com timers). {@code call} é invocado de novo em cada tentativa.
+     * A política (tentativas, backoff, circuito) é lida das settings uma vez, no boundedElastic: as
+     * tentativas seguintes correm em threads de timer/event loop, onde não se pode ir à BD.
+     */
+    public <T> Mono<T> mono(String operation, boolean idempotent, Supplier<Mono<T>> call) {
+        return Mono.fromCallable(() -> new Attempts(operation, idempotent))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(attempts -> attempt(attempts, call));
+    }
+
+    private <T> Mono<T> attempt(Attempts attempts, Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            acquire(attempts);
+            return Mono.usingWhen(governor.acquireAsync(attempts.operation),
+                            permit -> call.get(),
+                            permit -> Mono.fromRunnable(permit::close))
+                    .doOnSuccess(v -> onSuccess())
+                    .doOnCancel(this::releaseProbe)
+                    .onErrorResume(e -> {
+                        if (e instanceof EctUnavailableException) {
+                            releaseProbe(); // o eCT não chegou a ser chamado
+                            return Mono.error(e);
+                        }
+                        long wait = attempts.onError(e);
+                        if (wait < 0) return Mono.error(e);
+                        return Mono.delay(Duration.ofMillis(wait)).then(attempt(attempts, call));
+                    });
+        });
+    }
+
+    /**
+     * Estado das tentativas de uma chamada (contador e último intervalo do jitter) e a política lida das
+     * settings na sua criação; depois disso nenhuma decisão volta às settings.
+     */
+    private final class Attempts {
+        final String operation;
+        final int maxAttempts;
+        final long base;
+        final long cap;
+        final long throttleDefaultMs;
+        final long breakerOpenNanos;
+        final int breakerFailures;
+        int attempt = 1;
+        long sleep;
+
+        Attempts(String operation, boolean idempotent) {
+            this.operation = operation;
+            this.maxAttempts = idempotent ? Math.max(1, settings.getInt(CT_HTTP_RETRY_MAX_ATTEMPTS, DEFAULT_MAX_ATTEMPTS)) : 1;
+            this.base = Math.max(1L, settings.getLong(CT_HTTP_RETRY_BASE_MS, DEFAULT_BASE_MS));
+            this.cap = Math.max(base, settings.getLong(CT_HTTP_RETRY_MAX_BACKOFF_MS, DEFAULT_MAX_BACKOFF_MS));
+            this.throttleDefaultMs = settings.getLong(CT_HTTP_THROTTLE_DEFAULT_MS, DEFAULT_THROTTLE_MS);
+            this.breakerOpenNanos = settings.getInt(CT_HTTP_BREAKER_OPEN_SECONDS, DEFAULT_BREAKER_OPEN_SECONDS) * 1_000_000_000L;
+            this.breakerFailures = Math.max(1, settings.getInt(CT_HTTP_BREAKER_FAILURES, DEFAULT_BREAKER_FAILURES));
+            this.sleep = base;
+        }
+
+        /** Regista a falha da tentativa actual; devolve a espera (ms) até à próxima, ou -1 para desistir. */
+        long onError(Throwable e) {
+            if (!isTransient(e)) {
+                onSuccess(); // o eCT respondeu
+                return -1;
+            }
+            Duration retryAfter = retryAfter(e);
+            if (statusOf(e) == 429) {
+                onSuccess(); // vivo, só pede para abrandar
+                if (retryAfter == null) retryAfter = Duration.ofMillis(throttleDefaultMs);
+            } else {
+                onFailure(operation, e, breakerFailures);
+            }
+            if (retryAfter != null) governor.onThrottled(operation, retryAfter);
+            if (attempt >= maxAttempts || state == State.OPEN) return -1; // circuito abriu: não insistir
+            if (retryAfter != null && retryAfter.toMillis() > cap) return -1; // pausa longa: desiste já
+
+            sleep = Math.min(cap, ThreadLocalRandom.current().nextLong(base, Math.max(base + 1, sleep * 3)));
+            long wait = retryAfter != null ? Math.max(sleep, retryAfter.toMillis()) : sleep;
+            if (retries != null) retries.increment();
+            log.warn("eCT {}: tentativa {}/{} falhou ({}); nova tentativa em {} ms",
+                    operation, attempt, maxAttempts, e.toString(), wait);
+            attempt++;
+            return wait;
+        }
+    }
+
+    /** Falha transitória: vale a pena repetir e conta para o circuito. */
+    static boolean isTransient(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof HttpClientResponseException r) {
+                int code = r.getStatus().getCode();
+                return code >= 500 || code == 408 || code == 429;
+            }
+            if (t instanceof HttpClientException || t instanceof IOException || t instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Status HTTP da resposta de erro (ou -1 sem resposta). */
+    static int statusOf(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof HttpClientResponseException r) return r.getStatus().getCode();
+        }
+        return -1;
+    }
+
+    /** {@code Retry-After} de um 429/503, em segundos ou data HTTP; {@code null} se ausente ou inválido. */
+    static Duration retryAfter(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (!(t instanceof HttpClientResponseException r)) continue;
+            int code = r.getStatus().getCode();
+            if (code != 429 && code != 503) return null;
+            String value = r.getResponse().getHeaders().get(HttpHeaders.RETRY_AFTER);
+            if (value == null || value.isBlank()) return null;
+            value = value.trim();
+            try {
+                if (value.chars().allMatch(Character::isDigit)) return Duration.ofSeconds(Long.parseLong(value));
+                Duration d = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME));
+                return d.isNegative() ? Duration.ZERO : d;
+            } catch (RuntimeException ex) {
+                log.debug("eCT: Retry-After inválido '{}'", value);
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /* ---------------- circuito ---------------- */
+
+    private synchronized void acquire(Attempts attempts) {
+        String operation = attempts.operation;
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAtNanos < attempts.breakerOpenNanos) {
+                reject(operation);
+            }
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+            log.info("eCT: circuito meio-aberto; {} segue como sonda", operation);
+        }
+        if (state == State.HALF_OPEN) {
+            if (probeInFlight) reject(operation);
+            probeInFlight = true;
+        }
+    }
+
+    private void reject(String operation) {
+        if (rejected != null) rejected.increment();
+        throw new EctUnavailableException("eCT indisponível (circuito aberto): " + operation);
+    }
+
+    private synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        if (state != State.CLOSED) {
+            state = State.CLOSED;
+            log.info("eCT: circuito fechado");
+        }
+    }
+
+    private synchronized void onFailure(String operation, Throwable e, int threshold) {
+        if (failures != null) failures.increment();
+        consecutiveFailures++;
+        probeInFlight = false;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= threshold)) {
+            state = State.OPEN;
+            openedAtNanos = System.nanoTime();
+            log.warn("eCT: circuito aberto após {} falha(s) seguidas ({}: {})", consecutiveFailures, operation, e.toString());
+        }
+    }
+
+    private synchronized void releaseProbe() {
+        probeInFlight = false;
+    }
+}
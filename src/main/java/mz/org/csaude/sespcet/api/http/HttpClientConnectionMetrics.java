@@ -0,0 +1,214 @@
+package mz.org.csaude.sespcet.api.http;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.context.annotation.Value;
+import io.micronaut.context.event.BeanCreatedEvent;
+import io.micronaut.context.event.ApplicationEventListener;
+import io.micronaut.context.event.BeanCreatedEventListener;
+import io.micronaut.core.annotation.NonNull;
+import io.micronaut.http.client.netty.NettyClientCustomizer;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.ssl.SslHandler;
+import jakarta.inject.Provider;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import mz.org.csaude.sespcet.api.config.SettingChangedEvent;
+import mz.org.csaude.sespcet.api.service.SettingService;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_BASE_URL;
+
+/**
+ * Métricas por host das ligações ao eCT (Netty), que o {@code http.client.requests} não mostra:
+ * <ul>
+ *   <li>{@code http.client.connect} — tempo de ligação TCP;</li>
+ *   <li>{@code http.client.tls.handshake} — tempo (e nº) de handshakes TLS: muitos por sync = ligações não reutilizadas;</li>
+ *   <li>{@code http.client.ttfb} — do primeiro byte escrito ao primeiro byte recebido (exacto em HTTP/1;
+ *       aproximado em HTTP/2, onde vários pedidos partilham a ligação);</li>
+ *   <li>{@code http.client.connections.open} e {@code http.client.pool.saturation} — ligações abertas e a sua
+ *       fracção do máximo do pool do eCT ({@code micronaut.http.services.ect.pool.max-concurrent-http1-connections}).</li>
+ * </ul>
+ * O registo de customizers do Netty é partilhado por todos os clientes; só as ligações ao host do eCT
+ * ({@code micronaut.http.services.ect.url} e a setting {@code CT_BASE_URL}) são medidas — as restantes
+ * retiram o handler no {@code connect}.
+ */
+@Slf4j
+@Singleton
+@Requires(beans = MeterRegistry.class)
+public class HttpClientConnectionMetrics implements BeanCreatedEventListener<NettyClientCustomizer.Registry>,
+        ApplicationEventListener<SettingChangedEvent> {
+
+    private static final String HANDLER_NAME = "sespct-connection-metrics";
+
+    private final MeterRegistry meters;
+    private final int maxConnections;
+    private final String configuredHost;                   // micronaut.http.services.ect.url
+    private final Provider<SettingService> settingsProvider; // LAZY
+    private final Map<String, AtomicInteger> openConnections = new ConcurrentHashMap<>();
+
+    /** Hosts do eCT; lido no event loop, por isso nunca vem das settings ali (só do arranque e de eventos). */
+    private volatile Set<String> ectHosts;
+
+    public HttpClientConnectionMetrics(MeterRegistry meters,
+                                       @Value("${micronaut.http.services.ect.pool.max-concurrent-http1-connections:8}") int maxConnections,
+                                       @Value("${micronaut.http.services.ect.url:}") String ectUrl,
+                                       Provider<SettingService> settingsProvider) {
+        this.meters = meters;
+        this.maxConnections = Math.max(1, maxConnections);
+        this.configuredHost = host(ectUrl);
+        this.settingsProvider = settingsProvider;
+        this.ectHosts = hosts(null);
+    }
+
+    @Override
+    public NettyClientCustomizer.Registry onCreated(@NonNull BeanCreatedEvent<NettyClientCustomizer.Registry> event) {
+        try {
+            ectHosts = hosts(settingsProvider.get().get(CT_BASE_URL, null));
+        } catch (Exception e) {
+            log.warn("Métricas de ligação: CT_BASE_URL indisponível, fica só o host do yml: {}", e.toString());
+        }
+        NettyClientCustomizer.Registry registry = event.getBean();
+        registry.register(new Customizer(null));
+        return registry;
+    }
+
+    @Override
+    public void onApplicationEvent(SettingChangedEvent event) {
+        if (CT_BASE_URL.equals(event.key())) ectHosts = hosts(event.value());
+    }
+
+    private Set<String> hosts(String baseUrl) {
+        String fromSettings = host(baseUrl);
+        if (configuredHost == null) return fromSettings == null ? Set.of() : Set.of(fromSettings);
+        if (fromSettings == null || fromSettings.equals(configuredHost)) return Set.of(configuredHost);
+        return Set.of(configuredHost, fromSettings);
+    }
+
+    private static String host(String url) {
+        if (url == null || url.isBlank()) return null;
+        try {
+            String h = URI.create(url.trim()).getHost();
+            return h == null ? null : h.toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /** Só as ligações (não os streams HTTP/2) recebem o handler. */
+    private final class Customizer implements NettyClientCustomizer {
+        private final Channel channel;
+
+        private Customizer(Channel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public @NonNull NettyClientCustomizer specializeForChannel(@NonNull Channel channel, @NonNull ChannelRole role) {
+            return role == ChannelRole.CONNECTION ? new Customizer(channel) : this;
+        }
+
+        @Override
+        public void onInitialPipelineBuilt() {
+            if (channel != null && channel.pipeline().get(HANDLER_NAME) == null) {
+                channel.pipeline().addFirst(HANDLER_NAME, new ConnectionHandler());
+            }
+        }
+    }
+
+    /**
+     * À cabeça do pipeline (antes do TLS): vê o {@code connect} e os bytes tal como vão para a rede.
+     * Todos os eventos correm no event loop da ligação, por isso o estado não precisa de sincronização.
+     */
+    private final class ConnectionHandler extends ChannelDuplexHandler {
+        private String host = "unknown";
+        private long connectStarted;
+        private boolean ready;       // ligação (e TLS, se houver) pronta: a partir daqui mede TTFB
+        private long requestStarted; // 0 = nada à espera de resposta
+
+        @Override
+        public void connect(ChannelHandlerContext ctx, SocketAddress remote, SocketAddress local,
+                            ChannelPromise promise) throws Exception {
+            host = remote instanceof InetSocketAddress a ? a.getHostString() : String.valueOf(remote);
+            if (!ectHosts.contains(host.toLowerCase(Locale.ROOT))) {
+                ctx.pipeline().remove(this); // outro cliente/host: não mede nada
+                ctx.connect(remote, local, promise);
+                return;
+            }
+            connectStarted = System.nanoTime();
+            promise.addListener(f -> {
+                if (f.isSuccess()) onConnected(ctx);
+            });
+            super.connect(ctx, remote, local, promise);
+        }
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            if (ready && requestStarted == 0) requestStarted = System.nanoTime();
+            super.write(ctx, msg, promise);
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (requestStarted != 0) {
+                timer("http.client.ttfb", "Tempo até ao primeiro byte da resposta", host)
+                        .record(System.nanoTime() - requestStarted, TimeUnit.NANOSECONDS);
+                requestStarted = 0;
+            }
+            super.channelRead(ctx, msg);
+        }
+
+        private void onConnected(ChannelHandlerContext ctx) {
+            long connected = System.nanoTime();
+            timer("http.client.connect", "Tempo de ligação TCP", host)
+                    .record(connected - connectStarted, TimeUnit.NANOSECONDS);
+
+            AtomicInteger open = open(host);
+            open.incrementAndGet();
+            ctx.channel().closeFuture().addListener(f -> open.decrementAndGet());
+
+            SslHandler ssl = ctx.pipeline().get(SslHandler.class);
+            if (ssl == null) {
+                ready = true;
+                return;
+            }
+            ssl.handshakeFuture().addListener(f -> {
+                if (!f.isSuccess()) return;
+                timer("http.client.tls.handshake", "Handshakes TLS (tempo e nº)", host)
+                        .record(System.nanoTime() - connected, TimeUnit.NANOSECONDS);
+                ready = true;
+            });
+        }
+    }
+
+    /* ---------------- helpers ---------------- */
+
+    private Timer timer(String name, String description, String host) {
+        return Timer.builder(name).description(description).tag("host", host).register(meters);
+    }
+
+    private AtomicInteger open(String host) {
+        return openConnections.computeIfAbsent(host, h -> {
+            AtomicInteger n = new AtomicInteger();
+            Gauge.builder("http.client.connections.open", n, AtomicInteger::get)
+                    .description("Ligações abertas").tag("host", h).register(meters);
+            Gauge.builder("http.client.pool.saturation", n, c -> (double) c.get() / maxConnections)
+                    .description("Ligações abertas / máximo do pool").tag("host", h).register(meters);
+            return n;
+        });
+    }
+}
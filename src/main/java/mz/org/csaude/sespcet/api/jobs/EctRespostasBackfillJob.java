@@ -1,15 +1,20 @@
 package mz.org.csaude.sespcet.api.jobs;
 
+import io.micronaut.data.model.Pageable;
+import io.micronaut.scheduling.TaskExecutors;
 import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.inject.Named;
 import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
-import mz.org.csaude.sespcet.api.entity.Pedido;
 import mz.org.csaude.sespcet.api.repository.PedidoRepository;
-import mz.org.csaude.sespcet.api.repository.RespostaRepository;
 import mz.org.csaude.sespcet.api.service.EctSyncService;
 import mz.org.csaude.sespcet.api.service.SettingService;
 
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static mz.org.csaude.sespcet.api.config.SettingKeys.*;
@@ -18,26 +23,36 @@ import static mz.org.csaude.sespcet.api.config.SettingKeys.*;
 @Singleton
 public class EctRespostasBackfillJob {
 
+    private static final int DEFAULT_CHUNK = 200;
+    private static final int DEFAULT_PARALLELISM = 2;
+    private static final int DEFAULT_MAX_AGE_DAYS = 30;
+
     private final EctSyncService sync;
     private final SettingService settings;
     private final PedidoRepository pedidoRepo;
-    private final RespostaRepository respostaRepo;
+    private final ExecutorService executor;
     private final AtomicBoolean running = new AtomicBoolean(false);
 
     public EctRespostasBackfillJob(EctSyncService sync,
                                    SettingService settings,
                                    PedidoRepository pedidoRepo,
-                                   RespostaRepository respostaRepo) {
+                                   @Named(TaskExecutors.BLOCKING) ExecutorService executor) {
         this.sync = sync;
         this.settings = settings;
         this.pedidoRepo = pedidoRepo;
-        this.respostaRepo = respostaRepo;
+        this.executor = executor;
     }
 
     /**
-     * Executa 1x por dia às 13:00 (configurável).
-     * Requisito mínimo: apenas corre se EXISTIREM pedidos na BD.
-     * Depois sincroniza respostas apenas para pedidos que ainda não têm nenhuma resposta.
+     * Sincroniza respostas apenas para pedidos que ainda não têm nenhuma.
+     * <p>
+     * Os pedidos sem resposta saem de um anti-join por keyset (só ids, blocos de
+     * {@code CT_SYNC_RESPOSTAS_BACKFILL_CHUNK}); cada bloco é pedido ao eCT filtrado por esses pedidoIds,
+     * com até {@code CT_SYNC_RESPOSTAS_BACKFILL_PARALLELISM} blocos em simultâneo. Sem pedidos em falta
+     * não há nenhuma chamada ao eCT.
+     * <p>
+     * Só entram pedidos criados nos últimos {@code CT_SYNC_RESPOSTAS_BACKFILL_MAX_AGE_DAYS} dias: um pedido que o
+     * eCT nunca responde (ou cuja resposta chega por webhook a outro nó) deixa de ser perguntado a cada disparo.
      */
     @Scheduled(
             cron = "${sespct.sync.respostas.cron:0 0/5 * * * ?}",
@@ -51,20 +66,58 @@ public class EctRespostasBackfillJob {
 
         try {
             final int pageLimit = settings.getInt(CT_SYNC_PAGE_LIMIT, settings.getInt(CT_SYNC_LIMIT, 20));
+            final int chunk = Math.max(1, settings.getInt(CT_SYNC_RESPOSTAS_BACKFILL_CHUNK, DEFAULT_CHUNK));
+            final int parallelism = Math.max(1, settings.getInt(CT_SYNC_RESPOSTAS_BACKFILL_PARALLELISM, DEFAULT_PARALLELISM));
+            final int maxAgeDays = Math.max(1, settings.getInt(CT_SYNC_RESPOSTAS_BACKFILL_MAX_AGE_DAYS, DEFAULT_MAX_AGE_DAYS));
+            final Date since = Date.from(Instant.now().minus(maxAgeDays, ChronoUnit.DAYS));
 
-            // ===== 0) Verificar rapidamente se há algum Pedido na BD =====
-            boolean temPedidos = false;
-            for (Pedido ignored : pedidoRepo.findAll()) { temPedidos = true; break; }
-            if (!temPedidos) {
-                log.info("EctRespostasBackfillJob: não há pedidos na BD — nada para fazer.");
-                return;
-            }
+            final Semaphore slots = new Semaphore(parallelism);
+            final Set<Long> touched = Collections.synchronizedSet(new LinkedHashSet<>());
+            int pending = 0;
+            int chunks = 0;
 
-            String respostasCursor = settings.get(CT_SYNC_RESPOSTAS_CURSOR, null);
+            try {
+                long after = Long.MIN_VALUE;
+                while (true) {
+                    List<Long> ids = pedidoRepo.findPedidoIdCtWithoutRespostaAfter(after, since, Pageable.from(0, chunk));
+                    if (ids.isEmpty()) break;
+                    pending += ids.size();
+                    chunks++;
+                    after = ids.get(ids.size() - 1);
 
-            List<Long> touched = sync.syncRespostas(pageLimit, respostasCursor, "next", null);
+                    // no máximo 'parallelism' blocos em curso: o varrimento espera por vaga (memória limitada)
+                    slots.acquire();
+                    try {
+                        executor.execute(() -> {
+                            try {
+                                touched.addAll(sync.syncRespostas(pageLimit, null, "next", ids));
+                            } catch (Exception e) {
+                                log.warn("EctRespostasBackfillJob: bloco de {} pedidos (até {}) falhou: {}",
+                                        ids.size(), ids.get(ids.size() - 1), e.toString());
+                            } finally {
+                                slots.release();
+                            }
+                        });
+                    } catch (RuntimeException e) {
+                        slots.release();
+                        throw e;
+                    }
+                    if (ids.size() < chunk) break;
+                }
+            } finally {
+                slots.acquireUninterruptibly(parallelism); // espera pelos blocos em curso
+            }
 
-            log.info("EctRespostasBackfillJob: concluído. Pedidos tocados: {}", touched.size());
+            if (pending == 0) {
+                log.info("EctRespostasBackfillJob: todos os pedidos dos últimos {} dia(s) já têm resposta — nada para fazer.",
+                        maxAgeDays);
+            } else {
+                log.info("EctRespostasBackfillJob: concluído. {} pedido(s) sem resposta em {} bloco(s); pedidos tocados: {}",
+                        pending, chunks, touched.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("EctRespostasBackfillJob: interrompido");
         } catch (Exception e) {
             log.warn("EctRespostasBackfillJob: falha {}", e.toString());
         } finally {
@@ -0,0 +1,139 @@
+package mz.org.csaude.sespcet.api.jobs;
+
+import io.micronaut.data.model.Pageable;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.annotation.Scheduled;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import mz.org.csaude.sespcet.api.repository.WebhookInboxRepository;
+import mz.org.csaude.sespcet.api.service.SettingService;
+import mz.org.csaude.sespcet.api.service.WebhookInboxService;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_WEBHOOK_INBOX_PARALLELISM;
+
+/**
+ * Esvazia o inbox do webhook com até {@code CT_WEBHOOK_INBOX_PARALLELISM} mensagens em paralelo
+ * (executor BLOCKING), que se juntam nos lotes (group commit) do {@code WebhookIngestService}.
+ * Cada mensagem ainda faz o seu claim e o seu markDone (duas transacções curtas fora do lote), por isso mais
+ * paralelismo quase só troca commits de ingestão por commits de estado: a omissão fica em 2.
+ * Acorda a cada webhook recebido ({@link #wake}) e, por segurança, periodicamente: apanha as novas tentativas vencidas e as mensagens de um worker que caiu a meio (posse expirada).
+ */
+@Slf4j
+@Singleton
+public class WebhookInboxWorker {
+
+    private static final int BATCH = 100;
+    private static final int DEFAULT_PARALLELISM = 2;
+
+    private final WebhookInboxService inbox;
+    private final WebhookInboxRepository repo;
+    private final SettingService settings;
+    private final ExecutorService executor;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+
+    public WebhookInboxWorker(WebhookInboxService inbox,
+                              WebhookInboxRepository repo,
+                              SettingService settings,
+                              @Named(TaskExecutors.BLOCKING) ExecutorService executor) {
+        this.inbox = inbox;
+        this.repo = repo;
+        this.settings = settings;
+        this.executor = executor;
+    }
+
+    /** Pede um varrimento do inbox; se já houver um a correr, este repete no fim (nada fica por ver). */
+    public void wake() {
+        pending.set(true);
+        if (!running.compareAndSet(false, true)) return;
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            running.set(false);
+            log.warn("WebhookInboxWorker: executor saturado; fica para o próximo ciclo");
+        }
+    }
+
+    @Scheduled(fixedDelay = "${sespct.webhook.inbox.poll:15s}", initialDelay = "${sespct.webhook.inbox.initial-delay:30s}")
+    void poll() {
+        wake();
+    }
+
+    @Scheduled(
+            cron = "${sespct.webhook.inbox.purge.cron:0 30 3 * * ?}",
+            zoneId = "${sespct.sync.zone:Africa/Maputo}"
+    )
+    void purge() {
+        try {
+            int removed = inbox.purgeDone();
+            if (removed > 0) log.info("WebhookInboxWorker: {} mensagem(ns) concluída(s) removida(s)", removed);
+        } catch (Exception e) {
+            log.warn("WebhookInboxWorker: limpeza falhou {}", e.toString());
+        }
+    }
+
+    private void drain() {
+        try {
+            while (pending.getAndSet(false)) {
+                drainOnce();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("WebhookInboxWorker: interrompido");
+        } catch (Exception e) {
+            log.warn("WebhookInboxWorker: falha {}", e.toString());
+        } finally {
+            running.set(false);
+        }
+        // wake() entre o fim do ciclo e o running=false não arrancou ninguém
+        if (pending.get()) wake();
+    }
+
+    /** Um varrimento por keyset das mensagens prontas; espera que as entregues aos workers terminem. */
+    private void drainOnce() throws InterruptedException {
+        final int parallelism = Math.max(1, settings.getInt(CT_WEBHOOK_INBOX_PARALLELISM, DEFAULT_PARALLELISM));
+        final Semaphore slots = new Semaphore(parallelism);
+        final Date now = new Date();
+        int handed = 0;
+
+        try {
+            long after = 0L;
+            while (true) {
+                List<Long> ids = repo.findReadyIdsAfter(after, now, Pageable.from(0, BATCH));
+                if (ids.isEmpty()) break;
+                after = ids.get(ids.size() - 1);
+
+                for (Long id : ids) {
+                    slots.acquire();
+                    try {
+                        executor.execute(() -> {
+                            try {
+                                inbox.process(id);
+                            } catch (Exception e) {
+                                log.warn("WebhookInboxWorker: mensagem {} falhou: {}", id, e.toString());
+                            } finally {
+                                slots.release();
+                            }
+                        });
+                    } catch (RuntimeException e) {
+                        slots.release();
+                        throw e;
+                    }
+                    handed++;
+                }
+                if (ids.size() < BATCH) break;
+            }
+        } finally {
+            slots.acquireUninterruptibly(parallelism); // espera pelas mensagens em curso
+        }
+        if (handed > 0) log.debug("WebhookInboxWorker: {} mensagem(ns) processada(s)", handed);
+    }
+}
@@ -6,24 +6,28 @@ import io.micronaut.http.HttpRequest;
 import io.micronaut.http.MediaType;
 import io.micronaut.http.client.HttpClient;
 import io.micronaut.http.client.annotation.Client;
+import io.micronaut.http.client.exceptions.HttpClientResponseException;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import mz.org.csaude.sespcet.api.crypto.CtCompactCrypto;
 import mz.org.csaude.sespcet.api.http.CtAuthFilter;
 import mz.org.csaude.sespcet.api.service.SettingService;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static mz.org.csaude.sespcet.api.config.SettingKeys.*;
 
 @Singleton
 public class OAuthService {
 
-    @Inject @Client("/") HttpClient http;
+    @Inject @Client(id = "ect") HttpClient http;
 
     private final SettingService settings;
     private final CtCompactCrypto crypto;
@@ -31,6 +35,8 @@ public class OAuthService {
     private volatile String token;
     private volatile String refreshToken;
     private volatile long expEpoch;
+    /** Pedido de token assíncrono em curso, partilhado pelos chamadores concorrentes. */
+    private final AtomicReference<Mono<String>> pendingToken = new AtomicReference<>();
 
     public OAuthService(SettingService settings, CtCompactCrypto crypto) {
         this.settings = settings;
@@ -51,6 +57,26 @@ public class OAuthService {
         return token;
     }
 
+    /**
+     * Versão não bloqueante de {@link #getToken()}: o token em cache ou um único pedido ao servidor OAuth,
+     * partilhado por quem o pedir entretanto (refresh_token primeiro, client_credentials em recurso).
+     */
+    public Mono<String> getTokenAsync() {
+        return Mono.defer(() -> {
+            long now = System.currentTimeMillis() / 1000;
+            String cached = token;
+            if (cached != null && now < expEpoch - 30) return Mono.just(cached);
+
+            // o pedido ao servidor OAuth lê URL/credenciais das settings (BD): monta-se no boundedElastic
+            Mono<String> fresh = Mono.defer(this::fetchTokenAsync)
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .doFinally(signal -> pendingToken.set(null))
+                    .cache();
+            Mono<String> pending = pendingToken.compareAndExchange(null, fresh);
+            return pending != null ? pending : fresh;
+        });
+    }
+
     public String getAuthorizationHeader() {
         return "Bearer " + getToken();
     }
@@ -58,45 +84,63 @@ public class OAuthService {
     /* --------------- internals --------------- */
 
     private void obtainWithClientCredentials() {
-        URI uri = tokenUri();
-
-        Map<String, String> form = new LinkedHashMap<>();
-        form.put("grant_type", "client_credentials");
-        form.put("scope", "read write");
-
-        HttpRequest<String> req = HttpRequest.POST(uri, encodeForm(form))
-                .contentType(MediaType.APPLICATION_FORM_URLENCODED_TYPE)
-                .header(HttpHeaders.AUTHORIZATION, basicAuth(clientId(), clientSecret()))
-                .header(CtAuthFilter.BYPASS_HEADER, "true");
-
         Map<String, Object> body;
         try {
-            body = http.toBlocking().retrieve(req, Argument.mapOf(String.class, Object.class));
-        } catch (io.micronaut.http.client.exceptions.HttpClientResponseException e) {
+            body = http.toBlocking().retrieve(tokenRequest(clientCredentialsForm()), Argument.mapOf(String.class, Object.class));
+        } catch (HttpClientResponseException e) {
             throw new IllegalStateException("OAuth error: " + e.getStatus(), e);
         }
         applyTokenResponse(body);
     }
 
     private void refreshWithRefreshToken() {
-        URI uri = tokenUri();
+        Map<String, Object> body;
+        try {
+            body = http.toBlocking().retrieve(tokenRequest(refreshForm(refreshToken)), Argument.mapOf(String.class, Object.class));
+        } catch (HttpClientResponseException e) {
+            throw new IllegalStateException("OAuth refresh error: " + e.getStatus(), e);
+        }
+        applyTokenResponse(body);
+    }
 
-        Map<String, String> form = new LinkedHashMap<>();
-        form.put("grant_type", "refresh_token");
-        form.put("refresh_token", refreshToken);
+    private Mono<String> fetchTokenAsync() {
+        // recurso após o refresh falhar: chega na thread do event loop, por isso volta ao boundedElastic
+        Mono<Map<String, Object>> viaClient = Mono.defer(() -> retrieveAsync(clientCredentialsForm(), "OAuth error"))
+                .subscribeOn(Schedulers.boundedElastic());
+        String refresh = refreshToken;
+        Mono<Map<String, Object>> body = refresh == null ? viaClient
+                : retrieveAsync(refreshForm(refresh), "OAuth refresh error").onErrorResume(e -> viaClient);
+        return body.map(b -> {
+            applyTokenResponse(b);
+            return token;
+        });
+    }
 
-        HttpRequest<String> req = HttpRequest.POST(uri, encodeForm(form))
+    private Mono<Map<String, Object>> retrieveAsync(Map<String, String> form, String error) {
+        return Mono.defer(() -> Mono.from(http.retrieve(tokenRequest(form), Argument.mapOf(String.class, Object.class))))
+                .onErrorMap(HttpClientResponseException.class,
+                        e -> new IllegalStateException(error + ": " + e.getStatus(), e));
+    }
+
+    private HttpRequest<String> tokenRequest(Map<String, String> form) {
+        return HttpRequest.POST(tokenUri(), encodeForm(form))
                 .contentType(MediaType.APPLICATION_FORM_URLENCODED_TYPE)
                 .header(HttpHeaders.AUTHORIZATION, basicAuth(clientId(), clientSecret()))
                 .header(CtAuthFilter.BYPASS_HEADER, "true");
+    }
 
-        Map<String, Object> body;
-        try {
-            body = http.toBlocking().retrieve(req, Argument.mapOf(String.class, Object.class));
-        } catch (io.micronaut.http.client.exceptions.HttpClientResponseException e) {
-            throw new IllegalStateException("OAuth refresh error: " + e.getStatus(), e);
-        }
-        applyTokenResponse(body);
+    private static Map<String, String> clientCredentialsForm() {
+        Map<String, String> form = new LinkedHashMap<>();
+        form.put("grant_type", "client_credentials");
+        form.put("scope", "read write");
+        return form;
+    }
+
+    private static Map<String, String> refreshForm(String refreshToken) {
+        Map<String, String> form = new LinkedHashMap<>();
+        form.put("grant_type", "refresh_token");
+        form.put("refresh_token", refreshToken);
+        return form;
     }
 
     private void applyTokenResponse(Map<String, Object> body) {
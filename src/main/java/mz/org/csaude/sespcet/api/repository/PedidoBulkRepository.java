@@ -0,0 +1,102 @@
+package mz.org.csaude.sespcet.api.repository;
+
+import jakarta.inject.Singleton;
+import jakarta.persistence.EntityManager;
+import mz.org.csaude.sespcet.api.entity.Pedido;
+import org.hibernate.Session;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inserção em massa de {@link Pedido} para o sync com o eCT.
+ * <p>
+ * Com {@code GenerationType.IDENTITY} o Hibernate faz um INSERT por entidade (precisa do id gerado logo a seguir).
+ * Aqui cada bloco de até {@value #MAX_ROWS_PER_STATEMENT} pedidos vai num único {@code INSERT ... VALUES (...),(...)}:
+ * uma ida à BD por página do eCT, na mesma transacção/ligação da sessão Hibernate.
+ * A corrida com o webhook em {@code uk_pedidos_pedido_id_ct} resolve-se com {@code ON DUPLICATE KEY UPDATE id = id}
+ * (e não {@code INSERT IGNORE}, que também engoliria truncagens, NOT NULL e erros de FK como simples avisos).
+ * As linhas inseridas por esta chamada são lidas pelo {@code uuid} que gerámos: o nº de linhas afectadas não
+ * as distingue (com {@code useAffectedRows=false}, a omissão do Connector/J, um duplicado também conta 1).
+ */
+@Singleton
+public class PedidoBulkRepository {
+
+    private static final int MAX_ROWS_PER_STATEMENT = 500;
+    private static final int COLUMNS = 8;
+    private static final String INSERT =
+            "INSERT INTO pedidos (uuid, pedido_id_ct, facility_code, payload, status, created_by, created_at, life_cycle_status) VALUES ";
+    private static final String ON_DUPLICATE = " ON DUPLICATE KEY UPDATE id = id";
+
+    private final EntityManager entityManager;
+
+    public PedidoBulkRepository(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * Insere os pedidos ainda inexistentes (linhas com {@code pedido_id_ct} já presente ficam inalteradas).
+     * As entidades não recebem o id gerado.
+     *
+     * @return {@code pedido_id_ct} das linhas efectivamente inseridas por esta chamada
+     */
+    public List<Long> insertNew(List<Pedido> pedidos) {
+        if (pedidos == null || pedidos.isEmpty()) return List.of();
+        Session session = entityManager.unwrap(Session.class);
+        return session.doReturningWork(connection -> {
+            List<Long> inserted = new ArrayList<>(pedidos.size());
+            for (int from = 0; from < pedidos.size(); from += MAX_ROWS_PER_STATEMENT) {
+                List<Pedido> chunk = pedidos.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, pedidos.size()));
+                int affected;
+                try (PreparedStatement ps = connection.prepareStatement(insertSql(chunk.size()))) {
+                    int i = 1;
+                    for (Pedido p : chunk) {
+                        ps.setString(i++, p.getUuid());
+                        ps.setLong(i++, p.getPedidoIdCt());
+                        ps.setString(i++, p.getFacilityCode());
+                        ps.setString(i++, p.getPayload());
+                        ps.setString(i++, p.getStatus().name());
+                        ps.setString(i++, p.getCreatedBy());
+                        ps.setTimestamp(i++, new Timestamp(p.getCreatedAt().getTime()));
+                        ps.setString(i++, p.getLifeCycleStatus().name());
+                    }
+                    // linhas encontradas ou afectadas, conforme useAffectedRows: só 0 é conclusivo
+                    affected = ps.executeUpdate();
+                }
+                if (affected > 0) inserted.addAll(insertedByUuid(connection, chunk));
+            }
+            return inserted;
+        });
+    }
+
+    /** Linhas do bloco que são nossas: as que ficaram com o uuid que gerámos (as outras perderam para outro escritor). */
+    private static List<Long> insertedByUuid(Connection connection, List<Pedido> chunk) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT pedido_id_ct FROM pedidos WHERE uuid IN (");
+        for (int r = 0; r < chunk.size(); r++) sql.append(r > 0 ? ",?" : "?");
+        sql.append(')');
+        List<Long> ids = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement(sql.toString())) {
+            int i = 1;
+            for (Pedido p : chunk) ps.setString(i++, p.getUuid());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) ids.add(rs.getLong(1));
+            }
+        }
+        return ids;
+    }
+
+    private static String insertSql(int rows) {
+        StringBuilder sql = new StringBuilder(INSERT.length() + rows * (COLUMNS * 2 + 3) + ON_DUPLICATE.length());
+        sql.append(INSERT);
+        for (int r = 0; r < rows; r++) {
+            if (r > 0) sql.append(',');
+            sql.append("(?,?,?,?,?,?,?,?)");
+        }
+        return sql.append(ON_DUPLICATE).toString();
+    }
+}
@@ -1,11 +1,15 @@
 package mz.org.csaude.sespcet.api.repository;
 
+import io.micronaut.data.annotation.Query;
 import io.micronaut.data.annotation.Repository;
 import io.micronaut.data.jpa.repository.JpaRepository;
 import io.micronaut.data.model.Page;
 import io.micronaut.data.model.Pageable;
+import mz.org.csaude.sespcet.api.dto.PedidoFacilityDTO;
 import mz.org.csaude.sespcet.api.entity.Pedido;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
@@ -27,6 +31,22 @@ public interface PedidoRepository extends JpaRepository<Pedido, Long> {
     <S extends Pedido> List<S> saveAll(Iterable<S> entities);
 
     Optional<Pedido> findByPedidoIdCt(long pedidoIdCt);
+
+    // Apenas os pedidoIdCt já existentes (uma query IN por página no sync)
+    List<Long> findPedidoIdCtByPedidoIdCtIn(Collection<Long> pedidoIdCts);
+
+    // Só (pedidoIdCt, facilityCode) dos pedidos indicados: sem carregar o payload
+    List<PedidoFacilityDTO> findByPedidoIdCtIn(Collection<Long> pedidoIdCts);
+
+    // Varrimento só de ids por keyset (índice uk_pedidos_pedido_id_ct), para o índice em memória
+    @Query("SELECT p.pedidoIdCt FROM Pedido p WHERE p.pedidoIdCt > :after ORDER BY p.pedidoIdCt")
+    List<Long> findPedidoIdCtAfter(long after, Pageable pageable);
+
+    // Anti-join por keyset: pedidos recentes (criados desde :since) ainda sem nenhuma resposta
+    // (índice idx_respostas_pedido_id_ct), só ids
+    @Query("SELECT p.pedidoIdCt FROM Pedido p WHERE p.pedidoIdCt > :after AND p.createdAt >= :since AND NOT EXISTS " +
+           "(SELECT 1 FROM Resposta r WHERE r.pedidoIdCt = p.pedidoIdCt) ORDER BY p.pedidoIdCt")
+    List<Long> findPedidoIdCtWithoutRespostaAfter(long after, Date since, Pageable pageable);
 }
 
 
@@ -0,0 +1,99 @@
+package mz.org.csaude.sespcet.api.repository;
+
+import jakarta.inject.Singleton;
+import jakarta.persistence.EntityManager;
+import mz.org.csaude.sespcet.api.entity.Resposta;
+import org.hibernate.Session;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Upsert nativo de {@link Resposta} (sync com o eCT e webhook) sobre {@code uk_respostas_resposta_id_ct}.
+ * <p>
+ * Cada bloco de até {@value #MAX_ROWS_PER_STATEMENT} respostas vai num único
+ * {@code INSERT ... VALUES (...),(...) ON DUPLICATE KEY UPDATE}: sem leitura prévia, e sem a corrida entre
+ * webhook e backfill (quem chega em segundo actualiza em vez de falhar com chave duplicada).
+ * Numa resposta já existente, payload/status só são reescritos quando o {@code payload_hash} muda; uma
+ * reentrega igual não toca no LONGTEXT nem volta a pôr a resposta como {@code NEW}.
+ * Blocos mais pequenos que os de {@link PedidoBulkRepository}: o payload pesa no {@code max_allowed_packet}.
+ */
+@Singleton
+public class RespostaBulkRepository {
+
+    private static final int MAX_ROWS_PER_STATEMENT = 100;
+    private static final int COLUMNS = 10;
+    private static final String INSERT =
+            "INSERT INTO respostas (uuid, resposta_id_ct, pedido_id_ct, facility_code, payload, payload_hash, status, " +
+                    "created_by, created_at, life_cycle_status) VALUES ";
+
+    // MariaDB avalia as atribuições da esquerda para a direita com os valores já actualizados:
+    // payload_hash tem de ser a última, para as anteriores compararem com o hash antigo
+    private static final String SAME = "payload_hash <=> VALUES(payload_hash)";
+    private static final String ON_DUPLICATE =
+            " ON DUPLICATE KEY UPDATE " +
+                    "pedido_id_ct = IF(" + SAME + ", pedido_id_ct, VALUES(pedido_id_ct)), " +
+                    "payload = IF(" + SAME + ", payload, VALUES(payload)), " +
+                    "status = IF(" + SAME + ", status, VALUES(status)), " +
+                    "life_cycle_status = IF(" + SAME + ", life_cycle_status, VALUES(life_cycle_status)), " +
+                    "updated_by = IF(" + SAME + ", updated_by, VALUES(created_by)), " +
+                    "updated_at = IF(" + SAME + ", updated_at, VALUES(created_at)), " +
+                    // facility resolvida mais tarde (pedido entretanto sincronizado) é aproveitada; UNKNOWN não apaga uma conhecida
+                    "facility_code = IF(VALUES(facility_code) = 'UNKNOWN', facility_code, VALUES(facility_code)), " +
+                    "payload_hash = VALUES(payload_hash)";
+
+    private final EntityManager entityManager;
+
+    public RespostaBulkRepository(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /** Upsert de uma só resposta (ver {@link #upsert(List)}). */
+    public void upsert(Resposta resposta) {
+        upsert(List.of(resposta));
+    }
+
+    /**
+     * Insere as respostas novas e actualiza as existentes (por {@code resposta_id_ct}), na transacção/ligação
+     * da sessão Hibernate. Cada {@code resposta_id_ct} deve aparecer no máximo uma vez na lista.
+     * O {@code payload_hash} é o da entidade ou, se vier vazio, o do payload; as entidades não recebem o id gerado.
+     */
+    public void upsert(List<Resposta> respostas) {
+        if (respostas == null || respostas.isEmpty()) return;
+        Session session = entityManager.unwrap(Session.class);
+        session.doWork(connection -> {
+            for (int from = 0; from < respostas.size(); from += MAX_ROWS_PER_STATEMENT) {
+                List<Resposta> chunk = respostas.subList(from, Math.min(from + MAX_ROWS_PER_STATEMENT, respostas.size()));
+                try (PreparedStatement ps = connection.prepareStatement(upsertSql(chunk.size()))) {
+                    int i = 1;
+                    for (Resposta r : chunk) {
+                        ps.setString(i++, r.getUuid() != null ? r.getUuid() : UUID.randomUUID().toString());
+                        ps.setLong(i++, r.getRespostaIdCt());
+                        ps.setLong(i++, r.getPedidoIdCt());
+                        ps.setString(i++, r.getFacilityCode());
+                        ps.setString(i++, r.getPayload());
+                        ps.setString(i++, r.getPayloadHash() != null ? r.getPayloadHash() : Resposta.hashPayload(r.getPayload()));
+                        ps.setString(i++, r.getStatus().name());
+                        ps.setString(i++, r.getCreatedBy());
+                        ps.setTimestamp(i++, new Timestamp(r.getCreatedAt().getTime()));
+                        ps.setString(i++, r.getLifeCycleStatus().name());
+                    }
+                    ps.executeUpdate();
+                }
+            }
+        });
+    }
+
+    private static String upsertSql(int rows) {
+        StringBuilder sql = new StringBuilder(INSERT.length() + rows * (COLUMNS * 2 + 3) + ON_DUPLICATE.length());
+        sql.append(INSERT);
+        for (int r = 0; r < rows; r++) {
+            if (r > 0) sql.append(',');
+            sql.append("(?,?,?,?,?,?,?,?,?,?)");
+        }
+        sql.append(ON_DUPLICATE);
+        return sql.toString();
+    }
+}
@@ -0,0 +1,39 @@
+package mz.org.csaude.sespcet.api.repository;
+
+import io.micronaut.data.annotation.Query;
+import io.micronaut.data.annotation.Repository;
+import io.micronaut.data.jpa.repository.JpaRepository;
+import io.micronaut.data.model.Pageable;
+import mz.org.csaude.sespcet.api.entity.WebhookInbox;
+
+import java.util.Date;
+import java.util.List;
+
+@Repository
+public interface WebhookInboxRepository extends JpaRepository<WebhookInbox, Long> {
+
+    // Mensagens prontas (pendentes e vencidas, ou com a posse expirada), por keyset (idx_webhook_inbox_status_next)
+    @Query("SELECT i.id FROM WebhookInbox i WHERE i.id > :after AND " +
+            "((i.status = 'PENDING' AND i.nextAttemptAt <= :now) OR (i.status = 'PROCESSING' AND i.lockedUntil < :now)) " +
+            "ORDER BY i.id")
+    List<Long> findReadyIdsAfter(long after, Date now, Pageable pageable);
+
+    // Posse atómica: 1 → este worker ficou com a mensagem; 0 → outro worker (ou já não está pronta)
+    @Query("UPDATE WebhookInbox i SET i.status = 'PROCESSING', i.lockedUntil = :until, i.attempts = i.attempts + 1 " +
+            "WHERE i.id = :id AND " +
+            "((i.status = 'PENDING' AND i.nextAttemptAt <= :now) OR (i.status = 'PROCESSING' AND i.lockedUntil < :now))")
+    int claim(Long id, Date now, Date until);
+
+    @Query("UPDATE WebhookInbox i SET i.status = 'DONE', i.processedAt = :processedAt, i.lockedUntil = NULL, " +
+            "i.lastError = NULL WHERE i.id = :id")
+    void markDone(Long id, Date processedAt);
+
+    @Query("UPDATE WebhookInbox i SET i.status = :status, i.nextAttemptAt = :nextAttemptAt, i.lockedUntil = NULL, " +
+            "i.lastError = :lastError WHERE i.id = :id")
+    void markFailed(Long id, WebhookInbox.Status status, Date nextAttemptAt, String lastError);
+
+    @Query("DELETE FROM WebhookInbox i WHERE i.status = 'DONE' AND i.processedAt < :before")
+    int deleteDoneBefore(Date before);
+
+    long countByStatus(WebhookInbox.Status status);
+}
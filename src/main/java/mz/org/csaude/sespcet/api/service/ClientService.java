@@ -1,7 +1,12 @@
 package mz.org.csaude.sespcet.api.service;
 
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.exceptions.HttpStatusException;
 import jakarta.inject.Singleton;
 import jakarta.transaction.Transactional;
+import mz.org.csaude.sespcet.api.crypto.CtCompactCrypto;
+import mz.org.csaude.sespcet.api.crypto.CtSessionKeyManager;
+import mz.org.csaude.sespcet.api.crypto.EnvelopeScheme;
 import mz.org.csaude.sespcet.api.dto.ClientRegisterDTO;
 import mz.org.csaude.sespcet.api.entity.Client;
 import mz.org.csaude.sespcet.api.repository.ClientRepository;
@@ -9,15 +14,18 @@ import mz.org.csaude.sespcet.api.util.DateUtils;
 import mz.org.csaude.sespcet.api.util.LifeCycleStatus;
 import mz.org.csaude.sespcet.api.util.Utilities;
 
+import java.security.PublicKey;
 import java.util.Optional;
 
 @Singleton
 public class ClientService {
 
     private final ClientRepository clientRepository;
+    private final CtSessionKeyManager sessionKeys;
 
-    public ClientService(ClientRepository clientRepository) {
+    public ClientService(ClientRepository clientRepository, CtSessionKeyManager sessionKeys) {
         this.clientRepository = clientRepository;
+        this.sessionKeys = sessionKeys;
     }
 
     @Transactional
@@ -32,6 +40,10 @@ public class ClientService {
         client.setUsCode(dto.usCode());
         client.setPublicKey(dto.publicKey());
 
+        EnvelopeScheme scheme = checkKeys(dto);
+        client.setEnvelopeScheme(scheme);
+        client.setSigningPublicKey(dto.signingPublicKey());
+
         // Gera credenciais internas
         client.setClientId(dto.clientId());
         client.setSalt(Utilities.generateSalt());
@@ -43,7 +55,32 @@ public class ClientService {
         client.setCreatedAt(DateUtils.getCurrentDate());
         client.setCreatedBy("System");
 
-        return clientRepository.save(client);
+        Client saved = clientRepository.save(client);
+        // chaves (re)registadas: uma sessão envolvida para a chave anterior não pode continuar a ser usada
+        sessionKeys.invalidate(saved.getClientId());
+        return saved;
+    }
+
+    /** Esquema pedido + tipo das chaves (RSA | X25519 + Ed25519); dados inválidos → 400, não 500. */
+    private EnvelopeScheme checkKeys(ClientRegisterDTO dto) {
+        try {
+            EnvelopeScheme scheme = EnvelopeScheme.from(dto.envelopeScheme());
+            if (dto.publicKey() == null || dto.publicKey().isBlank()) {
+                throw new IllegalArgumentException("publicKey (PEM) em falta");
+            }
+            if (scheme == EnvelopeScheme.X25519 && (dto.signingPublicKey() == null || dto.signingPublicKey().isBlank())) {
+                throw new IllegalArgumentException("Esquema X25519 requer signingPublicKey (Ed25519, PEM)");
+            }
+            // só validação: parse sem passar pela cache de chaves (endpoint anónimo, PEMs arbitrários)
+            PublicKey encryption = CtCompactCrypto.parsePublicKeyPem(dto.publicKey());
+            PublicKey signing = dto.signingPublicKey() == null || dto.signingPublicKey().isBlank()
+                    ? null
+                    : CtCompactCrypto.parsePublicKeyPem(dto.signingPublicKey());
+            scheme.checkClientKeys(encryption, signing);
+            return scheme;
+        } catch (Exception e) {
+            throw new HttpStatusException(HttpStatus.BAD_REQUEST, "Chaves do cliente inválidas: " + e.getMessage());
+        }
     }
 
     public Optional<Client> findByClientId(String clientId) {
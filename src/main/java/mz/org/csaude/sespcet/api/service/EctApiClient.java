@@ -9,7 +9,13 @@ import io.micronaut.json.JsonMapper;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import mz.org.csaude.sespcet.api.crypto.CtCompactCrypto;
+import mz.org.csaude.sespcet.api.crypto.CtKeyRegistry;
 import mz.org.csaude.sespcet.api.dto.EncryptedRequestDTO;
+import mz.org.csaude.sespcet.api.http.EctResilience;
+import mz.org.csaude.sespcet.api.oauth.OAuthService;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
+import reactor.core.scheduler.Schedulers;
 
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
@@ -19,251 +25,211 @@ import java.util.*;
 
 import static mz.org.csaude.sespcet.api.config.SettingKeys.*;
 
+/**
+ * Cliente das paginações por cursor do eCT (envelope cifrado + assinatura em ambos os sentidos).
+ * <p>
+ * Cada busca existe em versão bloqueante ({@code pagePedidos}, ...) e reactiva ({@code pagePedidosAsync}, ...).
+ * A reactiva compõe token OAuth, envelope (pool {@code CtCryptoExecutor}), HTTP e verificação/decifra/parse
+ * sem parar nenhuma thread à espera da rede.
+ */
 @Singleton
 public class EctApiClient {
 
-    @Inject @Client("/") HttpClient http;
+    private static final String PEDIDOS_PATH = "/api/v1/pedido-troca-linhas/cursor-pagination";
+    private static final String RESPOSTAS_PATH = "/api/v1/pedido-troca-linhas-respostas/cursor-pagination";
+
+    @Inject @Client(id = "ect") HttpClient http;
 
     private final SettingService settings;
     private final JsonMapper json;
     private final CtCompactCrypto crypto;
+    private final CtKeyRegistry keys;
+    private final EctResilience resilience;
+    private final OAuthService oauth;
 
-    public EctApiClient(SettingService settings, JsonMapper json, CtCompactCrypto crypto) {
+    public EctApiClient(SettingService settings, JsonMapper json, CtCompactCrypto crypto, CtKeyRegistry keys,
+                        EctResilience resilience, OAuthService oauth) {
         this.settings = settings;
         this.json = json;
         this.crypto = crypto;
+        this.keys = keys;
+        this.resilience = resilience;
+        this.oauth = oauth;
     }
 
     /** --------- PEDIDOS --------- */
 
     /** Chama POST /api/v1/pedido-troca-linhas/cursor-pagination com paginação por cursor no corpo. Retorna JSON claro. */
     public String cursorPedidos(Integer limit, String cursor, String direction, Map<String, Object> criteria) throws Exception {
-        if (criteria == null) criteria = java.util.Collections.emptyMap();
-
-        final java.util.Map<String, Object> cursorObj = new java.util.HashMap<>();
-        if (limit != null)     cursorObj.put("limit", limit);
-        cursorObj.put("cursor_type", "id");
-        if (direction != null) cursorObj.put("direction", direction);
-        if (cursor != null)    cursorObj.put("after", cursor); // ajuste se a API usar outra chave
-
-        final java.util.Map<String, Object> payload = new java.util.HashMap<>();
-        payload.put("cursor", cursorObj);
-        payload.put("criteria", criteria);
-
-        String clearJson = new String(json.writeValueAsBytes(payload), StandardCharsets.UTF_8);
-        String ctPubPem  = settings.get(CT_KEYS_CT_PUBLIC_PEM, null);
-        String apiPrvPem = settings.get(CT_KEYS_SESPCTAPI_PRIVATE_PEM, null);
-        EncryptedRequestDTO body = crypto.buildEncryptedEnvelope(clearJson, ctPubPem, apiPrvPem);
-
-        URI uri = base().path("/api/v1/pedido-troca-linhas/cursor-pagination").build();
-        HttpRequest<EncryptedRequestDTO> req = HttpRequest.POST(uri, body)
-                .contentType(MediaType.APPLICATION_JSON_TYPE)
-                .accept(MediaType.APPLICATION_JSON_TYPE);
+        return new String(cursorPedidosBytes(limit, cursor, direction, criteria), StandardCharsets.UTF_8);
+    }
 
-        EncryptedRequestDTO env = http.toBlocking().retrieve(req, Argument.of(EncryptedRequestDTO.class));
+    /** Igual ao cursorPedidos, mas devolve os bytes decifrados tal como chegaram (sem passar por String). */
+    public byte[] cursorPedidosBytes(Integer limit, String cursor, String direction, Map<String, Object> criteria) throws Exception {
+        return postCursor(PEDIDOS_PATH, limit, cursor, direction, criteria);
+    }
 
-        PublicKey  ctPublic   = crypto.readPublicKeyPem(ctPubPem);
-        PrivateKey apiPrivate = crypto.readPrivateKeyPem(apiPrvPem);
-        if (!CtCompactCrypto.verifySignatureOverString(env.data(), env.signature(), ctPublic)) {
-            throw new IllegalStateException("Invalid server signature");
+    /**
+     * Item de uma página: campos de identificação já extraídos e o JSON original do item
+     * como fatia ({@code offset}, {@code length}) do buffer decifrado da página.
+     */
+    public record PageItem(Long pedidoId, Long respostaId, String facilityCode, byte[] source, int offset, int length) {
+        /** JSON original do item (para a coluna payload). */
+        public String json() {
+            return new String(source, offset, length, StandardCharsets.UTF_8);
         }
-        byte[] clear = crypto.decryptCompact(env.data(), apiPrivate);
-        return new String(clear, StandardCharsets.UTF_8);
     }
 
-    /** Página parseada (itens + cursor + flag). */
-    public record Page(List<Map<String, Object>> items, String nextCursor, Boolean hasMore) {}
+    /** Página parseada (itens + cursor + flag) e tamanho do JSON claro recebido (bytes; para o ajuste do limit). */
+    public record Page(List<PageItem> items, String nextCursor, Boolean hasMore, long clearLength) {}
 
-    /** Igual ao cursorPedidos, mas já devolve itens/next_cursor/has_more parseados. */
+    /** Igual ao cursorPedidos, mas já devolve itens/next_cursor/has_more parseados (streaming, uma passagem). */
     public Page pagePedidos(Integer limit, String cursor, String direction, Map<String, Object> criteria) throws Exception {
-        String clearJson = cursorPedidos(limit, cursor, direction, criteria);
-
-        Map<String, Object> root = json.readValue(
-                clearJson.getBytes(StandardCharsets.UTF_8),
-                Argument.mapOf(String.class, Object.class)
-        );
-        Object d = firstNonNull(root.get("data"), root.get("content"), root);
-
-        @SuppressWarnings("unchecked")
-        List<Map<String, Object>> items = asListOfMaps(
-                (d instanceof Map ? ((Map<?, ?>) d).get("data") : null)
-        );
-        if (items == null) items = asListOfMaps(firstNonNull(root.get("items"), root.get("results")));
-
-        String next = str(
-                (d instanceof Map ? ((Map<?, ?>) d).get("nextCursor") : null),
-                (d instanceof Map ? path(d, "next_cursor") : null),
-                (d instanceof Map ? path(d, "meta", "next_cursor") : null),
-                (d instanceof Map ? path(d, "pagination", "next_cursor") : null),
-                root.get("nextCursor"),
-                path(root, "next_cursor"),
-                path(root, "meta", "next_cursor"),
-                path(root, "pagination", "next_cursor")
-        );
-
-        Boolean hasMore = bool(
-                (d instanceof Map ? path(d, "meta", "has_more") : null),
-                (d instanceof Map ? path(d, "pagination", "has_more") : null),
-                path(root, "meta", "has_more"),
-                path(root, "pagination", "has_more")
-        );
-
-        return new Page(items != null ? items : java.util.Collections.emptyList(), next, hasMore);
+        return EctPageParser.parse(cursorPedidosBytes(limit, cursor, direction, criteria), EctPageParser.Kind.PEDIDOS);
+    }
+
+    /** Versão reactiva de {@link #pagePedidos}. */
+    public Mono<Page> pagePedidosAsync(Integer limit, String cursor, String direction, Map<String, Object> criteria) {
+        return postCursorAsync(PEDIDOS_PATH, limit, cursor, direction, criteria)
+                .handle((bytes, sink) -> parse(bytes, EctPageParser.Kind.PEDIDOS, sink));
     }
 
     /** --------- RESPOSTAS --------- */
 
     /** Chama POST /api/v1/pedido-troca-linhas-respostas/cursor-pagination com paginação por cursor no corpo. Retorna JSON claro. */
     public String cursorRespostas(Integer limit, String cursor, String direction, Map<String, Object> criteria) throws Exception {
-        if (criteria == null) criteria = java.util.Collections.emptyMap();
+        return new String(cursorRespostasBytes(limit, cursor, direction, criteria), StandardCharsets.UTF_8);
+    }
 
-        final java.util.Map<String, Object> cursorObj = new java.util.HashMap<>();
-        if (limit != null)     cursorObj.put("limit", limit);
-        cursorObj.put("cursor_type", "id");
-        if (direction != null) cursorObj.put("direction", direction);
-        if (cursor != null)    cursorObj.put("after", cursor);
+    /** Igual ao cursorRespostas, mas devolve os bytes decifrados tal como chegaram (sem passar por String). */
+    public byte[] cursorRespostasBytes(Integer limit, String cursor, String direction, Map<String, Object> criteria) throws Exception {
+        // criteria ex.: {"pedidoIds":[...]} ou outros filtros suportados
+        return postCursor(RESPOSTAS_PATH, limit, cursor, direction, criteria);
+    }
 
-        final java.util.Map<String, Object> payload = new java.util.HashMap<>();
-        payload.put("cursor", cursorObj);
-        payload.put("criteria", criteria); // ex.: {"pedidoIds":[...]} ou outros filtros suportados
+    /**
+     * Igual ao cursorRespostas, mas já devolve itens/next_cursor/has_more parseados.
+     * Itens em data.data, data (array na raiz), items ou results; cursor preferido em pagination.next_cursor.
+     */
+    public Page pageRespostas(Integer limit, String cursor, String direction, Map<String, Object> criteria) throws Exception {
+        return EctPageParser.parse(cursorRespostasBytes(limit, cursor, direction, criteria), EctPageParser.Kind.RESPOSTAS);
+    }
 
-        String clearJson = new String(json.writeValueAsBytes(payload), StandardCharsets.UTF_8);
-        String ctPubPem  = settings.get(CT_KEYS_CT_PUBLIC_PEM, null);
-        String apiPrvPem = settings.get(CT_KEYS_SESPCTAPI_PRIVATE_PEM, null);
-        EncryptedRequestDTO body = crypto.buildEncryptedEnvelope(clearJson, ctPubPem, apiPrvPem);
+    /** Versão reactiva de {@link #pageRespostas}. */
+    public Mono<Page> pageRespostasAsync(Integer limit, String cursor, String direction, Map<String, Object> criteria) {
+        return postCursorAsync(RESPOSTAS_PATH, limit, cursor, direction, criteria)
+                .handle((bytes, sink) -> parse(bytes, EctPageParser.Kind.RESPOSTAS, sink));
+    }
 
-        URI uri = base().path("/api/v1/pedido-troca-linhas-respostas/cursor-pagination").build();
-        HttpRequest<EncryptedRequestDTO> req = HttpRequest.POST(uri, body)
-                .contentType(MediaType.APPLICATION_JSON_TYPE)
-                .accept(MediaType.APPLICATION_JSON_TYPE);
+    /** Atalho: pagina respostas filtrando por uma lista de pedidoIds. */
+    public Page pageRespostasByPedidoIds(Collection<Long> pedidoIds,
+                                         Integer limit,
+                                         String cursor,
+                                         String direction) throws Exception {
+        return pageRespostas(limit, cursor, direction, pedidoIdsCriteria(pedidoIds));
+    }
 
-        EncryptedRequestDTO env = http.toBlocking().retrieve(req, Argument.of(EncryptedRequestDTO.class));
+    /** Versão reactiva de {@link #pageRespostasByPedidoIds}. */
+    public Mono<Page> pageRespostasByPedidoIdsAsync(Collection<Long> pedidoIds,
+                                                    Integer limit,
+                                                    String cursor,
+                                                    String direction) {
+        return pageRespostasAsync(limit, cursor, direction, pedidoIdsCriteria(pedidoIds));
+    }
+
+    /* ---------------- base e helpers ---------------- */
+
+    /** POST cifrado de paginação por cursor; verifica a assinatura do eCT e devolve o JSON claro em bytes. */
+    private byte[] postCursor(String path, Integer limit, String cursor, String direction, Map<String, Object> criteria) throws Exception {
+        String clearJson = cursorPayload(limit, cursor, direction, criteria);
+        PublicKey  ctPublic   = keys.ctPublicKey();
+        URI uri = base().path(path).build();
+
+        // leitura por cursor é idempotente: falhas transitórias repetem-se (envelope novo em cada tentativa)
+        EncryptedRequestDTO env = resilience.call("POST " + path, true, () -> {
+            // sem kid: o eCT não o conhece; assina-se com o par publicado no eCT
+            PrivateKey apiPrivate = keys.ectSigningKey();
+            EncryptedRequestDTO body = crypto.buildEncryptedEnvelope(clearJson, ctPublic, apiPrivate);
+            HttpRequest<EncryptedRequestDTO> req = HttpRequest.POST(uri, body)
+                    .contentType(MediaType.APPLICATION_JSON_TYPE)
+                    .accept(MediaType.APPLICATION_JSON_TYPE);
+            return http.toBlocking().retrieve(req, Argument.of(EncryptedRequestDTO.class));
+        });
 
-        PublicKey  ctPublic   = crypto.readPublicKeyPem(ctPubPem);
-        PrivateKey apiPrivate = crypto.readPrivateKeyPem(apiPrvPem);
         if (!CtCompactCrypto.verifySignatureOverString(env.data(), env.signature(), ctPublic)) {
             throw new IllegalStateException("Invalid server signature");
         }
-        byte[] clear = crypto.decryptCompact(env.data(), apiPrivate);
-        return new String(clear, StandardCharsets.UTF_8);
+        return crypto.decryptCompact(env.data(), keys.ectDecryptionKey(env.kid()));
     }
 
-    /** Igual ao cursorRespostas, mas já devolve itens/next_cursor/has_more parseados. */
-    public Page pageRespostas(Integer limit, String cursor, String direction, Map<String, Object> criteria) throws Exception {
-        String clearJson = cursorRespostas(limit, cursor, direction, criteria);
+    /** O que um POST de cursor precisa das settings, resolvido antes de entrar nas threads do Reactor. */
+    private record CursorCall(String clearJson, PublicKey ctPublic, PrivateKey published, URI uri) {}
+
+    /**
+     * Versão reactiva de {@link #postCursor}: o token e o envelope vêm em paralelo, o pedido segue com o
+     * Bearer já posto (o {@code CtAuthFilter} não bloqueia) e a resposta é verificada e decifrada no pool de cripto.
+     * Payload, chaves e URI (settings, possivelmente BD) são resolvidos uma vez no boundedElastic; as tentativas,
+     * que correm em threads de timer/event loop, só usam esse resultado.
+     */
+    private Mono<byte[]> postCursorAsync(String path, Integer limit, String cursor, String direction, Map<String, Object> criteria) {
+        return Mono.fromCallable(() -> new CursorCall(cursorPayload(limit, cursor, direction, criteria),
+                        keys.ctPublicKey(), keys.ectSigningKey(), base().path(path).build()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(c -> resilience.<EncryptedRequestDTO>mono("POST " + path, true, () ->
+                                // sem kid: o eCT não o conhece; assina-se com o par publicado (envelope novo em cada tentativa)
+                                Mono.zip(oauth.getTokenAsync(),
+                                                crypto.buildEncryptedEnvelopeAsync(c.clearJson(), c.ctPublic(), c.published(), null))
+                                        .flatMap(t -> Mono.from(http.retrieve(
+                                                HttpRequest.POST(c.uri(), t.getT2())
+                                                        .contentType(MediaType.APPLICATION_JSON_TYPE)
+                                                        .accept(MediaType.APPLICATION_JSON_TYPE)
+                                                        .bearerAuth(t.getT1()),
+                                                Argument.of(EncryptedRequestDTO.class)))))
+                        .flatMap(env -> decryptionKey(c, env.kid())
+                                .flatMap(k -> crypto.openEnvelopeAsync(env, c.ctPublic(), k))));
+    }
 
-        Map<String, Object> root = json.readValue(
-                clearJson.getBytes(StandardCharsets.UTF_8),
-                Argument.mapOf(String.class, Object.class)
-        );
+    /** Sem kid (o caso do eCT) → par publicado já resolvido; com kid → consulta ao keyring no boundedElastic. */
+    private Mono<PrivateKey> decryptionKey(CursorCall c, String kid) {
+        if (kid == null || kid.isBlank()) return Mono.just(c.published());
+        return Mono.fromCallable(() -> keys.ectDecryptionKey(kid)).subscribeOn(Schedulers.boundedElastic());
+    }
 
-        // Pode ser: root.get("data") == List (como no teu exemplo), ou um objeto com "data" dentro
-        Object d = firstNonNull(root.get("data"), root.get("content"), root);
+    /** JSON claro do pedido de paginação ({@code cursor} + {@code criteria}). */
+    private String cursorPayload(Integer limit, String cursor, String direction, Map<String, Object> criteria) throws Exception {
+        if (criteria == null) criteria = java.util.Collections.emptyMap();
 
-        @SuppressWarnings("unchecked")
-        List<Map<String, Object>> items = null;
-        if (d instanceof Map) {
-            items = asListOfMaps(((Map<?, ?>) d).get("data"));
-        }
-        if (items == null && d instanceof List) {
-            items = asListOfMaps(d); // <== caso do exemplo (data é array na raiz)
-        }
-        if (items == null) {
-            items = asListOfMaps(root.get("data")); // fallback explícito
-        }
-        if (items == null) {
-            items = asListOfMaps(firstNonNull(root.get("items"), root.get("results")));
-        }
+        final java.util.Map<String, Object> cursorObj = new java.util.HashMap<>();
+        if (limit != null)     cursorObj.put("limit", limit);
+        cursorObj.put("cursor_type", "id");
+        if (direction != null) cursorObj.put("direction", direction);
+        if (cursor != null)    cursorObj.put("after", cursor); // ajuste se a API usar outra chave
 
-        // nextCursor priorizando "pagination.next_cursor"
-        String next = str(
-                // preferido no novo payload:
-                path(root, "pagination", "next_cursor"),
-                // variantes comuns:
-                path(root, "pagination", "nextCursor"),
-                (d instanceof Map ? path(d, "pagination", "next_cursor") : null),
-                (d instanceof Map ? path(d, "next_cursor") : null),
-                root.get("nextCursor"),
-                path(root, "meta", "next_cursor")
-        );
-
-        // hasMore: no novo payload é "pagination.has_next"
-        Boolean hasMore = bool(
-                path(root, "pagination", "has_next"),
-                // variantes/legados:
-                path(root, "pagination", "has_more"),
-                (d instanceof Map ? path(d, "pagination", "has_next") : null),
-                (d instanceof Map ? path(d, "pagination", "has_more") : null),
-                path(root, "has_next"),
-                path(root, "has_more")
-        );
-        if (hasMore == null) {
-            // heurística: se existe next_cursor, assume que há mais
-            hasMore = (next != null && !next.trim().isEmpty());
-        }
+        final java.util.Map<String, Object> payload = new java.util.HashMap<>();
+        payload.put("cursor", cursorObj);
+        payload.put("criteria", criteria);
 
-        return new Page(items != null ? items : java.util.Collections.emptyList(), next, hasMore);
+        return new String(json.writeValueAsBytes(payload), StandardCharsets.UTF_8);
     }
 
-
-    /** Atalho: pagina respostas filtrando por uma lista de pedidoIds. */
-    public Page pageRespostasByPedidoIds(Collection<Long> pedidoIds,
-                                         Integer limit,
-                                         String cursor,
-                                         String direction) throws Exception {
+    private static Map<String, Object> pedidoIdsCriteria(Collection<Long> pedidoIds) {
         Map<String, Object> criteria = new HashMap<>();
         if (pedidoIds != null && !pedidoIds.isEmpty()) {
             criteria.put("pedidoIds", new ArrayList<>(new LinkedHashSet<>(pedidoIds)));
         }
-        return pageRespostas(limit, cursor, direction, criteria);
+        return criteria;
     }
 
-    /* ---------------- base e helpers ---------------- */
+    private static void parse(byte[] clear, EctPageParser.Kind kind, SynchronousSink<Page> sink) {
+        try {
+            sink.next(EctPageParser.parse(clear, kind));
+        } catch (Exception e) {
+            sink.error(e);
+        }
+    }
 
     private UriBuilder base() {
         String base = settings.get(CT_BASE_URL, "https://api.comitetarvmisau.co.mz");
         return UriBuilder.of(base);
     }
-
-    @SuppressWarnings("unchecked")
-    private static List<Map<String, Object>> asListOfMaps(Object o) {
-        if (!(o instanceof List<?> list)) return null;
-        List<Map<String, Object>> out = new ArrayList<>(list.size());
-        for (Object el : list) if (el instanceof Map) out.add((Map<String, Object>) el);
-        return out;
-    }
-    private static Object path(Object m, String... keys) {
-        Object cur = m;
-        for (String k : keys) {
-            if (!(cur instanceof Map)) return null;
-            cur = ((Map<?, ?>) cur).get(k);
-        }
-        return cur;
-    }
-    private static Object firstNonNull(Object... xs) {
-        for (Object x : xs) if (x != null) return x;
-        return null;
-    }
-    private static String str(Object... candidates) {
-        for (Object c : candidates) {
-            if (c == null) continue;
-            String s = String.valueOf(c).trim();
-            if (!s.isEmpty() && !"null".equalsIgnoreCase(s)) return s;
-        }
-        return null;
-    }
-    private static Boolean bool(Object... candidates) {
-        for (Object c : candidates) {
-            if (c == null) continue;
-            if (c instanceof Boolean b) return b;
-            if (c instanceof Number n) return n.intValue() != 0;
-            if (c instanceof String s) {
-                s = s.trim();
-                if (s.equalsIgnoreCase("true"))  return true;
-                if (s.equalsIgnoreCase("false")) return false;
-                if (s.matches("\\d+")) return Integer.parseInt(s) != 0;
-            }
-        }
-        return null;
-    }
 }
@@ -0,0 +1,137 @@
+package mz.org.csaude.sespcet.api.service;
+
+import io.micronaut.context.event.ApplicationEventListener;
+import io.micronaut.context.event.StartupEvent;
+import io.micronaut.data.model.Pageable;
+import io.micronaut.scheduling.TaskExecutors;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import mz.org.csaude.sespcet.api.repository.PedidoRepository;
+import mz.org.csaude.sespcet.api.util.LongHashSet;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_ID_INDEX_ENABLED;
+
+/**
+ * Índice em memória dos {@code pedidoIdCt} já gravados.
+ * <p>
+ * Construído no arranque (em segundo plano) com um varrimento só de ids por keyset e mantido a cada inserção:
+ * o sync e a resolução de facility respondem "existe?" sem ir à BD. Enquanto não está pronto (ou com
+ * {@code CT_ID_INDEX_ENABLED=false}, a omissão) {@link #knownPedido} devolve {@code null} e o chamador
+ * consulta a BD.
+ * <p>
+ * Desligado por omissão: o índice só é fiável com <b>uma única</b> instância a escrever em pedidos
+ * (outra réplica, um script ou um restauro da BD deixam-no desactualizado). Ligue-o só nesse cenário.
+ * A flag é lida a cada consulta, por isso desligá-lo tem efeito imediato; ligá-lo depois do arranque só
+ * passa a valer no arranque seguinte (é aí que o índice é construído).
+ * <p>
+ * O índice não pode ter falsos negativos (ids na BD que não estão aqui): só esta instância escreve em
+ * pedidos, e estes entram depois do commit ({@link EctSyncService}).
+ */
+@Slf4j
+@Singleton
+public class EctIdIndex implements ApplicationEventListener<StartupEvent> {
+
+    private static final int SCAN_CHUNK = 10_000;
+
+    private final PedidoRepository pedidoRepo;
+    private final SettingService settings;
+    private final ExecutorService loader;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LongHashSet pedidos = new LongHashSet(1 << 16);
+    private volatile boolean ready;
+
+    public EctIdIndex(PedidoRepository pedidoRepo,
+                      SettingService settings,
+                      @Named(TaskExecutors.BLOCKING) ExecutorService loader) {
+        this.pedidoRepo = pedidoRepo;
+        this.settings = settings;
+        this.loader = loader;
+    }
+
+    @Override
+    public void onApplicationEvent(StartupEvent event) {
+        if (!enabled()) {
+            log.info("EctIdIndex: desactivado ({}=false); verificações de existência vão à BD.", CT_ID_INDEX_ENABLED);
+            return;
+        }
+        loader.execute(this::load);
+    }
+
+    /** true/false se o índice está pronto; {@code null} → consultar a BD. */
+    public Boolean knownPedido(long pedidoIdCt) {
+        if (!ready || !enabled()) return null;
+        lock.readLock().lock();
+        try {
+            return pedidos.contains(pedidoIdCt);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Regista pedidos já confirmados na BD (chamar depois do commit). */
+    public void addPedidos(Collection<Long> pedidoIdCts) {
+        addAll(pedidoIdCts);
+    }
+
+    /* ---------------- carga ---------------- */
+
+    private void load() {
+        long started = System.nanoTime();
+        try {
+            int nPedidos = scan();
+            ready = true;
+            long heap;
+            lock.readLock().lock();
+            try {
+                heap = pedidos.tableBytes();
+            } finally {
+                lock.readLock().unlock();
+            }
+            log.info("EctIdIndex: pronto em {} ms ({} pedidos, ~{} KB)",
+                    (System.nanoTime() - started) / 1_000_000, nPedidos, heap / 1024);
+        } catch (Exception e) {
+            log.warn("EctIdIndex: falha a construir o índice; verificações de existência continuam na BD: {}", e.toString());
+        }
+    }
+
+    /**
+     * Carrega os ids por blocos ordenados. As inserções concorrentes entram directamente no mesmo conjunto,
+     * por isso a união no fim do varrimento está completa.
+     */
+    private int scan() {
+        int total = 0;
+        long after = Long.MIN_VALUE;
+        while (true) {
+            List<Long> ids = pedidoRepo.findPedidoIdCtAfter(after, Pageable.from(0, SCAN_CHUNK));
+            if (ids.isEmpty()) return total;
+            addAll(ids);
+            total += ids.size();
+            after = ids.get(ids.size() - 1);
+            if (ids.size() < SCAN_CHUNK) return total;
+        }
+    }
+
+    /* ---------------- helpers ---------------- */
+
+    private boolean enabled() {
+        return settings.getBoolean(CT_ID_INDEX_ENABLED, false);
+    }
+
+    private void addAll(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) return;
+        lock.writeLock().lock();
+        try {
+            for (Long id : ids) if (id != null) pedidos.add(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
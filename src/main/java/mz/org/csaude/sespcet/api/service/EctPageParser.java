@@ -0,0 +1,270 @@
+package mz.org.csaude.sespcet.api.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parser em streaming (Jackson) das páginas de cursor do eCT.
+ * <p>
+ * Percorre o JSON claro uma única vez, sem montar a árvore {@code Map<String,Object>}: do envelope só guarda
+ * os escalares de paginação (next_cursor, has_more/has_next) e de cada item só os campos de identificação
+ * (pedidoId, respostaId, unidade sanitária). O JSON original de cada item fica como fatia do buffer decifrado
+ * ({@link EctApiClient.PageItem}), pronto para a coluna payload sem nova serialização.
+ */
+final class EctPageParser {
+
+    /** Tipo de página (caminhos dos campos e do cursor diferem entre pedidos e respostas). */
+    enum Kind {
+        /** Itens só em {data|content}.data, items ou results: um array "data" na raiz nunca foi aceite para pedidos. */
+        PEDIDOS("dadosPedido",
+                List.of("data.data", "content.data", "items", "results"),
+                Set.of("metadados", "dadosUtente"),
+                Set.of("metadados.pedidoId", "pedido_id", "pedidoId",
+                        "codigo_unidade_sanitaria", "dadosUtente.codigoUnidadeSanitaria", "facilityCode"),
+                List.of("d.nextCursor", "d.next_cursor", "d.meta.next_cursor", "d.pagination.next_cursor",
+                        "nextCursor", "next_cursor", "meta.next_cursor", "pagination.next_cursor"),
+                List.of("d.meta.has_more", "d.pagination.has_more", "meta.has_more", "pagination.has_more")),
+        /** O eCT devolve as respostas com "data" como array na raiz (além das variantes de pedidos). */
+        RESPOSTAS("dadosResposta",
+                List.of("data.data", "content.data", "data", "content", "items", "results"),
+                Set.of("metadados"),
+                Set.of("metadados.respostaId", "respostaId", "metadados.pedidoId", "pedidoId"),
+                List.of("pagination.next_cursor", "pagination.nextCursor", "d.pagination.next_cursor",
+                        "d.next_cursor", "nextCursor", "meta.next_cursor"),
+                List.of("pagination.has_next", "pagination.has_more", "d.pagination.has_next",
+                        "d.pagination.has_more", "has_next", "has_more"));
+
+        final String wrapper;
+        /** Arrays de itens aceites no envelope, por prioridade; "content..." só conta sem "data" na raiz. */
+        final List<String> itemArrays;
+        /** Objectos do item onde vale a pena entrar (relativos ao item ou ao wrapper). */
+        final Set<String> objects;
+        /** Escalares do item a guardar (relativos ao item ou ao wrapper). */
+        final Set<String> fields;
+        /** Candidatos a cursor/has_more por prioridade; "d." = objecto data (ou content). */
+        final List<String> cursorPaths;
+        final List<String> hasMorePaths;
+
+        Kind(String wrapper, List<String> itemArrays, Set<String> objects, Set<String> fields,
+             List<String> cursorPaths, List<String> hasMorePaths) {
+            this.wrapper = wrapper;
+            this.itemArrays = itemArrays;
+            this.objects = objects;
+            this.fields = fields;
+            this.cursorPaths = cursorPaths;
+            this.hasMorePaths = hasMorePaths;
+        }
+    }
+
+    /** Profundidade máxima do envelope percorrida (ex.: data.pagination.next_cursor). */
+    private static final int MAX_ENVELOPE_DEPTH = 2;
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private EctPageParser() {}
+
+    static EctApiClient.Page parse(byte[] clear, Kind kind) throws IOException {
+        Envelope env = new Envelope();
+        try (JsonParser p = JSON.createParser(clear)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalStateException("Página do eCT não é um objecto JSON");
+            }
+            readEnvelope(p, clear, kind, "", 0, env);
+        }
+
+        List<EctApiClient.PageItem> items = null;
+        for (String path : kind.itemArrays) {
+            if (env.hasData && path.startsWith("content")) continue;
+            items = env.arrays.get(path);
+            if (items != null) break;
+        }
+
+        String dataPrefix = env.hasData ? "data." : "content.";
+        String next = null;
+        for (String path : kind.cursorPaths) {
+            next = str(env.scalars.get(resolve(path, dataPrefix)));
+            if (next != null) break;
+        }
+        Boolean hasMore = null;
+        for (String path : kind.hasMorePaths) {
+            hasMore = bool(env.scalars.get(resolve(path, dataPrefix)));
+            if (hasMore != null) break;
+        }
+        if (hasMore == null && kind == Kind.RESPOSTAS) {
+            // heurística: se existe next_cursor, assume que há mais
+            hasMore = next != null;
+        }
+
+        return new EctApiClient.Page(items != null ? items : List.of(), next, hasMore, clear.length);
+    }
+
+    /* ---------------- envelope ---------------- */
+
+    /** O que interessa do envelope: escalares por caminho ("pagination.next_cursor") e arrays de itens. */
+    private static final class Envelope {
+        final Map<String, Object> scalars = new HashMap<>();
+        final Map<String, List<EctApiClient.PageItem>> arrays = new HashMap<>(4);
+        /** Existe "data" não nulo na raiz (senão os caminhos "d." usam "content"). */
+        boolean hasData;
+    }
+
+    /** Lê o objecto actual (já em START_OBJECT): escalares de paginação e arrays de itens. */
+    private static void readEnvelope(JsonParser p, byte[] clear, Kind kind, String prefix, int depth, Envelope env)
+            throws IOException {
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String path = prefix + p.currentName();
+            JsonToken t = p.nextToken();
+            if (depth == 0 && "data".equals(path) && t != JsonToken.VALUE_NULL) env.hasData = true;
+
+            if (t == JsonToken.START_ARRAY && kind.itemArrays.contains(path)) {
+                env.arrays.put(path, readItems(p, clear, kind));
+            } else if (t == JsonToken.START_OBJECT && depth < MAX_ENVELOPE_DEPTH) {
+                readEnvelope(p, clear, kind, path + ".", depth + 1, env);
+            } else if (t.isScalarValue() && t != JsonToken.VALUE_NULL) {
+                env.scalars.put(path, scalar(p, t));
+            } else {
+                p.skipChildren();
+            }
+        }
+    }
+
+    /* ---------------- itens ---------------- */
+
+    /** Lê o array actual (já em START_ARRAY); elementos que não são objectos são ignorados. */
+    private static List<EctApiClient.PageItem> readItems(JsonParser p, byte[] clear, Kind kind) throws IOException {
+        List<EctApiClient.PageItem> items = new ArrayList<>();
+        JsonToken t;
+        while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+            if (t != JsonToken.START_OBJECT) {
+                p.skipChildren();
+                continue;
+            }
+            int start = (int) p.currentTokenLocation().getByteOffset();
+            Map<String, Object> fields = new HashMap<>(8);
+            readItemObject(p, kind, "", fields);
+            int end = (int) p.currentLocation().getByteOffset();
+
+            // item = wrapper (dadosPedido/dadosResposta) ou o próprio objecto; wrapper que não é objecto → ignora
+            Object wrapped = fields.get(kind.wrapper);
+            if (Boolean.FALSE.equals(wrapped)) continue;
+            String base = wrapped != null ? kind.wrapper + "." : "";
+
+            EctApiClient.PageItem item = kind == Kind.PEDIDOS
+                    ? new EctApiClient.PageItem(
+                            num(fields, base + "metadados.pedidoId", base + "pedido_id", base + "pedidoId"),
+                            null,
+                            text(fields, base + "codigo_unidade_sanitaria", base + "dadosUtente.codigoUnidadeSanitaria",
+                                    base + "facilityCode"),
+                            clear, start, end - start)
+                    : new EctApiClient.PageItem(
+                            num(fields, base + "metadados.pedidoId", base + "pedidoId"),
+                            num(fields, base + "metadados.respostaId", base + "respostaId"),
+                            null,
+                            clear, start, end - start);
+            items.add(item);
+        }
+        return items;
+    }
+
+    /** Percorre um objecto do item guardando só os campos de {@link Kind#fields}; o resto é saltado. */
+    private static void readItemObject(JsonParser p, Kind kind, String prefix, Map<String, Object> fields) throws IOException {
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.currentName();
+            String path = prefix + name;
+            JsonToken t = p.nextToken();
+
+            boolean wrapper = prefix.isEmpty() && name.equals(kind.wrapper);
+            if (wrapper && t != JsonToken.VALUE_NULL) {
+                fields.put(path, t == JsonToken.START_OBJECT); // TRUE = objecto; FALSE = outro tipo
+            }
+            if (t == JsonToken.START_OBJECT && (wrapper || isWanted(kind.objects, kind, path))) {
+                readItemObject(p, kind, path + ".", fields);
+            } else if (t.isScalarValue() && t != JsonToken.VALUE_NULL && isWanted(kind.fields, kind, path)) {
+                fields.put(path, scalar(p, t));
+            } else {
+                p.skipChildren();
+            }
+        }
+    }
+
+    /** {@code path} relativo ao item ou ao wrapper está em {@code wanted}? */
+    private static boolean isWanted(Set<String> wanted, Kind kind, String path) {
+        if (wanted.contains(path)) return true;
+        String w = kind.wrapper + ".";
+        return path.startsWith(w) && wanted.contains(path.substring(w.length()));
+    }
+
+    /* ---------------- helpers ---------------- */
+
+    private static String resolve(String path, String dataPrefix) {
+        return path.startsWith("d.") ? dataPrefix + path.substring(2) : path;
+    }
+
+    private static Object scalar(JsonParser p, JsonToken t) throws IOException {
+        return switch (t) {
+            case VALUE_TRUE -> Boolean.TRUE;
+            case VALUE_FALSE -> Boolean.FALSE;
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> p.getNumberValue();
+            default -> p.getText();
+        };
+    }
+
+    /** Primeiro candidato numérico (número JSON ou texto só com dígitos). */
+    private static Long num(Map<String, Object> fields, String... paths) {
+        for (String path : paths) {
+            Object v = fields.get(path);
+            if (v instanceof Number n) return n.longValue();
+            if (v instanceof String s) {
+                Long l = digits(s.trim());
+                if (l != null) return l;
+            }
+        }
+        return null;
+    }
+
+    private static String text(Map<String, Object> fields, String... paths) {
+        for (String path : paths) {
+            String s = str(fields.get(path));
+            if (s != null) return s;
+        }
+        return null;
+    }
+
+    private static Long digits(String s) {
+        if (s.isEmpty() || s.length() > 18) return null;
+        long v = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return null;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    private static String str(Object c) {
+        if (c == null) return null;
+        String s = String.valueOf(c).trim();
+        return (!s.isEmpty() && !"null".equalsIgnoreCase(s)) ? s : null;
+    }
+
+    private static Boolean bool(Object c) {
+        if (c instanceof Boolean b) return b;
+        if (c instanceof Number n) return n.intValue() != 0;
+        if (c instanceof String s) {
+            s = s.trim();
+            if (s.equalsIgnoreCase("true"))  return true;
+            if (s.equalsIgnoreCase("false")) return false;
+            Long l = digits(s);
+            if (l != null) return l != 0;
+        }
+        return null;
+    }
+}
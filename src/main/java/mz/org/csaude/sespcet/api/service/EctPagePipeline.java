@@ -0,0 +1,181 @@
+package mz.org.csaude.sespcet.api.service;
+
+import io.micronaut.core.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paginação por cursor do eCT com pré-busca: uma thread em segundo plano segue o {@code next_cursor}
+ * (HTTP + verificação + decifra + parse em {@link EctApiClient}) enquanto o consumidor grava a página anterior.
+ * <p>
+ * No máximo {@code depth} páginas ficam à espera do consumidor (fila limitada): o produtor bloqueia quando
+ * a BD fica para trás, e a memória não depende do nº total de páginas.
+ * Uma falha do produtor é entregue ao consumidor na posição em que ocorreu.
+ * <p>
+ * Com {@link #reactive} o produtor é um {@link Flux} de páginas encadeadas pelo cursor (cliente reactivo):
+ * não há thread de pré-busca, e a procura ({@code request(n)}) segue o consumo, pelo que continuam a existir
+ * no máximo {@code depth} páginas prontas (mais a que está a ser buscada).
+ */
+@Slf4j
+final class EctPagePipeline implements AutoCloseable {
+
+    /** Busca de uma página a partir do cursor (null → início). */
+    @FunctionalInterface
+    interface Fetcher {
+        EctApiClient.Page fetch(@Nullable String cursor) throws Exception;
+    }
+
+    /** Busca reactiva de uma página a partir do cursor (null → início). */
+    @FunctionalInterface
+    interface ReactiveFetcher {
+        Mono<EctApiClient.Page> fetch(@Nullable String cursor);
+    }
+
+    /** Página buscada com o cursor que a pediu. */
+    record Fetched(int number, @Nullable String cursor, EctApiClient.Page page) {}
+
+    private record Slot(Fetched fetched, Exception error, boolean end) {}
+
+    private static final Slot END = new Slot(null, null, true);
+
+    private final BlockingQueue<Slot> queue;
+    @Nullable private final Future<?> producer;
+    @Nullable private final BaseSubscriber<Fetched> subscriber;
+    private volatile boolean closed;
+    private boolean finished;
+
+    private EctPagePipeline(Fetcher fetcher, @Nullable String startCursor, int maxPages, int depth, ExecutorService executor) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, depth));
+        this.subscriber = null;
+        this.producer = executor.submit(() -> produce(fetcher, startCursor, maxPages));
+    }
+
+    private EctPagePipeline(Flux<Fetched> pages, int depth) {
+        int prefetch = Math.max(1, depth);
+        // nunca há mais de 'prefetch' páginas pedidas por consumir, mais o sinal final: offer() não falha
+        this.queue = new ArrayBlockingQueue<>(prefetch + 1);
+        this.producer = null;
+        this.subscriber = new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                subscription.request(prefetch);
+            }
+
+            @Override
+            protected void hookOnNext(Fetched fetched) {
+                queue.offer(new Slot(fetched, null, false));
+            }
+
+            @Override
+            protected void hookOnComplete() {
+                queue.offer(END);
+            }
+
+            @Override
+            protected void hookOnError(Throwable error) {
+                queue.offer(new Slot(null, error instanceof Exception e ? e : new IllegalStateException(error), false));
+            }
+        };
+        pages.subscribe(subscriber);
+    }
+
+    /** Arranca a pré-busca a partir de {@code startCursor}, no máximo {@code maxPages} páginas. */
+    static EctPagePipeline start(Fetcher fetcher, @Nullable String startCursor, int maxPages, int depth,
+                                 ExecutorService executor) {
+        return new EctPagePipeline(fetcher, startCursor, maxPages, depth, executor);
+    }
+
+    /**
+     * Como {@link #start}, mas com busca reactiva: cada página pede a seguinte pelo {@code next_cursor}
+     * quando chega, sem ocupar threads enquanto espera pela rede.
+     */
+    static EctPagePipeline reactive(ReactiveFetcher fetcher, @Nullable String startCursor, int maxPages, int depth) {
+        Flux<Fetched> pages = Mono.defer(() -> fetcher.fetch(startCursor))
+                .map(page -> new Fetched(1, startCursor, page))
+                .expand(prev -> {
+                    EctApiClient.Page page = prev.page();
+                    boolean empty = page.items() == null || page.items().isEmpty();
+                    if (empty || isLast(page)) return Mono.empty();
+                    String cursor = page.nextCursor().trim();
+                    return Mono.defer(() -> fetcher.fetch(cursor)).map(next -> new Fetched(prev.number() + 1, cursor, next));
+                })
+                .take(Math.max(1, maxPages));
+        return new EctPagePipeline(pages, depth);
+    }
+
+    /** Última página da paginação (o eCT diz que não há mais, ou não devolve cursor seguinte). */
+    static boolean isLast(EctApiClient.Page page) {
+        String next = page.nextCursor();
+        return Boolean.FALSE.equals(page.hasMore()) || next == null || next.isBlank() || "null".equalsIgnoreCase(next.trim());
+    }
+
+    /**
+     * Próxima página, pela ordem do cursor; {@code null} quando a paginação terminou.
+     *
+     * @throws Exception a falha da busca dessa página (as seguintes já não são buscadas)
+     */
+    @Nullable
+    Fetched next() throws Exception {
+        if (finished) return null;
+        Slot slot = queue.take();
+        if (slot.end()) {
+            finished = true;
+            return null;
+        }
+        if (slot.error() != null) {
+            finished = true;
+            throw slot.error();
+        }
+        if (subscriber != null) subscriber.request(1); // repõe a página consumida
+        return slot.fetched();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        queue.clear(); // liberta o produtor se estiver bloqueado na fila
+        if (producer != null) producer.cancel(true);
+        if (subscriber != null) subscriber.dispose();
+    }
+
+    private void produce(Fetcher fetcher, @Nullable String startCursor, int maxPages) {
+        String cursor = startCursor;
+        try {
+            for (int n = 1; n <= maxPages && !closed; n++) {
+                EctApiClient.Page page = fetcher.fetch(cursor);
+                if (!put(new Slot(new Fetched(n, cursor, page), null, false))) return;
+
+                boolean empty = page.items() == null || page.items().isEmpty();
+                if (empty || isLast(page)) break;
+                cursor = page.nextCursor().trim();
+            }
+            put(END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            try {
+                put(new Slot(null, e, false));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Entrega à fila, desistindo se o consumidor fechar o pipeline. */
+    private boolean put(Slot slot) throws InterruptedException {
+        while (!closed) {
+            if (queue.offer(slot, 200, TimeUnit.MILLISECONDS)) return true;
+        }
+        log.debug("EctPagePipeline: fechado pelo consumidor; pré-busca interrompida");
+        return false;
+    }
+}
@@ -0,0 +1,284 @@
+package mz.org.csaude.sespcet.api.service;
+
+import io.micronaut.http.client.exceptions.ContentLengthExceededException;
+import io.micronaut.http.client.exceptions.HttpClientResponseException;
+import io.micronaut.http.client.exceptions.ReadTimeoutException;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import static mz.org.csaude.sespcet.api.config.SettingKeys.*;
+
+/**
+ * Ajusta o {@code limit} do cursor nas paginações do eCT (AIMD: sobe aos poucos, desce para metade).
+ * <p>
+ * Cada página observada (tempo total de HTTP + verificação + decifra + parse, tamanho do JSON claro,
+ * falhas) alimenta médias móveis por fluxo. Páginas rápidas e pequenas fazem o limit crescer ~10%;
+ * uma página acima do tempo alvo ou do tamanho máximo, ou uma falha ligada ao tamanho ({@link #isSizeRelated}),
+ * corta-o para metade. Circuito aberto, 429/503, erros de cliente ou de decifra não mexem no limit.
+ * O limit fica sempre entre {@code CT_SYNC_ADAPTIVE_MIN_LIMIT} e {@code CT_SYNC_ADAPTIVE_MAX_LIMIT}
+ * e nunca acima do que cabe em {@code CT_SYNC_ADAPTIVE_MAX_BYTES} ao tamanho médio por item.
+ * <p>
+ * O estado é gravado nas settings no fim de cada sync ({@link #persist}) e retomado no arranque seguinte,
+ * junto com o limit configurado de que partiu ({@code seed}): se a configuração mudar, o estado gravado é
+ * descartado e o controlador recomeça do novo valor.
+ */
+@Slf4j
+@Singleton
+public class EctPageSizeController {
+
+    /**
+     * Fluxo paginado (estado independente). O backfill de respostas filtra por pedidos e tem páginas com
+     * outro perfil de tamanho/latência, por isso não partilha o estado do sync global de respostas.
+     */
+    public enum Stream { PEDIDOS, RESPOSTAS, RESPOSTAS_BACKFILL }
+
+    /** Busca de uma página com o limit a usar. */
+    @FunctionalInterface
+    public interface LimitedFetcher {
+        EctApiClient.Page fetch(int limit, String cursor) throws Exception;
+    }
+
+    /** Busca reactiva de uma página com o limit a usar. */
+    @FunctionalInterface
+    public interface ReactiveLimitedFetcher {
+        Mono<EctApiClient.Page> fetch(int limit, String cursor);
+    }
+
+    static final int DEFAULT_MIN_LIMIT = 10;
+    static final int DEFAULT_MAX_LIMIT = 500;
+    static final long DEFAULT_TARGET_MS = 3_000L;
+    static final long DEFAULT_MAX_BYTES = 4L * 1024 * 1024;
+
+    /** Peso da observação mais recente nas médias móveis. */
+    private static final double ALPHA = 0.3;
+    /** Acima desta taxa de falhas (média móvel) o limit não cresce. */
+    private static final double MAX_ERROR_RATE_TO_GROW = 0.1;
+
+    private static final class State {
+        /** Limit configurado de que o estado partiu. */
+        int seed;
+        int limit;
+        double latencyMs;
+        double errorRate;
+        double bytesPerItem;
+        boolean dirty;
+    }
+
+    private final SettingService settings;
+    private final Map<Stream, State> states = new EnumMap<>(Stream.class);
+
+    public EctPageSizeController(SettingService settings) {
+        this.settings = settings;
+    }
+
+    public boolean enabled() {
+        return settings.getBoolean(CT_SYNC_ADAPTIVE_ENABLED, true);
+    }
+
+    /**
+     * Limit actual do fluxo; na primeira utilização parte do estado gravado ou de {@code fallback}
+     * (o limit configurado). Se {@code fallback} mudou desde que o estado foi criado, recomeça dele.
+     */
+    public synchronized int limit(Stream stream, int fallback) {
+        State s = state(stream, fallback);
+        if (s.seed != fallback) {
+            log.info("EctPageSizeController[{}]: limit configurado mudou {} → {}; estado reiniciado", stream, s.seed, fallback);
+            s = reseed(stream, fallback);
+        }
+        return s.limit;
+    }
+
+    /**
+     * Regista uma página bem sucedida.
+     *
+     * @param requested   limit pedido
+     * @param items       nº de itens devolvidos
+     * @param clearLength tamanho do JSON claro
+     * @param elapsedNanos tempo total da busca da página
+     */
+    public synchronized void onSuccess(Stream stream, int requested, int items, long clearLength, long elapsedNanos) {
+        State s = current(stream, requested);
+        double ms = elapsedNanos / 1_000_000d;
+        s.latencyMs = ewma(s.latencyMs, ms);
+        s.errorRate += ALPHA * (0d - s.errorRate);
+        if (items > 0 && clearLength > 0) s.bytesPerItem = ewma(s.bytesPerItem, (double) clearLength / items);
+
+        long targetMs = settings.getLong(CT_SYNC_ADAPTIVE_TARGET_MS, DEFAULT_TARGET_MS);
+        long maxBytes = settings.getLong(CT_SYNC_ADAPTIVE_MAX_BYTES, DEFAULT_MAX_BYTES);
+
+        int next = s.limit;
+        if (ms > targetMs || clearLength > maxBytes) {
+            next = s.limit / 2;
+        } else if (items >= requested          // página cheia: há mais para trazer
+                && s.latencyMs < targetMs / 2d
+                && clearLength < maxBytes / 2
+                && s.errorRate < MAX_ERROR_RATE_TO_GROW) {
+            next = s.limit + Math.max(1, s.limit / 10);
+        }
+        if (s.bytesPerItem > 0) next = (int) Math.min(next, (long) (maxBytes / s.bytesPerItem));
+        apply(stream, s, next, "página de %d itens, %d bytes em %.0f ms".formatted(items, clearLength, ms));
+    }
+
+    /**
+     * Regista uma falha da busca. Só as ligadas ao tamanho da página ({@link #isSizeRelated}) contam para a taxa
+     * de falhas e cortam o limit para metade; as restantes (circuito aberto, 429/503, 4xx, decifra...) não dizem
+     * nada sobre o tamanho e são ignoradas.
+     */
+    public synchronized void onError(Stream stream, int requested, Throwable error) {
+        if (!isSizeRelated(error)) {
+            log.debug("EctPageSizeController[{}]: falha sem relação com o tamanho ignorada ({})", stream, error.toString());
+            return;
+        }
+        State s = current(stream, requested);
+        s.errorRate += ALPHA * (1d - s.errorRate);
+        apply(stream, s, s.limit / 2, "falha " + error);
+    }
+
+    /** Timeout, 408/413/504 ou resposta acima do tamanho máximo do cliente HTTP. */
+    static boolean isSizeRelated(Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            if (t instanceof HttpClientResponseException r) {
+                int code = r.getStatus().getCode();
+                return code == 408 || code == 413 || code == 504;
+            }
+            if (t instanceof TimeoutException || t instanceof ReadTimeoutException
+                    || t instanceof ContentLengthExceededException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Grava o estado do fluxo nas settings (só se mudou desde a última gravação). */
+    public void persist(Stream stream) {
+        int seed;
+        int limit;
+        double latencyMs;
+        double errorRate;
+        synchronized (this) {
+            State s = states.get(stream);
+            if (s == null || !s.dirty) return;
+            s.dirty = false;
+            seed = s.seed;
+            limit = s.limit;
+            latencyMs = s.latencyMs;
+            errorRate = s.errorRate;
+        }
+        String prefix = statePrefix(stream);
+        String label = stream.name().toLowerCase(Locale.ROOT);
+        settings.upsert(prefix + "seed", String.valueOf(seed), "NUMBER",
+                "Limit configurado de que partiu o ajuste (" + label + ")", true, "system");
+        settings.upsert(prefix + "limit", String.valueOf(limit), "NUMBER",
+                "Limit por página ajustado (" + label + ")", true, "system");
+        settings.upsert(prefix + "latencyMs", String.format(Locale.ROOT, "%.1f", latencyMs), "NUMBER",
+                "Latência média por página em ms (" + label + ")", true, "system");
+        settings.upsert(prefix + "errorRate", String.format(Locale.ROOT, "%.3f", errorRate), "NUMBER",
+                "Taxa média de falhas por página (" + label + ")", true, "system");
+    }
+
+    /**
+     * Fetcher para o {@link EctPagePipeline} que pede cada página com o limit actual e
+     * realimenta o controlador com o resultado.
+     */
+    EctPagePipeline.Fetcher adaptive(Stream stream, int fallback, LimitedFetcher fetcher) {
+        return cursor -> {
+            int limit = limit(stream, fallback);
+            long started = System.nanoTime();
+            try {
+                EctApiClient.Page page = fetcher.fetch(limit, cursor);
+                int items = page.items() != null ? page.items().size() : 0;
+                onSuccess(stream, limit, items, page.clearLength(), System.nanoTime() - started);
+                return page;
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                onError(stream, limit, e);
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * Como {@link #adaptive}, para o {@link EctPagePipeline#reactive} (mede da subscrição até à página parseada).
+     * Ler o limit e realimentar o controlador vai às settings, por isso ambos correm no boundedElastic e não na
+     * thread de timer/cripto/event loop onde a página chega.
+     */
+    EctPagePipeline.ReactiveFetcher adaptiveReactive(Stream stream, int fallback, ReactiveLimitedFetcher fetcher) {
+        return cursor -> Mono.fromCallable(() -> limit(stream, fallback))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(limit -> {
+                    long started = System.nanoTime();
+                    return fetcher.fetch(limit, cursor)
+                            .publishOn(Schedulers.boundedElastic())
+                            .doOnNext(page -> onSuccess(stream, limit, page.items() != null ? page.items().size() : 0,
+                                    page.clearLength(), System.nanoTime() - started))
+                            .doOnError(e -> onError(stream, limit, e));
+                });
+    }
+
+    /* ---------------- helpers ---------------- */
+
+    /** Estado do fluxo; na primeira vez lê o gravado, se tiver partido do mesmo {@code fallback}. */
+    private State state(Stream stream, int fallback) {
+        State s = states.get(stream);
+        if (s == null) {
+            String prefix = statePrefix(stream);
+            if (settings.getInt(prefix + "seed", -1) != fallback) return reseed(stream, fallback);
+            s = new State();
+            s.seed = fallback;
+            s.limit = clamp(settings.getInt(prefix + "limit", fallback));
+            s.latencyMs = settings.getDouble(prefix + "latencyMs", 0d);
+            s.errorRate = settings.getDouble(prefix + "errorRate", 0d);
+            states.put(stream, s);
+            log.info("EctPageSizeController[{}]: limit inicial {}", stream, s.limit);
+        }
+        return s;
+    }
+
+    /** Estado já em uso (sem reinício por {@code seed}: {@code requested} é o limit ajustado, não o configurado). */
+    private State current(Stream stream, int requested) {
+        State s = states.get(stream);
+        return s != null ? s : state(stream, requested);
+    }
+
+    private State reseed(Stream stream, int fallback) {
+        State s = new State();
+        s.seed = fallback;
+        s.limit = clamp(fallback);
+        s.dirty = true;
+        states.put(stream, s);
+        log.info("EctPageSizeController[{}]: limit inicial {} (configuração)", stream, s.limit);
+        return s;
+    }
+
+    private void apply(Stream stream, State s, int next, String reason) {
+        next = clamp(next);
+        if (next != s.limit) {
+            log.info("EctPageSizeController[{}]: limit {} → {} ({})", stream, s.limit, next, reason);
+            s.limit = next;
+        }
+        s.dirty = true;
+    }
+
+    private int clamp(int limit) {
+        int min = Math.max(1, settings.getInt(CT_SYNC_ADAPTIVE_MIN_LIMIT, DEFAULT_MIN_LIMIT));
+        int max = Math.max(min, settings.getInt(CT_SYNC_ADAPTIVE_MAX_LIMIT, DEFAULT_MAX_LIMIT));
+        return Math.max(min, Math.min(max, limit));
+    }
+
+    /** Média móvel; a primeira amostra (média ainda a zero) entra directamente. */
+    private static double ewma(double current, double sample) {
+        return current == 0d ? sample : current + ALPHA * (sample - current);
+    }
+
+    private static String statePrefix(Stream stream) {
+        return CT_SYNC_ADAPTIVE_STATE_PREFIX + stream.name().toLowerCase(Locale.ROOT) + ".";
+    }
+}
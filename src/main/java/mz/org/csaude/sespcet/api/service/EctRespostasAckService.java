@@ -11,7 +11,9 @@ import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
 import mz.org.csaude.sespcet.api.crypto.CtCompactCrypto;
+import mz.org.csaude.sespcet.api.crypto.CtKeyRegistry;
 import mz.org.csaude.sespcet.api.dto.EncryptedRequestDTO;
+import mz.org.csaude.sespcet.api.http.EctResilience;
 import mz.org.csaude.sespcet.api.oauth.OAuthService;
 
 import java.net.URI;
@@ -25,21 +27,27 @@ import static mz.org.csaude.sespcet.api.config.SettingKeys.*;
 @Singleton
 public class EctRespostasAckService {
 
-    @Inject @Client("/") HttpClient http;
+    @Inject @Client(id = "ect") HttpClient http;
 
     private final SettingService settings;
     private final OAuthService oauth;
     private final CtCompactCrypto crypto;
+    private final CtKeyRegistry keys;
     private final JsonMapper json;
+    private final EctResilience resilience;
 
     public EctRespostasAckService(SettingService settings,
                                   OAuthService oauth,
                                   CtCompactCrypto crypto,
-                                  JsonMapper json) {
+                                  CtKeyRegistry keys,
+                                  JsonMapper json,
+                                  EctResilience resilience) {
         this.settings = settings;
         this.oauth = oauth;
         this.crypto = crypto;
+        this.keys = keys;
         this.json = json;
+        this.resilience = resilience;
     }
 
     /** Envia ACK assíncrono ao eCT com os pedidoIds consumidos. */
@@ -58,15 +66,7 @@ public class EctRespostasAckService {
 
             String clearJson = new String(json.writeValueAsBytes(ack), StandardCharsets.UTF_8);
 
-            // 2) cifrar + assinar
-            String ctPubPem  = settings.get(CT_KEYS_CT_PUBLIC_PEM, null);
-            String apiPrvPem = settings.get(CT_KEYS_SESPCTAPI_PRIVATE_PEM, null);
-            if (ctPubPem == null || apiPrvPem == null) {
-                throw new IllegalStateException("ACK: chaves ausentes (CT_KEYS_CT_PUBLIC_PEM / CT_KEYS_SESPCTAPI_PRIVATE_PEM)");
-            }
-            EncryptedRequestDTO body = crypto.buildEncryptedEnvelope(clearJson, ctPubPem, apiPrvPem);
-
-            // 3) POST para /api/respostas/consumed no eCT
+            // 2) destino: /api/respostas/consumed no eCT
             String consumedUrl = settings.get(CT_ENDPOINT_RESPOSTAS_CONSUMED, null);
             if (consumedUrl == null || consumedUrl.isBlank()) {
                 String base = settings.get(CT_BASE_URL, "https://api.comitetarvmisau.co.mz");
@@ -74,12 +74,22 @@ public class EctRespostasAckService {
             }
             URI uri = io.micronaut.http.uri.UriBuilder.of(consumedUrl).build();
 
-            HttpRequest<EncryptedRequestDTO> req = HttpRequest.POST(uri, body)
-                    .contentType(MediaType.APPLICATION_JSON_TYPE)
-                    .accept(MediaType.APPLICATION_JSON_TYPE)
-                    .bearerAuth(oauth.getToken());
-
-            HttpResponse<String> resp = http.toBlocking().exchange(req, Argument.of(String.class));
+            // 3) cifrar + assinar + POST. ACK repetido é inofensivo (marca os mesmos ids): pode repetir-se.
+            // O envelope é montado dentro da tentativa: cada repetição usa as chaves actuais (rotação, chave do
+            // eCT corrigida) e um IV/chave de conteúdo novos.
+            HttpResponse<String> resp = resilience.call("POST respostas/consumed", true, () -> {
+                String ctPubPem = settings.get(CT_KEYS_CT_PUBLIC_PEM, null);
+                if (ctPubPem == null) {
+                    throw new IllegalStateException("ACK: chave ausente (CT_KEYS_CT_PUBLIC_PEM)");
+                }
+                EncryptedRequestDTO body = crypto.buildEncryptedEnvelope(clearJson,
+                        crypto.readPublicKeyPem(ctPubPem), keys.ectSigningKey());
+                HttpRequest<EncryptedRequestDTO> req = HttpRequest.POST(uri, body)
+                        .contentType(MediaType.APPLICATION_JSON_TYPE)
+                        .accept(MediaType.APPLICATION_JSON_TYPE)
+                        .bearerAuth(oauth.getToken());
+                return http.toBlocking().exchange(req, Argument.of(String.class));
+            });
             int code = resp.getStatus().getCode();
             if (code < 200 || code >= 300) {
                 throw new IllegalStateException("ACK falhou: status=" + resp.getStatus() +
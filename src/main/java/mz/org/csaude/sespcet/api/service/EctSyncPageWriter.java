@@ -0,0 +1,157 @@
+package mz.org.csaude.sespcet.api.service;
+
+import io.micronaut.core.annotation.Nullable;
+import jakarta.inject.Singleton;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import mz.org.csaude.sespcet.api.entity.Pedido;
+import mz.org.csaude.sespcet.api.entity.Resposta;
+import mz.org.csaude.sespcet.api.repository.PedidoBulkRepository;
+import mz.org.csaude.sespcet.api.repository.PedidoRepository;
+import mz.org.csaude.sespcet.api.repository.RespostaBulkRepository;
+import mz.org.csaude.sespcet.api.util.DateUtils;
+import mz.org.csaude.sespcet.api.util.LifeCycleStatus;
+
+import java.util.*;
+
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_SYNC_CURSOR;
+
+/**
+ * Unidade de trabalho de uma página do sync com o eCT ({@link EctSyncService}).
+ * <p>
+ * Cada método é uma transacção curta: as linhas da página e o cursor seguinte são confirmados juntos.
+ * Um sync interrompido retoma na página a seguir à última confirmada, a ligação volta ao pool no fim de
+ * cada página e o contexto de persistência não cresce com o nº de páginas.
+ * Bean separado para que o {@code @Transactional} passe pelo proxy (chamadas internas não passariam).
+ */
+@Slf4j
+@Singleton
+public class EctSyncPageWriter {
+
+    private final PedidoRepository pedidoRepo;
+    private final PedidoBulkRepository pedidoBulkRepo;
+    private final RespostaBulkRepository respostaBulkRepo;
+    private final SettingService settings;
+    private final EctIdIndex idIndex;
+    private final PedidoFacilityResolver facilityResolver;
+
+    public EctSyncPageWriter(PedidoRepository pedidoRepo,
+                             PedidoBulkRepository pedidoBulkRepo,
+                             RespostaBulkRepository respostaBulkRepo,
+                             SettingService settings,
+                             EctIdIndex idIndex,
+                             PedidoFacilityResolver facilityResolver) {
+        this.pedidoRepo = pedidoRepo;
+        this.pedidoBulkRepo = pedidoBulkRepo;
+        this.respostaBulkRepo = respostaBulkRepo;
+        this.settings = settings;
+        this.idIndex = idIndex;
+        this.facilityResolver = facilityResolver;
+    }
+
+    /**
+     * Insere os Pedidos novos da página e, na mesma transacção, avança {@code CT_SYNC_CURSOR}.
+     *
+     * @param checkpoint cursor a gravar (null → fim da paginação, cursor inalterado)
+     * @return pedidoIds inseridos nesta página (a registar no {@link EctIdIndex} depois do commit)
+     */
+    @Transactional(rollbackOn = Exception.class)
+    public List<Long> writePedidosPage(List<EctApiClient.PageItem> items, @Nullable String checkpoint) {
+        // 1) candidatos da página (sem repetidos): pedidoId → facility + item
+        Map<Long, String> facilities = new LinkedHashMap<>();
+        Map<Long, EctApiClient.PageItem> rawItems = new HashMap<>();
+        for (EctApiClient.PageItem it : items) {
+            Long pedidoId = it.pedidoId();
+            if (pedidoId == null || facilities.containsKey(pedidoId)) continue;
+
+            facilities.put(pedidoId, it.facilityCode() != null ? it.facilityCode() : "UNKNOWN");
+            rawItems.put(pedidoId, it);
+        }
+
+        // 2) evitar duplicados: índice em memória; sem índice pronto, uma única query IN para a página inteira
+        boolean indexed = true;
+        for (Iterator<Long> ids = facilities.keySet().iterator(); ids.hasNext(); ) {
+            Boolean known = idIndex.knownPedido(ids.next());
+            if (known == null) {
+                indexed = false;
+                break;
+            }
+            if (known) ids.remove();
+        }
+        if (!indexed && !facilities.isEmpty()) {
+            pedidoRepo.findPedidoIdCtByPedidoIdCtIn(facilities.keySet()).forEach(facilities::remove);
+        }
+
+        // 3) novos pedidos num único INSERT multi-linha
+        List<Pedido> novos = new ArrayList<>(facilities.size());
+        for (Map.Entry<Long, String> e : facilities.entrySet()) {
+            Pedido p = new Pedido();
+            p.setPedidoIdCt(e.getKey());
+            p.setFacilityCode(e.getValue());
+            p.setPayload(rawItems.get(e.getKey()).json());
+            p.setStatus(Pedido.Status.NEW);
+            p.setCreatedAt(DateUtils.getCurrentDate());
+            p.setCreatedBy("system");
+            p.setUuid(java.util.UUID.randomUUID().toString());
+            p.setLifeCycleStatus(LifeCycleStatus.ACTIVE);
+            novos.add(p);
+        }
+        List<Long> inserted = pedidoBulkRepo.insertNew(novos);
+        log.debug("Sync: {} candidatos novos, {} inseridos", novos.size(), inserted.size());
+
+        // 4) checkpoint do cursor no mesmo commit
+        if (checkpoint != null) {
+            settings.upsert(CT_SYNC_CURSOR, checkpoint, "STRING",
+                    "Último cursor de sync (eCT)", true, "system");
+        }
+        return inserted;
+    }
+
+    /**
+     * Grava/actualiza as Respostas da página numa só transacção.
+     *
+     * @return pedidoIds tocados nesta página
+     */
+    @Transactional(rollbackOn = Exception.class)
+    public Set<Long> writeRespostasPage(List<EctApiClient.PageItem> items) {
+        // facility de todos os pedidos da página de uma vez (cache + uma projecção)
+        List<Long> pedidoIds = new ArrayList<>(items.size());
+        for (EctApiClient.PageItem it : items) if (it.pedidoId() != null) pedidoIds.add(it.pedidoId());
+        Map<Long, String> facilityByPedido = facilityResolver.resolve(pedidoIds);
+
+        // uma linha por respostaId (a última da página prevalece), gravadas num só upsert
+        Map<Long, Resposta> byResposta = new LinkedHashMap<>();
+        Set<Long> touched = new LinkedHashSet<>();
+        for (EctApiClient.PageItem it : items) {
+            Resposta r = toResposta(it, facilityByPedido);
+            byResposta.put(r.getRespostaIdCt(), r);
+            touched.add(r.getPedidoIdCt());
+        }
+        respostaBulkRepo.upsert(new ArrayList<>(byResposta.values()));
+        log.debug("Respostas: {} gravada(s)/actualizada(s)", byResposta.size());
+        return touched;
+    }
+
+    /* ---------------- salvar Resposta ---------------- */
+
+    private Resposta toResposta(EctApiClient.PageItem resposta, Map<Long, String> facilityByPedido) {
+        Long respostaId = resposta.respostaId();
+        Long pedidoId   = resposta.pedidoId();
+
+        if (respostaId == null) throw new IllegalStateException("Resposta sem respostaId");
+        if (pedidoId == null)   throw new IllegalStateException("Resposta sem pedidoId");
+
+        Resposta r = new Resposta();
+        r.setRespostaIdCt(respostaId);
+        r.setPedidoIdCt(pedidoId);
+        r.setPayload(resposta.json());
+        r.setStatus(Resposta.Status.NEW);
+        r.setLifeCycleStatus(LifeCycleStatus.ACTIVE);
+        r.setCreatedAt(DateUtils.getCurrentDate());
+        r.setCreatedBy("system");
+
+        // herda facility do Pedido (se existir)
+        r.setFacilityCode(facilityByPedido.getOrDefault(pedidoId, PedidoFacilityResolver.UNKNOWN));
+        return r;
+    }
+}
@@ -1,18 +1,13 @@
 package mz.org.csaude.sespcet.api.service;
 
-import io.micronaut.json.JsonMapper;
+import io.micronaut.scheduling.TaskExecutors;
+import jakarta.inject.Named;
 import jakarta.inject.Singleton;
-import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
-import mz.org.csaude.sespcet.api.entity.Pedido;
-import mz.org.csaude.sespcet.api.entity.Resposta;
-import mz.org.csaude.sespcet.api.repository.PedidoRepository;
-import mz.org.csaude.sespcet.api.repository.RespostaRepository;
-import mz.org.csaude.sespcet.api.util.DateUtils;
-import mz.org.csaude.sespcet.api.util.LifeCycleStatus;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
 import static mz.org.csaude.sespcet.api.config.SettingKeys.*;
@@ -21,32 +16,38 @@ import static mz.org.csaude.sespcet.api.config.SettingKeys.*;
 @Singleton
 public class EctSyncService {
 
+    private static final int MAX_PAGES = 200;
+    private static final int DEFAULT_PREFETCH_PAGES = 2;
+
     private final EctApiClient ect;
-    private final JsonMapper json;
-    private final PedidoRepository pedidoRepo;
-    private final RespostaRepository respostaRepo;
+    private final EctSyncPageWriter pageWriter;
     private final SettingService settings;
     private final EctWebhookService webhook;
+    private final ExecutorService prefetchExecutor;
+    private final EctPageSizeController pageSize;
+    private final EctIdIndex idIndex;
 
     public EctSyncService(EctApiClient ect,
-                          JsonMapper json,
-                          PedidoRepository pedidoRepo,
-                          RespostaRepository respostaRepo,
+                          EctSyncPageWriter pageWriter,
                           SettingService settings,
-                          EctWebhookService webhook) {
+                          EctWebhookService webhook,
+                          @Named(TaskExecutors.BLOCKING) ExecutorService prefetchExecutor,
+                          EctPageSizeController pageSize,
+                          EctIdIndex idIndex) {
         this.ect = ect;
-        this.json = json;
-        this.pedidoRepo = pedidoRepo;
-        this.respostaRepo = respostaRepo;
+        this.pageWriter = pageWriter;
         this.settings = settings;
         this.webhook = webhook;
+        this.prefetchExecutor = prefetchExecutor;
+        this.pageSize = pageSize;
+        this.idIndex = idIndex;
     }
 
     /**
      * Pagina no eCT, insere Pedidos novos e, no fim,
      * regista/actualiza o webhook só para os pedidos inseridos neste ciclo.
+     * Sem transacção à volta do ciclo: cada página é confirmada (com o cursor) por {@link EctSyncPageWriter}.
      */
-    @Transactional
     public void syncMissingPedidos(Integer limit, String startCursor, String direction) {
         String cursor = (startCursor != null && !startCursor.isBlank()) ? startCursor : null;
         String dir = (direction == null || direction.isBlank()) ? "next" : direction;
@@ -56,80 +57,55 @@ public class EctSyncService {
         // Acumula os IDs criados neste ciclo para subscrição no webhook
         final List<Long> newlyInsertedIds = new ArrayList<>();
 
-        while (true) {
-            page++;
-            try {
-                // usa o CLIENTE para paginar e já devolver items/next_cursor/has_more
-                EctApiClient.Page pageResp = ect.pagePedidos(limit != null ? limit : 20, cursor, dir, Collections.emptyMap());
+        // usa o CLIENTE para paginar (items/next_cursor/has_more); a página seguinte é buscada enquanto esta é gravada
+        final int pageLimit = limit != null ? limit : 20;
+        try (EctPagePipeline pages = pages(EctPageSizeController.Stream.PEDIDOS, pageLimit, cursor,
+                (l, c) -> ect.pagePedidos(l, c, dir, Collections.emptyMap()),
+                (l, c) -> ect.pagePedidosAsync(l, c, dir, Collections.emptyMap()))) {
+            while (true) {
+                page++;
+                try {
+                    EctPagePipeline.Fetched fetched = pages.next();
+                    if (fetched == null) break;
+                    EctApiClient.Page pageResp = fetched.page();
+
+                    List<EctApiClient.PageItem> items = pageResp.items();
+                    if (items == null || items.isEmpty()) {
+                        log.info("Sync: página {} vazia, terminando.", page);
+                        break;
+                    }
 
-                List<Map<String, Object>> items = pageResp.items();
-                if (items == null || items.isEmpty()) {
-                    log.info("Sync: página {} vazia, terminando.", page);
-                    break;
-                }
+                    String next = str(pageResp.nextCursor());
+                    Boolean hasMore = pageResp.hasMore();
+                    boolean last = EctPagePipeline.isLast(pageResp);
 
-                int insertedThisPage = 0;
-                for (Map<String, Object> it : items) {
-                    Map<String, Object> dadosPedido = asMap(firstNonNull(it.get("dadosPedido"), it));
-                    if (dadosPedido == null) continue;
-
-                    Long pedidoId = numVal(
-                            path(dadosPedido, "metadados", "pedidoId"),
-                            dadosPedido.get("pedido_id"),
-                            dadosPedido.get("pedidoId")
-                    );
-                    if (pedidoId == null) continue;
-
-                    String facility = str(
-                            dadosPedido.get("codigo_unidade_sanitaria"),
-                            path(dadosPedido, "dadosUtente", "codigoUnidadeSanitaria"),
-                            dadosPedido.get("facilityCode")
-                    );
-                    if (facility == null) facility = "UNKNOWN";
-
-                    // evitar duplicados
-                    if (pedidoRepo.findByPedidoIdCt(pedidoId).isPresent()) continue;
-
-                    Pedido p = new Pedido();
-                    p.setPedidoIdCt(pedidoId);
-                    p.setFacilityCode(facility);
-                    p.setPayload(mapToJson(it));
-                    p.setStatus(Pedido.Status.NEW);
-                    p.setCreatedAt(DateUtils.getCurrentDate());
-                    p.setCreatedBy("system");
-                    p.setUuid(java.util.UUID.randomUUID().toString());
-                    p.setLifeCycleStatus(LifeCycleStatus.ACTIVE);
-                    pedidoRepo.save(p);
-
-                    newlyInsertedIds.add(pedidoId);
-                    insertedThisPage++;
-                }
+                    // página + cursor numa só transacção (retoma exactamente aqui após falha)
+                    List<Long> inserted = pageWriter.writePedidosPage(items, last ? null : next);
+                    idIndex.addPedidos(inserted); // já confirmados
+                    newlyInsertedIds.addAll(inserted);
+                    int insertedThisPage = inserted.size();
 
-                totalInserted += insertedThisPage;
-                log.info("Sync: página {} → inseridos {}", page, insertedThisPage);
+                    totalInserted += insertedThisPage;
+                    log.info("Sync: página {} → inseridos {}", page, insertedThisPage);
 
-                String next = str(pageResp.nextCursor());
-                Boolean hasMore = pageResp.hasMore();
+                    if (last) {
+                        log.info("Sync: fim (hasMore={}, next='{}', total inseridos = {})", hasMore, next, totalInserted);
+                        break;
+                    }
+                    cursor = next;
 
-                if (Boolean.FALSE.equals(hasMore) || next == null || next.isBlank()) {
-                    log.info("Sync: fim (hasMore={}, next='{}', total inseridos = {})", hasMore, next, totalInserted);
+                } catch (Exception e) {
+                    log.warn("Sync: falha na página {} (cursor={}) → {}", page, cursor, e.toString());
                     break;
                 }
 
-                settings.upsert(CT_SYNC_CURSOR, next, "STRING",
-                        "Último cursor de sync (eCT)", true, "system");
-                cursor = next;
-
-            } catch (Exception e) {
-                log.warn("Sync: falha na página {} (cursor={}) → {}", page, cursor, e.toString());
-                break;
-            }
-
-            if (page >= 200) { // guarda-chuva
-                log.warn("Sync: limite de páginas atingido ({}). Parando.", page);
-                break;
+                if (page >= MAX_PAGES) { // guarda-chuva
+                    log.warn("Sync: limite de páginas atingido ({}). Parando.", page);
+                    break;
+                }
             }
         }
+        persistPageSize(EctPageSizeController.Stream.PEDIDOS);
 
         // Marca última execução
         settings.upsert(CT_SYNC_LAST_RUN_ISO, Instant.now().toString(),
@@ -157,160 +133,110 @@ public class EctSyncService {
      * Busca respostas no eCT via pageRespostas e grava/actualiza a entidade Resposta.
      * Se {@code pedidoIdsFilter} for não-vazio, filtra por esses pedidos; caso contrário traz todas.
      * Retorna a lista (distinct) de pedidoIds para os quais gravou respostas neste ciclo.
+     * Cada página é gravada na sua própria transacção; a paginação começa em {@code startCursor} e não é persistida.
      */
-    @Transactional
     public List<Long> syncRespostas(Integer limit,
                                     String startCursor,
                                     String direction,
                                     Collection<Long> pedidoIdsFilter) {
         final String dir = (direction == null || direction.isBlank()) ? "next" : direction;
         String cursor = (startCursor != null && !startCursor.isBlank()) ? startCursor : null;
-        final String initialCursor = cursor; // para comparação no fim
-        String lastNextCursor = null;        // será guardado no fim, se houver
 
         int page = 0;
         final Set<Long> touchedPedidoIds = new LinkedHashSet<>();
 
-        while (true) {
-            page++;
-            try {
-                EctApiClient.Page pageResp;
-                if (pedidoIdsFilter != null && !pedidoIdsFilter.isEmpty()) {
-                    pageResp = ect.pageRespostasByPedidoIds(pedidoIdsFilter, limit != null ? limit : 20, cursor, dir);
-                } else {
-                    pageResp = ect.pageRespostas(limit != null ? limit : 20, cursor, dir, Collections.emptyMap());
-                }
+        final int pageLimit = limit != null ? limit : 20;
+        final boolean filtered = pedidoIdsFilter != null && !pedidoIdsFilter.isEmpty();
+        final EctPageSizeController.LimitedFetcher fetcher = filtered
+                ? (l, c) -> ect.pageRespostasByPedidoIds(pedidoIdsFilter, l, c, dir)
+                : (l, c) -> ect.pageRespostas(l, c, dir, Collections.emptyMap());
+        final EctPageSizeController.ReactiveLimitedFetcher reactiveFetcher = filtered
+                ? (l, c) -> ect.pageRespostasByPedidoIdsAsync(pedidoIdsFilter, l, c, dir)
+                : (l, c) -> ect.pageRespostasAsync(l, c, dir, Collections.emptyMap());
+
+        final EctPageSizeController.Stream stream = filtered
+                ? EctPageSizeController.Stream.RESPOSTAS_BACKFILL
+                : EctPageSizeController.Stream.RESPOSTAS;
+
+        try (EctPagePipeline pages = pages(stream, pageLimit, cursor, fetcher, reactiveFetcher)) {
+            while (true) {
+                page++;
+                try {
+                    EctPagePipeline.Fetched fetched = pages.next();
+                    if (fetched == null) break;
+                    EctApiClient.Page pageResp = fetched.page();
+
+                    List<EctApiClient.PageItem> items = pageResp.items();
+                    if (items == null || items.isEmpty()) {
+                        log.info("Respostas: página {} vazia, terminando.", page);
+                        break;
+                    }
 
-                List<Map<String, Object>> items = pageResp.items();
-                if (items == null || items.isEmpty()) {
-                    log.info("Respostas: página {} vazia, terminando.", page);
-                    break;
-                }
+                    String next = str(pageResp.nextCursor());
+                    Boolean hasMore = pageResp.hasMore();
+                    boolean last = EctPagePipeline.isLast(pageResp);
 
-                int processed = 0;
-                for (Map<String, Object> it : items) {
-                    Map<String, Object> dadosResposta = asMap(firstNonNull(it.get("dadosResposta"), it));
-                    if (dadosResposta == null) continue;
+                    Set<Long> touched = pageWriter.writeRespostasPage(items);
+                    touchedPedidoIds.addAll(touched);
+                    log.info("Respostas: página {} → processadas {}", page, touched.size());
 
-                    String payload = mapToJson(it);
-                    Long pedidoId = processResposta(dadosResposta, payload);
-                    if (pedidoId != null) {
-                        touchedPedidoIds.add(pedidoId);
-                        processed++;
+                    if (last) {
+                        log.info("Respostas: fim (hasMore={}, next='{}') — pedidos tocados {}", hasMore, next, touchedPedidoIds.size());
+                        break;
                     }
-                }
+                    cursor = next;
 
-                log.info("Respostas: página {} → processadas {}", page, processed);
-
-                String next = str(pageResp.nextCursor());
-                Boolean hasMore = pageResp.hasMore();
-                if (Boolean.FALSE.equals(hasMore) || next == null || next.isBlank()) {
-                    log.info("Respostas: fim (hasMore={}, next='{}') — pedidos tocados {}", hasMore, next, touchedPedidoIds.size());
+                } catch (Exception e) {
+                    log.warn("Respostas: falha na página {} (cursor={}) → {}", page, cursor, e.toString());
                     break;
                 }
-                // avança o cursor local e memoriza para persistir no fim
-                cursor = next;
-                lastNextCursor = next;
-
-            } catch (Exception e) {
-                log.warn("Respostas: falha na página {} (cursor={}) → {}", page, cursor, e.toString());
-                break;
-            }
 
-            if (page >= 200) {
-                log.warn("Respostas: limite de páginas atingido ({}). Parando.", page);
-                break;
-            }
-        }
-
-        // >>> Persistir cursor NO FIM do sync (conforme solicitado)
-        try {
-            if (lastNextCursor != null && !lastNextCursor.equals(initialCursor)) {
-                settings.upsert(
-                        CT_SYNC_RESPOSTAS_CURSOR,
-                        lastNextCursor,
-                        "STRING",
-                        "Último cursor de sync (respostas eCT)",
-                        true,
-                        "system"
-                );
-                log.info("Respostas: cursor actualizado para '{}'", lastNextCursor);
-            } else {
-                log.info("Respostas: cursor inalterado (permanece '{}')", initialCursor);
+                if (page >= MAX_PAGES) {
+                    log.warn("Respostas: limite de páginas atingido ({}). Parando.", page);
+                    break;
+                }
             }
-        } catch (Exception e) {
-            log.warn("Respostas: falha ao persistir cursor '{}': {}", lastNextCursor, e.toString());
         }
+        persistPageSize(stream);
 
         return new ArrayList<>(touchedPedidoIds);
     }
 
-
-    /* ---------------- salvar Resposta (conforme solicitado) ---------------- */
-
-    private Long processResposta(Map<String, Object> resposta, String payload) {
-        if (resposta == null) throw new IllegalStateException("Resposta nula");
-
-        Long respostaId = toLong(str(path(resposta, "metadados", "respostaId"),
-                path(resposta, "respostaId")));
-        Long pedidoId   = toLong(str(path(resposta, "metadados", "pedidoId"),
-                path(resposta, "pedidoId")));
-
-        if (respostaId == null) throw new IllegalStateException("Resposta sem respostaId");
-        if (pedidoId == null)   throw new IllegalStateException("Resposta sem pedidoId");
-
-        Resposta r = respostaRepo.findByRespostaIdCt(respostaId).orElseGet(Resposta::new);
-        r.setRespostaIdCt(respostaId);
-        r.setPedidoIdCt(pedidoId);
-        r.setPayload(payload);
-        r.setStatus(Resposta.Status.NEW);
-        r.setLifeCycleStatus(LifeCycleStatus.ACTIVE);
-        r.setCreatedAt(DateUtils.getCurrentDate());
-        r.setCreatedBy("system");
-
-        // herda facility do Pedido (se existir)
-        String facility = pedidoRepo.findByPedidoIdCt(pedidoId)
-                .map(Pedido::getFacilityCode)
-                .orElse("UNKNOWN");
-        r.setFacilityCode(facility);
-
-        respostaRepo.save(r);
-
-        log.info("Resposta {} (pedido {}) gravada/atualizada", respostaId, pedidoId);
-        return pedidoId;
-    }
-
     /* ---------------- helpers ---------------- */
 
-    private String mapToJson(Object obj) throws Exception {
-        return new String(json.writeValueAsBytes(obj), java.nio.charset.StandardCharsets.UTF_8);
-    }
-
-    @SuppressWarnings("unchecked")
-    private static Map<String, Object> asMap(Object o) {
-        return (o instanceof Map) ? (Map<String, Object>) o : null;
-    }
-
-    @SuppressWarnings("unchecked")
-    private static List<Map<String, Object>> asListOfMaps(Object o) {
-        if (!(o instanceof List<?> list)) return null;
-        List<Map<String, Object>> out = new ArrayList<>(list.size());
-        for (Object el : list) if (el instanceof Map) out.add((Map<String, Object>) el);
-        return out;
+    /**
+     * Páginas a partir de {@code cursor}. Com {@code CT_SYNC_REACTIVE_ENABLED} (omissão) a busca é reactiva e
+     * nenhuma thread espera pela rede; caso contrário uma thread do executor BLOCKING faz a pré-busca.
+     * Com {@code CT_SYNC_ADAPTIVE_ENABLED} o limit vem do {@link EctPageSizeController}
+     * (parte de {@code pageLimit} na primeira vez); caso contrário usa sempre {@code pageLimit}.
+     */
+    private EctPagePipeline pages(EctPageSizeController.Stream stream, int pageLimit, String cursor,
+                                  EctPageSizeController.LimitedFetcher fetcher,
+                                  EctPageSizeController.ReactiveLimitedFetcher reactiveFetcher) {
+        boolean adaptive = pageSize.enabled();
+        if (settings.getBoolean(CT_SYNC_REACTIVE_ENABLED, true)) {
+            EctPagePipeline.ReactiveFetcher f = adaptive
+                    ? pageSize.adaptiveReactive(stream, pageLimit, reactiveFetcher)
+                    : c -> reactiveFetcher.fetch(pageLimit, c);
+            return EctPagePipeline.reactive(f, cursor, MAX_PAGES, prefetchDepth());
+        }
+        EctPagePipeline.Fetcher f = adaptive
+                ? pageSize.adaptive(stream, pageLimit, fetcher)
+                : c -> fetcher.fetch(pageLimit, c);
+        return EctPagePipeline.start(f, cursor, MAX_PAGES, prefetchDepth(), prefetchExecutor);
     }
 
-    private static Object path(Object m, String... keys) {
-        Object cur = m;
-        for (String k : keys) {
-            if (!(cur instanceof Map)) return null;
-            cur = ((Map<?, ?>) cur).get(k);
+    private void persistPageSize(EctPageSizeController.Stream stream) {
+        try {
+            pageSize.persist(stream);
+        } catch (Exception e) {
+            log.warn("Sync: não foi possível gravar o limit ajustado ({}): {}", stream, e.toString());
         }
-        return cur;
     }
 
-    private static Object firstNonNull(Object... xs) {
-        for (Object x : xs) if (x != null) return x;
-        return null;
+    /** Páginas buscadas à frente da gravação (CT_SYNC_PREFETCH_PAGES; mínimo 1). */
+    private int prefetchDepth() {
+        return Math.max(1, settings.getInt(CT_SYNC_PREFETCH_PAGES, DEFAULT_PREFETCH_PAGES));
     }
 
     private static String str(Object... candidates) {
@@ -321,24 +247,4 @@ public class EctSyncService {
         }
         return null;
     }
-
-    /** Converte primeiro candidato numérico (Number ou String com dígitos) para Long. */
-    private static Long numVal(Object... candidates) {
-        for (Object c : candidates) {
-            if (c == null) continue;
-            if (c instanceof Number n) return n.longValue();
-            if (c instanceof String s) {
-                s = s.trim();
-                if (!s.isEmpty() && s.matches("\\d+")) return Long.parseLong(s);
-            }
-        }
-        return null;
-    }
-
-    private static Long toLong(String s) {
-        if (s == null) return null;
-        String t = s.trim();
-        if (t.matches("\\d+")) return Long.parseLong(t);
-        return null;
-    }
 }
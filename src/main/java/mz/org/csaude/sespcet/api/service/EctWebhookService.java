@@ -9,8 +9,10 @@ import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
 import mz.org.csaude.sespcet.api.crypto.CtCompactCrypto;
+import mz.org.csaude.sespcet.api.crypto.CtKeyRegistry;
 import mz.org.csaude.sespcet.api.dto.EncryptedRequestDTO;
 import mz.org.csaude.sespcet.api.entity.Pedido;
+import mz.org.csaude.sespcet.api.http.EctResilience;
 import mz.org.csaude.sespcet.api.oauth.OAuthService;
 import mz.org.csaude.sespcet.api.repository.PedidoRepository;
 
@@ -25,24 +27,30 @@ import static mz.org.csaude.sespcet.api.config.SettingKeys.*;
 @Singleton
 public class EctWebhookService {
 
-    @Inject @Client("/") HttpClient http;
+    @Inject @Client(id = "ect") HttpClient http;
 
     private final SettingService settings;
     private final OAuthService oauth;
     private final CtCompactCrypto crypto;
+    private final CtKeyRegistry keys;
     private final JsonMapper jsonMapper;
     private final PedidoRepository pedidoRepo;
+    private final EctResilience resilience;
 
     public EctWebhookService(SettingService settings,
                              OAuthService oauth,
                              CtCompactCrypto crypto,
+                             CtKeyRegistry keys,
                              JsonMapper jsonMapper,
-                             PedidoRepository pedidoRepo) {
+                             PedidoRepository pedidoRepo,
+                             EctResilience resilience) {
         this.settings = settings;
         this.oauth = oauth;
         this.crypto = crypto;
+        this.keys = keys;
         this.jsonMapper = jsonMapper;
         this.pedidoRepo = pedidoRepo;
+        this.resilience = resilience;
     }
 
     /**
@@ -97,14 +105,16 @@ public class EctWebhookService {
                 clear.put("retryPolicy", retry);
 
                 String clearJson = new String(jsonMapper.writeValueAsBytes(clear), StandardCharsets.UTF_8);
-                EncryptedRequestDTO body = crypto.buildEncryptedEnvelope(clearJson, ctPubPem, apiPrvPem);
 
-                HttpRequest<EncryptedRequestDTO> req = HttpRequest.POST(uri, body)
-                        .contentType(MediaType.APPLICATION_JSON_TYPE)
-                        .accept(MediaType.APPLICATION_JSON_TYPE)
-                        .bearerAuth(oauth.getToken()); // CtAuthFilter ignorará porque já temos Authorization
-
-                HttpResponse<String> resp = http.toBlocking().exchange(req, Argument.of(String.class));
+                // registo repetido da mesma subscrição é idempotente
+                HttpResponse<String> resp = resilience.call("POST /api/v1/webhooks", true, () -> {
+                    EncryptedRequestDTO body = crypto.buildEncryptedEnvelope(clearJson, crypto.readPublicKeyPem(ctPubPem), keys.ectSigningKey());
+                    HttpRequest<EncryptedRequestDTO> req = HttpRequest.POST(uri, body)
+                            .contentType(MediaType.APPLICATION_JSON_TYPE)
+                            .accept(MediaType.APPLICATION_JSON_TYPE)
+                            .bearerAuth(oauth.getToken()); // CtAuthFilter ignorará porque já temos Authorization
+                    return http.toBlocking().exchange(req, Argument.of(String.class));
+                });
                 int code = resp.getStatus().getCode();
                 if (code < 200 || code >= 300) {
                     throw new IllegalStateException("Falhou registo de webhook (chunk " + (i/CHUNK+1) + "): status="
@@ -141,14 +151,15 @@ public class EctWebhookService {
             clear.put("pedidoIds", pedidoIds);
 
             String clearJson = new String(jsonMapper.writeValueAsBytes(clear), StandardCharsets.UTF_8);
-            EncryptedRequestDTO body = crypto.buildEncryptedEnvelope(clearJson, ctPubPem, apiPrvPem);
 
-            HttpRequest<EncryptedRequestDTO> req = HttpRequest.DELETE(uri, body)
-                    .contentType(MediaType.APPLICATION_JSON_TYPE)
-                    .accept(MediaType.APPLICATION_JSON_TYPE)
-                    .bearerAuth(oauth.getToken());
-
-            HttpResponse<?> resp = http.toBlocking().exchange(req);
+            HttpResponse<?> resp = resilience.call("DELETE /api/v1/webhooks", true, () -> {
+                EncryptedRequestDTO body = crypto.buildEncryptedEnvelope(clearJson, crypto.readPublicKeyPem(ctPubPem), keys.ectSigningKey());
+                HttpRequest<EncryptedRequestDTO> req = HttpRequest.DELETE(uri, body)
+                        .contentType(MediaType.APPLICATION_JSON_TYPE)
+                        .accept(MediaType.APPLICATION_JSON_TYPE)
+                        .bearerAuth(oauth.getToken());
+                return http.toBlocking().exchange(req);
+            });
             int code = resp.getStatus().getCode();
             if (code < 200 || code >= 300) {
                 throw new IllegalStateException("Falhou anulação de webhook: status=" + resp.getStatus());
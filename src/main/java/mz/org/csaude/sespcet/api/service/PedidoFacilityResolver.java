@@ -0,0 +1,68 @@
+package mz.org.csaude.sespcet.api.service;
+
+import io.micronaut.cache.SyncCache;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import mz.org.csaude.sespcet.api.dto.PedidoFacilityDTO;
+import mz.org.csaude.sespcet.api.repository.PedidoRepository;
+
+import java.util.*;
+
+/**
+ * Resolve o {@code facilityCode} dos pedidos a que as respostas pertencem (sync e webhook).
+ * <p>
+ * A unidade sanitária de um pedido nunca muda: os valores ficam na cache limitada {@code pedido-facility}
+ * e os que faltam vêm numa única projecção {@code (pedido_id_ct, facility_code)} por lote, sem ler o payload.
+ * Pedidos desconhecidos ficam {@code UNKNOWN} e não são guardados (o pedido pode chegar depois).
+ */
+@Singleton
+public class PedidoFacilityResolver {
+
+    public static final String UNKNOWN = "UNKNOWN";
+
+    private static final int MAX_IDS_PER_QUERY = 1000;
+
+    private final PedidoRepository pedidoRepo;
+    private final EctIdIndex idIndex;
+    private final SyncCache<?> cache;
+
+    public PedidoFacilityResolver(PedidoRepository pedidoRepo,
+                                  EctIdIndex idIndex,
+                                  @Named("pedido-facility") SyncCache<?> cache) {
+        this.pedidoRepo = pedidoRepo;
+        this.idIndex = idIndex;
+        this.cache = cache;
+    }
+
+    /** facilityCode por pedidoId (todos os ids pedidos estão no mapa; desconhecidos → {@link #UNKNOWN}). */
+    public Map<Long, String> resolve(Collection<Long> pedidoIds) {
+        Map<Long, String> out = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long id : new LinkedHashSet<>(pedidoIds)) {
+            if (id == null) continue;
+            Optional<String> cached = cache.get(id, String.class);
+            if (cached.isPresent()) {
+                out.put(id, cached.get());
+            } else if (Boolean.FALSE.equals(idIndex.knownPedido(id))) {
+                out.put(id, UNKNOWN); // não existe na BD: sem consulta
+            } else {
+                missing.add(id);
+            }
+        }
+
+        for (int from = 0; from < missing.size(); from += MAX_IDS_PER_QUERY) {
+            List<Long> chunk = missing.subList(from, Math.min(from + MAX_IDS_PER_QUERY, missing.size()));
+            for (PedidoFacilityDTO row : pedidoRepo.findByPedidoIdCtIn(chunk)) {
+                if (row.facilityCode() == null) continue;
+                out.put(row.pedidoIdCt(), row.facilityCode());
+                cache.put(row.pedidoIdCt(), row.facilityCode());
+            }
+        }
+        for (Long id : missing) out.putIfAbsent(id, UNKNOWN);
+        return out;
+    }
+
+    public String resolve(long pedidoId) {
+        return resolve(List.of(pedidoId)).get(pedidoId);
+    }
+}
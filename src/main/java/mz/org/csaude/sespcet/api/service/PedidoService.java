@@ -1,17 +1,24 @@
 package mz.org.csaude.sespcet.api.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.core.io.Writable;
 import io.micronaut.data.model.Page;
 import io.micronaut.data.model.Pageable;
 import io.micronaut.http.HttpResponse;
 import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.MutableHttpResponse;
 import io.micronaut.http.exceptions.HttpStatusException;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import mz.org.csaude.sespcet.api.api.response.PaginatedResponse;
 import mz.org.csaude.sespcet.api.api.response.SuccessResponse;
-import mz.org.csaude.sespcet.api.config.SettingKeys;
 import mz.org.csaude.sespcet.api.crypto.CtCompactCrypto;
+import mz.org.csaude.sespcet.api.crypto.CtEnvelopeWriter;
+import mz.org.csaude.sespcet.api.crypto.CtSessionEnvelopeWriter;
+import mz.org.csaude.sespcet.api.crypto.CtSessionKeyManager;
+import mz.org.csaude.sespcet.api.crypto.EnvelopeEncoding;
 import mz.org.csaude.sespcet.api.dto.EncryptedRequestDTO;
 import mz.org.csaude.sespcet.api.dto.PedidoDTO;
 import mz.org.csaude.sespcet.api.entity.Client;
@@ -33,10 +40,10 @@ public class PedidoService {
     private CtCompactCrypto ctCompactCrypto;
 
     @Inject
-    private SettingService settings;
+    private ClientService clientService;
 
     @Inject
-    private ClientService clientService;
+    private CtSessionKeyManager sessionKeys;
 
     public PedidoService(PedidoRepository pedidoRepository) {
         this.pedidoRepository = pedidoRepository;
@@ -68,6 +75,15 @@ public class PedidoService {
 
 
     public HttpResponse<?> buildEncryptedPedidos(Pageable pageable, String facilityCode, String clientId) {
+        return buildEncryptedPedidos(pageable, facilityCode, clientId, EnvelopeEncoding.IDENTITY, null);
+    }
+
+    /**
+     * @param encoding   compressão negociada via {@value EnvelopeEncoding#ACCEPT_HEADER}
+     * @param sessionKid valor de {@value CtSessionKeyManager#HEADER} (modo sessão) ou {@code null}
+     */
+    public HttpResponse<?> buildEncryptedPedidos(Pageable pageable, String facilityCode, String clientId,
+                                                 EnvelopeEncoding encoding, @Nullable String sessionKid) {
         try {
             Client client = clientService.findByClientId(clientId)
                     .orElseThrow(() -> new HttpStatusException(HttpStatus.NOT_FOUND, "Cliente não encontrado"));
@@ -78,37 +94,49 @@ public class PedidoService {
                     .collect(Collectors.toList());
 
             String message = pedidos.getTotalSize() == 0 ? "Sem Dados para esta pesquisa" : "Dados encontrados";
-            ObjectMapper objectMapper = new ObjectMapper();
-            String pedidosJson = objectMapper.writeValueAsString(
-                    PaginatedResponse.of(pedidoDTOs, pedidos.getTotalSize(), pedidos.getPageable(), message)
-            );
-
-            EncryptedRequestDTO encryptedPedidos = ctCompactCrypto.buildEncryptedEnvelope(
-                    pedidosJson,
-                    client.getPublicKey(),
-                    settings.get(SettingKeys.CT_KEYS_SESPCTAPI_PRIVATE_PEM, null)
-            );
+            PaginatedResponse<PedidoDTO> page =
+                    PaginatedResponse.of(pedidoDTOs, pedidos.getTotalSize(), pedidos.getPageable(), message);
 
-            return HttpResponse.ok(encryptedPedidos);
+            // JSON serializado antes de a resposta começar (um erro dá 500, não um 200 truncado);
+            // AES-GCM → Base64 directamente no corpo da resposta (sem cópias de ct/Base64 no heap)
+            ObjectMapper objectMapper = new ObjectMapper();
+            CtEnvelopeWriter.BodyWriter json = CtEnvelopeWriter.BodyWriter.of(objectMapper.writeValueAsBytes(page));
+            PublicKey clientPublic = ctCompactCrypto.readPublicKeyPem(client.getPublicKey());
+            PrivateKey apiPrivate = ctCompactCrypto.apiSigningKey(client.getEnvelopeScheme());
+
+            MutableHttpResponse<Writable> response;
+            if (sessionKeys.accepts(sessionKid)) {
+                CtSessionEnvelopeWriter envelope =
+                        sessionKeys.streamEnvelope(clientId, clientPublic, apiPrivate, sessionKid, json, encoding);
+                response = HttpResponse.<Writable>ok(envelope).header(CtSessionKeyManager.HEADER, envelope.getKid());
+            } else {
+                response = HttpResponse.ok(ctCompactCrypto.streamEncryptedEnvelope(json, clientPublic, apiPrivate, encoding));
+            }
+            response.contentType(MediaType.APPLICATION_JSON_TYPE);
+            if (encoding.isCompressed()) {
+                response.header(EnvelopeEncoding.HEADER, encoding.token());
+            }
+            return response;
         } catch (Exception e) {
             throw new RuntimeException("Erro ao processar pedidos", e);
         }
     }
 
     public HttpResponse<?> processMarkConsumed(EncryptedRequestDTO encryptedRequest, String clientId) {
+        return processMarkConsumed(encryptedRequest, clientId, EnvelopeEncoding.IDENTITY);
+    }
+
+    public HttpResponse<?> processMarkConsumed(EncryptedRequestDTO encryptedRequest, String clientId,
+                                               EnvelopeEncoding encoding) {
         try {
             Client client = clientService.findByClientId(clientId)
                     .orElseThrow(() -> new HttpStatusException(HttpStatus.NOT_FOUND, "Cliente não encontrado"));
 
-            String apiPrivatePem = settings.get(SettingKeys.CT_KEYS_SESPCTAPI_PRIVATE_PEM, null);
-            PrivateKey apiPrivate = ctCompactCrypto.readPrivateKeyPem(apiPrivatePem);
-            PublicKey clientPublicKey = ctCompactCrypto.readPublicKeyPem(client.getPublicKey());
-
-            if (!CtCompactCrypto.verifySignatureOverString(encryptedRequest.data(), encryptedRequest.signature(), clientPublicKey)) {
-                throw new IllegalStateException("Invalid server signature");
-            }
+            PrivateKey apiPrivate = ctCompactCrypto.apiDecryptionKey(client.getEnvelopeScheme(), encryptedRequest.kid());
+            PublicKey clientPublicKey = ctCompactCrypto.readPublicKeyPem(client.getVerificationPublicKey());
 
-            byte[] decryptedBytes = ctCompactCrypto.decryptCompact(encryptedRequest.data(), apiPrivate);
+            // verificação + decifra no pool de cripto (esta thread é do executor BLOCKING)
+            byte[] decryptedBytes = ctCompactCrypto.openEnvelope(encryptedRequest, clientPublicKey, apiPrivate, encoding);
             String clearText = new String(decryptedBytes, StandardCharsets.UTF_8);
 
             ObjectMapper objectMapper = new ObjectMapper();
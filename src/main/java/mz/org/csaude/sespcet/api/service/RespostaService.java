@@ -1,6 +1,8 @@
 package mz.org.csaude.sespcet.api.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micronaut.core.annotation.Nullable;
+import io.micronaut.core.io.Writable;
 import io.micronaut.data.model.Page;
 import io.micronaut.data.model.Pageable;
 import io.micronaut.http.HttpStatus;
@@ -10,6 +12,9 @@ import io.micronaut.transaction.annotation.Transactional;
 import jakarta.inject.Singleton;
 import mz.org.csaude.sespcet.api.api.response.PaginatedResponse;
 import mz.org.csaude.sespcet.api.crypto.CtCompactCrypto;
+import mz.org.csaude.sespcet.api.crypto.CtEnvelopeWriter;
+import mz.org.csaude.sespcet.api.crypto.CtSessionKeyManager;
+import mz.org.csaude.sespcet.api.crypto.EnvelopeEncoding;
 import mz.org.csaude.sespcet.api.dto.EncryptedRequestDTO;
 import mz.org.csaude.sespcet.api.dto.RespostaDTO;
 import mz.org.csaude.sespcet.api.entity.Client;
@@ -22,8 +27,6 @@ import java.security.PublicKey;
 import java.util.List;
 import java.util.stream.Collectors;
 
-import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KEYS_SESPCTAPI_PRIVATE_PEM;
-
 @Singleton
 public class RespostaService {
 
@@ -31,24 +34,42 @@ public class RespostaService {
     private final SettingService settings;
     private final CtCompactCrypto ctCompactCrypto;
     private final RespostaRepository respostaRepository; // supondo que exista
+    private final CtSessionKeyManager sessionKeys;
 
     public RespostaService(ClientService clientService,
                            SettingService settings,
                            CtCompactCrypto ctCompactCrypto,
-                           RespostaRepository respostaRepository) {
+                           RespostaRepository respostaRepository,
+                           CtSessionKeyManager sessionKeys) {
         this.clientService = clientService;
         this.settings = settings;
         this.ctCompactCrypto = ctCompactCrypto;
         this.respostaRepository = respostaRepository;
+        this.sessionKeys = sessionKeys;
     }
 
     /**
      * Retorna respostas novas já encriptadas para um cliente.
+     * O envelope é escrito em streaming quando o corpo da resposta HTTP é serializado.
+     */
+    @Transactional
+    public Writable getEncryptedNewRespostas(String clientId,
+                                             String facilityCode,
+                                             Pageable pageable) {
+        return getEncryptedNewRespostas(clientId, facilityCode, pageable, EnvelopeEncoding.IDENTITY, null);
+    }
+
+    /**
+     * Como {@link #getEncryptedNewRespostas(String, String, Pageable)}, com o JSON comprimido segundo
+     * {@code encoding} (negociado via {@value EnvelopeEncoding#ACCEPT_HEADER}) e, se o cliente o pediu
+     * ({@code sessionKid}), cifrado com a chave de sessão em vez de RSA por mensagem.
      */
     @Transactional
-    public EncryptedRequestDTO getEncryptedNewRespostas(String clientId,
-                                                        String facilityCode,
-                                                        Pageable pageable) {
+    public Writable getEncryptedNewRespostas(String clientId,
+                                             String facilityCode,
+                                             Pageable pageable,
+                                             EnvelopeEncoding encoding,
+                                             @Nullable String sessionKid) {
         try {
             Client client = clientService.findByClientId(clientId)
                     .orElseThrow(() -> new HttpStatusException(HttpStatus.NOT_FOUND, "Cliente não encontrado"));
@@ -69,21 +90,23 @@ public class RespostaService {
                 return dto;
             }).collect(Collectors.toList());
 
-            ObjectMapper objectMapper = new ObjectMapper();
-            String respostasJson = objectMapper.writeValueAsString(
-                    PaginatedResponse.of(
-                            respostaDTOs,
-                            respostas.getTotalSize(),
-                            respostas.getPageable(),
-                            respostas.getTotalSize() == 0 ? "Sem Dados para esta pesquisa" : "Dados encontrados"
-                    )
+            PaginatedResponse<RespostaDTO> page = PaginatedResponse.of(
+                    respostaDTOs,
+                    respostas.getTotalSize(),
+                    respostas.getPageable(),
+                    respostas.getTotalSize() == 0 ? "Sem Dados para esta pesquisa" : "Dados encontrados"
             );
 
-            return ctCompactCrypto.buildEncryptedEnvelope(
-                    respostasJson,
-                    client.getPublicKey(),
-                    settings.get(CT_KEYS_SESPCTAPI_PRIVATE_PEM, null)
-            );
+            // JSON serializado antes de a resposta começar (um erro dá 500, não um 200 truncado);
+            // AES-GCM → Base64 directamente no corpo da resposta (sem cópias de ct/Base64 no heap)
+            ObjectMapper objectMapper = new ObjectMapper();
+            CtEnvelopeWriter.BodyWriter json = CtEnvelopeWriter.BodyWriter.of(objectMapper.writeValueAsBytes(page));
+            PublicKey clientPublic = ctCompactCrypto.readPublicKeyPem(client.getPublicKey());
+            PrivateKey apiPrivate = ctCompactCrypto.apiSigningKey(client.getEnvelopeScheme());
+
+            return sessionKeys.accepts(sessionKid)
+                    ? sessionKeys.streamEnvelope(clientId, clientPublic, apiPrivate, sessionKid, json, encoding)
+                    : ctCompactCrypto.streamEncryptedEnvelope(json, clientPublic, apiPrivate, encoding);
         } catch (HttpStatusException e) {
             throw e;
         } catch (Exception e) {
@@ -96,21 +119,23 @@ public class RespostaService {
      */
     @Transactional
     public void consumeRespostas(String clientId, EncryptedRequestDTO encryptedRequest) {
+        consumeRespostas(clientId, encryptedRequest, EnvelopeEncoding.IDENTITY);
+    }
+
+    /**
+     * Marca respostas como consumidas; {@code encoding} vem do cabeçalho {@value EnvelopeEncoding#HEADER} do pedido.
+     */
+    @Transactional
+    public void consumeRespostas(String clientId, EncryptedRequestDTO encryptedRequest, EnvelopeEncoding encoding) {
         try {
             Client client = clientService.findByClientId(clientId)
                     .orElseThrow(() -> new HttpStatusException(HttpStatus.NOT_FOUND, "Cliente não encontrado"));
 
-            String apiPrivatePem = settings.get(CT_KEYS_SESPCTAPI_PRIVATE_PEM, null);
-            PrivateKey apiPrivate = ctCompactCrypto.readPrivateKeyPem(apiPrivatePem);
-            PublicKey clientPublicKey = ctCompactCrypto.readPublicKeyPem(client.getPublicKey());
-
-            if (!CtCompactCrypto.verifySignatureOverString(encryptedRequest.data(),
-                    encryptedRequest.signature(),
-                    clientPublicKey)) {
-                throw new IllegalStateException("Invalid server signature");
-            }
+            PrivateKey apiPrivate = ctCompactCrypto.apiDecryptionKey(client.getEnvelopeScheme(), encryptedRequest.kid());
+            PublicKey clientPublicKey = ctCompactCrypto.readPublicKeyPem(client.getVerificationPublicKey());
 
-            byte[] decryptedBytes = ctCompactCrypto.decryptCompact(encryptedRequest.data(), apiPrivate);
+            // verificação + decifra no pool de cripto (esta thread é do executor BLOCKING)
+            byte[] decryptedBytes = ctCompactCrypto.openEnvelope(encryptedRequest, clientPublicKey, apiPrivate, encoding);
             String clearText = new String(decryptedBytes, StandardCharsets.UTF_8);
 
             ObjectMapper objectMapper = new ObjectMapper();
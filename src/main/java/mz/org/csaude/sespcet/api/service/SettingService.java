@@ -2,8 +2,10 @@ package mz.org.csaude.sespcet.api.service;
 
 import io.micronaut.cache.annotation.CacheInvalidate;
 import io.micronaut.cache.annotation.Cacheable;
+import io.micronaut.context.event.ApplicationEventPublisher;
 import jakarta.inject.Singleton;
 import lombok.RequiredArgsConstructor;
+import mz.org.csaude.sespcet.api.config.SettingChangedEvent;
 import mz.org.csaude.sespcet.api.entity.Setting;
 import mz.org.csaude.sespcet.api.repository.SettingRepository;
 import mz.org.csaude.sespcet.api.util.LifeCycleStatus;
@@ -17,6 +19,7 @@ import java.util.Optional;
 public class SettingService {
 
     private final SettingRepository repo;
+    private final ApplicationEventPublisher<SettingChangedEvent> events;
 
     @Cacheable("settings")
     protected Optional<String> getRawValueCached(String key) {
@@ -60,8 +63,10 @@ public class SettingService {
         catch (IllegalArgumentException ex) { return def; }
     }
 
-    /** Upsert + invalidação da cache dessa key. */
-    @CacheInvalidate(cacheNames = "settings") // invalida usando 'key' como parâmetro do método
+    /**
+     * Upsert + invalidação da cache dessa key + {@link SettingChangedEvent}.
+     * O evento só sai depois da invalidação: quem o ouve e relê a setting já vê o novo valor.
+     */
     public void upsert(String key, String value, String type, String description, boolean enabled, String actor) {
         Setting s = repo.findByDesignation(key).orElseGet(Setting::new);
         s.setDesignation(key);
@@ -76,8 +81,14 @@ public class SettingService {
             s.setUpdatedBy(actor != null ? actor : "system");
         }
         repo.save(s);
+        evict(key);
+        events.publishEvent(new SettingChangedEvent(key, value));
     }
 
+    /** Invalida a entrada de {@code key} (mesma chave de cache que {@link #getRawValueCached(String)}). */
+    @CacheInvalidate(cacheNames = "settings", parameters = "key")
+    protected void evict(String key) {}
+
     @CacheInvalidate(cacheNames = "settings", all = true)
     public void evictAll() {}
 }
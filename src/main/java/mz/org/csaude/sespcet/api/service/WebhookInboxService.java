@@ -0,0 +1,140 @@
+package mz.org.csaude.sespcet.api.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micronaut.core.annotation.Nullable;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import mz.org.csaude.sespcet.api.entity.WebhookInbox;
+import mz.org.csaude.sespcet.api.error.InvalidWebhookPayloadException;
+import mz.org.csaude.sespcet.api.repository.WebhookInboxRepository;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static mz.org.csaude.sespcet.api.config.SettingKeys.*;
+
+/**
+ * Inbox do webhook eCT: {@link #append} grava o payload já verificado e decifrado pelo controller num só INSERT
+ * (o controller responde logo a seguir) e {@link #process} faz, num worker, o {@link WebhookIngestService#ingest}.
+ * <p>
+ * A mensagem já foi confirmada (ACK) ao eCT, que não a volta a enviar: qualquer falha (BD, configuração)
+ * volta a {@code PENDING} com backoff exponencial até {@code CT_WEBHOOK_INBOX_MAX_ATTEMPTS}. Só um payload que
+ * nunca vai passar ({@link InvalidWebhookPayloadException}) fica logo {@code PARKED}, sem bloquear as restantes.
+ */
+@Slf4j
+@Singleton
+public class WebhookInboxService {
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 8;
+    private static final int DEFAULT_BACKOFF_SECONDS = 5;
+    private static final int DEFAULT_LEASE_SECONDS = 300;
+    private static final long MAX_BACKOFF_MS = TimeUnit.HOURS.toMillis(1);
+    private static final int MAX_ERROR_LENGTH = 2000;
+
+    private final WebhookInboxRepository repo;
+    private final WebhookIngestService ingest;
+    private final SettingService settings;
+
+    private final Counter processed;
+    private final Counter retried;
+    private final Counter parked;
+    private final Timer lag;
+
+    public WebhookInboxService(WebhookInboxRepository repo,
+                               WebhookIngestService ingest,
+                               SettingService settings,
+                               @Nullable MeterRegistry meters) {
+        this.repo = repo;
+        this.ingest = ingest;
+        this.settings = settings;
+        if (meters != null) {
+            this.processed = Counter.builder("webhook.inbox.processed")
+                    .description("Mensagens do inbox ingeridas").register(meters);
+            this.retried = Counter.builder("webhook.inbox.retried")
+                    .description("Falhas transitórias reagendadas").register(meters);
+            this.parked = Counter.builder("webhook.inbox.parked")
+                    .description("Mensagens estacionadas (PARKED)").register(meters);
+            this.lag = Timer.builder("webhook.inbox.lag")
+                    .description("Da recepção do webhook ao fim da ingestão").register(meters);
+        } else {
+            this.processed = null;
+            this.retried = null;
+            this.parked = null;
+            this.lag = null;
+        }
+    }
+
+    /** Grava o payload claro (já verificado e decifrado pelo controller) como {@code PENDING}; devolve o id da mensagem. */
+    public Long append(String clearJson) {
+        Date now = new Date();
+        WebhookInbox msg = new WebhookInbox();
+        msg.setPayload(clearJson);
+        msg.setStatus(WebhookInbox.Status.PENDING);
+        msg.setAttempts(0);
+        msg.setReceivedAt(now);
+        msg.setNextAttemptAt(now);
+        return repo.save(msg).getId();
+    }
+
+    /**
+     * Processa a mensagem {@code id} se este worker conseguir a posse (outro worker pode tê-la levado).
+     * Nunca lança: o resultado fica na própria linha ({@code DONE}, {@code PENDING} reagendada ou {@code PARKED}).
+     */
+    public void process(long id) {
+        Date now = new Date();
+        int lease = Math.max(1, settings.getInt(CT_WEBHOOK_INBOX_LEASE_SECONDS, DEFAULT_LEASE_SECONDS));
+        if (repo.claim(id, now, new Date(now.getTime() + TimeUnit.SECONDS.toMillis(lease))) == 0) return;
+
+        WebhookInbox msg = repo.findById(id).orElse(null);
+        if (msg == null) return;
+        try {
+            ingest.ingest(msg.getPayload());
+            repo.markDone(id, new Date());
+            if (processed != null) processed.increment();
+            if (lag != null) lag.record(System.currentTimeMillis() - msg.getReceivedAt().getTime(), TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            fail(msg, e);
+        }
+    }
+
+    /** Remove mensagens {@code DONE} mais antigas que {@code CT_WEBHOOK_INBOX_RETENTION_DAYS}. */
+    public int purgeDone() {
+        int days = Math.max(0, settings.getInt(CT_WEBHOOK_INBOX_RETENTION_DAYS, 7));
+        return repo.deleteDoneBefore(new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days)));
+    }
+
+    /* ---------------- helpers ---------------- */
+
+    private void fail(WebhookInbox msg, Exception e) {
+        int max = Math.max(1, settings.getInt(CT_WEBHOOK_INBOX_MAX_ATTEMPTS, DEFAULT_MAX_ATTEMPTS));
+        boolean poison = isPoison(e);
+        int attempts = msg.getAttempts(); // já inclui esta tentativa (claim)
+        String error = truncate(e.toString());
+
+        if (poison || attempts >= max) {
+            repo.markFailed(msg.getId(), WebhookInbox.Status.PARKED, new Date(), error);
+            if (parked != null) parked.increment();
+            log.error("Webhook inbox {}: estacionada após {} tentativa(s) ({}): {}",
+                    msg.getId(), attempts, poison ? "payload inválido" : "tentativas esgotadas", error);
+            return;
+        }
+
+        long base = TimeUnit.SECONDS.toMillis(Math.max(1, settings.getInt(CT_WEBHOOK_INBOX_BACKOFF_SECONDS, DEFAULT_BACKOFF_SECONDS)));
+        long backoff = Math.min(MAX_BACKOFF_MS, base << Math.min(20, Math.max(0, attempts - 1)));
+        repo.markFailed(msg.getId(), WebhookInbox.Status.PENDING, new Date(System.currentTimeMillis() + backoff), error);
+        if (retried != null) retried.increment();
+        log.warn("Webhook inbox {}: falha na tentativa {}/{}; nova tentativa em {} ms: {}",
+                msg.getId(), attempts, max, backoff, error);
+    }
+
+    /** Só a validação do payload ({@code WebhookIngestService.parse}) falharia sempre: o conteúdo é que está errado. */
+    private static boolean isPoison(Exception e) {
+        return e instanceof InvalidWebhookPayloadException;
+    }
+
+    private static String truncate(String s) {
+        return s.length() <= MAX_ERROR_LENGTH ? s : s.substring(0, MAX_ERROR_LENGTH);
+    }
+}
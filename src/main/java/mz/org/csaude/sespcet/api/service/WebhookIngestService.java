@@ -3,100 +3,229 @@ package mz.org.csaude.sespcet.api.service;
 import io.micronaut.core.type.Argument;
 import io.micronaut.json.JsonMapper;
 import jakarta.inject.Singleton;
-import jakarta.transaction.Transactional;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import mz.org.csaude.sespcet.api.entity.Pedido;
 import mz.org.csaude.sespcet.api.entity.Resposta;
-import mz.org.csaude.sespcet.api.repository.PedidoRepository;
-import mz.org.csaude.sespcet.api.repository.RespostaRepository;
-import mz.org.csaude.sespcet.api.util.DateUtils;
-import mz.org.csaude.sespcet.api.util.LifeCycleStatus;
+import mz.org.csaude.sespcet.api.error.InvalidWebhookPayloadException;
 
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_WEBHOOK_INGEST_BATCH_MAX;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_WEBHOOK_INGEST_BATCH_WAIT_MS;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_WEBHOOK_INGEST_COMMIT_TIMEOUT_SECONDS;
+
+/**
+ * Ingestão dos webhooks do eCT com group commit: as entregas que chegam em simultâneo (controller ou workers do
+ * inbox) juntam-se durante até {@code CT_WEBHOOK_INGEST_BATCH_WAIT_MS} ms ou {@code CT_WEBHOOK_INGEST_BATCH_MAX}
+ * entregas e são gravadas numa só transacção ({@link WebhookIngestWriter}); cada chamador desbloqueia quando o
+ * seu lote é confirmado. Sem coordenador dedicado: a primeira entrega de um lote espera pelas seguintes e grava-o.
+ * <p>
+ * Os lotes grandes vêm do caminho síncrono (inbox desligado): cada POST do eCT ingere na sua thread BLOCKING antes
+ * do ACK, e as rajadas de entregas em paralelo passam a um commit por lote em vez de um por entrega. Os workers do
+ * inbox ({@code CT_WEBHOOK_INBOX_PARALLELISM}, 2 por omissão) formam lotes de no máximo 2; ali o ganho é pequeno
+ * e a espera ({@code CT_WEBHOOK_INGEST_BATCH_WAIT_MS}) termina logo que o lote enche.
+ */
 @Slf4j
 @Singleton
-@RequiredArgsConstructor
 public class WebhookIngestService {
 
+    private static final int DEFAULT_BATCH_MAX = 50;
+    private static final int DEFAULT_BATCH_WAIT_MS = 5;
+    private static final int DEFAULT_COMMIT_TIMEOUT_SECONDS = 60;
+
     private final JsonMapper json;
-    private final PedidoRepository pedidoRepo;
-    private final RespostaRepository respostaRepo;
+    private final WebhookIngestWriter writer;
+    private final SettingService settings;
+
+    private final Object lock = new Object();
+    private List<Delivery> open = new ArrayList<>(); // lote em formação (guardado por lock)
+    private boolean leaderWaiting;                   // a primeira entrega do lote está à espera das seguintes
+
+    public WebhookIngestService(JsonMapper json,
+                                WebhookIngestWriter writer,
+                                SettingService settings) {
+        this.json = json;
+        this.writer = writer;
+        this.settings = settings;
+    }
+
+    /** Entrega à espera do commit do seu lote. */
+    private record Delivery(List<WebhookIngestWriter.RespostaItem> items, CompletableFuture<List<Long>> done) {}
 
     /**
      * Recebe JSON claro (desencriptado), persiste como Resposta (ou lança erro)
      * e devolve a lista de pedidoIds consumidos para ACK posterior.
+     * Retorna só depois do commit (do lote em que a entrega foi agrupada); se o lote não for confirmado em
+     * {@code CT_WEBHOOK_INGEST_COMMIT_TIMEOUT_SECONDS} lança {@link TimeoutException} (a gravação é idempotente,
+     * o chamador pode repetir).
      */
-    @Transactional
     public List<Long> ingest(String clearJson) throws Exception {
-        Map<String, Object> root = json.readValue(
-                clearJson.getBytes(StandardCharsets.UTF_8),
-                Argument.mapOf(String.class, Object.class)
-        );
+        List<WebhookIngestWriter.RespostaItem> items = parse(clearJson); // payload inválido falha já, fora do lote
 
-        // Suporta payloads com "dadosResposta" OU achatados com "metadados.respostaId"
-        if (root.containsKey("dadosResposta")) {
-            Long pid = processResposta(asMap(root.get("dadosResposta")), clearJson);
-            return pid != null ? List.of(pid) : List.of();
+        int batchMax = settings.getInt(CT_WEBHOOK_INGEST_BATCH_MAX, DEFAULT_BATCH_MAX);
+        int batchWaitMs = settings.getInt(CT_WEBHOOK_INGEST_BATCH_WAIT_MS, DEFAULT_BATCH_WAIT_MS);
+        int timeoutSeconds = Math.max(1, settings.getInt(CT_WEBHOOK_INGEST_COMMIT_TIMEOUT_SECONDS, DEFAULT_COMMIT_TIMEOUT_SECONDS));
+        if (batchMax <= 1 || batchWaitMs <= 0) {
+            return commit(items); // agrupamento desligado: uma transacção por entrega
+        }
+
+        Delivery me = new Delivery(items, new CompletableFuture<>());
+        boolean leader;
+        synchronized (lock) {
+            open.add(me);
+            leader = !leaderWaiting;
+            if (leader) leaderWaiting = true;
+            else if (open.size() >= batchMax) lock.notifyAll(); // lote cheio: o líder grava já
+        }
+        if (leader) flush(awaitBatch(batchMax, batchWaitMs));
+
+        try {
+            return me.done().get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            throw new TimeoutException("Lote de webhook sem commit após " + timeoutSeconds + " s");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error error) throw error; // o mesmo que o líder recebeu
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    /* ---------------- group commit ---------------- */
+
+    /** O líder espera até o lote encher ou o prazo acabar e fica com ele; a entrega seguinte abre outro lote. */
+    private List<Delivery> awaitBatch(int batchMax, int batchWaitMs) {
+        boolean interrupted = false;
+        List<Delivery> batch;
+        synchronized (lock) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWaitMs);
+            long remaining;
+            while (open.size() < batchMax && (remaining = deadline - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                } catch (InterruptedException e) {
+                    interrupted = true; // o lote tem de ser gravado na mesma: há outras entregas à espera
+                    break;
+                }
+            }
+            batch = open;
+            open = new ArrayList<>();
+            leaderWaiting = false;
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        return batch;
+    }
+
+    /**
+     * Grava o lote numa transacção. Se falhar, repete entrega a entrega, para que uma entrega problemática
+     * não faça falhar as outras (cada chamador recebe o seu próprio resultado). Mesmo com um {@link Error} a meio,
+     * nenhuma entrega fica por completar (nenhum chamador pode ficar à espera para sempre).
+     */
+    private void flush(List<Delivery> batch) {
+        Throwable failure = null;
+        try {
+            if (batch.size() > 1) {
+                List<WebhookIngestWriter.RespostaItem> all = new ArrayList<>();
+                for (Delivery d : batch) all.addAll(d.items());
+                try {
+                    commit(all);
+                    for (Delivery d : batch) d.done().complete(pedidoIds(d.items()));
+                    log.debug("Webhook: lote de {} entrega(s) confirmado numa transacção", batch.size());
+                    return;
+                } catch (Exception e) {
+                    log.warn("Webhook: lote de {} entrega(s) falhou ({}); a gravar uma a uma", batch.size(), e.toString());
+                }
+            }
+            for (Delivery d : batch) {
+                try {
+                    d.done().complete(commit(d.items()));
+                } catch (Throwable e) {
+                    d.done().completeExceptionally(e);
+                }
+            }
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            // sem efeito nas já completas
+            for (Delivery d : batch) {
+                d.done().completeExceptionally(failure != null ? failure
+                        : new IllegalStateException("Lote de webhook terminou sem resultado"));
+            }
         }
+    }
+
+    /** Uma transacção do writer; devolve os pedidoIds das respostas gravadas. */
+    private List<Long> commit(List<WebhookIngestWriter.RespostaItem> items) {
+        writer.write(items);
+        return pedidoIds(items);
+    }
+
+    /* ---------------- parse ---------------- */
 
-        Map<String, Object> meta = asMap(root.get("metadados"));
-        if (meta != null && meta.get("respostaId") != null) {
-            Long pid = processResposta(root, clearJson);
-            return pid != null ? List.of(pid) : List.of();
+    /** Respostas da entrega, validadas (JSON inválido, sem respostaId/pedidoId → {@link InvalidWebhookPayloadException}). */
+    private List<WebhookIngestWriter.RespostaItem> parse(String clearJson) {
+        Map<String, Object> root;
+        try {
+            root = json.readValue(clearJson.getBytes(StandardCharsets.UTF_8), Argument.mapOf(String.class, Object.class));
+        } catch (Exception e) {
+            throw new InvalidWebhookPayloadException("Payload não é um objecto JSON válido", e);
         }
+        if (root == null) throw new InvalidWebhookPayloadException("Payload vazio");
 
-        // (Opcional) Se o eCT puder enviar lote de respostas num array:
-        if (root.containsKey("respostas") && root.get("respostas") instanceof Collection<?> col) {
-            Set<Long> ids = new LinkedHashSet<>();
-            for (Object o : col) {
-                Map<String, Object> r = asMap(o);
-                if (r != null) {
-                    Long pid = processResposta(r.containsKey("dadosResposta") ? asMap(r.get("dadosResposta")) : r, clearJson);
-                    if (pid != null) ids.add(pid);
+        // Suporta payloads com "dadosResposta" OU achatados com "metadados.respostaId"
+        List<Map<String, Object>> respostas = new ArrayList<>();
+        if (root.containsKey("dadosResposta")) {
+            respostas.add(asMap(root.get("dadosResposta")));
+        } else {
+            Map<String, Object> meta = asMap(root.get("metadados"));
+            if (meta != null && meta.get("respostaId") != null) {
+                respostas.add(root);
+            } else if (root.containsKey("respostas") && root.get("respostas") instanceof Collection<?> col) {
+                // (Opcional) Se o eCT puder enviar lote de respostas num array:
+                for (Object o : col) {
+                    Map<String, Object> r = asMap(o);
+                    if (r != null) respostas.add(r.containsKey("dadosResposta") ? asMap(r.get("dadosResposta")) : r);
                 }
+            } else {
+                throw new InvalidWebhookPayloadException("Payload sem 'dadosResposta' ou 'metadados.respostaId'");
             }
-            return new ArrayList<>(ids);
         }
 
-        throw new IllegalArgumentException("Payload sem 'dadosResposta' ou 'metadados.respostaId'");
+        List<WebhookIngestWriter.RespostaItem> items = new ArrayList<>(respostas.size());
+        for (Map<String, Object> resposta : respostas) {
+            if (resposta == null) throw new InvalidWebhookPayloadException("Resposta nula");
+
+            Long respostaId = toLong(str(path(resposta, "metadados", "respostaId"),
+                    path(resposta, "respostaId")));
+            Long pedidoId   = toLong(str(path(resposta, "metadados", "pedidoId"),
+                    path(resposta, "pedidoId")));
+
+            if (respostaId == null) throw new InvalidWebhookPayloadException("Resposta sem respostaId");
+            if (pedidoId == null)   throw new InvalidWebhookPayloadException("Resposta sem pedidoId");
+            items.add(new WebhookIngestWriter.RespostaItem(respostaId, pedidoId, clearJson, contentHash(resposta)));
+        }
+        return items;
     }
 
     /**
-     * Persiste/actualiza a Resposta; devolve o pedidoId correspondente para ACK.
+     * Hash da própria resposta (não da entrega inteira, que traz timestamp e outras respostas): uma reentrega
+     * da mesma resposta dá o mesmo hash e não a volta a pôr como {@code NEW}.
      */
-    private Long processResposta(Map<String, Object> resposta, String payload) {
-        if (resposta == null) throw new IllegalStateException("Resposta nula");
-
-        Long respostaId = toLong(str(path(resposta, "metadados", "respostaId"),
-                path(resposta, "respostaId")));
-        Long pedidoId   = toLong(str(path(resposta, "metadados", "pedidoId"),
-                path(resposta, "pedidoId")));
-
-        if (respostaId == null) throw new IllegalStateException("Resposta sem respostaId");
-        if (pedidoId == null)   throw new IllegalStateException("Resposta sem pedidoId");
-
-        Resposta r = respostaRepo.findByRespostaIdCt(respostaId).orElseGet(Resposta::new);
-        r.setRespostaIdCt(respostaId);
-        r.setPedidoIdCt(pedidoId);
-        r.setPayload(payload);
-        r.setStatus(Resposta.Status.NEW);
-        r.setLifeCycleStatus(LifeCycleStatus.ACTIVE);
-        r.setCreatedAt(DateUtils.getCurrentDate());
-        r.setCreatedBy("system");
-
-        // herda facility do Pedido (se existir)
-        String facility = pedidoRepo.findByPedidoIdCt(pedidoId)
-                .map(Pedido::getFacilityCode)
-                .orElse("UNKNOWN");
-        r.setFacilityCode(facility);
-
-        respostaRepo.save(r);
-
-        log.info("Resposta {} (pedido {}) gravada/atualizada", respostaId, pedidoId);
-        return pedidoId;
+    private String contentHash(Map<String, Object> resposta) {
+        try {
+            return Resposta.hashPayload(new String(json.writeValueAsBytes(resposta), StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new InvalidWebhookPayloadException("Resposta não serializável", e);
+        }
+    }
+
+    private static List<Long> pedidoIds(List<WebhookIngestWriter.RespostaItem> items) {
+        Set<Long> ids = new LinkedHashSet<>();
+        for (WebhookIngestWriter.RespostaItem it : items) ids.add(it.pedidoId());
+        return new ArrayList<>(ids);
     }
 
     /* ---------------- helpers ---------------- */
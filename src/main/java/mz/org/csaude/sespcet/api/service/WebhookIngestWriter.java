@@ -0,0 +1,73 @@
+package mz.org.csaude.sespcet.api.service;
+
+import jakarta.inject.Singleton;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import mz.org.csaude.sespcet.api.entity.Resposta;
+import mz.org.csaude.sespcet.api.repository.RespostaBulkRepository;
+import mz.org.csaude.sespcet.api.util.DateUtils;
+import mz.org.csaude.sespcet.api.util.LifeCycleStatus;
+
+import java.util.*;
+
+/**
+ * Unidade de trabalho da ingestão de webhooks ({@link WebhookIngestService}): as respostas de várias entregas
+ * são gravadas numa só transacção, num upsert nativo ({@link RespostaBulkRepository}) sem leitura prévia.
+ * Bean separado para que o {@code @Transactional} passe pelo proxy (chamadas internas não passariam).
+ */
+@Slf4j
+@Singleton
+public class WebhookIngestWriter {
+
+    /**
+     * Resposta já validada de uma entrega; {@code payload} é o JSON claro da entrega e {@code contentHash} o
+     * hash só desta resposta (é ele que decide se uma resposta existente é reescrita).
+     */
+    public record RespostaItem(long respostaId, long pedidoId, String payload, String contentHash) {}
+
+    private final RespostaBulkRepository respostaBulkRepo;
+    private final PedidoFacilityResolver facilityResolver;
+
+    public WebhookIngestWriter(RespostaBulkRepository respostaBulkRepo,
+                               PedidoFacilityResolver facilityResolver) {
+        this.respostaBulkRepo = respostaBulkRepo;
+        this.facilityResolver = facilityResolver;
+    }
+
+    /**
+     * Grava/actualiza as respostas (a última ocorrência de cada respostaId prevalece) num só upsert.
+     */
+    @Transactional(rollbackOn = Exception.class)
+    public void write(List<RespostaItem> items) {
+        Map<Long, RespostaItem> byResposta = new LinkedHashMap<>();
+        List<Long> pedidoIds = new ArrayList<>(items.size());
+        for (RespostaItem it : items) {
+            byResposta.put(it.respostaId(), it);
+            pedidoIds.add(it.pedidoId());
+        }
+
+        // facility de todos os pedidos referidos de uma vez (cache + uma projecção)
+        Map<Long, String> facilityByPedido = facilityResolver.resolve(pedidoIds);
+
+        List<Resposta> rows = new ArrayList<>(byResposta.size());
+        for (RespostaItem it : byResposta.values()) {
+            Resposta r = new Resposta();
+            r.setRespostaIdCt(it.respostaId());
+            r.setPedidoIdCt(it.pedidoId());
+            r.setPayload(it.payload());
+            r.setPayloadHash(it.contentHash());
+            r.setStatus(Resposta.Status.NEW);
+            r.setLifeCycleStatus(LifeCycleStatus.ACTIVE);
+            r.setCreatedAt(DateUtils.getCurrentDate());
+            r.setCreatedBy("system");
+
+            // herda facility do Pedido (se existir)
+            r.setFacilityCode(facilityByPedido.getOrDefault(it.pedidoId(), PedidoFacilityResolver.UNKNOWN));
+            rows.add(r);
+        }
+        // sem leitura prévia: upsert sobre uk_respostas_resposta_id_ct (payload só reescrito se o hash mudar)
+        respostaBulkRepo.upsert(rows);
+
+        log.info("Webhook: {} resposta(s) gravada(s)/actualizada(s)", rows.size());
+    }
+}
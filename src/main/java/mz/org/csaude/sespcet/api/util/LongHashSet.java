@@ -0,0 +1,111 @@
+package mz.org.csaude.sespcet.api.util;
+
+import java.util.Arrays;
+
+/**
+ * Conjunto de {@code long} em endereçamento aberto (sondagem linear), sem boxing.
+ * <p>
+ * Um único {@code long[]} com capacidade potência de 2 e ocupação entre 35% e 70%: 12 a 23 bytes por id
+ * (500 mil ids ≈ 8 MB), contra ~50 bytes de um {@code HashSet<Long>}. Só suporta inserção (ids do eCT não são apagados).
+ * Não é thread-safe.
+ */
+public final class LongHashSet {
+
+    private static final long EMPTY = 0L;
+    private static final double MAX_LOAD = 0.7;
+
+    private long[] table;
+    private int mask;
+    private int size;
+    private int resizeAt;
+    /** 0 é o marcador de posição livre; a sua presença fica à parte. */
+    private boolean hasZero;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    public LongHashSet(int expected) {
+        allocate(capacityFor(Math.max(expected, 4)));
+    }
+
+    public boolean contains(long value) {
+        if (value == EMPTY) return hasZero;
+        int i = index(value);
+        long cur;
+        while ((cur = table[i]) != EMPTY) {
+            if (cur == value) return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /** @return true se o valor ainda não existia */
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            if (hasZero) return false;
+            hasZero = true;
+            size++;
+            return true;
+        }
+        int i = index(value);
+        long cur;
+        while ((cur = table[i]) != EMPTY) {
+            if (cur == value) return false;
+            i = (i + 1) & mask;
+        }
+        table[i] = value;
+        if (++size > resizeAt) rehash(table.length << 1);
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(table, EMPTY);
+        hasZero = false;
+        size = 0;
+    }
+
+    /** Memória ocupada pela tabela (bytes), para logs. */
+    public long tableBytes() {
+        return (long) table.length * Long.BYTES;
+    }
+
+    /* ---------------- internos ---------------- */
+
+    private int index(long value) {
+        // mistura de Fibonacci: ids sequenciais espalham-se pela tabela
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = table;
+        allocate(capacity);
+        for (long v : old) {
+            if (v == EMPTY) continue;
+            int i = index(v);
+            while (table[i] != EMPTY) i = (i + 1) & mask;
+            table[i] = v;
+        }
+    }
+
+    private void allocate(int capacity) {
+        table = new long[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * MAX_LOAD);
+    }
+
+    private static int capacityFor(int expected) {
+        long needed = (long) Math.ceil(expected / MAX_LOAD);
+        if (needed > (1 << 30)) throw new IllegalArgumentException("LongHashSet: capacidade excessiva (" + expected + ")");
+        return Math.max(16, Integer.highestOneBit((int) needed - 1) << 1);
+    }
+}
@@ -0,0 +1,105 @@
+package mz.org.csaude.sespcet.api.crypto;
+
+import mz.org.csaude.sespcet.api.dto.EncryptedRequestDTO;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+class CtCompactCryptoTest {
+
+    private static KeyPair rsa;
+    private static final CtCompactCrypto crypto = new CtCompactCrypto(null, null, null);
+
+    @BeforeAll
+    static void keys() throws Exception {
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+        gen.initialize(2048);
+        rsa = gen.generateKeyPair();
+    }
+
+    @Test
+    void base64MatchesJdkDecoderOnValidInput() {
+        Random random = new Random(7);
+        for (int len = 0; len < 64; len++) {
+            byte[] bytes = new byte[len];
+            random.nextBytes(bytes);
+            String padded = Base64.getEncoder().encodeToString(bytes);
+            String unpadded = Base64.getEncoder().withoutPadding().encodeToString(bytes);
+            Assertions.assertArrayEquals(bytes, decode(padded), padded);
+            Assertions.assertArrayEquals(bytes, decode(unpadded), unpadded);
+        }
+    }
+
+    @Test
+    void base64RejectsWhatJdkDecoderRejects() {
+        for (String s : new String[]{"QQ=", "QUJD=", "QUJD==", "QUI==", "Q===", "=", "==", "Q", "QUJDQ", "QUJDQQ=",
+                "Q=Q=", "QQ==QQ==", "QU I=", "QUJç"}) {
+            Assertions.assertThrows(IllegalArgumentException.class, () -> Base64.getDecoder().decode(s), s);
+            Assertions.assertThrows(IllegalArgumentException.class, () -> decode(s), s);
+        }
+    }
+
+    @Test
+    void base64AgreesWithJdkDecoderOnRandomInput() {
+        String alphabet = "AQZaz09+/=";
+        Random random = new Random(11);
+        for (int i = 0; i < 20_000; i++) {
+            char[] chars = new char[random.nextInt(10)];
+            for (int j = 0; j < chars.length; j++) chars[j] = alphabet.charAt(random.nextInt(alphabet.length()));
+            String s = new String(chars);
+
+            byte[] expected;
+            try {
+                expected = Base64.getDecoder().decode(s);
+            } catch (IllegalArgumentException e) {
+                expected = null;
+            }
+            byte[] actual;
+            try {
+                actual = decode(s);
+            } catch (IllegalArgumentException e) {
+                actual = null;
+            }
+            Assertions.assertArrayEquals(expected, actual, s);
+        }
+    }
+
+    @Test
+    void encryptDecryptRoundTrip() throws Exception {
+        String json = "{\"pedidos\":[{\"id\":1,\"nome\":\"Maputo — Ção\"}]}";
+        String data = crypto.encryptCompact(json, rsa.getPublic());
+        byte[] clear = crypto.decryptCompact(data, rsa.getPrivate());
+        Assertions.assertEquals(json, new String(clear, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void envelopeSignatureCoversBase64String() throws Exception {
+        EncryptedRequestDTO env = crypto.buildEncryptedEnvelope("{\"a\":1}", rsa.getPublic(), rsa.getPrivate());
+        Assertions.assertTrue(CtCompactCrypto.verifySignatureOverString(env.data(), env.signature(), rsa.getPublic()));
+
+        char[] tampered = env.data().toCharArray();
+        tampered[10] = tampered[10] == 'A' ? 'B' : 'A';
+        Assertions.assertFalse(CtCompactCrypto.verifySignatureOverString(new String(tampered), env.signature(), rsa.getPublic()));
+    }
+
+    @Test
+    void tamperedCipherTextFailsAuthentication() throws Exception {
+        byte[] blob = Base64.getDecoder().decode(crypto.encryptCompact("{\"a\":1}", rsa.getPublic()));
+        blob[blob.length - 1] ^= 1;
+        String data = Base64.getEncoder().encodeToString(blob);
+        Assertions.assertThrows(javax.crypto.AEADBadTagException.class, () -> crypto.decryptCompact(data, rsa.getPrivate()));
+    }
+
+    private static byte[] decode(String s) {
+        byte[] dst = new byte[CtCompactCrypto.decodedLength(s)];
+        int n = CtCompactCrypto.decodeBase64(s, dst);
+        return Arrays.copyOf(dst, n);
+    }
+}
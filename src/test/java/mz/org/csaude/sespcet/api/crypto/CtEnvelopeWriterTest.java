@@ -0,0 +1,130 @@
+package mz.org.csaude.sespcet.api.crypto;
+
+import mz.org.csaude.sespcet.api.dto.EncryptedRequestDTO;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+class CtEnvelopeWriterTest {
+
+    private static final Pattern ENVELOPE = Pattern.compile("\\{\"data\":\"([A-Za-z0-9+/=]*)\",\"signature\":\"([A-Za-z0-9+/=]*)\"}");
+    private static final CtCompactCrypto crypto = new CtCompactCrypto(null, null, null);
+
+    private static KeyPair rsa;
+    private static KeyPair x25519;
+    private static KeyPair ed25519;
+
+    @BeforeAll
+    static void keys() throws Exception {
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+        gen.initialize(2048);
+        rsa = gen.generateKeyPair();
+        x25519 = KeyPairGenerator.getInstance("X25519").generateKeyPair();
+        ed25519 = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+    }
+
+    @Test
+    void streamedEnvelopeHasTheLayoutOfBuildEncryptedEnvelope() throws Exception {
+        String json = largeJson();
+        EncryptedRequestDTO streamed = stream(json, rsa, rsa, EnvelopeEncoding.IDENTITY);
+        EncryptedRequestDTO built = crypto.buildEncryptedEnvelope(json, rsa.getPublic(), rsa.getPrivate());
+
+        // mesmo bloco (RSA(k) || IV || ct || tag) e mesma assinatura sobre a string Base64
+        Assertions.assertEquals(built.data().length(), streamed.data().length());
+        Assertions.assertEquals(built.signature().length(), streamed.signature().length());
+        Assertions.assertTrue(CtCompactCrypto.verifySignatureOverString(streamed.data(), streamed.signature(), rsa.getPublic()));
+        Assertions.assertEquals(json, new String(crypto.decryptCompact(streamed.data(), rsa.getPrivate()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void writerAndOutputStreamProduceTheSameFormat() throws Exception {
+        String json = "{\"nome\":\"Ção\"}";
+        CtEnvelopeWriter writer = crypto.streamEncryptedEnvelope(
+                CtEnvelopeWriter.BodyWriter.of(json.getBytes(StandardCharsets.UTF_8)), rsa.getPublic(), rsa.getPrivate());
+        StringWriter out = new StringWriter();
+        writer.writeTo(out);
+
+        EncryptedRequestDTO env = parse(out.toString());
+        Assertions.assertTrue(CtCompactCrypto.verifySignatureOverString(env.data(), env.signature(), rsa.getPublic()));
+        Assertions.assertEquals(json, new String(crypto.decryptCompact(env.data(), rsa.getPrivate()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void compressedEnvelopeRoundTrips() throws Exception {
+        String json = largeJson();
+        for (EnvelopeEncoding encoding : EnvelopeEncoding.values()) {
+            EncryptedRequestDTO env = stream(json, rsa, rsa, encoding);
+            Assertions.assertTrue(CtCompactCrypto.verifySignatureOverString(env.data(), env.signature(), rsa.getPublic()));
+            byte[] clear = crypto.decryptCompact(env.data(), rsa.getPrivate(), encoding);
+            Assertions.assertEquals(json, new String(clear, StandardCharsets.UTF_8), encoding.token());
+            if (encoding.isCompressed()) {
+                Assertions.assertTrue(env.data().length() < json.length() / 2, encoding.token());
+            }
+        }
+    }
+
+    @Test
+    void x25519EnvelopeRoundTrips() throws Exception {
+        String json = largeJson();
+        EncryptedRequestDTO env = stream(json, x25519, ed25519, EnvelopeEncoding.GZIP);
+        Assertions.assertTrue(CtCompactCrypto.verifySignatureOverString(env.data(), env.signature(), ed25519.getPublic()));
+        byte[] clear = crypto.decryptCompact(env.data(), x25519.getPrivate(), EnvelopeEncoding.GZIP);
+        Assertions.assertEquals(json, new String(clear, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void failedBodyNeverYieldsASignedEnvelope() throws Exception {
+        CtEnvelopeWriter writer = crypto.streamEncryptedEnvelope(out -> {
+            out.write("{\"parcial\":".getBytes(StandardCharsets.UTF_8));
+            throw new IOException("ligação caída");
+        }, rsa.getPublic(), rsa.getPrivate());
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+
+        Assertions.assertThrows(IOException.class, () -> writer.writeTo(sink, StandardCharsets.US_ASCII));
+        String partial = sink.toString(StandardCharsets.US_ASCII);
+        Assertions.assertFalse(partial.contains("signature"), partial);
+        Assertions.assertFalse(partial.endsWith("}"), partial);
+    }
+
+    @Test
+    void invalidRecipientFailsBeforeWriting() {
+        Assertions.assertThrows(Exception.class, () -> crypto.streamEncryptedEnvelope(
+                CtEnvelopeWriter.BodyWriter.of(new byte[0]), ed25519.getPublic(), rsa.getPrivate()));
+    }
+
+    private static EncryptedRequestDTO stream(String json, KeyPair recipient, KeyPair signer, EnvelopeEncoding encoding)
+            throws Exception {
+        CtEnvelopeWriter writer = crypto.streamEncryptedEnvelope(
+                CtEnvelopeWriter.BodyWriter.of(json.getBytes(StandardCharsets.UTF_8)),
+                recipient.getPublic(), signer.getPrivate(), encoding);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        writer.writeTo(sink, StandardCharsets.US_ASCII);
+        return parse(sink.toString(StandardCharsets.US_ASCII));
+    }
+
+    private static EncryptedRequestDTO parse(String envelope) {
+        Matcher m = ENVELOPE.matcher(envelope);
+        Assertions.assertTrue(m.matches(), envelope);
+        Base64.getDecoder().decode(m.group(1));
+        return new EncryptedRequestDTO(m.group(1), m.group(2));
+    }
+
+    private static String largeJson() {
+        StringBuilder sb = new StringBuilder("{\"content\":[");
+        for (int i = 0; i < 2_000; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"id\":").append(i).append(",\"facility\":\"US-").append(i % 17).append("\",\"estado\":\"NOVO\"}");
+        }
+        return sb.append("]}").toString();
+    }
+}
@@ -0,0 +1,114 @@
+package mz.org.csaude.sespcet.api.crypto;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import mz.org.csaude.sespcet.api.config.SettingChangedEvent;
+import mz.org.csaude.sespcet.api.service.SettingService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KEYS_CLIENT_KEY_ID;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KEYS_SESPCTAPI_PRIVATE_PEM;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_KEYS_SESPCTAPI_PUBLIC_PEM;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CtKeyRegistryTest {
+
+    private static final CtCompactCrypto crypto = new CtCompactCrypto(null, null, null);
+
+    private final Map<String, String> store = new HashMap<>();
+    private CtKeyRegistry keys;
+    private KeyPair initial;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        SettingService settings = mock(SettingService.class);
+        when(settings.get(anyString(), any())).thenAnswer(inv -> store.getOrDefault(inv.getArgument(0), inv.getArgument(1)));
+        when(settings.getInt(anyString(), anyInt())).thenCallRealMethod();
+        keys = new CtKeyRegistry(settings, Caffeine.newBuilder().maximumSize(100).build());
+        doAnswer(inv -> {
+            String key = inv.getArgument(0);
+            String value = inv.getArgument(1);
+            boolean enabled = inv.getArgument(4);
+            if (enabled && value != null && !value.isBlank()) store.put(key, value); else store.remove(key);
+            keys.onApplicationEvent(new SettingChangedEvent(key, value));
+            return null;
+        }).when(settings).upsert(anyString(), anyString(), anyString(), anyString(), anyBoolean(), anyString());
+
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+        gen.initialize(2048);
+        initial = gen.generateKeyPair();
+        store.put(CT_KEYS_SESPCTAPI_PRIVATE_PEM, pem("PRIVATE KEY", initial.getPrivate().getEncoded()));
+        store.put(CT_KEYS_SESPCTAPI_PUBLIC_PEM, pem("PUBLIC KEY", initial.getPublic().getEncoded()));
+        store.put(CT_KEYS_CLIENT_KEY_ID, "sespct-api-key-1");
+    }
+
+    @Test
+    void stagedKeyIsNotUsedForEctUntilPublished() throws Exception {
+        String staged = keys.stageApiKey("test");
+
+        Assertions.assertEquals("sespct-api-key-2", staged);
+        Assertions.assertEquals("sespct-api-key-1", keys.activeKid());
+        Assertions.assertEquals("sespct-api-key-1", keys.publishedKid());
+        // o eCT (sem kid) continua a cifrar e a verificar com o par que conhece
+        Assertions.assertEquals(initial.getPrivate(), keys.ectDecryptionKey(null));
+        Assertions.assertEquals(initial.getPrivate(), keys.ectSigningKey());
+        Assertions.assertThrows(IllegalStateException.class, () -> keys.activateApiKey("test"));
+    }
+
+    @Test
+    void publishedKeyOpensKidLessEnvelopesBeforeActivation() throws Exception {
+        String staged = keys.stageApiKey("test");
+        PublicKey stagedPublic = keys.publicKey(keys.stagedPublicPem());
+        keys.markPublished(staged, "test");
+
+        String data = crypto.encryptCompact("{\"a\":1}", stagedPublic);
+        Assertions.assertEquals("{\"a\":1}",
+                new String(crypto.decryptCompact(data, keys.ectDecryptionKey(null)), StandardCharsets.UTF_8));
+        // clientes locais sem kid continuam no par activo
+        Assertions.assertEquals(initial.getPrivate(), keys.findApiPrivateKey(null));
+    }
+
+    @Test
+    void activationRetiresThePreviousPair() throws Exception {
+        String staged = keys.stageApiKey("test");
+        PublicKey stagedPublic = keys.publicKey(keys.stagedPublicPem());
+        keys.markPublished(staged, "test");
+
+        Assertions.assertEquals(staged, keys.activateApiKey("test"));
+        Assertions.assertEquals(staged, keys.activeKid());
+        Assertions.assertNull(keys.stagedPublicPem());
+        Assertions.assertEquals(initial.getPrivate(), keys.findApiPrivateKey("sespct-api-key-1"));
+        Assertions.assertTrue(keys.retiredKids().contains("sespct-api-key-1"));
+
+        String data = crypto.encryptCompact("{}", stagedPublic);
+        Assertions.assertEquals("{}", new String(crypto.decryptCompact(data, keys.ectDecryptionKey(null)), StandardCharsets.UTF_8));
+        Assertions.assertEquals(keys.apiPrivateKey(), keys.ectSigningKey());
+    }
+
+    @Test
+    void unknownKidIsRejected() {
+        Assertions.assertThrows(IllegalStateException.class, () -> keys.ectDecryptionKey("sespct-api-key-9"));
+        Assertions.assertThrows(IllegalStateException.class, () -> keys.markPublished("sespct-api-key-9", "test"));
+    }
+
+    private static String pem(String type, byte[] der) {
+        return "-----BEGIN " + type + "-----\n"
+                + Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(der)
+                + "\n-----END " + type + "-----";
+    }
+}
@@ -0,0 +1,195 @@
+package mz.org.csaude.sespcet.api.crypto;
+
+import mz.org.csaude.sespcet.api.service.SettingService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_ENVELOPE_SESSION_MAX_MESSAGES;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_ENVELOPE_SESSION_TTL_SECONDS;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CtSessionKeyManagerTest {
+
+    private static final Pattern ENVELOPE = Pattern.compile(
+            "\\{\"kid\":\"([A-Za-z0-9_-]+)\"(?:,\"key\":\"([A-Za-z0-9+/=]+)\",\"keySignature\":\"([A-Za-z0-9+/=]+)\")?,\"data\":\"([A-Za-z0-9+/=]+)\"}");
+    private static final CtCompactCrypto crypto = new CtCompactCrypto(null, null, null);
+
+    private static KeyPair api;
+    private static KeyPair client;
+    private static KeyPair clientX25519;
+    private static KeyPair apiEd25519;
+
+    private SettingService settings;
+    private CtSessionKeyManager manager;
+
+    @BeforeAll
+    static void keys() throws Exception {
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+        gen.initialize(2048);
+        api = gen.generateKeyPair();
+        client = gen.generateKeyPair();
+        clientX25519 = KeyPairGenerator.getInstance("X25519").generateKeyPair();
+        apiEd25519 = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+    }
+
+    @BeforeEach
+    void setUp() {
+        settings = mock(SettingService.class);
+        when(settings.getLong(eq(CT_ENVELOPE_SESSION_TTL_SECONDS), anyLong())).thenReturn(3600L);
+        when(settings.getLong(eq(CT_ENVELOPE_SESSION_MAX_MESSAGES), anyLong())).thenReturn(3L);
+        manager = new CtSessionKeyManager(settings);
+    }
+
+    @Test
+    void announcedSessionEnvelopeOpensWithTheClientKey() throws Exception {
+        String json = "{\"content\":[{\"id\":1,\"nome\":\"Ção\"}]}";
+        String envelope = write(manager.streamEnvelope("c1", client.getPublic(), api.getPrivate(), "new",
+                CtEnvelopeWriter.BodyWriter.of(json.getBytes(StandardCharsets.UTF_8)), EnvelopeEncoding.IDENTITY));
+
+        Matcher m = parse(envelope);
+        Assertions.assertNotNull(m.group(2), "primeira mensagem anuncia a chave");
+        SecretKey key = unwrapRsa(m, api.getPublic());
+        Assertions.assertEquals(json, open(m.group(1), key, m.group(4), EnvelopeEncoding.IDENTITY));
+    }
+
+    @Test
+    void compressedSessionEnvelopeRoundTrips() throws Exception {
+        String json = "{\"content\":\"" + "abc".repeat(3_000) + "\"}";
+        String envelope = write(manager.streamEnvelope("c1", client.getPublic(), api.getPrivate(), null,
+                CtEnvelopeWriter.BodyWriter.of(json.getBytes(StandardCharsets.UTF_8)), EnvelopeEncoding.GZIP));
+
+        Matcher m = parse(envelope);
+        SecretKey key = unwrapRsa(m, api.getPublic());
+        Assertions.assertEquals(json, open(m.group(1), key, m.group(4), EnvelopeEncoding.GZIP));
+        Assertions.assertThrows(javax.crypto.AEADBadTagException.class,
+                () -> open(m.group(1), key, m.group(4), EnvelopeEncoding.IDENTITY));
+    }
+
+    @Test
+    void x25519SessionKeyIsSealedForTheClient() throws Exception {
+        String envelope = write(manager.streamEnvelope("c2", clientX25519.getPublic(), apiEd25519.getPrivate(), null,
+                CtEnvelopeWriter.BodyWriter.of("{}".getBytes(StandardCharsets.UTF_8)), EnvelopeEncoding.IDENTITY));
+
+        Matcher m = parse(envelope);
+        Assertions.assertTrue(verify(m, apiEd25519.getPublic()));
+        byte[] raw = crypto.decryptCompact(m.group(2), clientX25519.getPrivate());
+        Assertions.assertEquals("{}", open(m.group(1), new SecretKeySpec(raw, "AES"), m.group(4), EnvelopeEncoding.IDENTITY));
+    }
+
+    @Test
+    void sessionIsReusedAndOnlyAnnouncedWhenTheClientLacksIt() {
+        CtSessionKeyManager.Lease first = manager.acquire("c1", client.getPublic(), api.getPrivate(), "new");
+        CtSessionKeyManager.Lease known = manager.acquire("c1", client.getPublic(), api.getPrivate(), first.kid());
+        CtSessionKeyManager.Lease stale = manager.acquire("c1", client.getPublic(), api.getPrivate(), "outro");
+
+        Assertions.assertTrue(first.announce());
+        Assertions.assertFalse(known.announce());
+        Assertions.assertEquals(first.kid(), known.kid());
+        // re-anúncio com o material já calculado: sem nova operação RSA
+        Assertions.assertTrue(stale.announce());
+        Assertions.assertEquals(first.kid(), stale.kid());
+        Assertions.assertEquals(first.wrappedKey(), stale.wrappedKey());
+    }
+
+    @Test
+    void sessionRenewsAfterMaxMessagesOrKeyChange() throws Exception {
+        String kid = null;
+        for (int i = 0; i < 3; i++) {
+            kid = manager.acquire("c1", client.getPublic(), api.getPrivate(), kid).kid();
+        }
+        CtSessionKeyManager.Lease renewed = manager.acquire("c1", client.getPublic(), api.getPrivate(), kid);
+        Assertions.assertNotEquals(kid, renewed.kid());
+        Assertions.assertTrue(renewed.announce());
+
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+        gen.initialize(2048);
+        CtSessionKeyManager.Lease rekeyed = manager.acquire("c1", gen.generateKeyPair().getPublic(), api.getPrivate(), renewed.kid());
+        Assertions.assertNotEquals(renewed.kid(), rekeyed.kid());
+    }
+
+    @Test
+    void concurrentRequestsShareOneEstablishment() throws Exception {
+        when(settings.getLong(eq(CT_ENVELOPE_SESSION_MAX_MESSAGES), anyLong())).thenReturn(10_000L);
+        int threads = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            Set<Future<String>> futures = new HashSet<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return manager.acquire("c1", client.getPublic(), api.getPrivate(), null).kid();
+                }));
+            }
+            start.countDown();
+            Set<String> kids = new HashSet<>();
+            for (Future<String> f : futures) kids.add(f.get());
+            Assertions.assertEquals(1, kids.size(), kids.toString());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static String write(CtSessionEnvelopeWriter writer) throws Exception {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        writer.writeTo(sink, StandardCharsets.US_ASCII);
+        return sink.toString(StandardCharsets.US_ASCII);
+    }
+
+    private static Matcher parse(String envelope) {
+        Matcher m = ENVELOPE.matcher(envelope);
+        Assertions.assertTrue(m.matches(), envelope);
+        return m;
+    }
+
+    private static boolean verify(Matcher m, PublicKey apiPublic) throws Exception {
+        Signature sig = Signature.getInstance(apiPublic.getAlgorithm().equals("RSA") ? "SHA256withRSA" : "Ed25519");
+        sig.initVerify(apiPublic);
+        sig.update((m.group(1) + "." + m.group(2)).getBytes(StandardCharsets.US_ASCII));
+        return sig.verify(Base64.getDecoder().decode(m.group(3)));
+    }
+
+    private static SecretKey unwrapRsa(Matcher m, PublicKey apiPublic) throws Exception {
+        Assertions.assertTrue(verify(m, apiPublic), "keySignature sobre kid.key");
+        Cipher rsa = Cipher.getInstance(CtCryptoPool.RSA_OAEP);
+        rsa.init(Cipher.DECRYPT_MODE, client.getPrivate(), CtCompactCrypto.OAEP_SHA256_SHA256);
+        return new SecretKeySpec(rsa.doFinal(Base64.getDecoder().decode(m.group(2))), "AES");
+    }
+
+    private static String open(String kid, SecretKey key, String data, EnvelopeEncoding encoding) throws Exception {
+        byte[] blob = Base64.getDecoder().decode(data);
+        Cipher gcm = Cipher.getInstance(CtCryptoPool.AES_GCM);
+        gcm.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(CtEnvelopeWriter.GCM_TAG_BITS,
+                Arrays.copyOf(blob, CtEnvelopeWriter.GCM_IV_BYTES)));
+        gcm.updateAAD(kid.getBytes(StandardCharsets.US_ASCII));
+        encoding.bind(gcm);
+        byte[] clear = gcm.doFinal(blob, CtEnvelopeWriter.GCM_IV_BYTES, blob.length - CtEnvelopeWriter.GCM_IV_BYTES);
+        return new String(encoding.decompress(clear), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,56 @@
+package mz.org.csaude.sespcet.api.crypto;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+class CtX25519Test {
+
+    @Test
+    void openDerivesTheSealedKey() throws Exception {
+        KeyPair recipient = KeyPairGenerator.getInstance("X25519").generateKeyPair();
+        CtX25519.Sealed sealed = CtX25519.seal(recipient.getPublic());
+
+        byte[] block = new byte[CtX25519.KEY_BYTES + 4];
+        System.arraycopy(sealed.ephemeralPublic(), 0, block, 4, CtX25519.KEY_BYTES);
+        Assertions.assertArrayEquals(sealed.key().getEncoded(),
+                CtX25519.open(recipient.getPrivate(), block, 4).getEncoded());
+    }
+
+    @Test
+    void publicOfMatchesTheEncodedPublicKey() throws Exception {
+        KeyPair pair = KeyPairGenerator.getInstance("X25519").generateKeyPair();
+        Assertions.assertArrayEquals(CtX25519.raw(pair.getPublic()), CtX25519.publicOf(pair.getPrivate()));
+    }
+
+    @Test
+    void derivedKeyIsBoundToTheRecipient() throws Exception {
+        KeyPair recipient = KeyPairGenerator.getInstance("X25519").generateKeyPair();
+        KeyPair other = KeyPairGenerator.getInstance("X25519").generateKeyPair();
+        CtX25519.Sealed sealed = CtX25519.seal(recipient.getPublic());
+        Assertions.assertFalse(java.util.Arrays.equals(sealed.key().getEncoded(),
+                CtX25519.open(other.getPrivate(), sealed.ephemeralPublic(), 0).getEncoded()));
+    }
+
+    @Test
+    void schemeRejectsMismatchedClientKeys() throws Exception {
+        KeyPairGenerator rsaGen = KeyPairGenerator.getInstance("RSA");
+        rsaGen.initialize(2048);
+        KeyPair rsa = rsaGen.generateKeyPair();
+        KeyPair x25519 = KeyPairGenerator.getInstance("X25519").generateKeyPair();
+        KeyPair x448 = KeyPairGenerator.getInstance("X448").generateKeyPair();
+        KeyPair ed25519 = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+
+        EnvelopeScheme.RSA.checkClientKeys(rsa.getPublic(), null);
+        EnvelopeScheme.X25519.checkClientKeys(x25519.getPublic(), ed25519.getPublic());
+
+        Assertions.assertThrows(InvalidKeyException.class, () -> EnvelopeScheme.RSA.checkClientKeys(x25519.getPublic(), null));
+        Assertions.assertThrows(InvalidKeyException.class, () -> EnvelopeScheme.X25519.checkClientKeys(rsa.getPublic(), ed25519.getPublic()));
+        Assertions.assertThrows(InvalidKeyException.class, () -> EnvelopeScheme.X25519.checkClientKeys(x448.getPublic(), ed25519.getPublic()));
+        Assertions.assertThrows(InvalidKeyException.class, () -> EnvelopeScheme.X25519.checkClientKeys(x25519.getPublic(), rsa.getPublic()));
+        Assertions.assertThrows(InvalidKeyException.class, () -> EnvelopeScheme.X25519.checkClientKeys(x25519.getPublic(), null));
+    }
+}
@@ -0,0 +1,88 @@
+package mz.org.csaude.sespcet.api.crypto;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.AEADBadTagException;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+class EnvelopeEncodingTest {
+
+    private static final CtCompactCrypto crypto = new CtCompactCrypto(null, null, null);
+    private static KeyPair rsa;
+
+    @BeforeAll
+    static void keys() throws Exception {
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+        gen.initialize(2048);
+        rsa = gen.generateKeyPair();
+    }
+
+    @Test
+    void negotiateWithoutHeaderIsIdentity() {
+        Assertions.assertEquals(EnvelopeEncoding.IDENTITY, EnvelopeEncoding.negotiate(null));
+        Assertions.assertEquals(EnvelopeEncoding.IDENTITY, EnvelopeEncoding.negotiate(" "));
+        Assertions.assertEquals(EnvelopeEncoding.IDENTITY, EnvelopeEncoding.negotiate("br, zstd"));
+    }
+
+    @Test
+    void negotiateKeepsClientOrderOnEqualQuality() {
+        Assertions.assertEquals(EnvelopeEncoding.GZIP, EnvelopeEncoding.negotiate("gzip, deflate"));
+        Assertions.assertEquals(EnvelopeEncoding.DEFLATE, EnvelopeEncoding.negotiate("br, DEFLATE, gzip"));
+    }
+
+    @Test
+    void negotiateHonoursQualityValues() {
+        Assertions.assertEquals(EnvelopeEncoding.DEFLATE, EnvelopeEncoding.negotiate("gzip;q=0.5, deflate"));
+        Assertions.assertEquals(EnvelopeEncoding.DEFLATE, EnvelopeEncoding.negotiate("gzip;q=0.2, deflate;q=0.8"));
+        Assertions.assertEquals(EnvelopeEncoding.IDENTITY, EnvelopeEncoding.negotiate("gzip;q=0.5, identity"));
+        Assertions.assertEquals(EnvelopeEncoding.DEFLATE, EnvelopeEncoding.negotiate("gzip;q=0, deflate;q=0.1"));
+    }
+
+    @Test
+    void negotiateIgnoresRejectedAndInvalidQuality() {
+        Assertions.assertEquals(EnvelopeEncoding.IDENTITY, EnvelopeEncoding.negotiate("gzip;q=0"));
+        Assertions.assertEquals(EnvelopeEncoding.IDENTITY, EnvelopeEncoding.negotiate("gzip;q=abc"));
+        Assertions.assertEquals(EnvelopeEncoding.DEFLATE, EnvelopeEncoding.negotiate("gzip;q=2, deflate;q=0.3"));
+    }
+
+    @Test
+    void fromHeaderRejectsUnknownEncodings() {
+        Assertions.assertEquals(EnvelopeEncoding.IDENTITY, EnvelopeEncoding.fromHeader(null));
+        Assertions.assertEquals(EnvelopeEncoding.GZIP, EnvelopeEncoding.fromHeader(" GZIP "));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> EnvelopeEncoding.fromHeader("br"));
+    }
+
+    @Test
+    void compressedPayloadRoundTrips() throws Exception {
+        String json = "{\"pedidos\":\"" + "abc".repeat(5_000) + "\"}";
+        for (EnvelopeEncoding encoding : EnvelopeEncoding.values()) {
+            String data = crypto.encryptCompact(json, rsa.getPublic(), encoding);
+            byte[] clear = crypto.decryptCompact(data, rsa.getPrivate(), encoding);
+            Assertions.assertEquals(json, new String(clear, StandardCharsets.UTF_8), encoding.token());
+        }
+    }
+
+    @Test
+    void encodingIsAuthenticatedByTheGcmTag() throws Exception {
+        String json = "{\"a\":\"" + "x".repeat(1_000) + "\"}";
+        String gzip = crypto.encryptCompact(json, rsa.getPublic(), EnvelopeEncoding.GZIP);
+        String identity = crypto.encryptCompact(json, rsa.getPublic(), EnvelopeEncoding.IDENTITY);
+
+        // cabeçalho removido ou trocado → falha a tag, nunca bytes comprimidos entregues como JSON
+        Assertions.assertThrows(AEADBadTagException.class, () -> crypto.decryptCompact(gzip, rsa.getPrivate()));
+        Assertions.assertThrows(AEADBadTagException.class,
+                () -> crypto.decryptCompact(gzip, rsa.getPrivate(), EnvelopeEncoding.DEFLATE));
+        Assertions.assertThrows(AEADBadTagException.class,
+                () -> crypto.decryptCompact(identity, rsa.getPrivate(), EnvelopeEncoding.GZIP));
+    }
+
+    @Test
+    void decompressionIsBounded() throws Exception {
+        byte[] bomb = EnvelopeEncoding.GZIP.compress(new byte[EnvelopeEncoding.MAX_INFLATED_BYTES + 1]);
+        Assertions.assertThrows(java.io.IOException.class, () -> EnvelopeEncoding.GZIP.decompress(bomb));
+    }
+}
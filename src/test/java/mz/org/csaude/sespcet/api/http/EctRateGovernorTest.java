@@ -0,0 +1,131 @@
+package mz.org.csaude.sespcet.api.http;
+
+import mz.org.csaude.sespcet.api.error.EctUnavailableException;
+import mz.org.csaude.sespcet.api.service.SettingService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_HTTP_ACQUIRE_TIMEOUT_SECONDS;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_HTTP_MAX_IN_FLIGHT;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_HTTP_RETRY_BASE_MS;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_HTTP_RETRY_MAX_BACKOFF_MS;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** Caminho reactivo do governor/resiliência: esperas com timers e nenhuma leitura de settings numa thread do Reactor. */
+class EctRateGovernorTest {
+
+    private final Map<String, String> store = new HashMap<>();
+    /** Settings lidas numa thread não bloqueante (timer, parallel, event loop). */
+    private final List<String> nonBlockingReads = new CopyOnWriteArrayList<>();
+    private SettingService settings;
+    private EctRateGovernor governor;
+
+    @BeforeEach
+    void setUp() {
+        settings = mock(SettingService.class);
+        when(settings.getInt(anyString(), anyInt())).thenAnswer(inv -> {
+            String v = read(inv.getArgument(0));
+            return v == null ? inv.getArgument(1) : Integer.parseInt(v);
+        });
+        when(settings.getLong(anyString(), anyLong())).thenAnswer(inv -> {
+            String v = read(inv.getArgument(0));
+            return v == null ? inv.getArgument(1) : Long.parseLong(v);
+        });
+        when(settings.getDouble(anyString(), anyDouble())).thenAnswer(inv -> {
+            String v = read(inv.getArgument(0));
+            return v == null ? inv.getArgument(1) : Double.parseDouble(v);
+        });
+        governor = new EctRateGovernor(settings, null);
+    }
+
+    @Test
+    void acquireAsyncFromAReactorThreadReadsSettingsElsewhere() {
+        EctRateGovernor.Permit permit = Mono.defer(() -> governor.acquireAsync("op"))
+                .subscribeOn(Schedulers.parallel())
+                .block(Duration.ofSeconds(5));
+
+        Assertions.assertNotNull(permit);
+        Assertions.assertEquals(1, governor.inFlight());
+        permit.close();
+        Assertions.assertEquals(0, governor.inFlight());
+        Assertions.assertTrue(nonBlockingReads.isEmpty(), nonBlockingReads.toString());
+    }
+
+    @Test
+    void waitingForASlotUsesTimersAndKeepsTheLimits() {
+        store.put(CT_HTTP_MAX_IN_FLIGHT, "1");
+        EctRateGovernor.Permit first = governor.acquireAsync("a").block(Duration.ofSeconds(5));
+
+        Mono<EctRateGovernor.Permit> second = governor.acquireAsync("b").cache();
+        second.subscribe();
+        Schedulers.parallel().schedule(first::close, 200, java.util.concurrent.TimeUnit.MILLISECONDS);
+
+        long started = System.nanoTime();
+        EctRateGovernor.Permit p = second.block(Duration.ofSeconds(5));
+        Assertions.assertNotNull(p);
+        Assertions.assertTrue(System.nanoTime() - started >= 150_000_000L, "esperou pela vaga");
+        p.close();
+        Assertions.assertTrue(nonBlockingReads.isEmpty(), nonBlockingReads.toString());
+    }
+
+    @Test
+    void retryAfterPausesTheAsyncPath() {
+        governor.onThrottled("op", Duration.ofMillis(200));
+        long started = System.nanoTime();
+        governor.acquireAsync("op").block(Duration.ofSeconds(5)).close();
+        Assertions.assertTrue(System.nanoTime() - started >= 150_000_000L);
+        Assertions.assertTrue(nonBlockingReads.isEmpty(), nonBlockingReads.toString());
+    }
+
+    @Test
+    void noSlotWithinTheTimeoutIsUnavailable() {
+        store.put(CT_HTTP_MAX_IN_FLIGHT, "1");
+        store.put(CT_HTTP_ACQUIRE_TIMEOUT_SECONDS, "1");
+        EctRateGovernor.Permit held = governor.acquireAsync("a").block(Duration.ofSeconds(5));
+        try {
+            Assertions.assertThrows(EctUnavailableException.class, () -> governor.acquireAsync("b").block(Duration.ofSeconds(5)));
+        } finally {
+            held.close();
+        }
+    }
+
+    @Test
+    void reactiveRetriesNeverReadSettingsOnTimerThreads() {
+        store.put(CT_HTTP_RETRY_BASE_MS, "1");
+        store.put(CT_HTTP_RETRY_MAX_BACKOFF_MS, "5");
+        EctResilience resilience = new EctResilience(settings, governor, null);
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = resilience.mono("POST x", true, () -> Mono.defer(() -> calls.incrementAndGet() < 3
+                        ? Mono.<String>error(new IOException("ligação caída"))
+                        : Mono.just("ok")))
+                .subscribeOn(Schedulers.parallel())
+                .block(Duration.ofSeconds(5));
+
+        Assertions.assertEquals("ok", result);
+        Assertions.assertEquals(3, calls.get());
+        Assertions.assertEquals(0, governor.inFlight());
+        Assertions.assertTrue(nonBlockingReads.isEmpty(), nonBlockingReads.toString());
+    }
+
+    private String read(String key) {
+        if (Schedulers.isInNonBlockingThread()) nonBlockingReads.add(key + "@" + Thread.currentThread().getName());
+        return store.get(key);
+    }
+}
@@ -0,0 +1,206 @@
+package mz.org.csaude.sespcet.api.http;
+
+import io.micronaut.http.HttpHeaders;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.client.exceptions.HttpClientResponseException;
+import mz.org.csaude.sespcet.api.error.EctUnavailableException;
+import mz.org.csaude.sespcet.api.service.SettingService;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_HTTP_BREAKER_FAILURES;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_HTTP_BREAKER_OPEN_SECONDS;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_HTTP_RATE_PER_SECOND;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_HTTP_RETRY_BASE_MS;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_HTTP_RETRY_MAX_BACKOFF_MS;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_HTTP_THROTTLE_DEFAULT_MS;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** Circuit breaker e retry do eCT: transições de estado, sonda única e respeito pelo {@code Retry-After}. */
+class EctResilienceTest {
+
+    private final Map<String, String> store = new HashMap<>();
+    private EctRateGovernor governor;
+    private EctResilience resilience;
+
+    @BeforeEach
+    void setUp() {
+        SettingService settings = mock(SettingService.class);
+        when(settings.getInt(anyString(), anyInt())).thenAnswer(inv -> {
+            String v = store.get(inv.<String>getArgument(0));
+            return v == null ? inv.getArgument(1) : Integer.parseInt(v);
+        });
+        when(settings.getLong(anyString(), anyLong())).thenAnswer(inv -> {
+            String v = store.get(inv.<String>getArgument(0));
+            return v == null ? inv.getArgument(1) : Long.parseLong(v);
+        });
+        when(settings.getDouble(anyString(), anyDouble())).thenAnswer(inv -> {
+            String v = store.get(inv.<String>getArgument(0));
+            return v == null ? inv.getArgument(1) : Double.parseDouble(v);
+        });
+        store.put(CT_HTTP_RETRY_BASE_MS, "1");
+        store.put(CT_HTTP_RETRY_MAX_BACKOFF_MS, "5");
+        store.put(CT_HTTP_THROTTLE_DEFAULT_MS, "1");
+        store.put(CT_HTTP_RATE_PER_SECOND, "1000");
+        store.put(CT_HTTP_BREAKER_FAILURES, "3");
+        governor = new EctRateGovernor(settings, null);
+        resilience = new EctResilience(settings, governor, null);
+    }
+
+    @Test
+    void consecutiveFailuresOpenTheCircuit() {
+        fail(new IOException("ligação caída"));
+        fail(new IOException("ligação caída"));
+        Assertions.assertEquals(EctResilience.State.CLOSED, resilience.state());
+
+        fail(new IOException("ligação caída"));
+        Assertions.assertEquals(EctResilience.State.OPEN, resilience.state());
+    }
+
+    @Test
+    void openCircuitRejectsWithoutCallingTheEct() {
+        open();
+        AtomicInteger calls = new AtomicInteger();
+
+        Assertions.assertThrows(EctUnavailableException.class,
+                () -> resilience.call("GET x", true, calls::incrementAndGet));
+        Assertions.assertThrows(EctUnavailableException.class,
+                () -> resilience.mono("GET x", true, () -> Mono.fromCallable(calls::incrementAndGet)).block());
+        Assertions.assertEquals(0, calls.get());
+    }
+
+    @Test
+    void halfOpenLetsASingleProbeThrough() throws Exception {
+        store.put(CT_HTTP_BREAKER_OPEN_SECONDS, "0");
+        open();
+
+        CountDownLatch probing = new CountDownLatch(1);
+        CountDownLatch answer = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> probe = executor.submit(() -> resilience.call("GET sonda", false, () -> {
+                probing.countDown();
+                answer.await(5, TimeUnit.SECONDS);
+                return "ok";
+            }));
+            Assertions.assertTrue(probing.await(5, TimeUnit.SECONDS));
+            Assertions.assertEquals(EctResilience.State.HALF_OPEN, resilience.state());
+
+            Assertions.assertThrows(EctUnavailableException.class, () -> resilience.call("GET outra", false, () -> "ok"));
+
+            answer.countDown();
+            Assertions.assertEquals("ok", probe.get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals(EctResilience.State.CLOSED, resilience.state());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void failedProbeReopensTheCircuit() {
+        store.put(CT_HTTP_BREAKER_OPEN_SECONDS, "0");
+        open();
+
+        fail(new IOException("ainda em baixo"));
+
+        Assertions.assertEquals(EctResilience.State.OPEN, resilience.state());
+    }
+
+    @Test
+    void tooManyRequestsDoNotCountForTheCircuit() {
+        store.put(CT_HTTP_BREAKER_FAILURES, "1");
+        for (int i = 0; i < 3; i++) fail(status(HttpStatus.TOO_MANY_REQUESTS, null));
+        Assertions.assertEquals(EctResilience.State.CLOSED, resilience.state());
+
+        fail(status(HttpStatus.SERVICE_UNAVAILABLE, null));
+        Assertions.assertEquals(EctResilience.State.OPEN, resilience.state());
+    }
+
+    @Test
+    void retryAfterBeyondTheBackoffCapGivesUpAtOnce() {
+        AtomicInteger calls = new AtomicInteger();
+        HttpClientResponseException busy = status(HttpStatus.SERVICE_UNAVAILABLE, "60");
+
+        long started = System.nanoTime();
+        HttpClientResponseException thrown = Assertions.assertThrows(HttpClientResponseException.class,
+                () -> resilience.call("GET x", true, () -> {
+                    calls.incrementAndGet();
+                    throw busy;
+                }));
+
+        Assertions.assertSame(busy, thrown);
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(5), "não esperou pelo Retry-After");
+    }
+
+    @Test
+    void cancelledReactiveProbeIsReleased() throws Exception {
+        store.put(CT_HTTP_BREAKER_OPEN_SECONDS, "0");
+        open();
+
+        CountDownLatch probing = new CountDownLatch(1);
+        Disposable probe = resilience.mono("GET sonda", false, () -> Mono.<String>never().doOnSubscribe(s -> probing.countDown()))
+                .subscribe();
+        Assertions.assertTrue(probing.await(5, TimeUnit.SECONDS));
+        Assertions.assertThrows(EctUnavailableException.class, () -> resilience.call("GET outra", false, () -> "ok"));
+
+        probe.dispose();
+
+        Assertions.assertEquals("ok", resilience.call("GET outra", false, () -> "ok"));
+        Assertions.assertEquals(EctResilience.State.CLOSED, resilience.state());
+        Assertions.assertEquals(0, governor.inFlight());
+    }
+
+    @Test
+    void errorInsideTheProbeReleasesIt() throws Exception {
+        store.put(CT_HTTP_BREAKER_OPEN_SECONDS, "0");
+        open();
+
+        Assertions.assertThrows(LinkageError.class, () -> resilience.<String>call("GET sonda", false, () -> {
+            throw new LinkageError("classe em falta");
+        }));
+
+        Assertions.assertEquals("ok", resilience.call("GET outra", false, () -> "ok"));
+        Assertions.assertEquals(EctResilience.State.CLOSED, resilience.state());
+    }
+
+    /* ---------------- helpers ---------------- */
+
+    /** Uma chamada não idempotente (uma só tentativa) que falha com {@code e}. */
+    private void fail(Exception e) {
+        Assertions.assertThrows(e.getClass(), () -> resilience.<String>call("POST x", false, () -> {
+            throw e;
+        }));
+    }
+
+    private void open() {
+        store.put(CT_HTTP_BREAKER_FAILURES, "1");
+        fail(new IOException("ligação caída"));
+        Assertions.assertEquals(EctResilience.State.OPEN, resilience.state());
+    }
+
+    private static HttpClientResponseException status(HttpStatus status, String retryAfter) {
+        var response = HttpResponse.status(status);
+        if (retryAfter != null) response.header(HttpHeaders.RETRY_AFTER, retryAfter);
+        return new HttpClientResponseException(status.getReason(), response);
+    }
+}
@@ -0,0 +1,130 @@
+package mz.org.csaude.sespcet.api.repository;
+
+import jakarta.persistence.EntityManager;
+import mz.org.csaude.sespcet.api.entity.Pedido;
+import mz.org.csaude.sespcet.api.util.LifeCycleStatus;
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Corre o INSERT real contra H2 em modo MariaDB: os duplicados passam pelo {@code ON DUPLICATE KEY}
+ * e não podem aparecer como inseridos.
+ */
+class PedidoBulkRepositoryTest {
+
+    private Connection connection;
+    private PedidoBulkRepository repository;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        connection = DriverManager.getConnection("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MariaDB");
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE pedidos ("
+                    + "id BIGINT AUTO_INCREMENT PRIMARY KEY, uuid VARCHAR(36) NOT NULL, "
+                    + "pedido_id_ct VARCHAR(50) NOT NULL, facility_code VARCHAR(50) NOT NULL, payload LONGTEXT NOT NULL, "
+                    + "status VARCHAR(20) NOT NULL, created_by VARCHAR(50) NOT NULL, created_at TIMESTAMP NOT NULL, "
+                    + "life_cycle_status VARCHAR(100) NOT NULL, "
+                    + "CONSTRAINT uk_pedidos_pedido_id_ct UNIQUE (pedido_id_ct), CONSTRAINT uk_pedidos_uuid UNIQUE (uuid))");
+        }
+
+        Session session = mock(Session.class);
+        when(session.doReturningWork(any()))
+                .thenAnswer(inv -> ((ReturningWork<Object>) inv.getArgument(0)).execute(connection));
+        EntityManager entityManager = mock(EntityManager.class);
+        when(entityManager.unwrap(Session.class)).thenReturn(session);
+        repository = new PedidoBulkRepository(entityManager);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    void duplicateIsLeftUntouchedAndNotReportedAsInserted() throws Exception {
+        Pedido existing = pedido(2L); // gravado antes pelo webhook
+        repository.insertNew(List.of(existing));
+
+        List<Long> inserted = repository.insertNew(List.of(pedido(1L), pedido(2L), pedido(3L)));
+
+        Assertions.assertEquals(List.of(1L, 3L), sorted(inserted));
+        Assertions.assertEquals(3, count());
+        Assertions.assertEquals(existing.getUuid(), uuidOf(2L));
+    }
+
+    @Test
+    void chunkOfOnlyDuplicatesInsertsNothing() {
+        repository.insertNew(List.of(pedido(1L), pedido(2L)));
+
+        Assertions.assertTrue(repository.insertNew(List.of(pedido(1L), pedido(2L))).isEmpty());
+    }
+
+    @Test
+    void duplicatesAcrossStatementChunksAreResolvedPerChunk() throws Exception {
+        repository.insertNew(List.of(pedido(10L), pedido(700L)));
+
+        List<Pedido> page = new ArrayList<>();
+        for (long id = 1; id <= 1200; id++) page.add(pedido(id));
+
+        List<Long> inserted = repository.insertNew(page);
+
+        Assertions.assertEquals(1198, inserted.size());
+        Assertions.assertFalse(inserted.contains(10L));
+        Assertions.assertFalse(inserted.contains(700L));
+        Assertions.assertEquals(1200, count());
+    }
+
+    /* ---------------- helpers ---------------- */
+
+    private static Pedido pedido(long pedidoIdCt) {
+        Pedido p = new Pedido();
+        p.setUuid(UUID.randomUUID().toString());
+        p.setPedidoIdCt(pedidoIdCt);
+        p.setFacilityCode("1040107");
+        p.setPayload("{\"pedidoId\":" + pedidoIdCt + "}");
+        p.setStatus(Pedido.Status.NEW);
+        p.setCreatedBy("test");
+        p.setCreatedAt(new Date());
+        p.setLifeCycleStatus(LifeCycleStatus.ACTIVE);
+        return p;
+    }
+
+    private static List<Long> sorted(List<Long> ids) {
+        List<Long> copy = new ArrayList<>(ids);
+        copy.sort(null);
+        return copy;
+    }
+
+    private int count() throws Exception {
+        try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM pedidos")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private String uuidOf(long pedidoIdCt) throws Exception {
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT uuid FROM pedidos WHERE pedido_id_ct = '" + pedidoIdCt + "'")) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+}
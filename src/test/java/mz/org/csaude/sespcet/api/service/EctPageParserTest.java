@@ -0,0 +1,105 @@
+package mz.org.csaude.sespcet.api.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+class EctPageParserTest {
+
+    @Test
+    void itemJsonIsTheOriginalSliceOfThePage() throws Exception {
+        String first = "{\"dadosPedido\":{\"metadados\":{\"pedidoId\":7},\"dadosUtente\":{\"codigoUnidadeSanitaria\":\"US-1\"}},"
+                + "\"extra\":\"Ção \\\"aspas\\\"\"}";
+        String second = "{\"pedido_id\":\"8\",\"codigo_unidade_sanitaria\":\"US-2\",\"lista\":[1,{\"a\":null}]}";
+        EctApiClient.Page page = pedidos("{\"data\":{\"data\":[" + first + " , " + second + "]}}");
+
+        Assertions.assertEquals(2, page.items().size());
+        EctApiClient.PageItem a = page.items().get(0);
+        Assertions.assertEquals(first, a.json());
+        Assertions.assertEquals(7L, a.pedidoId());
+        Assertions.assertEquals("US-1", a.facilityCode());
+        EctApiClient.PageItem b = page.items().get(1);
+        Assertions.assertEquals(second, b.json());
+        Assertions.assertEquals(8L, b.pedidoId());
+        Assertions.assertEquals("US-2", b.facilityCode());
+    }
+
+    @Test
+    void itemsUnderContentDataWhenThereIsNoData() throws Exception {
+        EctApiClient.Page page = pedidos("{\"content\":{\"data\":[{\"pedidoId\":1}],\"next_cursor\":\"c1\"}}");
+        Assertions.assertEquals(List.of(1L), pedidoIds(page));
+        Assertions.assertEquals("c1", page.nextCursor());
+
+        // com "data" presente, "content" é ignorado (como no parser por Map)
+        page = pedidos("{\"data\":{\"next_cursor\":\"d1\"},\"content\":{\"data\":[{\"pedidoId\":1}]},\"items\":[{\"pedidoId\":2}]}");
+        Assertions.assertEquals(List.of(2L), pedidoIds(page));
+        Assertions.assertEquals("d1", page.nextCursor());
+    }
+
+    @Test
+    void rootDataArrayIsOnlyAcceptedForRespostas() throws Exception {
+        String json = "{\"data\":[{\"dadosResposta\":{\"metadados\":{\"pedidoId\":3,\"respostaId\":30}}}]}";
+
+        Assertions.assertTrue(pedidos(json).items().isEmpty());
+        EctApiClient.Page page = respostas(json);
+        Assertions.assertEquals(1, page.items().size());
+        Assertions.assertEquals(3L, page.items().get(0).pedidoId());
+        Assertions.assertEquals(30L, page.items().get(0).respostaId());
+    }
+
+    @Test
+    void nonObjectWrapperAndElementsAreSkipped() throws Exception {
+        EctApiClient.Page page = pedidos("{\"items\":[1,\"x\",[{\"pedidoId\":9}],"
+                + "{\"dadosPedido\":\"texto\",\"pedidoId\":4},"
+                + "{\"dadosPedido\":null,\"pedidoId\":5},"
+                + "{\"pedidoId\":6}]}");
+        Assertions.assertEquals(List.of(5L, 6L), pedidoIds(page));
+    }
+
+    @Test
+    void pedidosCursorPrefersDataOverRoot() throws Exception {
+        EctApiClient.Page page = pedidos("{\"nextCursor\":\"root\",\"pagination\":{\"next_cursor\":\"pag\",\"has_more\":false},"
+                + "\"data\":{\"meta\":{\"next_cursor\":\"meta\",\"has_more\":\"1\"},\"data\":[]}}");
+        Assertions.assertEquals("meta", page.nextCursor());
+        Assertions.assertEquals(Boolean.TRUE, page.hasMore());
+
+        page = pedidos("{\"nextCursor\":\" \",\"pagination\":{\"next_cursor\":\"pag\"},\"items\":[]}");
+        Assertions.assertEquals("pag", page.nextCursor());
+        Assertions.assertNull(page.hasMore(), "pedidos sem has_more não infere");
+    }
+
+    @Test
+    void respostasCursorPrefersRootPaginationAndInfersHasMore() throws Exception {
+        EctApiClient.Page page = respostas("{\"pagination\":{\"next_cursor\":\"p1\",\"has_next\":false,\"has_more\":true},"
+                + "\"nextCursor\":\"root\",\"data\":[]}");
+        Assertions.assertEquals("p1", page.nextCursor());
+        Assertions.assertEquals(Boolean.FALSE, page.hasMore());
+
+        page = respostas("{\"meta\":{\"next_cursor\":\"m1\"},\"data\":[]}");
+        Assertions.assertEquals("m1", page.nextCursor());
+        Assertions.assertEquals(Boolean.TRUE, page.hasMore());
+
+        page = respostas("{\"data\":[]}");
+        Assertions.assertNull(page.nextCursor());
+        Assertions.assertEquals(Boolean.FALSE, page.hasMore());
+    }
+
+    @Test
+    void nonObjectPageIsRejected() {
+        Assertions.assertThrows(IllegalStateException.class, () -> pedidos("[{\"pedidoId\":1}]"));
+    }
+
+    private static EctApiClient.Page pedidos(String json) throws Exception {
+        return EctPageParser.parse(json.getBytes(StandardCharsets.UTF_8), EctPageParser.Kind.PEDIDOS);
+    }
+
+    private static EctApiClient.Page respostas(String json) throws Exception {
+        return EctPageParser.parse(json.getBytes(StandardCharsets.UTF_8), EctPageParser.Kind.RESPOSTAS);
+    }
+
+    private static List<Long> pedidoIds(EctApiClient.Page page) {
+        return page.items().stream().map(EctApiClient.PageItem::pedidoId).toList();
+    }
+}
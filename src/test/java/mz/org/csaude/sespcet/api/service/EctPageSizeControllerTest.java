@@ -0,0 +1,152 @@
+package mz.org.csaude.sespcet.api.service;
+
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.client.exceptions.HttpClientResponseException;
+import mz.org.csaude.sespcet.api.error.EctUnavailableException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EctPageSizeControllerTest {
+
+    private static final String PREFIX = "sesp.ct.sync.adaptive.state.";
+
+    private final Map<String, String> store = new HashMap<>();
+    /** Settings lidas numa thread não bloqueante do Reactor. */
+    private final List<String> nonBlockingReads = new CopyOnWriteArrayList<>();
+    private SettingService settings;
+    private EctPageSizeController controller;
+
+    @BeforeEach
+    void setUp() {
+        settings = mock(SettingService.class);
+        when(settings.getInt(anyString(), anyInt())).thenAnswer(inv -> {
+            String v = read(inv.getArgument(0));
+            return v == null ? inv.getArgument(1) : Integer.parseInt(v);
+        });
+        when(settings.getLong(anyString(), anyLong())).thenAnswer(inv -> {
+            String v = read(inv.getArgument(0));
+            return v == null ? inv.getArgument(1) : Long.parseLong(v);
+        });
+        when(settings.getDouble(anyString(), anyDouble())).thenAnswer(inv -> {
+            String v = read(inv.getArgument(0));
+            return v == null ? inv.getArgument(1) : Double.parseDouble(v);
+        });
+        doAnswer(inv -> store.put(inv.getArgument(0), inv.getArgument(1)))
+                .when(settings).upsert(anyString(), anyString(), anyString(), anyString(), anyBoolean(), anyString());
+        controller = new EctPageSizeController(settings);
+    }
+
+    @Test
+    void fastFullPagesGrowTheLimit() {
+        int limit = controller.limit(EctPageSizeController.Stream.PEDIDOS, 100);
+        controller.onSuccess(EctPageSizeController.Stream.PEDIDOS, limit, limit, 10_000, 50_000_000L);
+        Assertions.assertEquals(110, controller.limit(EctPageSizeController.Stream.PEDIDOS, 100));
+    }
+
+    @Test
+    void slowPageHalvesTheLimit() {
+        int limit = controller.limit(EctPageSizeController.Stream.PEDIDOS, 100);
+        controller.onSuccess(EctPageSizeController.Stream.PEDIDOS, limit, limit, 10_000, 10_000_000_000L);
+        Assertions.assertEquals(50, controller.limit(EctPageSizeController.Stream.PEDIDOS, 100));
+    }
+
+    @Test
+    void onlySizeRelatedErrorsHalveTheLimit() {
+        EctPageSizeController.Stream stream = EctPageSizeController.Stream.PEDIDOS;
+        int limit = controller.limit(stream, 100);
+
+        controller.onError(stream, limit, new EctUnavailableException("circuito aberto"));
+        controller.onError(stream, limit, new HttpClientResponseException("busy", HttpResponse.status(HttpStatus.SERVICE_UNAVAILABLE)));
+        controller.onError(stream, limit, new HttpClientResponseException("bad", HttpResponse.status(HttpStatus.BAD_REQUEST)));
+        controller.onError(stream, limit, new IllegalStateException("assinatura inválida"));
+        Assertions.assertEquals(100, controller.limit(stream, 100));
+
+        controller.onError(stream, limit, new RuntimeException(new TimeoutException()));
+        Assertions.assertEquals(50, controller.limit(stream, 100));
+        controller.onError(stream, 50, new HttpClientResponseException("gw", HttpResponse.status(HttpStatus.GATEWAY_TIMEOUT)));
+        Assertions.assertEquals(25, controller.limit(stream, 100));
+    }
+
+    @Test
+    void persistedStateIsResumedOnlyForTheSameConfiguredLimit() {
+        EctPageSizeController.Stream stream = EctPageSizeController.Stream.RESPOSTAS;
+        int limit = controller.limit(stream, 100);
+        controller.onSuccess(stream, limit, limit, 10_000, 10_000_000_000L);
+        controller.persist(stream);
+        Assertions.assertEquals("50", store.get(PREFIX + "respostas.limit"));
+        Assertions.assertEquals("100", store.get(PREFIX + "respostas.seed"));
+
+        Assertions.assertEquals(50, new EctPageSizeController(settings).limit(stream, 100));
+        // configuração mudou: o estado gravado é descartado
+        Assertions.assertEquals(200, new EctPageSizeController(settings).limit(stream, 200));
+    }
+
+    @Test
+    void configurationChangeReseedsTheLiveState() {
+        EctPageSizeController.Stream stream = EctPageSizeController.Stream.PEDIDOS;
+        int limit = controller.limit(stream, 100);
+        controller.onSuccess(stream, limit, limit, 10_000, 10_000_000_000L);
+        Assertions.assertEquals(50, controller.limit(stream, 100));
+        Assertions.assertEquals(300, controller.limit(stream, 300));
+    }
+
+    @Test
+    void backfillHasItsOwnState() {
+        int limit = controller.limit(EctPageSizeController.Stream.RESPOSTAS_BACKFILL, 100);
+        controller.onSuccess(EctPageSizeController.Stream.RESPOSTAS_BACKFILL, limit, limit, 10_000, 10_000_000_000L);
+
+        Assertions.assertEquals(50, controller.limit(EctPageSizeController.Stream.RESPOSTAS_BACKFILL, 100));
+        Assertions.assertEquals(100, controller.limit(EctPageSizeController.Stream.RESPOSTAS, 100));
+    }
+
+    @Test
+    void reactiveFetcherReadsAndFeedsBackOffTheReactorThreads() {
+        EctApiClient.Page page = new EctApiClient.Page(List.of(), null, false, 10);
+        EctPagePipeline.ReactiveFetcher ok = controller.adaptiveReactive(EctPageSizeController.Stream.PEDIDOS, 100,
+                (limit, cursor) -> Mono.just(page).delayElement(Duration.ofMillis(10))); // chega numa thread de timer
+        Assertions.assertSame(page, ok.fetch(null).subscribeOn(Schedulers.parallel()).block(Duration.ofSeconds(5)));
+
+        EctPagePipeline.ReactiveFetcher slow = controller.adaptiveReactive(EctPageSizeController.Stream.PEDIDOS, 100,
+                (limit, cursor) -> Mono.<EctApiClient.Page>error(new TimeoutException())
+                        .delaySubscription(Duration.ofMillis(10)));
+        Assertions.assertThrows(RuntimeException.class,
+                () -> slow.fetch(null).subscribeOn(Schedulers.parallel()).block(Duration.ofSeconds(5)));
+
+        Assertions.assertEquals(50, controller.limit(EctPageSizeController.Stream.PEDIDOS, 100));
+        Assertions.assertTrue(nonBlockingReads.isEmpty(), nonBlockingReads.toString());
+    }
+
+    @Test
+    void limitStaysWithinConfiguredBounds() {
+        EctPageSizeController.Stream stream = EctPageSizeController.Stream.PEDIDOS;
+        int limit = controller.limit(stream, 12);
+        controller.onError(stream, limit, new TimeoutException());
+        Assertions.assertEquals(EctPageSizeController.DEFAULT_MIN_LIMIT, controller.limit(stream, 12));
+        Assertions.assertEquals(EctPageSizeController.DEFAULT_MAX_LIMIT, controller.limit(stream, 10_000));
+    }
+
+    private String read(String key) {
+        if (Schedulers.isInNonBlockingThread()) nonBlockingReads.add(key + "@" + Thread.currentThread().getName());
+        return store.get(key);
+    }
+}
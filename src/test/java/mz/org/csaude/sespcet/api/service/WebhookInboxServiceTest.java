@@ -0,0 +1,172 @@
+package mz.org.csaude.sespcet.api.service;
+
+import mz.org.csaude.sespcet.api.entity.WebhookInbox;
+import mz.org.csaude.sespcet.api.error.InvalidWebhookPayloadException;
+import mz.org.csaude.sespcet.api.repository.WebhookInboxRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_WEBHOOK_INBOX_BACKOFF_SECONDS;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_WEBHOOK_INBOX_LEASE_SECONDS;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_WEBHOOK_INBOX_MAX_ATTEMPTS;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WebhookInboxServiceTest {
+
+    private static final String PAYLOAD = "{\"dadosResposta\":{\"metadados\":{\"pedidoId\":1,\"respostaId\":10}}}";
+
+    private final Map<String, Integer> store = new HashMap<>();
+    private WebhookInboxRepository repo;
+    private WebhookIngestService ingest;
+    private WebhookInboxService inbox;
+
+    @BeforeEach
+    void setUp() {
+        repo = mock(WebhookInboxRepository.class);
+        ingest = mock(WebhookIngestService.class);
+        SettingService settings = mock(SettingService.class);
+        when(settings.getInt(anyString(), anyInt()))
+                .thenAnswer(inv -> store.getOrDefault(inv.getArgument(0), inv.getArgument(1)));
+        inbox = new WebhookInboxService(repo, ingest, settings, null);
+
+        store.put(CT_WEBHOOK_INBOX_LEASE_SECONDS, 60);
+        store.put(CT_WEBHOOK_INBOX_BACKOFF_SECONDS, 5);
+        store.put(CT_WEBHOOK_INBOX_MAX_ATTEMPTS, 3);
+    }
+
+    @Test
+    void appendStoresTheClearPayloadAsPending() {
+        when(repo.save(any())).thenAnswer(inv -> {
+            WebhookInbox msg = inv.getArgument(0);
+            msg.setId(7L);
+            return msg;
+        });
+
+        Assertions.assertEquals(7L, inbox.append(PAYLOAD));
+
+        ArgumentCaptor<WebhookInbox> saved = ArgumentCaptor.forClass(WebhookInbox.class);
+        verify(repo).save(saved.capture());
+        Assertions.assertEquals(PAYLOAD, saved.getValue().getPayload());
+        Assertions.assertNull(saved.getValue().getData());
+        Assertions.assertEquals(WebhookInbox.Status.PENDING, saved.getValue().getStatus());
+        Assertions.assertEquals(0, saved.getValue().getAttempts());
+    }
+
+    @Test
+    void claimedMessageIsIngestedAndMarkedDone() throws Exception {
+        claimed(message(1));
+
+        inbox.process(1L);
+
+        ArgumentCaptor<Date> until = ArgumentCaptor.forClass(Date.class);
+        ArgumentCaptor<Date> now = ArgumentCaptor.forClass(Date.class);
+        verify(repo).claim(eq(1L), now.capture(), until.capture());
+        Assertions.assertEquals(TimeUnit.SECONDS.toMillis(60), until.getValue().getTime() - now.getValue().getTime());
+        verify(ingest).ingest(PAYLOAD);
+        verify(repo).markDone(eq(1L), any());
+    }
+
+    @Test
+    void messageOwnedByAnotherWorkerIsLeftAlone() throws Exception {
+        when(repo.claim(anyLong(), any(), any())).thenReturn(0);
+
+        inbox.process(1L);
+
+        verify(repo, never()).findById(any());
+        verify(ingest, never()).ingest(anyString());
+    }
+
+    @Test
+    void expiredLeaseIsClaimedAgainAndCountsAsAnAttempt() throws Exception {
+        WebhookInbox msg = message(2); // segunda posse: o worker anterior caiu a meio
+        claimed(msg);
+
+        inbox.process(1L);
+
+        verify(ingest).ingest(PAYLOAD);
+        verify(repo).markDone(eq(1L), any());
+    }
+
+    @Test
+    void transientFailureIsRetriedWithExponentialBackoff() throws Exception {
+        when(ingest.ingest(anyString())).thenThrow(new IllegalStateException("Deadlock na BD"));
+
+        claimed(message(1));
+        long before = System.currentTimeMillis();
+        inbox.process(1L);
+        assertRetriedAfter(before, TimeUnit.SECONDS.toMillis(5));
+
+        claimed(message(2));
+        before = System.currentTimeMillis();
+        inbox.process(1L);
+        assertRetriedAfter(before, TimeUnit.SECONDS.toMillis(10));
+    }
+
+    @Test
+    void invalidPayloadIsParkedAtOnce() throws Exception {
+        when(ingest.ingest(anyString())).thenThrow(new InvalidWebhookPayloadException("Resposta sem respostaId"));
+        claimed(message(1));
+
+        inbox.process(1L);
+
+        verify(repo).markFailed(eq(1L), eq(WebhookInbox.Status.PARKED), any(), anyString());
+        verify(repo, never()).markFailed(anyLong(), eq(WebhookInbox.Status.PENDING), any(), anyString());
+    }
+
+    @Test
+    void exhaustedAttemptsAreParked() throws Exception {
+        when(ingest.ingest(anyString())).thenThrow(new RuntimeException("BD indisponível"));
+        claimed(message(3));
+
+        inbox.process(1L);
+
+        verify(repo).markFailed(eq(1L), eq(WebhookInbox.Status.PARKED), any(), anyString());
+    }
+
+    /* ---------------- helpers ---------------- */
+
+    /** Mensagem já com a posse deste worker ({@code attempts} inclui a tentativa em curso). */
+    private static WebhookInbox message(int attempts) {
+        WebhookInbox msg = new WebhookInbox();
+        msg.setId(1L);
+        msg.setPayload(PAYLOAD);
+        msg.setStatus(WebhookInbox.Status.PROCESSING);
+        msg.setAttempts(attempts);
+        msg.setReceivedAt(new Date());
+        msg.setNextAttemptAt(new Date());
+        return msg;
+    }
+
+    private void claimed(WebhookInbox msg) {
+        when(repo.claim(eq(msg.getId()), any(), any())).thenReturn(1);
+        when(repo.findById(msg.getId())).thenReturn(Optional.of(msg));
+    }
+
+    private void assertRetriedAfter(long before, long backoffMs) {
+        ArgumentCaptor<Date> next = ArgumentCaptor.forClass(Date.class);
+        verify(repo, atLeastOnce())
+                .markFailed(eq(1L), eq(WebhookInbox.Status.PENDING), next.capture(), anyString());
+        List<Date> all = next.getAllValues();
+        long at = all.get(all.size() - 1).getTime();
+        Assertions.assertTrue(at >= before + backoffMs && at <= System.currentTimeMillis() + backoffMs,
+                "nova tentativa fora do backoff esperado: " + (at - before) + " ms");
+    }
+}
@@ -0,0 +1,182 @@
+package mz.org.csaude.sespcet.api.service;
+
+import io.micronaut.core.type.Argument;
+import io.micronaut.json.JsonMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_WEBHOOK_INGEST_BATCH_MAX;
+import static mz.org.csaude.sespcet.api.config.SettingKeys.CT_WEBHOOK_INGEST_BATCH_WAIT_MS;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** Group commit da ingestão: N chamadores em simultâneo contra um {@link WebhookIngestWriter} simulado. */
+class WebhookIngestServiceTest {
+
+    private static final Pattern ID = Pattern.compile("\"respostaId\":(\\d+)");
+
+    private final Map<String, Integer> store = new HashMap<>();
+    /** respostaIds de cada chamada ao writer (uma por transacção). */
+    private final List<List<Long>> writes = new CopyOnWriteArrayList<>();
+    private WebhookIngestWriter writer;
+    private WebhookIngestService service;
+    private ExecutorService callers;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        JsonMapper json = mock(JsonMapper.class);
+        when(json.readValue(any(byte[].class), any(Argument.class))).thenAnswer(inv -> {
+            Matcher m = ID.matcher(new String(inv.<byte[]>getArgument(0), StandardCharsets.UTF_8));
+            if (!m.find()) return null;
+            long id = Long.parseLong(m.group(1));
+            Map<String, Object> meta = Map.of("pedidoId", id * 10, "respostaId", id);
+            return Map.of("dadosResposta", Map.of("metadados", meta));
+        });
+        when(json.writeValueAsBytes(any())).thenAnswer(inv -> String.valueOf(inv.getArgument(0)).getBytes(StandardCharsets.UTF_8));
+
+        SettingService settings = mock(SettingService.class);
+        when(settings.getInt(anyString(), anyInt()))
+                .thenAnswer(inv -> store.getOrDefault(inv.getArgument(0), inv.getArgument(1)));
+
+        writer = mock(WebhookIngestWriter.class);
+        service = new WebhookIngestService(json, writer, settings);
+        callers = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    void fullBatchIsCommittedInOneTransaction() throws Exception {
+        store.put(CT_WEBHOOK_INGEST_BATCH_MAX, 4);
+        store.put(CT_WEBHOOK_INGEST_BATCH_WAIT_MS, 10_000); // só o lote cheio o pode libertar a tempo
+        recordWrites(null);
+
+        long started = System.nanoTime();
+        List<Future<List<Long>>> results = ingestConcurrently(1, 2, 3, 4);
+
+        for (int i = 0; i < results.size(); i++) {
+            Assertions.assertEquals(List.of((i + 1) * 10L), results.get(i).get(5, TimeUnit.SECONDS));
+        }
+        Assertions.assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(5), "lote cheio não esperou pelo prazo");
+        Assertions.assertEquals(1, writes.size());
+        Assertions.assertEquals(List.of(1L, 2L, 3L, 4L), sorted(writes.get(0)));
+    }
+
+    @Test
+    void failedBatchFallsBackToOneDeliveryAtATime() throws Exception {
+        store.put(CT_WEBHOOK_INGEST_BATCH_MAX, 3);
+        store.put(CT_WEBHOOK_INGEST_BATCH_WAIT_MS, 10_000);
+        IllegalStateException broken = new IllegalStateException("Resposta 2 viola uma constraint");
+        recordWrites(ids -> {
+            if (ids.contains(2L)) throw broken;
+        });
+
+        List<Future<List<Long>>> results = ingestConcurrently(1, 2, 3);
+
+        Assertions.assertEquals(List.of(10L), results.get(0).get(5, TimeUnit.SECONDS));
+        ExecutionException failed = Assertions.assertThrows(ExecutionException.class, () -> results.get(1).get(5, TimeUnit.SECONDS));
+        Assertions.assertSame(broken, failed.getCause());
+        Assertions.assertEquals(List.of(30L), results.get(2).get(5, TimeUnit.SECONDS));
+
+        Assertions.assertEquals(4, writes.size(), "um lote e depois uma transacção por entrega");
+        Assertions.assertEquals(3, writes.get(0).size());
+        for (List<Long> single : writes.subList(1, 4)) Assertions.assertEquals(1, single.size());
+    }
+
+    @Test
+    void errorInsideWriteCompletesEveryCaller() throws Exception {
+        store.put(CT_WEBHOOK_INGEST_BATCH_MAX, 3);
+        store.put(CT_WEBHOOK_INGEST_BATCH_WAIT_MS, 10_000);
+        recordWrites(ids -> {
+            throw new LinkageError("classe em falta");
+        });
+
+        List<Future<List<Long>>> results = ingestConcurrently(1, 2, 3);
+
+        for (Future<List<Long>> result : results) {
+            // nenhum chamador fica à espera do timeout do commit
+            ExecutionException failed = Assertions.assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            Assertions.assertInstanceOf(LinkageError.class, failed.getCause());
+        }
+        Assertions.assertEquals(1, writes.size(), "um Error não é repetido entrega a entrega");
+    }
+
+    @Test
+    void batchingDisabledWritesEachDeliveryOnItsOwn() throws Exception {
+        store.put(CT_WEBHOOK_INGEST_BATCH_MAX, 1);
+        recordWrites(null);
+
+        List<Future<List<Long>>> results = ingestConcurrently(1, 2, 3);
+
+        for (Future<List<Long>> result : results) result.get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(3, writes.size());
+    }
+
+    /* ---------------- helpers ---------------- */
+
+    private interface WriteCheck {
+        void check(List<Long> respostaIds);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void recordWrites(WriteCheck check) {
+        doAnswer(inv -> {
+            List<Long> ids = new ArrayList<>();
+            for (WebhookIngestWriter.RespostaItem it : (List<WebhookIngestWriter.RespostaItem>) inv.getArgument(0)) {
+                ids.add(it.respostaId());
+            }
+            writes.add(ids);
+            if (check != null) check.check(ids);
+            return null;
+        }).when(writer).write(any());
+    }
+
+    /** Uma entrega por respostaId, todas a partir do mesmo instante. */
+    private List<Future<List<Long>>> ingestConcurrently(long... respostaIds) throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(respostaIds.length);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<List<Long>>> results = new ArrayList<>();
+        for (long id : respostaIds) {
+            String payload = "{\"dadosResposta\":{\"metadados\":{\"pedidoId\":" + id * 10 + ",\"respostaId\":" + id + "}}}";
+            results.add(callers.submit(() -> {
+                ready.countDown();
+                go.await();
+                return service.ingest(payload);
+            }));
+        }
+        Assertions.assertTrue(ready.await(5, TimeUnit.SECONDS));
+        go.countDown();
+        return results;
+    }
+
+    private static List<Long> sorted(List<Long> ids) {
+        List<Long> copy = new ArrayList<>(ids);
+        copy.sort(null);
+        return copy;
+    }
+}
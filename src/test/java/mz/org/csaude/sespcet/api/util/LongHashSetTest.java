@@ -0,0 +1,58 @@
+package mz.org.csaude.sespcet.api.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+class LongHashSetTest {
+
+    @Test
+    void addAndContainsAcrossResizes() {
+        LongHashSet set = new LongHashSet(4);
+        for (long id = 1; id <= 100_000; id++) {
+            Assertions.assertTrue(set.add(id));
+        }
+        Assertions.assertEquals(100_000, set.size());
+        for (long id = 1; id <= 100_000; id++) {
+            Assertions.assertTrue(set.contains(id));
+        }
+        Assertions.assertFalse(set.contains(100_001));
+        Assertions.assertFalse(set.add(42));
+    }
+
+    @Test
+    void zeroAndNegativeValues() {
+        LongHashSet set = new LongHashSet();
+        Assertions.assertFalse(set.contains(0));
+        Assertions.assertTrue(set.add(0));
+        Assertions.assertFalse(set.add(0));
+        Assertions.assertTrue(set.add(-7));
+        Assertions.assertTrue(set.add(Long.MIN_VALUE));
+        Assertions.assertTrue(set.contains(0));
+        Assertions.assertTrue(set.contains(-7));
+        Assertions.assertTrue(set.contains(Long.MIN_VALUE));
+        Assertions.assertEquals(3, set.size());
+
+        set.clear();
+        Assertions.assertTrue(set.isEmpty());
+        Assertions.assertFalse(set.contains(0));
+    }
+
+    @Test
+    void matchesHashSetOnRandomIds() {
+        Random rnd = new Random(7);
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 50_000; i++) {
+            long v = rnd.nextInt(80_000);
+            Assertions.assertEquals(expected.add(v), set.add(v));
+        }
+        Assertions.assertEquals(expected.size(), set.size());
+        for (long v = 0; v < 80_000; v++) {
+            Assertions.assertEquals(expected.contains(v), set.contains(v));
+        }
+    }
+}